@@ -0,0 +1,254 @@
+import io.EnvironmentSnapshot;
+import io.ExcelProcessor;
+import scheduling.core.Environment;
+import scheduling.core.Schedule;
+import scheduling.scheduler.GreedyStaticScheduler;
+import scheduling.scheduler.Scheduler;
+import scheduling.simulation.State;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * The batch runner loads, schedules and outputs a batch of instances concurrently on a bounded thread pool.
+ * Each instance is given a memory budget, and at most (max heap / budget) instances are run at the same time,
+ * so that the concurrent instances do not run out of the heap together.
+ * The result row of each instance is written into the csv file as soon as it is finished,
+ * and an instance that crashes is written with its error, without stopping the others.
+ */
+
+public class BatchRunner {
+    public static final String HEADER = "fid,fill-rate,holding-cost,prod-cost,trans-cost,seconds,alloc-mb,error";
+
+    private int numThreads; // the max number of instances run at the same time
+    private long memoryBudget; // the heap budget of each instance in bytes
+    private boolean outputSchedules; // whether to write the schedule file of each instance
+
+    public BatchRunner(int numThreads, long memoryBudget) {
+        this.numThreads = numThreads;
+        this.memoryBudget = memoryBudget;
+        this.outputSchedules = true;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public boolean isOutputSchedules() {
+        return outputSchedules;
+    }
+
+    public void setOutputSchedules(boolean outputSchedules) {
+        this.outputSchedules = outputSchedules;
+    }
+
+    /**
+     * The number of instances run at the same time, bounded by both the threads and the memory budget.
+     * @return the number of concurrent instances.
+     */
+    public int concurrency() {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        long byMemory = memoryBudget <= 0 ? numThreads : Math.max(1, maxMemory / memoryBudget);
+
+        return (int)Math.max(1, Math.min(numThreads, byMemory));
+    }
+
+    /**
+     * Run a batch of instances, and write their results into a csv file in the order they are finished.
+     * @param fids the ids of the instances.
+     * @param inputs the input file of each instance.
+     * @param output the output csv file.
+     * @return the results, in the order of the instances.
+     * @throws IOException if the csv file cannot be written.
+     */
+    public List<Result> run(List<String> fids, List<File> inputs, File output) throws IOException {
+        int concurrency = concurrency();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+
+        System.out.println("running " + inputs.size() + " instances, " + concurrency + " at a time");
+
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            String fid = fids.get(i);
+            File input = inputs.get(i);
+
+            futures.add(completion.submit(() -> runInstance(fid, input)));
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(output))) {
+            writer.write(HEADER);
+            writer.newLine();
+            writer.flush();
+
+            for (int i = 0; i < inputs.size(); i++) {
+                Result result = completion.take().get();
+
+                writer.write(result.toCsv());
+                writer.newLine();
+                writer.flush();
+
+                System.out.println(result);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            // runInstance catches all the errors of the instances, this only happens if the batch is interrupted
+            e.printStackTrace();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Load, schedule and output an instance.
+     * The errors (including running out of memory) are caught and recorded in the result.
+     * @param fid the id of the instance.
+     * @param input the input file.
+     * @return the result.
+     */
+    public Result runInstance(String fid, File input) {
+        Result result = new Result(fid);
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+
+        try {
+            Environment env = EnvironmentSnapshot.load(input);
+
+            if (env == null)
+                throw new IllegalStateException("cannot read " + input);
+
+            State staticProb = new State(env);
+
+            Scheduler scheduler = new GreedyStaticScheduler();
+            long planStart = System.nanoTime();
+            scheduler.planSchedule(staticProb);
+            result.seconds = (System.nanoTime()-planStart)/1e9;
+
+            Schedule schedule = staticProb.getPlannedSchedule();
+            schedule.calcFillRate();
+
+            result.fillRate = schedule.getFillRate();
+            result.holdingCost = schedule.getHoldingCost();
+            result.prodCost = schedule.getProductionCost();
+            result.transCost = schedule.getTransitCost();
+
+            if (outputSchedules) {
+                File scheduleFile = new File("schedule-" + fid + ".xlsx");
+                ExcelProcessor.outputSchedule(schedule, scheduleFile, staticProb);
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+            result.error = e.toString();
+
+            if (result.seconds == 0)
+                result.seconds = (System.nanoTime()-start)/1e9;
+        }
+
+        // the total allocation (including the garbage), not the live heap of the instance
+        result.allocatedMB = (allocatedBytes()-allocated)/1024.0/1024.0;
+
+        return result;
+    }
+
+    /**
+     * The bytes allocated by the current thread so far, or 0 if it is not supported by the JVM.
+     * @return the allocated bytes.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    /**
+     * The result of an instance.
+     */
+    public static class Result {
+        private String fid;
+        private double fillRate = Double.NaN;
+        private double holdingCost = Double.NaN;
+        private double prodCost = Double.NaN;
+        private double transCost = Double.NaN;
+        private double seconds; // the duration of planning the schedule
+        private double allocatedMB; // the heap allocated by the instance, including the loading and output
+        private String error; // the error if the instance crashes, or null
+
+        public Result(String fid) {
+            this.fid = fid;
+        }
+
+        public String getFid() {
+            return fid;
+        }
+
+        public double getFillRate() {
+            return fillRate;
+        }
+
+        public double getHoldingCost() {
+            return holdingCost;
+        }
+
+        public double getProdCost() {
+            return prodCost;
+        }
+
+        public double getTransCost() {
+            return transCost;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public double getAllocatedMB() {
+            return allocatedMB;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public String toCsv() {
+            String errorStr = error == null ? "" : "\"" + error.replace("\"", "\"\"") + "\"";
+
+            return fid + "," + fillRate + "," + holdingCost + "," + prodCost + "," +
+                    transCost + "," + seconds + "," + String.format("%.1f", allocatedMB) + "," + errorStr;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null)
+                return "instance " + fid + " failed: " + error;
+
+            return "instance " + fid + ": fill rate = " + fillRate + ", holding cost = " + holdingCost +
+                    ", production cost = " + prodCost + ", transit cost = " + transCost +
+                    ", duration = " + seconds;
+        }
+    }
+}
@@ -1,72 +1,45 @@
-import io.ExcelProcessor;
-import scheduling.scheduler.GreedyStaticScheduler;
-import scheduling.scheduler.Scheduler;
-import scheduling.simulation.State;
-
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Main {
 
+    /**
+     * Run all the instances in the data directory concurrently.
+     * Usage: Main [threads] [memory budget per instance in MB],
+     * the default is the number of processors and 1024 MB.
+     */
     public static void main(String[] args) {
-        List<Double> fillRates = new ArrayList<>();
-        List<Double> holdingCosts = new ArrayList<>();
-        List<Double> prodCosts = new ArrayList<>();
-        List<Double> transCosts = new ArrayList<>();
-        List<Double> durations = new ArrayList<>();
-
-        for (int fid = 1; fid < 32; fid++) {
-            String fidStr = String.format("%02d", fid);
-
-            File input = new File("data/e_vuw_test_multi_plant_" + fidStr + ".xlsx");
-
-            State staticProb = State.staticProbFromFile(input);
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        long memoryBudgetMB = 1024;
 
-            Scheduler scheduler = new GreedyStaticScheduler();
-            long start = System.currentTimeMillis();
-            scheduler.planSchedule(staticProb);
-            long finish = System.currentTimeMillis();
-            double duration = 0.001*(finish-start);
+        if (args.length > 0)
+            numThreads = Integer.parseInt(args[0]);
 
-            staticProb.getPlannedSchedule().calcFillRate();
+        if (args.length > 1)
+            memoryBudgetMB = Long.parseLong(args[1]);
 
-            fillRates.add(staticProb.getPlannedSchedule().getFillRate());
-            holdingCosts.add(staticProb.getPlannedSchedule().getHoldingCost());
-            prodCosts.add(staticProb.getPlannedSchedule().getProductionCost());
-            transCosts.add(staticProb.getPlannedSchedule().getTransitCost());
-            durations.add(duration);
+        List<String> fids = new ArrayList<>();
+        List<File> inputs = new ArrayList<>();
 
-            File scheduleFile = new File("schedule-" + fidStr + ".xlsx");
-            ExcelProcessor.outputSchedule(staticProb.getPlannedSchedule(), scheduleFile, staticProb);
+        for (int fid = 1; fid < 32; fid++) {
+            String fidStr = String.format("%02d", fid);
 
-            System.out.println("fill rate = " + staticProb.getPlannedSchedule().getFillRate());
-            System.out.println("holding cost = " + staticProb.getPlannedSchedule().getHoldingCost());
-            System.out.println("production cost = " + staticProb.getPlannedSchedule().getProductionCost());
-            System.out.println("transit cost = " + staticProb.getPlannedSchedule().getTransitCost());
-            System.out.println("finished, duration = " + duration);
+            fids.add(fidStr);
+            inputs.add(new File("data/e_vuw_test_multi_plant_" + fidStr + ".xlsx"));
         }
 
-        File output = new File("output.csv");
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(output));
-            writer.write("fid,fill-rate,holding-cost,prod-cost,trans-cost,seconds");
-            writer.newLine();
-            for (int fid = 1; fid < 32; fid++) {
-                String fidStr = String.format("%02d", fid);
+        BatchRunner runner = new BatchRunner(numThreads, memoryBudgetMB*1024*1024);
 
-                writer.write(fidStr + "," + fillRates.get(fid-1) + "," +
-                        holdingCosts.get(fid-1) + "," + prodCosts.get(fid-1) + "," +
-                        transCosts.get(fid-1) + "," + durations.get(fid-1));
-                writer.newLine();
-            }
+        long start = System.nanoTime();
 
-            writer.close();
+        try {
+            runner.run(fids, inputs, new File("output.csv"));
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        System.out.println("finished, wall time = " + (System.nanoTime()-start)/1e9);
     }
 }
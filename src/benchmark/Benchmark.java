@@ -0,0 +1,45 @@
+package benchmark;
+
+/**
+ * A micro benchmark of an operation.
+ * The benchmark runner calls setupTrial once, and then runs a number of iterations.
+ * Each iteration calls setupIteration (not measured), and then runs the operations (measured).
+ */
+
+public abstract class Benchmark {
+    private String name;
+
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepare the data shared by all the iterations.
+     * @throws Exception if the data cannot be prepared.
+     */
+    public void setupTrial() throws Exception {
+    }
+
+    /**
+     * Prepare the data of an iteration, e.g. a new schedule to be changed by the operations.
+     */
+    public void setupIteration() {
+    }
+
+    /**
+     * The number of operations in an iteration.
+     * @return the number of operations.
+     */
+    public abstract int operations();
+
+    /**
+     * Run an operation.
+     * @param op the index of the operation in the iteration.
+     * @return the result of the operation, consumed by the runner so that it is not optimised away.
+     */
+    public abstract Object run(int op);
+}
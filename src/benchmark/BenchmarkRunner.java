@@ -0,0 +1,283 @@
+package benchmark;
+
+import scheduling.core.Environment;
+import scheduling.core.EnvironmentGenerator;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * The benchmark runner measures the time and allocation per operation of the scheduling benchmarks.
+ * Each benchmark is warmed up first, and then measured in a number of iterations.
+ * The allocation per operation is measured by the bytes allocated by the current thread,
+ * i.e. the normalised allocation rate, which does not depend on the speed of the machine.
+ *
+ * The results can be written into a csv file, and compared with the results of a baseline csv file.
+ *
+ * Usage: BenchmarkRunner [-size n ...] [-file f.xlsx ...] [-warmup n] [-iterations n] [-seed s]
+ *                        [-output results.csv] [-baseline baseline.csv]
+ * The default sizes of the synthetic environments are 300 and 3000 items.
+ */
+
+public class BenchmarkRunner {
+    public static final String HEADER = "benchmark,input,ns-per-op,ns-per-op-error,bytes-per-op";
+
+    private int warmupIterations = 5;
+    private int iterations = 10;
+    private long sink; // the results of the operations are consumed here
+
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Run a benchmark.
+     * @param benchmark the benchmark.
+     * @param input the name of the input of the benchmark.
+     * @return the result.
+     * @throws Exception if the benchmark cannot be set up.
+     */
+    public Result run(Benchmark benchmark, String input) throws Exception {
+        benchmark.setupTrial();
+
+        for (int i = 0; i < warmupIterations; i++)
+            iteration(benchmark);
+
+        double[] nsPerOp = new double[iterations];
+        double bytesPerOp = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            double[] measured = iteration(benchmark);
+            nsPerOp[i] = measured[0];
+            bytesPerOp += measured[1];
+        }
+
+        double mean = 0;
+        for (double ns : nsPerOp)
+            mean += ns;
+        mean /= iterations;
+
+        double variance = 0;
+        for (double ns : nsPerOp)
+            variance += (ns-mean)*(ns-mean);
+        double error = iterations > 1 ? Math.sqrt(variance/(iterations-1)) : 0;
+
+        return new Result(benchmark.getName(), input, mean, error, bytesPerOp/iterations);
+    }
+
+    /**
+     * Run an iteration of a benchmark.
+     * @param benchmark the benchmark.
+     * @return the time (ns) and the allocated bytes per operation.
+     */
+    private double[] iteration(Benchmark benchmark) {
+        benchmark.setupIteration();
+
+        int ops = benchmark.operations();
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int op = 0; op < ops; op++) {
+            Object result = benchmark.run(op);
+            sink += result == null ? 0 : System.identityHashCode(result);
+        }
+
+        long time = System.nanoTime()-start;
+        bytes = allocatedBytes()-bytes;
+
+        return new double[]{(double)time/ops, (double)bytes/ops};
+    }
+
+    /**
+     * The bytes allocated by the current thread so far, or 0 if it is not supported by the JVM.
+     * @return the allocated bytes.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    /**
+     * Read the results from a csv file.
+     * @param file the csv file.
+     * @return the results, keyed by the benchmark and input.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Map<String, Result> readResults(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine(); // the header
+
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                Result result = new Result(fields[0], fields[1], Double.parseDouble(fields[2]),
+                        Double.parseDouble(fields[3]), Double.parseDouble(fields[4]));
+                results.put(result.key(), result);
+            }
+        }
+
+        return results;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> sizes = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        long seed = 0;
+        File output = null;
+        File baseline = null;
+
+        BenchmarkRunner runner = new BenchmarkRunner();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size":
+                    sizes.add(Integer.parseInt(args[++i]));
+                    break;
+                case "-file":
+                    files.add(new File(args[++i]));
+                    break;
+                case "-warmup":
+                    runner.setWarmupIterations(Integer.parseInt(args[++i]));
+                    break;
+                case "-iterations":
+                    runner.setIterations(Integer.parseInt(args[++i]));
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-output":
+                    output = new File(args[++i]);
+                    break;
+                case "-baseline":
+                    baseline = new File(args[++i]);
+                    break;
+                default:
+                    System.out.println("Unknown argument: " + args[i]);
+                    return;
+            }
+        }
+
+        if (sizes.isEmpty() && files.isEmpty()) {
+            sizes.add(300);
+            sizes.add(3000);
+        }
+
+        Map<String, Result> baselineResults = baseline == null ? new HashMap<>() : readResults(baseline);
+        List<Result> results = new ArrayList<>();
+
+        System.out.printf("%-30s %-16s %14s %12s %14s %8s%n",
+                "benchmark", "input", "ns/op", "error", "bytes/op", "ratio");
+
+        List<String> inputs = new ArrayList<>();
+        List<Environment> envs = new ArrayList<>();
+        List<File> envFiles = new ArrayList<>();
+
+        EnvironmentGenerator generator = new EnvironmentGenerator();
+
+        for (int size : sizes) {
+            generator.setNumItems(size);
+            inputs.add("synthetic-" + size);
+            envs.add(generator.generate(seed));
+            envFiles.add(null);
+        }
+
+        for (File file : files) {
+            inputs.add(file.getName());
+            envs.add(Environment.readFromFile(file));
+            envFiles.add(file);
+        }
+
+        for (int i = 0; i < envs.size(); i++) {
+            for (Benchmark benchmark : SchedulingBenchmarks.create(envs.get(i), envFiles.get(i), seed)) {
+                Result result = runner.run(benchmark, inputs.get(i));
+                results.add(result);
+
+                Result base = baselineResults.get(result.key());
+                String ratio = base == null ? "" : String.format("%.2f", result.nsPerOp/base.nsPerOp);
+
+                System.out.printf("%-30s %-16s %14.1f %12.1f %14.1f %8s%n", result.benchmark, result.input,
+                        result.nsPerOp, result.nsPerOpError, result.bytesPerOp, ratio);
+            }
+        }
+
+        if (output != null) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(output))) {
+                writer.write(HEADER);
+                writer.newLine();
+
+                for (Result result : results) {
+                    writer.write(result.toCsv());
+                    writer.newLine();
+                }
+            }
+        }
+
+        // print the consumed results, so that the operations cannot be optimised away
+        System.out.println("(sink " + runner.sink + ")");
+    }
+
+    /**
+     * The result of a benchmark with an input.
+     */
+    public static class Result {
+        private String benchmark;
+        private String input;
+        private double nsPerOp;
+        private double nsPerOpError; // the standard deviation over the iterations
+        private double bytesPerOp;
+
+        public Result(String benchmark, String input, double nsPerOp, double nsPerOpError, double bytesPerOp) {
+            this.benchmark = benchmark;
+            this.input = input;
+            this.nsPerOp = nsPerOp;
+            this.nsPerOpError = nsPerOpError;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        public String getBenchmark() {
+            return benchmark;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public double getNsPerOp() {
+            return nsPerOp;
+        }
+
+        public double getNsPerOpError() {
+            return nsPerOpError;
+        }
+
+        public double getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        public String key() {
+            return benchmark + "," + input;
+        }
+
+        public String toCsv() {
+            return benchmark + "," + input + "," + nsPerOp + "," + nsPerOpError + "," + bytesPerOp;
+        }
+    }
+}
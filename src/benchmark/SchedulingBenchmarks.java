@@ -0,0 +1,390 @@
+package benchmark;
+
+import org.apache.commons.math3.util.Pair;
+import scheduling.core.Environment;
+import scheduling.core.Schedule;
+import scheduling.core.SupplyChain;
+import scheduling.core.input.*;
+import scheduling.scheduler.GreedyStaticScheduler;
+import scheduling.simulation.PriorityRule;
+import scheduling.simulation.State;
+import scheduling.simulation.TieBreaker;
+import scheduling.simulation.rule.ShortestChainFirst;
+import scheduling.simulation.rule.UrgentDemandFirst;
+import scheduling.simulation.tiebreaker.SimpleTieBreaker;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * The benchmarks of the hot paths in the scheduling package.
+ * - reading the environment from a file
+ * - initialising a schedule with a state
+ * - activating the streams of the longest supply chains
+ * - selecting the next supply chain of the demands
+ * - adding productions, transits and order supplies to a schedule
+ * - calculating the fill rate of a planned schedule
+ * The operations are generated with a seeded random generator, so that they are the same in each run.
+ */
+
+public class SchedulingBenchmarks {
+    public static final int NUM_CHAINS = 16; // the number of representative chains to activate
+    public static final int NUM_OPERATIONS = 1000; // the number of changes in each iteration
+
+    /**
+     * Create the benchmarks of an environment.
+     * @param env the environment.
+     * @param file the file of the environment, or null if it is not read from a file.
+     * @param seed the seed to generate the operations.
+     * @return the benchmarks.
+     */
+    public static List<Benchmark> create(Environment env, File file, long seed) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        if (file != null)
+            benchmarks.add(readFromFile(file));
+
+        benchmarks.add(initWithState(env));
+        benchmarks.add(activateStreams(env));
+        benchmarks.add(nextSupplyChain(env));
+        benchmarks.add(addProduction(env, seed));
+        benchmarks.add(addTransit(env, seed));
+        benchmarks.add(addOrderSupply(env, seed));
+        benchmarks.add(calcFillRate(env));
+
+        return benchmarks;
+    }
+
+    public static Benchmark readFromFile(File file) {
+        return new Benchmark("Environment.readFromFile") {
+            @Override
+            public int operations() {
+                return 1;
+            }
+
+            @Override
+            public Object run(int op) {
+                return Environment.readFromFile(file);
+            }
+        };
+    }
+
+    public static Benchmark initWithState(Environment env) {
+        return new Benchmark("Schedule.initWithState") {
+            private State state;
+
+            @Override
+            public void setupTrial() {
+                state = new State(env);
+            }
+
+            @Override
+            public int operations() {
+                return 1;
+            }
+
+            @Override
+            public Object run(int op) {
+                Schedule schedule = new Schedule();
+                schedule.initWithState(state);
+                return schedule;
+            }
+        };
+    }
+
+    /**
+     * Activate the streams of the supply chains reaching the most other supply chains, in the middle of the period.
+     */
+    public static Benchmark activateStreams(Environment env) {
+        return new Benchmark("SupplyChain.activateStreams") {
+            private Schedule schedule;
+            private List<SupplyChain> chains;
+            private int dateId;
+
+            @Override
+            public void setupTrial() {
+                State state = new State(env);
+                schedule = state.getPlannedSchedule();
+                chains = longestChains(env, NUM_CHAINS);
+                dateId = env.getPeriod()/2;
+            }
+
+            @Override
+            public int operations() {
+                return chains.size();
+            }
+
+            @Override
+            public Object run(int op) {
+                SupplyChain chain = chains.get(op);
+                chain.activateStreams(schedule, dateId);
+                return chain.getMaxQuantity();
+            }
+        };
+    }
+
+    /**
+     * Select the next supply chain of each demand, in a new schedule in each iteration,
+     * so that the activation cache is filled up during the iteration.
+     */
+    public static Benchmark nextSupplyChain(Environment env) {
+        return new Benchmark("Scheduler.nextSupplyChain") {
+            private State state;
+            private Schedule schedule;
+            private List<Demand> demands;
+            private GreedyStaticScheduler scheduler = new GreedyStaticScheduler();
+            private PriorityRule<SupplyChain> chainRule = new ShortestChainFirst();
+            private TieBreaker<SupplyChain> chainTB = new SimpleTieBreaker<>();
+
+            @Override
+            public void setupTrial() {
+                state = new State(env);
+                demands = new ArrayList<>(state.getDemands());
+                Collections.sort(demands, new UrgentDemandFirst());
+
+                if (demands.size() > NUM_OPERATIONS)
+                    demands = demands.subList(0, NUM_OPERATIONS);
+            }
+
+            @Override
+            public void setupIteration() {
+                schedule = new Schedule();
+                schedule.initWithState(state);
+            }
+
+            @Override
+            public int operations() {
+                return demands.size();
+            }
+
+            @Override
+            public Object run(int op) {
+                Demand demand = demands.get(op);
+                return scheduler.nextSupplyChain(demand.getDateId(), demand.latestSupplyDate(schedule),
+                        demand.getItem(), schedule, state, chainRule, chainTB);
+            }
+        };
+    }
+
+    public static Benchmark addProduction(Environment env, long seed) {
+        return new Benchmark("Schedule.addProduction") {
+            private State state;
+            private Schedule schedule;
+            private List<Production> productions;
+            private int[] dateIds;
+
+            @Override
+            public void setupTrial() {
+                state = new State(env);
+
+                List<Production> all = new ArrayList<>();
+                for (Item item : env.getItemMap().values())
+                    all.addAll(item.getProductionMap().values());
+                all.sort(Comparator.comparing((Production p) -> p.getItem()).thenComparing(Production::getPlant));
+
+                Random random = new Random(seed);
+                productions = new ArrayList<>();
+                dateIds = new int[NUM_OPERATIONS];
+
+                for (int i = 0; i < NUM_OPERATIONS && !all.isEmpty(); i++) {
+                    Production production = all.get(random.nextInt(all.size()));
+                    productions.add(production);
+                    // the production has to be finished within the period
+                    dateIds[i] = random.nextInt(Math.max(1, env.getPeriod()-production.getLeadTime()));
+                }
+            }
+
+            @Override
+            public void setupIteration() {
+                schedule = new Schedule();
+                schedule.initWithState(state);
+            }
+
+            @Override
+            public int operations() {
+                return productions.size();
+            }
+
+            @Override
+            public Object run(int op) {
+                schedule.addProduction(dateIds[op], productions.get(op), 1);
+                return schedule.getProductionCost();
+            }
+        };
+    }
+
+    public static Benchmark addTransit(Environment env, long seed) {
+        return new Benchmark("Schedule.addTransit") {
+            private State state;
+            private Schedule schedule;
+            private List<Transit> transits;
+            private int[] dateIds;
+
+            @Override
+            public void setupTrial() {
+                state = new State(env);
+
+                List<Transit> all = env.getTransits();
+                Random random = new Random(seed);
+                transits = new ArrayList<>();
+                dateIds = new int[NUM_OPERATIONS];
+
+                for (int i = 0; i < NUM_OPERATIONS && !all.isEmpty(); i++) {
+                    Transit transit = all.get(random.nextInt(all.size()));
+                    transits.add(transit);
+                    // the transit has to arrive within the period
+                    dateIds[i] = random.nextInt(Math.max(1, env.getPeriod()-transit.getLeadTime()));
+                }
+            }
+
+            @Override
+            public void setupIteration() {
+                schedule = new Schedule();
+                schedule.initWithState(state);
+            }
+
+            @Override
+            public int operations() {
+                return transits.size();
+            }
+
+            @Override
+            public Object run(int op) {
+                schedule.addTransit(dateIds[op], transits.get(op), 1);
+                return schedule.getTransitCost();
+            }
+        };
+    }
+
+    public static Benchmark addOrderSupply(Environment env, long seed) {
+        return new Benchmark("Schedule.addOrderSupply") {
+            private State state;
+            private Schedule schedule;
+            private List<Pair<Item, Plant>> supplies;
+            private int[] dateIds;
+
+            @Override
+            public void setupTrial() {
+                state = new State(env);
+
+                List<Pair<Item, Plant>> all = new ArrayList<>();
+                List<Integer> firstDateIds = new ArrayList<>();
+                List<Item> items = new ArrayList<>(env.getItemMap().values());
+                Collections.sort(items);
+                for (Item item : items) {
+                    if (item.getOrderDemandMap().isEmpty())
+                        continue;
+
+                    // an order demand can be supplied at its date or afterwards
+                    int firstDateId = Collections.min(item.getOrderDemandMap().keySet());
+
+                    List<Plant> plants = new ArrayList<>(item.getPlants());
+                    Collections.sort(plants);
+                    for (Plant plant : plants) {
+                        all.add(new Pair<>(item, plant));
+                        firstDateIds.add(firstDateId);
+                    }
+                }
+
+                Random random = new Random(seed);
+                supplies = new ArrayList<>();
+                dateIds = new int[NUM_OPERATIONS];
+
+                for (int i = 0; i < NUM_OPERATIONS && !all.isEmpty(); i++) {
+                    int index = random.nextInt(all.size());
+                    supplies.add(all.get(index));
+                    dateIds[i] = firstDateIds.get(index)+random.nextInt(env.getPeriod()-firstDateIds.get(index));
+                }
+            }
+
+            @Override
+            public void setupIteration() {
+                schedule = new Schedule();
+                schedule.initWithState(state);
+            }
+
+            @Override
+            public int operations() {
+                return supplies.size();
+            }
+
+            @Override
+            public Object run(int op) {
+                schedule.addOrderSupply(dateIds[op], supplies.get(op), 1);
+                return schedule.getTotalDelay();
+            }
+        };
+    }
+
+    public static Benchmark calcFillRate(Environment env) {
+        return new Benchmark("Schedule.calcFillRate") {
+            private Schedule schedule;
+
+            @Override
+            public void setupTrial() {
+                State state = new State(env);
+                new GreedyStaticScheduler().planSchedule(state);
+                schedule = state.getPlannedSchedule();
+            }
+
+            @Override
+            public int operations() {
+                return 1;
+            }
+
+            @Override
+            public Object run(int op) {
+                schedule.calcFillRate();
+                return schedule.getFillRate();
+            }
+        };
+    }
+
+    /**
+     * Find the supply chains reaching the most other supply chains through their streams.
+     * @param env the environment.
+     * @param num the number of supply chains.
+     * @return the supply chains, in the decreasing order of the reached supply chains.
+     */
+    public static List<SupplyChain> longestChains(Environment env, int num) {
+        List<SupplyChain> chains = new ArrayList<>();
+        Map<SupplyChain, Integer> reachedMap = new HashMap<>();
+
+        List<Item> items = new ArrayList<>(env.getItemMap().values());
+        Collections.sort(items);
+
+        for (Item item : items) {
+            for (SupplyChain chain : env.getSupplyChains(item)) {
+                chains.add(chain);
+                reachedMap.put(chain, reached(chain));
+            }
+        }
+
+        chains.sort(Comparator.comparing((SupplyChain c) -> -reachedMap.get(c))
+                .thenComparing(SupplyChain::getItem).thenComparing(SupplyChain::getPlant));
+
+        return new ArrayList<>(chains.subList(0, Math.min(num, chains.size())));
+    }
+
+    private static int reached(SupplyChain chain) {
+        Set<SupplyChain> reached = new HashSet<>();
+        Deque<SupplyChain> stack = new ArrayDeque<>();
+        stack.push(chain);
+        reached.add(chain);
+
+        while (!stack.isEmpty()) {
+            SupplyChain current = stack.pop();
+
+            List<SupplyChain> next = new ArrayList<>(current.getTransitStreamMap().values());
+            if (current.getProduction() != null)
+                next.addAll(current.getBomStreamMap().values());
+
+            for (SupplyChain n : next) {
+                if (n != null && reached.add(n))
+                    stack.push(n);
+            }
+        }
+
+        return reached.size();
+    }
+}
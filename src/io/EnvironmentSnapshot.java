@@ -0,0 +1,630 @@
+package io;
+
+import scheduling.core.Environment;
+import scheduling.core.input.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The binary snapshot of a fully read environment.
+ * A snapshot stores the input data of the environment (product categories, capacity types, plants,
+ * machine sets and their capacities, items, productions and boms, transits, demands, initial inventories,
+ * frozen productions, work in process and raw material po), with the entities in the order of their ordinals.
+ * It is reloaded through a memory mapped file, and the derived information (rates, plants, dependent items,
+ * supply chains) is calculated again, which is much faster than reading the .xlsx file.
+ *
+ * The snapshot also stores the SHA-256 hash of the source file.
+ * A snapshot whose version or source hash does not match is stale, and is replaced by reading the source again.
+ */
+
+public class EnvironmentSnapshot {
+    public static final int MAGIC = 0x454e5653; // "ENVS"
+    public static final int VERSION = 1;
+    public static final String SUFFIX = ".env";
+
+    private static final int NONE = -1; // the index of a missing entity or enum
+
+    /**
+     * Load the environment of a source .xlsx file through its snapshot (the source file name + ".env").
+     * The snapshot is used if it is up to date, otherwise the source file is read and a new snapshot is written.
+     * @param source the source .xlsx file.
+     * @return the environment.
+     */
+    public static Environment load(File source) {
+        return load(source, new File(source.getPath() + SUFFIX));
+    }
+
+    /**
+     * Load the environment of a source .xlsx file through a snapshot.
+     * The snapshot is used if it is up to date, otherwise the source file is read and a new snapshot is written.
+     * @param source the source .xlsx file.
+     * @param snapshot the snapshot file.
+     * @return the environment.
+     */
+    public static Environment load(File source, File snapshot) {
+        byte[] hash;
+
+        try {
+            hash = hash(source);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        if (snapshot.exists()) {
+            try {
+                Environment env = read(snapshot, hash);
+
+                if (env != null)
+                    return env;
+            } catch (IOException | RuntimeException e) {
+                // a corrupted snapshot is replaced as well as a stale one
+                e.printStackTrace();
+            }
+        }
+
+        Environment env = Environment.readFromFile(source);
+
+        if (env != null) {
+            try {
+                write(env, hash, snapshot);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return env;
+    }
+
+    /**
+     * Calculate the SHA-256 hash of a file.
+     * @param file the file.
+     * @return the hash.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] hash(File file) throws IOException {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[1 << 16];
+
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                digest.update(buffer, 0, n);
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Write the snapshot of an environment.
+     * The snapshot is written into a temporary file first, and then moved to replace the old snapshot,
+     * so that a partly written snapshot is never read.
+     * @param env the environment.
+     * @param sourceHash the hash of the source file of the environment.
+     * @param snapshot the snapshot file.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static void write(Environment env, byte[] sourceHash, File snapshot) throws IOException {
+        File tmp = new File(snapshot.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            new Writer(env, out).write(sourceHash);
+        }
+
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read an environment from a snapshot through a memory mapped file.
+     * @param snapshot the snapshot file.
+     * @param sourceHash the hash of the current source file, or null to skip the check.
+     * @return the environment, or null if the snapshot is of another version or source.
+     * @throws IOException if the snapshot cannot be read.
+     */
+    public static Environment read(File snapshot, byte[] sourceHash) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            return new Reader(buffer).read(sourceHash);
+        }
+    }
+
+    /**
+     * Write the entities in the order of their ordinals, and refer to the other entities by their ordinals.
+     */
+    private static class Writer {
+        private Environment env;
+        private DataOutputStream out;
+        private Map<ProductCategory, Integer> categoryIndices;
+
+        Writer(Environment env, DataOutputStream out) {
+            this.env = env;
+            this.out = out;
+        }
+
+        void write(byte[] sourceHash) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sourceHash.length);
+            out.write(sourceHash);
+
+            out.writeInt(env.getStartDate());
+            out.writeInt(env.getEndDate());
+            out.writeInt(env.getPeriod());
+
+            Map<Integer, Integer> remainingWeekDaysMap = env.getRemainingWeekDaysMap();
+            out.writeInt(remainingWeekDaysMap.size());
+            for (Map.Entry<Integer, Integer> entry : remainingWeekDaysMap.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+
+            // product categories
+            categoryIndices = new IdentityHashMap<>();
+            out.writeInt(env.getProductCategoryMap().size());
+            for (ProductCategory pc : env.getProductCategoryMap().values()) {
+                categoryIndices.put(pc, categoryIndices.size());
+                writeString(pc.getName());
+                out.writeDouble(pc.getFillRate());
+            }
+
+            // capacity types
+            CapacityType[] capacityTypes = new CapacityType[env.getCapacityTypeMap().size()];
+            for (CapacityType ct : env.getCapacityTypeMap().values())
+                capacityTypes[ct.getIndex()] = ct;
+
+            out.writeInt(capacityTypes.length);
+            for (CapacityType ct : capacityTypes) {
+                writeString(ct.getName());
+                out.writeDouble(ct.getDefaultRate());
+            }
+
+            // plants, without the item data
+            Plant[] plants = new Plant[env.getPlantMap().size()];
+            for (Plant plant : env.getPlantMap().values())
+                plants[plant.getIndex()] = plant;
+
+            out.writeInt(plants.length);
+            for (Plant plant : plants) {
+                writeString(plant.getName());
+                out.writeInt(plant.getLockedOutDays());
+                writeString(plant.getType());
+
+                out.writeInt(plant.getFrozenDaysMap().size());
+                for (Map.Entry<ItemType, Integer> entry : plant.getFrozenDaysMap().entrySet()) {
+                    out.writeInt(entry.getKey().ordinal());
+                    out.writeInt(entry.getValue());
+                }
+
+                out.writeInt(plant.getHolidays().size());
+                for (int holiday : plant.getHolidays())
+                    out.writeInt(holiday);
+            }
+
+            // machine sets and their capacities
+            MachineSet[] machineSets = new MachineSet[env.getMachineSetMap().size()];
+            for (MachineSet machineSet : env.getMachineSetMap().values())
+                machineSets[machineSet.getIndex()] = machineSet;
+
+            out.writeInt(machineSets.length);
+            for (MachineSet machineSet : machineSets) {
+                writeString(machineSet.getName());
+                out.writeInt(machineSet.getPlant().getIndex());
+                out.writeInt(machineSet.getCapacityType().getIndex());
+                out.writeDouble(machineSet.getSmoothingFactor());
+
+                out.writeInt(machineSet.getCapacityMap().size());
+                for (Map.Entry<Integer, Capacity> entry : machineSet.getCapacityMap().entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeDouble(entry.getValue().getTotal());
+                    out.writeDouble(entry.getValue().getRemaining());
+                }
+            }
+
+            // items, the productions are written after all the items, since the boms refer to other items
+            Item[] items = new Item[env.getItemMap().size()];
+            for (Item item : env.getItemMap().values())
+                items[item.getIndex()] = item;
+
+            out.writeInt(items.length);
+            for (Item item : items) {
+                writeString(item.getId());
+                out.writeInt(item.getType() == null ? NONE : item.getType().ordinal());
+                out.writeDouble(item.getMaterialCost());
+                out.writeInt(item.getProductCategory() == null ? NONE : categoryIndices.get(item.getProductCategory()));
+                out.writeDouble(item.getHoldingCost());
+            }
+
+            for (Item item : items) {
+                out.writeInt(item.getRateMap().size());
+                for (Map.Entry<CapacityType, Double> entry : item.getRateMap().entrySet()) {
+                    out.writeInt(entry.getKey().getIndex());
+                    out.writeDouble(entry.getValue());
+                }
+
+                writeDateMap(item.getOrderDemandMap());
+                writeDateMap(item.getForecastDemandMap());
+
+                out.writeInt(item.getInitInventoryMap().size());
+                for (Map.Entry<Plant, Double> entry : item.getInitInventoryMap().entrySet()) {
+                    out.writeInt(entry.getKey().getIndex());
+                    out.writeDouble(entry.getValue());
+                }
+
+                out.writeInt(item.getMachineMap().size());
+                for (Map.Entry<Plant, List<MachineSet>> entry : item.getMachineMap().entrySet()) {
+                    out.writeInt(entry.getKey().getIndex());
+                    out.writeInt(entry.getValue().size());
+                    for (MachineSet machineSet : entry.getValue())
+                        out.writeInt(machineSet.getIndex());
+                }
+
+                // the frozen productions may be at unknown plants
+                out.writeInt(item.getFrozenProductionMap().size());
+                for (Map.Entry<Plant, Map<Integer, Double>> entry : item.getFrozenProductionMap().entrySet()) {
+                    out.writeInt(entry.getKey() == null ? NONE : entry.getKey().getIndex());
+                    writeDateMap(entry.getValue());
+                }
+
+                out.writeInt(item.getProductionMap().size());
+                for (Production production : item.getProductionMap().values()) {
+                    out.writeInt(production.getPlant().getIndex());
+                    out.writeDouble(production.getCost());
+                    out.writeInt(production.getLeadTime());
+                    out.writeInt(production.getPrevWeekProduction());
+                    out.writeInt(production.getWeekToDateProduction());
+                    out.writeInt(production.getLotSize());
+                    out.writeInt(production.getMinProduction());
+                    out.writeInt(production.getMaxProduction());
+                    out.writeInt(production.getFixedDaysSupply());
+
+                    out.writeInt(production.getBom().size());
+                    for (BomComponent component : production.getBom()) {
+                        out.writeInt(component.getMaterial().getIndex());
+                        out.writeDouble(component.getQuantity());
+                        out.writeInt(component.getSupplyType() == null ? NONE : component.getSupplyType().ordinal());
+                    }
+                }
+            }
+
+            // transits, in the order of their ordinals
+            out.writeInt(env.getTransits().size());
+            for (Transit transit : env.getTransits()) {
+                out.writeInt(transit.getItem().getIndex());
+                out.writeInt(transit.getFromPlant().getIndex());
+                out.writeInt(transit.getToPlant().getIndex());
+                out.writeInt(transit.getCost());
+                out.writeInt(transit.getLeadTime());
+            }
+
+            // work in process and raw material po of the plants
+            for (Plant plant : plants) {
+                writeDailyItemMap(plant.getWorkInProcessMap());
+                writeDailyItemMap(plant.getRawMaterialPoMap());
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(NONE);
+                return;
+            }
+
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeDateMap(Map<Integer, Double> map) throws IOException {
+            out.writeInt(map.size());
+            for (Map.Entry<Integer, Double> entry : map.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeDouble(entry.getValue());
+            }
+        }
+
+        private void writeDailyItemMap(Map<Integer, Map<Item, Double>> map) throws IOException {
+            out.writeInt(map.size());
+            for (Map.Entry<Integer, Map<Item, Double>> entry : map.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<Item, Double> itemEntry : entry.getValue().entrySet()) {
+                    out.writeInt(itemEntry.getKey().getIndex());
+                    out.writeDouble(itemEntry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the entities in the order of their ordinals.
+     * The entity maps are linked hash maps, so that the ordinals assigned by the environment are the same as written.
+     */
+    private static class Reader {
+        private ByteBuffer in;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        Environment read(byte[] sourceHash) {
+            if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION)
+                return null;
+
+            byte[] hash = new byte[in.getInt()];
+            in.get(hash);
+
+            if (sourceHash != null && !Arrays.equals(hash, sourceHash))
+                return null;
+
+            int startDate = in.getInt();
+            int endDate = in.getInt();
+            int period = in.getInt();
+
+            Map<Integer, Integer> remainingWeekDaysMap = new HashMap<>();
+            int size = in.getInt();
+            for (int i = 0; i < size; i++)
+                remainingWeekDaysMap.put(in.getInt(), in.getInt());
+
+            // product categories
+            Map<String, ProductCategory> productCategoryMap = new LinkedHashMap<>();
+            ProductCategory[] categories = new ProductCategory[in.getInt()];
+            for (int i = 0; i < categories.length; i++) {
+                categories[i] = new ProductCategory(readString(), in.getDouble());
+                productCategoryMap.put(categories[i].getName(), categories[i]);
+            }
+
+            // capacity types
+            Map<String, CapacityType> capacityTypeMap = new LinkedHashMap<>();
+            CapacityType[] capacityTypes = new CapacityType[in.getInt()];
+            for (int i = 0; i < capacityTypes.length; i++) {
+                capacityTypes[i] = new CapacityType(readString(), in.getDouble());
+                capacityTypeMap.put(capacityTypes[i].getName(), capacityTypes[i]);
+            }
+
+            // plants
+            ItemType[] itemTypes = ItemType.values();
+            Map<String, Plant> plantMap = new LinkedHashMap<>();
+            Plant[] plants = new Plant[in.getInt()];
+            for (int i = 0; i < plants.length; i++) {
+                plants[i] = new Plant(readString(), in.getInt(), readString());
+                plantMap.put(plants[i].getName(), plants[i]);
+
+                size = in.getInt();
+                for (int j = 0; j < size; j++)
+                    plants[i].getFrozenDaysMap().put(itemTypes[in.getInt()], in.getInt());
+
+                size = in.getInt();
+                for (int j = 0; j < size; j++)
+                    plants[i].getHolidays().add(in.getInt());
+            }
+
+            // machine sets
+            Map<String, MachineSet> machineSetMap = new LinkedHashMap<>();
+            MachineSet[] machineSets = new MachineSet[in.getInt()];
+            for (int i = 0; i < machineSets.length; i++) {
+                String name = readString();
+                Plant plant = plants[in.getInt()];
+                CapacityType ct = capacityTypes[in.getInt()];
+                double sf = in.getDouble();
+
+                machineSets[i] = new MachineSet(name, plant, ct, sf);
+                machineSetMap.put(name, machineSets[i]);
+                plant.putMachineSet(machineSets[i]);
+
+                size = in.getInt();
+                for (int j = 0; j < size; j++) {
+                    int dateIndex = in.getInt();
+                    double total = in.getDouble();
+                    double remaining = in.getDouble();
+                    machineSets[i].getCapacityMap().put(dateIndex, new Capacity(total, remaining));
+                }
+            }
+
+            // items
+            Map<String, Item> itemMap = new LinkedHashMap<>();
+            Item[] items = new Item[in.getInt()];
+            for (int i = 0; i < items.length; i++) {
+                String id = readString();
+                int type = in.getInt();
+                double mcost = in.getDouble();
+                int pc = in.getInt();
+                double hcost = in.getDouble();
+
+                items[i] = new Item(id, type == NONE ? null : itemTypes[type], mcost,
+                        pc == NONE ? null : categories[pc], hcost);
+                itemMap.put(id, items[i]);
+            }
+
+            SupplyType[] supplyTypes = SupplyType.values();
+            for (Item item : items) {
+                size = in.getInt();
+                for (int j = 0; j < size; j++)
+                    item.getRateMap().put(capacityTypes[in.getInt()], in.getDouble());
+
+                readDateMap(item.getOrderDemandMap());
+                readDateMap(item.getForecastDemandMap());
+
+                size = in.getInt();
+                for (int j = 0; j < size; j++)
+                    item.getInitInventoryMap().put(plants[in.getInt()], in.getDouble());
+
+                size = in.getInt();
+                for (int j = 0; j < size; j++) {
+                    Plant plant = plants[in.getInt()];
+                    List<MachineSet> list = new ArrayList<>();
+                    int numSets = in.getInt();
+                    for (int k = 0; k < numSets; k++)
+                        list.add(machineSets[in.getInt()]);
+
+                    item.getMachineMap().put(plant, list);
+                }
+
+                size = in.getInt();
+                for (int j = 0; j < size; j++) {
+                    int plant = in.getInt();
+                    Map<Integer, Double> map = new HashMap<>();
+                    readDateMap(map);
+
+                    item.getFrozenProductionMap().put(plant == NONE ? null : plants[plant], map);
+                }
+
+                size = in.getInt();
+                for (int j = 0; j < size; j++) {
+                    Plant plant = plants[in.getInt()];
+                    double cost = in.getDouble();
+                    int leadTime = in.getInt();
+                    int preWeekProd = in.getInt();
+                    int wtdProd = in.getInt();
+                    int lotSize = in.getInt();
+                    int minProd = in.getInt();
+                    int maxProd = in.getInt();
+                    int fds = in.getInt();
+
+                    Production production = new Production(item, plant, cost, leadTime,
+                            preWeekProd, wtdProd, lotSize, minProd, maxProd, fds);
+
+                    int bomSize = in.getInt();
+                    for (int k = 0; k < bomSize; k++) {
+                        Item material = items[in.getInt()];
+                        double quantity = in.getDouble();
+                        int st = in.getInt();
+
+                        production.addBom(new BomComponent(material, quantity, st == NONE ? null : supplyTypes[st]));
+                    }
+
+                    item.putProduction(production);
+                }
+            }
+
+            // transits
+            List<Transit> transits = new ArrayList<>();
+            size = in.getInt();
+            for (int i = 0; i < size; i++) {
+                Item item = items[in.getInt()];
+                Plant fromPlant = plants[in.getInt()];
+                Plant toPlant = plants[in.getInt()];
+                int cost = in.getInt();
+                int leadTime = in.getInt();
+
+                Transit transit = new Transit(item, fromPlant, toPlant, cost, leadTime);
+                transits.add(transit);
+
+                fromPlant.putTransitOutMap(toPlant, item);
+                toPlant.putTransitInMap(fromPlant, item);
+                item.addTransit(transit);
+            }
+
+            // work in process and raw material po
+            for (Plant plant : plants) {
+                size = in.getInt();
+                for (int i = 0; i < size; i++) {
+                    int dateIndex = in.getInt();
+                    int numItems = in.getInt();
+                    for (int j = 0; j < numItems; j++)
+                        plant.putWorkInProcess(items[in.getInt()], dateIndex, in.getDouble());
+                }
+
+                size = in.getInt();
+                for (int i = 0; i < size; i++) {
+                    int dateIndex = in.getInt();
+                    int numItems = in.getInt();
+                    for (int j = 0; j < numItems; j++)
+                        plant.putRawMaterialPo(items[in.getInt()], in.getDouble(), dateIndex);
+                }
+            }
+
+            Environment environment = new Environment.Builder()
+                    .setProductCategoryMap(productCategoryMap)
+                    .setCapacityTypeMap(capacityTypeMap)
+                    .setItemMap(itemMap)
+                    .setPlantMap(plantMap)
+                    .setMachineSetMap(machineSetMap)
+                    .setTransits(transits)
+                    .setStartDate(startDate)
+                    .setEndDate(endDate)
+                    .setPeriod(period)
+                    .setRemainingWeekDaysMap(remainingWeekDaysMap)
+                    .build();
+
+            return environment;
+        }
+
+        private String readString() {
+            int length = in.getInt();
+
+            if (length == NONE)
+                return null;
+
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void readDateMap(Map<Integer, Double> map) {
+            int size = in.getInt();
+            for (int i = 0; i < size; i++)
+                map.put(in.getInt(), in.getDouble());
+        }
+    }
+
+    /**
+     * Compare the time of reading the .xlsx files and reloading their snapshots.
+     * Usage: EnvironmentSnapshot [file ...], the default is the files in the data directory.
+     */
+    public static void main(String[] args) throws Exception {
+        List<File> files = new ArrayList<>();
+
+        if (args.length == 0) {
+            File[] xlsxFiles = new File("data").listFiles((dir, name) -> name.endsWith(".xlsx"));
+            Arrays.sort(xlsxFiles);
+            files.addAll(Arrays.asList(xlsxFiles));
+        } else {
+            for (String arg : args)
+                files.add(new File(arg));
+        }
+
+        System.out.printf("%-40s %12s %12s %12s%n", "file", "xlsx(ms)", "snapshot(ms)", "same");
+
+        for (File file : files) {
+            File snapshot = new File(file.getPath() + SUFFIX);
+            byte[] hash = hash(file);
+
+            long start = System.nanoTime();
+            Environment fromFile = Environment.readFromFile(file);
+            double fileTime = (System.nanoTime()-start)/1e6;
+
+            write(fromFile, hash, snapshot);
+
+            // reload a few times, the first reloads include the class loading and compilation
+            Environment fromSnapshot = null;
+            double snapshotTime = 0;
+            for (int i = 0; i < 5; i++) {
+                start = System.nanoTime();
+                fromSnapshot = read(snapshot, hash(file));
+                snapshotTime = (System.nanoTime()-start)/1e6;
+            }
+
+            System.out.printf("%-40s %12.1f %12.1f %12s%n", file.getName(), fileTime, snapshotTime,
+                    LoadComparison.summary(fromFile).equals(LoadComparison.summary(fromSnapshot)));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io;
+
+import scheduling.core.Environment;
+import scheduling.core.input.*;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+
+/**
+ * Compare the in-memory (XSSFWorkbook) and the streaming (XSSFReader + SAX) loaders side by side.
+ * For each file, both loaders build the environment, and the load time and the peak heap usage are reported.
+ * The environments are also checked to be the same (by a summary of their contents).
+ *
+ * Usage: LoadComparison [file or directory ...], the default is the data directory.
+ */
+
+public class LoadComparison {
+    public static void main(String[] args) throws Exception {
+        List<File> files = new ArrayList<>();
+
+        if (args.length == 0)
+            args = new String[]{"data"};
+
+        for (String arg : args) {
+            File file = new File(arg);
+
+            if (file.isDirectory()) {
+                File[] xlsxFiles = file.listFiles((dir, name) -> name.endsWith(".xlsx"));
+                Arrays.sort(xlsxFiles);
+                files.addAll(Arrays.asList(xlsxFiles));
+            } else {
+                files.add(file);
+            }
+        }
+
+        System.out.printf("%-40s %12s %12s %12s %12s %6s%n",
+                "file", "xssf(ms)", "sax(ms)", "xssf(MB)", "sax(MB)", "same");
+
+        for (File file : files) {
+            // warm up both loaders, so that the class loading is not measured
+            tryLoad(file, false);
+            load(file, true);
+
+            Result xssf = tryLoad(file, false);
+            Result sax = load(file, true);
+
+            if (xssf == null) {
+                System.out.printf("%-40s %12s %12.1f %12s %12.1f %6s%n", file.getName(),
+                        "-", sax.time, "-", sax.peakMemory, "-");
+                continue;
+            }
+
+            System.out.printf("%-40s %12.1f %12.1f %12.1f %12.1f %6s%n", file.getName(),
+                    xssf.time, sax.time, xssf.peakMemory, sax.peakMemory, xssf.summary.equals(sax.summary));
+        }
+    }
+
+    /**
+     * Try to load an environment from a file.
+     * The in-memory loader also needs the full ooxml schemas on the classpath.
+     * @param file the file.
+     * @param streaming whether to use the streaming loader or not.
+     * @return the result, or null if the file cannot be loaded.
+     */
+    public static Result tryLoad(File file, boolean streaming) {
+        try {
+            return load(file, streaming);
+        } catch (Exception | LinkageError e) {
+            System.out.println("cannot load " + file.getName() + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Load an environment from a file, and measure the time and peak heap usage.
+     * @param file the file.
+     * @param streaming whether to use the streaming loader or not.
+     * @return the result.
+     * @throws Exception if the file cannot be loaded.
+     */
+    public static Result load(File file, boolean streaming) throws Exception {
+        System.gc();
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        long start = System.nanoTime();
+
+        WorkbookReader reader = streaming ? new StreamingWorkbookReader(file) : new XSSFWorkbookReader(file);
+        Environment env = Environment.readFromWorkbook(reader);
+        reader.close();
+
+        Result result = new Result();
+        result.time = (System.nanoTime()-start)/1e6;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools)
+            peak += pool.getPeakUsage().getUsed();
+
+        result.peakMemory = peak/1024.0/1024.0;
+        result.summary = summary(env);
+
+        return result;
+    }
+
+    /**
+     * Summarise the contents of an environment, to check whether two environments are the same.
+     * @param env the environment.
+     * @return the summary.
+     */
+    public static String summary(Environment env) {
+        List<String> lines = new ArrayList<>();
+
+        lines.add("period " + env.getStartDate() + " " + env.getEndDate() + " " + env.getPeriod());
+
+        for (MachineSet machineSet : env.getMachineSetMap().values()) {
+            double capacity = 0;
+            for (Capacity c : machineSet.getCapacityMap().values())
+                capacity += c.getRemaining();
+
+            lines.add("machine set " + machineSet.toString() + " " + machineSet.getCapacityMap().size() + " " + capacity);
+        }
+
+        for (Item item : env.getItemMap().values()) {
+            StringBuilder sb = new StringBuilder("item " + item.getId());
+
+            sb.append(" ").append(item.getHoldingCost()).append(" ").append(item.getRateMap().size());
+            sb.append(" ").append(new TreeMap<>(item.getOrderDemandMap()));
+            sb.append(" ").append(new TreeMap<>(item.getForecastDemandMap()));
+            sb.append(" ").append(item.getTransits().size());
+            sb.append(" ").append(item.getPlants().size());
+
+            // the productions are keyed by the plants, sort them to make the order stable
+            List<Production> productions = new ArrayList<>(item.getProductionMap().values());
+            productions.sort(Comparator.comparing(Production::getPlant));
+
+            for (Production production : productions) {
+                sb.append(" [").append(production.getPlant().toString()).append(" ").append(production.getLeadTime())
+                        .append(" ").append(production.getCost()).append(" ").append(production.getBom().size()).append("]");
+            }
+
+            double initInventory = 0;
+            for (double q : item.getInitInventoryMap().values())
+                initInventory += q;
+            sb.append(" ").append(initInventory);
+
+            lines.add(sb.toString());
+        }
+
+        for (Plant plant : env.getPlantMap().values()) {
+            double po = 0;
+            for (Map<Item, Double> dailyMap : plant.getRawMaterialPoMap().values())
+                for (double q : dailyMap.values())
+                    po += q;
+
+            double wip = 0;
+            for (Map<Item, Double> dailyMap : plant.getWorkInProcessMap().values())
+                for (double q : dailyMap.values())
+                    wip += q;
+
+            lines.add("plant " + plant.toString() + " " + po + " " + wip);
+        }
+
+        Collections.sort(lines);
+
+        return String.join("\n", lines);
+    }
+
+    public static class Result {
+        double time; // the load time in ms
+        double peakMemory; // the peak heap usage in MB
+        String summary;
+    }
+}
@@ -0,0 +1,9 @@
+package io;
+
+/**
+ * A row handler handles the rows of a sheet one by one, as they are read.
+ */
+
+public interface RowHandler {
+    void handle(SheetRow row);
+}
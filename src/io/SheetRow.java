@@ -0,0 +1,38 @@
+package io;
+
+/**
+ * A row of a sheet read from a workbook.
+ * The cells are accessed by their column indexes (starting from 0).
+ * A missing cell is read as an empty string, or zero.
+ */
+
+public abstract class SheetRow {
+    /**
+     * Get the index of the row in the sheet (starting from 0).
+     * @return the row index.
+     */
+    public abstract int getRowIndex();
+
+    /**
+     * Get the content of a cell as a string, formatted as displayed in the workbook.
+     * @param col the column index.
+     * @return the string content.
+     */
+    public abstract String getString(int col);
+
+    /**
+     * Get the content of a cell as a double.
+     * An empty cell is read as 0, and "inf" is read as the positive infinity.
+     * @param col the column index.
+     * @return the double content.
+     */
+    public abstract double getDouble(int col);
+
+    /**
+     * Get the content of a cell as an int.
+     * An empty cell is read as 0.
+     * @param col the column index.
+     * @return the int content.
+     */
+    public abstract int getInt(int col);
+}
@@ -0,0 +1,313 @@
+package io;
+
+import org.apache.poi.ooxml.util.SAXHelper;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The workbook reader that streams the sheets with the POI event model (XSSFReader + SAX).
+ * Only the shared strings are kept in memory. The sheet XML is parsed row by row,
+ * and the numeric cells are parsed directly into doubles, without formatting them into strings.
+ * The row passed to the handler is reused for the next row.
+ */
+
+public class StreamingWorkbookReader extends WorkbookReader {
+    private static final byte EMPTY = 0;
+    private static final byte NUMBER = 1;
+    private static final byte STRING = 2;
+
+    private OPCPackage pkg;
+    private ReadOnlySharedStringsTable sharedStrings;
+    private List<PackagePart> sheetParts; // the parts of the sheets, in the workbook order
+
+    public StreamingWorkbookReader(File file) throws Exception {
+        pkg = OPCPackage.open(file, PackageAccess.READ);
+        sharedStrings = new ReadOnlySharedStringsTable(pkg, false);
+
+        XSSFReader reader = new XSSFReader(pkg);
+        XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+
+        sheetParts = new ArrayList<>();
+        while (it.hasNext()) {
+            it.next().close();
+            sheetParts.add(it.getSheetPart());
+        }
+    }
+
+    @Override
+    public void readSheet(int sheetIdx, RowHandler handler) throws Exception {
+        XMLReader parser = SAXHelper.newXMLReader();
+        parser.setContentHandler(new SheetHandler(handler));
+
+        try (InputStream stream = sheetParts.get(sheetIdx).getInputStream()) {
+            parser.parse(new InputSource(stream));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        pkg.revert(); // opened read-only, nothing to save
+    }
+
+    /**
+     * The SAX handler of a sheet, collecting the cells of each row.
+     */
+    private class SheetHandler extends DefaultHandler {
+        private RowHandler handler;
+        private Row row;
+
+        private int col; // the column of the current cell
+        private String cellType; // the type (t attribute) of the current cell
+        private boolean inValue; // whether the parser is inside a value (v, or t of an inline string)
+        private StringBuilder value;
+
+        SheetHandler(RowHandler handler) {
+            this.handler = handler;
+            row = new Row();
+            value = new StringBuilder();
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    row.reset(r == null ? row.rowIndex+1 : Integer.parseInt(r)-1);
+                    col = -1;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    col = ref == null ? col+1 : column(ref);
+                    cellType = attributes.getValue("t");
+                    break;
+                case "v":
+                    inValue = true;
+                    value.setLength(0);
+                    break;
+                case "t":
+                    // the text of an inline string
+                    if ("inlineStr".equals(cellType)) {
+                        inValue = true;
+                        value.setLength(0);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    if (!inValue)
+                        break;
+
+                    inValue = false;
+
+                    if (cellType == null || cellType.equals("n")) {
+                        row.setNumber(col, parseNumber(value));
+                    } else if (cellType.equals("s")) {
+                        row.setString(col, sharedStrings.getItemAt(parseIndex(value)).getString());
+                    } else if (cellType.equals("b")) {
+                        row.setString(col, value.charAt(0) == '1' ? "TRUE" : "FALSE");
+                    } else {
+                        // inline strings, formula strings and errors
+                        row.setString(col, value.toString());
+                    }
+                    break;
+                case "row":
+                    // skip the header row
+                    if (row.rowIndex > 0)
+                        handler.handle(row);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue)
+                value.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Get the column index from a cell reference, e.g. "AB12" -> 27.
+     * @param ref the cell reference.
+     * @return the column index.
+     */
+    private static int column(String ref) {
+        int col = 0;
+
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+
+            if (c < 'A' || c > 'Z')
+                break;
+
+            col = col*26+(c-'A'+1);
+        }
+
+        return col-1;
+    }
+
+    private static int parseIndex(CharSequence chars) {
+        int index = 0;
+
+        for (int i = 0; i < chars.length(); i++)
+            index = index*10+(chars.charAt(i)-'0');
+
+        return index;
+    }
+
+    /**
+     * Parse a number. The plain integers are parsed directly from the characters,
+     * the others (decimals, exponents) are parsed by Double.parseDouble.
+     * @param chars the characters of the number.
+     * @return the number.
+     */
+    private static double parseNumber(CharSequence chars) {
+        int length = chars.length();
+        int i = 0;
+        boolean negative = false;
+
+        if (length > 0 && chars.charAt(0) == '-') {
+            negative = true;
+            i = 1;
+        }
+
+        // more than 15 digits may overflow the exact integers of double
+        if (length == i || length-i > 15)
+            return Double.parseDouble(chars.toString());
+
+        long number = 0;
+        for (; i < length; i++) {
+            char c = chars.charAt(i);
+
+            if (c < '0' || c > '9')
+                return Double.parseDouble(chars.toString());
+
+            number = number*10+(c-'0');
+        }
+
+        return negative ? -number : number;
+    }
+
+    /**
+     * The current row, whose cells are stored in reused primitive arrays.
+     */
+    private static class Row extends SheetRow {
+        private int rowIndex = -1;
+        private int numCols; // the number of columns set in this row
+        private byte[] types = new byte[16];
+        private double[] numbers = new double[16];
+        private String[] strings = new String[16];
+
+        void reset(int rowIndex) {
+            this.rowIndex = rowIndex;
+            Arrays.fill(types, 0, numCols, EMPTY);
+            Arrays.fill(strings, 0, numCols, null);
+            numCols = 0;
+        }
+
+        void setNumber(int col, double number) {
+            ensure(col);
+            types[col] = NUMBER;
+            numbers[col] = number;
+        }
+
+        void setString(int col, String string) {
+            ensure(col);
+            types[col] = STRING;
+            strings[col] = string;
+        }
+
+        private void ensure(int col) {
+            if (col >= types.length) {
+                int length = Math.max(col+1, types.length*2);
+                types = Arrays.copyOf(types, length);
+                numbers = Arrays.copyOf(numbers, length);
+                strings = Arrays.copyOf(strings, length);
+            }
+
+            if (numCols <= col)
+                numCols = col+1;
+        }
+
+        private byte type(int col) {
+            return col < numCols ? types[col] : EMPTY;
+        }
+
+        @Override
+        public int getRowIndex() {
+            return rowIndex;
+        }
+
+        @Override
+        public String getString(int col) {
+            switch (type(col)) {
+                case NUMBER:
+                    return NumberToTextConverter.toText(numbers[col]);
+                case STRING:
+                    return strings[col];
+                default:
+                    return "";
+            }
+        }
+
+        @Override
+        public double getDouble(int col) {
+            switch (type(col)) {
+                case NUMBER:
+                    return numbers[col];
+                case STRING:
+                    String content = strings[col].trim();
+
+                    if (content.equals(""))
+                        return 0;
+
+                    if (content.equals("inf"))
+                        return Double.POSITIVE_INFINITY;
+
+                    return Double.parseDouble(content);
+                default:
+                    return 0;
+            }
+        }
+
+        @Override
+        public int getInt(int col) {
+            switch (type(col)) {
+                case NUMBER:
+                    return (int)numbers[col];
+                case STRING:
+                    String content = strings[col].trim();
+
+                    if (content.equals(""))
+                        return 0;
+
+                    return Integer.parseInt(content);
+                default:
+                    return 0;
+            }
+        }
+    }
+}
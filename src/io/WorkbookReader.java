@@ -0,0 +1,25 @@
+package io;
+
+import java.io.IOException;
+
+/**
+ * A workbook reader reads the data rows (except the header row) of the sheets in a workbook.
+ * The rows of a sheet are passed to a row handler one by one,
+ * so the reader does not have to keep the whole workbook in memory.
+ */
+
+public abstract class WorkbookReader {
+    /**
+     * Read all the data rows of a sheet, skipping the header row.
+     * @param sheetIdx the index of the sheet in the workbook.
+     * @param handler the handler of the rows.
+     * @throws Exception if the sheet cannot be read.
+     */
+    public abstract void readSheet(int sheetIdx, RowHandler handler) throws Exception;
+
+    /**
+     * Close the workbook.
+     * @throws IOException if the workbook cannot be closed.
+     */
+    public abstract void close() throws IOException;
+}
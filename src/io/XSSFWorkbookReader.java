@@ -0,0 +1,77 @@
+package io;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The workbook reader that loads the whole workbook in memory with XSSFWorkbook.
+ * Each cell is formatted by a DataFormatter, and then parsed from the string.
+ */
+
+public class XSSFWorkbookReader extends WorkbookReader {
+    private XSSFWorkbook wb;
+    private DataFormatter df;
+
+    public XSSFWorkbookReader(File file) throws Exception {
+        wb = new XSSFWorkbook(file);
+        df = new DataFormatter();
+    }
+
+    @Override
+    public void readSheet(int sheetIdx, RowHandler handler) {
+        XSSFSheet sheet = wb.getSheetAt(sheetIdx);
+        Row row = new Row();
+
+        for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
+            row.row = sheet.getRow(i);
+            handler.handle(row);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        wb.close();
+    }
+
+    private class Row extends SheetRow {
+        private XSSFRow row;
+
+        @Override
+        public int getRowIndex() {
+            return row.getRowNum();
+        }
+
+        @Override
+        public String getString(int col) {
+            return df.formatCellValue(row.getCell(col));
+        }
+
+        @Override
+        public double getDouble(int col) {
+            String content = getString(col);
+
+            if (content.equals(""))
+                return 0;
+
+            if (content.equals("inf"))
+                return Double.POSITIVE_INFINITY;
+
+            return Double.valueOf(content);
+        }
+
+        @Override
+        public int getInt(int col) {
+            String content = getString(col);
+
+            if (content.equals(""))
+                return 0;
+
+            return Integer.valueOf(content);
+        }
+    }
+}
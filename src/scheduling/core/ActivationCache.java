@@ -0,0 +1,249 @@
+package scheduling.core;
+
+import scheduling.core.input.*;
+
+import java.util.*;
+
+/**
+ * The activation cache memorises the activation results of the supply chains in a schedule,
+ * so that a supply chain is not activated again in the same date
+ * if nothing it depends on has been changed since then.
+ *
+ * A supply chain depends on the inventories of all the (item, plant) it can reach
+ * through its bom and transit streams, and on the capacities of the machine sets of their productions.
+ * The cache subscribes to the inventory and capacity changes of the schedule.
+ * Each change increases the version of the cache and stamps all the dependent supply chains with it.
+ * A cached activation is valid only if it is not older than the stamp of its supply chain.
+ */
+public class ActivationCache extends ScheduleListener {
+    private int startDateId; // the start date id of the schedule, inclusive
+    private int endDateId; // the end date id of the schedule, exclusive
+    private int numPlants;
+
+    private long version; // the version increased by each change
+    private long[] stamps; // the version of the last change of each supply chain (item index * plants + plant index)
+    private int[][] inventoryDependents; // the supply chains depending on each (item, plant) inventory
+    private int[][] capacityDependents; // the supply chains depending on each machine set capacity
+    private Entry[][] entries; // the cached activation of each supply chain in each date
+
+    /**
+     * Construct the cache and the dependencies between the supply chains of the items in a schedule.
+     * @param env the environment with the supply chains initialised.
+     * @param items the items in the schedule.
+     * @param startDateId the start date id of the schedule.
+     * @param endDateId the end date id of the schedule.
+     */
+    public ActivationCache(Environment env, Collection<Item> items, int startDateId, int endDateId) {
+        this.startDateId = startDateId;
+        this.endDateId = endDateId;
+        this.numPlants = env.getPlantMap().size();
+
+        int numChains = env.getItemMap().size()*numPlants;
+        stamps = new long[numChains];
+        entries = new Entry[numChains][];
+
+        // the dependent lists are only created for the reached supply chains and machine sets
+        List<List<Integer>> inventoryLists = new ArrayList<>(Collections.nCopies(numChains, null));
+        List<List<Integer>> capacityLists = new ArrayList<>(Collections.nCopies(env.getMachineSetMap().size(), null));
+
+        // each supply chain depends on all the supply chains it can reach
+        for (Item item : items) {
+            for (SupplyChain chain : env.getSupplyChains(item)) {
+                int id = id(chain);
+
+                Set<SupplyChain> reached = new HashSet<>();
+                Set<MachineSet> machineSets = new HashSet<>();
+                reach(chain, reached, machineSets);
+
+                for (SupplyChain reachedChain : reached)
+                    addDependent(inventoryLists, id(reachedChain), id);
+
+                for (MachineSet machineSet : machineSets)
+                    addDependent(capacityLists, machineSet.getIndex(), id);
+            }
+        }
+
+        inventoryDependents = toArrays(inventoryLists);
+        capacityDependents = toArrays(capacityLists);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Restore the activation of a supply chain in a date, if it is cached and still valid.
+     * Only the fields of the supply chain itself are restored, not its streams.
+     * @param chain the supply chain.
+     * @param dateId the date id.
+     * @return true if the activation is restored, false otherwise.
+     */
+    public boolean restore(SupplyChain chain, int dateId) {
+        int id = id(chain);
+
+        if (entries[id] == null)
+            return false;
+
+        Entry entry = entries[id][dateId-startDateId];
+
+        if (entry == null || entry.version < stamps[id])
+            return false;
+
+        chain.setDateId(entry.dateId);
+        chain.setActive(entry.active);
+        chain.setProdActive(entry.prodActive);
+        chain.setInventory(entry.inventory);
+        chain.setMaxQuantity(entry.maxQuantity);
+        chain.setMaxProdQuantity(entry.maxProdQuantity);
+        chain.setLeadTime(entry.leadTime);
+        chain.setLength(entry.length);
+        chain.setHoldingCost(entry.holdingCost);
+        chain.setProductionCost(entry.productionCost);
+        chain.setTransitCost(entry.transitCost);
+        chain.setTotalCost(entry.totalCost);
+
+        return true;
+    }
+
+    /**
+     * Store the current activation of a supply chain in a date.
+     * @param chain the supply chain just activated.
+     * @param dateId the date id.
+     */
+    public void store(SupplyChain chain, int dateId) {
+        int id = id(chain);
+
+        if (entries[id] == null)
+            entries[id] = new Entry[endDateId-startDateId];
+
+        Entry entry = entries[id][dateId-startDateId];
+
+        if (entry == null) {
+            entry = new Entry();
+            entries[id][dateId-startDateId] = entry;
+        }
+
+        entry.version = version;
+        entry.dateId = chain.getDateId();
+        entry.active = chain.isActive();
+        entry.prodActive = chain.isProdActive();
+        entry.inventory = chain.getInventory();
+        entry.maxQuantity = chain.getMaxQuantity();
+        entry.maxProdQuantity = chain.getMaxProdQuantity();
+        entry.leadTime = chain.getLeadTime();
+        entry.length = chain.getLength();
+        entry.holdingCost = chain.getHoldingCost();
+        entry.productionCost = chain.getProductionCost();
+        entry.transitCost = chain.getTransitCost();
+        entry.totalCost = chain.getTotalCost();
+    }
+
+    @Override
+    public void inventoryChanged(long epoch, Item item, Plant plant, int fromDateId, double quantity) {
+        version ++;
+
+        for (int id : inventoryDependents[item.getIndex()*numPlants+plant.getIndex()])
+            stamps[id] = version;
+    }
+
+    @Override
+    public void capacityChanged(long epoch, MachineSet machineSet, int dateId, double quantity) {
+        version ++;
+
+        for (int id : capacityDependents[machineSet.getIndex()])
+            stamps[id] = version;
+    }
+
+    /**
+     * Invalidate all the cached activations, e.g. after the environment is changed outside the schedule.
+     */
+    public void invalidateAll() {
+        version ++;
+        Arrays.fill(stamps, version);
+    }
+
+    private int id(SupplyChain chain) {
+        return chain.getItem().getIndex()*numPlants+chain.getPlant().getIndex();
+    }
+
+    /**
+     * Find all the supply chains and machine sets reachable from a supply chain.
+     * @param chain the supply chain.
+     * @param reached the reached supply chains.
+     * @param machineSets the reached machine sets.
+     */
+    private void reach(SupplyChain chain, Set<SupplyChain> reached, Set<MachineSet> machineSets) {
+        Deque<SupplyChain> stack = new ArrayDeque<>();
+        stack.push(chain);
+        reached.add(chain);
+
+        while (!stack.isEmpty()) {
+            SupplyChain current = stack.pop();
+
+            if (current.getProduction() != null) {
+                machineSets.addAll(Arrays.asList(current.getProduction().getMachineSets()));
+
+                for (SupplyChain next : current.getBomStreamMap().values()) {
+                    if (reached.add(next))
+                        stack.push(next);
+                }
+            }
+
+            for (SupplyChain next : current.getTransitStreamMap().values()) {
+                if (reached.add(next))
+                    stack.push(next);
+            }
+        }
+    }
+
+    private void addDependent(List<List<Integer>> lists, int key, int id) {
+        List<Integer> list = lists.get(key);
+
+        if (list == null) {
+            list = new ArrayList<>();
+            lists.set(key, list);
+        }
+
+        list.add(id);
+    }
+
+    private int[][] toArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        int[] empty = new int[0];
+
+        for (int i = 0; i < lists.size(); i++) {
+            List<Integer> list = lists.get(i);
+
+            if (list == null) {
+                arrays[i] = empty;
+                continue;
+            }
+
+            arrays[i] = new int[list.size()];
+
+            for (int j = 0; j < list.size(); j++)
+                arrays[i][j] = list.get(j);
+        }
+
+        return arrays;
+    }
+
+    /**
+     * The cached activation of a supply chain in a date.
+     */
+    private static class Entry {
+        long version;
+        int dateId;
+        boolean active;
+        boolean prodActive;
+        double inventory;
+        double maxQuantity;
+        long maxProdQuantity;
+        int leadTime;
+        int length;
+        double holdingCost;
+        double productionCost;
+        double transitCost;
+        double totalCost;
+    }
+}
@@ -0,0 +1,142 @@
+package scheduling.core;
+
+import scheduling.core.input.Capacity;
+import scheduling.core.input.MachineSet;
+
+/**
+ * The capacity ledger of a schedule keeps the remaining capacity of each machine set in each day.
+ * The capacity in the environment is only read once to initialise the ledger, and never changed,
+ * so that the same environment can be scheduled by many schedules at the same time.
+ *
+ * The capacities are stored in primitive arrays indexed by the machine set index and the day
+ * (dateId - startDateId). A machine set has no capacity in the days out of the ledger.
+ */
+public class CapacityLedger {
+    private int startDateId; // the start date id of the ledger, inclusive
+    private int endDateId; // the end date id of the ledger, exclusive
+    private double[][] capacities; // the initial capacity of each machine set in each day
+    private double[][] remaining; // the remaining capacity of each machine set in each day
+
+    /**
+     * Construct a ledger with the capacities of the machine sets in an environment.
+     * @param env the environment.
+     * @param startDateId the start date id, inclusive.
+     * @param endDateId the end date id, exclusive.
+     */
+    public CapacityLedger(Environment env, int startDateId, int endDateId) {
+        this.startDateId = startDateId;
+        this.endDateId = endDateId;
+
+        int numMachineSets = env.getMachineSetMap().size();
+        int numDays = Math.max(endDateId-startDateId, 0);
+        capacities = new double[numMachineSets][numDays];
+        remaining = new double[numMachineSets][numDays];
+
+        for (MachineSet machineSet : env.getMachineSetMap().values()) {
+            double[] machineCapacities = capacities[machineSet.getIndex()];
+
+            for (int d = 0; d < numDays; d++) {
+                Capacity capacity = machineSet.getCapacityMap().get(startDateId+d);
+
+                if (capacity != null)
+                    machineCapacities[d] = capacity.getRemaining();
+            }
+
+            System.arraycopy(machineCapacities, 0, remaining[machineSet.getIndex()], 0, numDays);
+        }
+    }
+
+    public int getStartDateId() {
+        return startDateId;
+    }
+
+    public int getEndDateId() {
+        return endDateId;
+    }
+
+    /**
+     * Get the remaining capacity of a machine set in a date id.
+     * @param machineSet the machine set.
+     * @param dateId the date id.
+     * @return the remaining capacity, 0 if the date is out of the ledger.
+     */
+    public double getRemaining(MachineSet machineSet, int dateId) {
+        if (dateId < startDateId || dateId >= endDateId)
+            return 0;
+
+        return remaining[machineSet.getIndex()][dateId-startDateId];
+    }
+
+    /**
+     * Get the capacity of a machine set in a date id, including the capacity already used.
+     * @param machineSet the machine set.
+     * @param dateId the date id.
+     * @return the capacity, 0 if the date is out of the ledger.
+     */
+    public double getCapacity(MachineSet machineSet, int dateId) {
+        if (dateId < startDateId || dateId >= endDateId)
+            return 0;
+
+        return capacities[machineSet.getIndex()][dateId-startDateId];
+    }
+
+    public void setRemaining(MachineSet machineSet, int dateId, double value) {
+        remaining[machineSet.getIndex()][dateId-startDateId] = value;
+    }
+
+    /**
+     * Set the capacity of a machine set in a date id, e.g. when the capacity is updated during the simulation.
+     * The capacity already used is kept, so the remaining capacity changes by the same amount.
+     * @param machineSet the machine set.
+     * @param dateId the date id, ignored if it is out of the ledger.
+     * @param capacity the new capacity.
+     */
+    public void setCapacity(MachineSet machineSet, int dateId, double capacity) {
+        if (dateId < startDateId || dateId >= endDateId)
+            return;
+
+        int d = dateId-startDateId;
+        double used = capacities[machineSet.getIndex()][d]-remaining[machineSet.getIndex()][d];
+        capacities[machineSet.getIndex()][d] = capacity;
+        remaining[machineSet.getIndex()][d] = capacity-used;
+    }
+
+    /**
+     * Add a quantity to the remaining capacity of a machine set in a date id.
+     * @param machineSet the machine set.
+     * @param dateId the date id.
+     * @param quantity the added capacity, negative if the capacity is occupied.
+     */
+    public void addRemaining(MachineSet machineSet, int dateId, double quantity) {
+        remaining[machineSet.getIndex()][dateId-startDateId] += quantity;
+    }
+
+    /**
+     * Get the used capacity of a machine set in a date id, i.e. the initial minus the remaining capacity.
+     * @param machineSet the machine set.
+     * @param dateId the date id.
+     * @return the used capacity.
+     */
+    public double getUsed(MachineSet machineSet, int dateId) {
+        if (dateId < startDateId || dateId >= endDateId)
+            return 0;
+
+        int d = dateId-startDateId;
+        return capacities[machineSet.getIndex()][d]-remaining[machineSet.getIndex()][d];
+    }
+
+    /**
+     * Merge the capacity used in another ledger of the same environment and period into this ledger.
+     * @param other the other ledger.
+     */
+    public void merge(CapacityLedger other) {
+        for (int m = 0; m < remaining.length; m++) {
+            for (int d = 0; d < remaining[m].length; d++) {
+                double used = other.capacities[m][d]-other.remaining[m][d];
+
+                if (used != 0)
+                    remaining[m][d] -= used;
+            }
+        }
+    }
+}
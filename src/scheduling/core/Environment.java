@@ -1,16 +1,16 @@
 package scheduling.core;
 
 import io.ExcelProcessor;
+import io.StreamingWorkbookReader;
+import io.WorkbookReader;
 import org.apache.commons.math3.util.Pair;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import scheduling.core.input.*;
 import util.DisjointSets;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * An environment stores the global information in the scheduling process.
@@ -20,569 +20,679 @@ import java.util.*;
  * - all the plants and their basic properties during the process
  * - all the machines sets and their basic properties during the process
  * - all the transits of items between plants and the cost and lead time
+ *
+ * An environment is built once by a {@link Builder}. Its fields are final and its collections are unmodifiable,
+ * but the entities in them (items, plants, machine sets, supply chains) keep their public setters,
+ * used by the builder and the loaders, so they are not immutable. They must not be changed once
+ * the environment is built: the planning and the simulation only read them, which is what allows
+ * a built environment to be shared by many threads (e.g. simulations or evaluations) without copying.
+ * The supply chains of the environment are not activated themselves. Each schedule activates
+ * its own supply chains, see {@link Schedule#getSupplyChains(Item)}.
  */
 
 public class Environment {
-    private Map<String, ProductCategory> productCategoryMap;
-    private Map<String, CapacityType> capacityTypeMap;
-    private Map<String, Item> itemMap;
-    private Map<String, Plant> plantMap;
-    private Map<String, MachineSet> machineSetMap;
-    private List<Transit> transits;
-    private Map<Item, Map<Plant, SupplyChain>> supplyChainMap; // the supply chain of each item at each plant
+    private final Map<String, ProductCategory> productCategoryMap;
+    private final Map<String, CapacityType> capacityTypeMap;
+    private final Map<String, Item> itemMap;
+    private final Map<String, Plant> plantMap;
+    private final Map<String, MachineSet> machineSetMap;
+    private final List<Transit> transits;
+    private final Map<Item, Map<Plant, SupplyChain>> supplyChainMap; // the supply chain of each item at each plant
+    private final SupplyChain[][] supplyChains; // the supply chain of each item (index) at each plant (index)
+    private final List<List<SupplyChain>> itemSupplyChains; // the supply chains of each item (index) at all its plants
+    private final SupplyNetwork supplyNetwork; // the supply chains compiled into flat arrays
+    private final List<List<Item>> itemGroups; // the groups of dependent items, sharing no inventory or capacity with others
 
 //    private Map<Pair<Plant, Plant>, Integer> transitCostMap;
 //    private Map<Pair<Plant, Plant>, Integer> transitLeadTimeMap;
 
-    private int startDate; // the start date of the scheduling
-    private int endDate; // the end date of the scheduling
-    private int period; // the period (number of days) of the scheduling
-    private Map<Integer, Integer> remainingWeekDaysMap;
-
-    public Environment(Map<String, ProductCategory> productCategoryMap, Map<String, CapacityType> capacityTypeMap, Map<String, Item> itemMap, Map<String, Plant> plantMap, Map<String, MachineSet> machineSetMap, List<Transit> transits) {
-        this.productCategoryMap = productCategoryMap;
-        this.capacityTypeMap = capacityTypeMap;
-        this.itemMap = itemMap;
-        this.plantMap = plantMap;
-        this.machineSetMap = machineSetMap;
-        this.transits = transits;
+    private final int startDate; // the start date of the scheduling
+    private final int endDate; // the end date of the scheduling
+    private final int period; // the period (number of days) of the scheduling
+    private final Map<Integer, Integer> remainingWeekDaysMap;
+
+    private Environment(Builder builder) {
+        this.productCategoryMap = Collections.unmodifiableMap(new LinkedHashMap<>(builder.productCategoryMap));
+        this.capacityTypeMap = Collections.unmodifiableMap(new LinkedHashMap<>(builder.capacityTypeMap));
+        this.itemMap = Collections.unmodifiableMap(new LinkedHashMap<>(builder.itemMap));
+        this.plantMap = Collections.unmodifiableMap(new LinkedHashMap<>(builder.plantMap));
+        this.machineSetMap = Collections.unmodifiableMap(new LinkedHashMap<>(builder.machineSetMap));
+        this.transits = Collections.unmodifiableList(new ArrayList<>(builder.transits));
+        this.startDate = builder.startDate;
+        this.endDate = builder.endDate;
+        this.period = builder.period;
+        this.remainingWeekDaysMap = Collections.unmodifiableMap(new HashMap<>(builder.remainingWeekDaysMap));
+
+        indexEntities();
+
+        // the items are grouped while their own information is derived, the two steps use different fields
+        ForkJoinTask<List<List<Item>>> grouping = builder.pool.submit(this::calcDependentItems);
+        calcDerivedInfo(builder.pool);
+        this.itemGroups = grouping.join();
+
+        // initialise the supply chain map of the environment
+        this.supplyChainMap = new HashMap<>();
+        this.supplyChains = new SupplyChain[itemMap.size()][plantMap.size()];
+        this.itemSupplyChains = new ArrayList<>(Collections.nCopies(itemMap.size(), null));
+        initSupplyChainMap();
+
+        // compile the linked supply chains into the supply network
+        this.supplyNetwork = new SupplyNetwork(itemSupplyChains);
     }
 
     public Map<String, ProductCategory> getProductCategoryMap() {
         return productCategoryMap;
     }
 
-    public void setProductCategoryMap(Map<String, ProductCategory> productCategoryMap) {
-        this.productCategoryMap = productCategoryMap;
-    }
-
     public Map<String, CapacityType> getCapacityTypeMap() {
         return capacityTypeMap;
     }
 
-    public void setCapacityTypeMap(Map<String, CapacityType> capacityTypeMap) {
-        this.capacityTypeMap = capacityTypeMap;
-    }
-
     public Map<String, Item> getItemMap() {
         return itemMap;
     }
 
-    public void setItemMap(Map<String, Item> itemMap) {
-        this.itemMap = itemMap;
-    }
-
     public Map<String, Plant> getPlantMap() {
         return plantMap;
     }
 
-    public void setPlantMap(Map<String, Plant> plantMap) {
-        this.plantMap = plantMap;
-    }
-
     public Map<String, MachineSet> getMachineSetMap() {
         return machineSetMap;
     }
 
-    public void setMachineSetMap(Map<String, MachineSet> machineSetMap) {
-        this.machineSetMap = machineSetMap;
-    }
-
     public List<Transit> getTransits() {
         return transits;
     }
 
-    public void setTransits(List<Transit> transits) {
-        this.transits = transits;
-    }
-
     public Map<Item, Map<Plant, SupplyChain>> getSupplyChainMap() {
         return supplyChainMap;
     }
 
-    public void setSupplyChainMap(Map<Item, Map<Plant, SupplyChain>> supplyChainMap) {
-        this.supplyChainMap = supplyChainMap;
+    public SupplyNetwork getSupplyNetwork() {
+        return supplyNetwork;
     }
 
-    public int getStartDate() {
-        return startDate;
+    public List<List<Item>> getItemGroups() {
+        return itemGroups;
     }
 
-    public void setStartDate(int startDate) {
-        this.startDate = startDate;
+    /**
+     * Get the supply chain of an item at a plant.
+     * @param item the item.
+     * @param plant the plant.
+     * @return the supply chain, or null if the plant cannot hold the item.
+     */
+    public SupplyChain getSupplyChain(Item item, Plant plant) {
+        return supplyChains[item.getIndex()][plant.getIndex()];
     }
 
-    public int getEndDate() {
-        return endDate;
+    /**
+     * Get the supply chains of an item at all the plants that can hold it.
+     * @param item the item.
+     * @return the supply chains.
+     */
+    public List<SupplyChain> getSupplyChains(Item item) {
+        return itemSupplyChains.get(item.getIndex());
     }
 
-    public void setEndDate(int endDate) {
-        this.endDate = endDate;
+    public int getStartDate() {
+        return startDate;
     }
 
-    public int getPeriod() {
-        return period;
+    public int getEndDate() {
+        return endDate;
     }
 
-    public void setPeriod(int period) {
-        this.period = period;
+    public int getPeriod() {
+        return period;
     }
 
     public Map<Integer, Integer> getRemainingWeekDaysMap() {
         return remainingWeekDaysMap;
     }
 
-    public void setRemainingWeekDaysMap(Map<Integer, Integer> remainingWeekDaysMap) {
-        this.remainingWeekDaysMap = remainingWeekDaysMap;
-    }
-
     /**
-     * Read the environment from a .xlsx file.
-     * @param file the .xlsx file.
-     * @return the environment.
+     * The builder of an environment, collecting the input data read or generated.
+     * The items, plants and machine sets are linked to each other before the environment is built,
+     * and should not be changed once they are passed to the environment.
      */
-    public static Environment readFromFile(File file) {
-        Environment environment = null;
-
-        try {
-            XSSFWorkbook wb = new XSSFWorkbook(file);
-            XSSFSheet sheet;
-            XSSFRow row;
+    public static class Builder {
+        private Map<String, ProductCategory> productCategoryMap = new HashMap<>();
+        private Map<String, CapacityType> capacityTypeMap = new HashMap<>();
+        private Map<String, Item> itemMap = new HashMap<>();
+        private Map<String, Plant> plantMap = new HashMap<>();
+        private Map<String, MachineSet> machineSetMap = new HashMap<>();
+        private List<Transit> transits = new ArrayList<>();
+        private int startDate;
+        private int endDate;
+        private int period;
+        private Map<Integer, Integer> remainingWeekDaysMap = new HashMap<>();
+        private ForkJoinPool pool = ForkJoinPool.commonPool(); // the pool to derive the information in
+
+        public Builder setProductCategoryMap(Map<String, ProductCategory> productCategoryMap) {
+            this.productCategoryMap = productCategoryMap;
+            return this;
+        }
 
-            DataFormatter df = new DataFormatter();
+        public Builder setCapacityTypeMap(Map<String, CapacityType> capacityTypeMap) {
+            this.capacityTypeMap = capacityTypeMap;
+            return this;
+        }
 
-            // Read the time periods
-            Map<Integer, TimePeriod> timePeriodMap = new HashMap<>();
-            sheet = wb.getSheetAt(ExcelProcessor.TIME_PERIOD_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+        public Builder setItemMap(Map<String, Item> itemMap) {
+            this.itemMap = itemMap;
+            return this;
+        }
 
-                int date = Integer.valueOf(df.formatCellValue(row.getCell(0)));
-                int week = Integer.valueOf(df.formatCellValue(row.getCell(2)));
-                int length = Integer.valueOf(df.formatCellValue(row.getCell(3)));
+        public Builder setPlantMap(Map<String, Plant> plantMap) {
+            this.plantMap = plantMap;
+            return this;
+        }
 
-                TimePeriod timePeriod = new TimePeriod(date, week, length);
-                timePeriodMap.put(date, timePeriod);
-            }
+        public Builder setMachineSetMap(Map<String, MachineSet> machineSetMap) {
+            this.machineSetMap = machineSetMap;
+            return this;
+        }
 
-            // get the start and end dates
-            int startDate = Integer.MAX_VALUE;
-            int endDate = Integer.MIN_VALUE;
-            for (int date : timePeriodMap.keySet()) {
-                if (date < startDate)
-                    startDate = date;
+        public Builder setTransits(List<Transit> transits) {
+            this.transits = transits;
+            return this;
+        }
 
-                if (date > endDate)
-                    endDate = date;
-            }
-            int period = TimePeriod.gap(startDate, endDate)+1;
+        public Builder setStartDate(int startDate) {
+            this.startDate = startDate;
+            return this;
+        }
 
-            Map<Integer, Integer> remainingWeekDaysMap = new HashMap<>();
-            int weekStarts = timePeriodMap.get(startDate).getWeek();
-            int remainingWeekDays = 6-TimePeriod.gap(weekStarts, startDate);
-            for (int d = 0; d < period; d++) {
-                remainingWeekDaysMap.put(d, remainingWeekDays);
+        public Builder setEndDate(int endDate) {
+            this.endDate = endDate;
+            return this;
+        }
 
-                remainingWeekDays --;
-                if (remainingWeekDays < 0)
-                    remainingWeekDays = 6;
-            }
+        public Builder setPeriod(int period) {
+            this.period = period;
+            return this;
+        }
 
-            // Read the product catogories
-            Map<String, ProductCategory> productCategoryMap = new HashMap<>();
+        public Builder setRemainingWeekDaysMap(Map<Integer, Integer> remainingWeekDaysMap) {
+            this.remainingWeekDaysMap = remainingWeekDaysMap;
+            return this;
+        }
 
-            sheet = wb.getSheetAt(ExcelProcessor.PRODUCT_CATEGORY_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+        public Builder setPool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
 
-                String name = df.formatCellValue(row.getCell(0));
-                double fr = Double.valueOf(df.formatCellValue(row.getCell(1)));
+        /**
+         * Build the environment, i.e. index the entities and calculate the derived information.
+         * @return the environment.
+         */
+        public Environment build() {
+            return new Environment(this);
+        }
+    }
 
-                ProductCategory pc = new ProductCategory(name, fr);
-                productCategoryMap.put(name, pc);
-            }
+    /**
+     * Assign the dense ordinals (0, 1, ...) to the items, plants, machine sets, transits and capacity types,
+     * and build the lookup arrays of the items indexed by these ordinals.
+     * The ordinals are used to index the dense per-entity data, such as the inventory timelines,
+     * instead of hashing the entities.
+     */
+    private void indexEntities() {
+        int index = 0;
+        for (Item item : itemMap.values()) {
+            item.setIndex(index);
+            index ++;
+        }
 
-            // Read the capacity types
-            Map<String, CapacityType> capacityTypeMap = new HashMap<>();
+        index = 0;
+        for (Plant plant : plantMap.values()) {
+            plant.setIndex(index);
+            index ++;
+        }
 
-            sheet = wb.getSheetAt(ExcelProcessor.CAPACITY_TYPE_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+        index = 0;
+        for (MachineSet machineSet : machineSetMap.values()) {
+            machineSet.setIndex(index);
+            index ++;
+        }
 
-                String name = df.formatCellValue(row.getCell(0));
-                double rate = Double.valueOf(df.formatCellValue(row.getCell(1)));
+        index = 0;
+        for (Transit transit : transits) {
+            transit.setIndex(index);
+            index ++;
+        }
 
-                CapacityType ct = new CapacityType(name, rate);
-                capacityTypeMap.put(name, ct);
-            }
+        index = 0;
+        for (CapacityType capacityType : capacityTypeMap.values()) {
+            capacityType.setIndex(index);
+            index ++;
+        }
 
-            // Read the plants
-            Map<String, Plant> plantMap = new HashMap<>();
+        for (Item item : itemMap.values()) {
+            item.buildIndex(plantMap.size(), capacityTypeMap.size());
+        }
+    }
 
-            sheet = wb.getSheetAt(ExcelProcessor.PLANT_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+    /**
+     * Read the environment from a .xlsx file.
+     * The file is streamed sheet by sheet, without loading the whole workbook.
+     * @param file the .xlsx file.
+     * @return the environment.
+     */
+    public static Environment readFromFile(File file) {
+        Environment environment = null;
 
-                String name = df.formatCellValue(row.getCell(0));
-                int lod = Integer.valueOf(df.formatCellValue(row.getCell(1))); // locked out days
-                String type = df.formatCellValue(row.getCell(1));
+        try {
+            WorkbookReader reader = new StreamingWorkbookReader(file);
+            environment = readFromWorkbook(reader);
 
-                Plant plant = new Plant(name, lod, type);
-                plantMap.put(name, plant);
-            }
+            // Closing the workbook
+            reader.close();
+        } catch(Exception ioe) {
+            ioe.printStackTrace();
+        }
 
-            // Read the machine sets
-            Map<String, MachineSet> machineSetMap = new HashMap<>();
+        return environment;
+    }
 
-            sheet = wb.getSheetAt(ExcelProcessor.MACHINE_SET_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+    /**
+     * Read the environment from the sheets of a workbook.
+     * @param reader the reader of the workbook.
+     * @return the environment.
+     * @throws Exception if the workbook cannot be read.
+     */
+    public static Environment readFromWorkbook(WorkbookReader reader) throws Exception {
+        // Read the time periods
+        Map<Integer, TimePeriod> timePeriodMap = new HashMap<>();
+        reader.readSheet(ExcelProcessor.TIME_PERIOD_IDX, row -> {
+            int date = row.getInt(0);
+            int week = row.getInt(2);
+            int length = row.getInt(3);
+
+            TimePeriod timePeriod = new TimePeriod(date, week, length);
+            timePeriodMap.put(date, timePeriod);
+        });
+
+        // get the start and end dates
+        int minDate = Integer.MAX_VALUE;
+        int maxDate = Integer.MIN_VALUE;
+        for (int date : timePeriodMap.keySet()) {
+            if (date < minDate)
+                minDate = date;
+
+            if (date > maxDate)
+                maxDate = date;
+        }
+        int startDate = minDate;
+        int endDate = maxDate;
+        int period = TimePeriod.gap(startDate, endDate)+1;
+
+        Map<Integer, Integer> remainingWeekDaysMap = new HashMap<>();
+        int weekStarts = timePeriodMap.get(startDate).getWeek();
+        int remainingWeekDays = 6-TimePeriod.gap(weekStarts, startDate);
+        for (int d = 0; d < period; d++) {
+            remainingWeekDaysMap.put(d, remainingWeekDays);
+
+            remainingWeekDays --;
+            if (remainingWeekDays < 0)
+                remainingWeekDays = 6;
+        }
 
-                String name = df.formatCellValue(row.getCell(0));
-                Plant plant = plantMap.get(df.formatCellValue(row.getCell(1)));
-                CapacityType ct = capacityTypeMap.get(df.formatCellValue(row.getCell(2)));
-                double sf = ExcelProcessor.readDoubleCell(row.getCell(3)); // smoothing factor
+        // Read the product catogories
+        Map<String, ProductCategory> productCategoryMap = new HashMap<>();
 
-                MachineSet machineSet = new MachineSet(name, plant, ct, sf);
+        reader.readSheet(ExcelProcessor.PRODUCT_CATEGORY_IDX, row -> {
+            String name = row.getString(0);
+            double fr = row.getDouble(1);
 
-                machineSetMap.put(name, machineSet);
-                plant.putMachineSet(machineSet);
-            }
+            ProductCategory pc = new ProductCategory(name, fr);
+            productCategoryMap.put(name, pc);
+        });
 
-            // Read the items
-            Map<String, Item> itemMap = new HashMap<>();
+        // Read the capacity types
+        Map<String, CapacityType> capacityTypeMap = new HashMap<>();
 
-            sheet = wb.getSheetAt(ExcelProcessor.ITEM_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+        reader.readSheet(ExcelProcessor.CAPACITY_TYPE_IDX, row -> {
+            String name = row.getString(0);
+            double rate = row.getDouble(1);
 
-                String id = df.formatCellValue(row.getCell(0));
-                ItemType type = ItemType.get(df.formatCellValue(row.getCell(1)));
-                double mcost = Double.valueOf(df.formatCellValue(row.getCell(2))); // material cost
-                ProductCategory pc = productCategoryMap.get(df.formatCellValue(row.getCell(5))); // product category
-                double hcost = Double.valueOf(df.formatCellValue(row.getCell(6)));
+            CapacityType ct = new CapacityType(name, rate);
+            capacityTypeMap.put(name, ct);
+        });
 
-                Item item = new Item(id, type, mcost, pc, hcost);
+        // Read the plants
+        Map<String, Plant> plantMap = new HashMap<>();
 
-                itemMap.put(item.getId(), item);
-            }
+        reader.readSheet(ExcelProcessor.PLANT_IDX, row -> {
+            String name = row.getString(0);
+            int lod = row.getInt(1); // locked out days
+            String type = row.getString(1);
 
-            // Read the demands and merge into items
-            sheet = wb.getSheetAt(ExcelProcessor.DEMAND_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+            Plant plant = new Plant(name, lod, type);
+            plantMap.put(name, plant);
+        });
 
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                int date = Integer.valueOf(df.formatCellValue(row.getCell(1)));
-                double odem = Double.valueOf(df.formatCellValue(row.getCell(2))); // order demand
-                double fdem = Double.valueOf(df.formatCellValue(row.getCell(3))); // forecast demand
+        // Read the machine sets
+        Map<String, MachineSet> machineSetMap = new HashMap<>();
 
-                TimePeriod timePeriod = timePeriodMap.get(date);
-                int dueDate = timePeriod.dueDate();
-                int dueDateIndex = TimePeriod.gap(startDate, dueDate);
+        reader.readSheet(ExcelProcessor.MACHINE_SET_IDX, row -> {
+            String name = row.getString(0);
+            Plant plant = plantMap.get(row.getString(1));
+            CapacityType ct = capacityTypeMap.get(row.getString(2));
+            double sf = row.getDouble(3); // smoothing factor
 
-                if (odem > 0) {
-                    item.getOrderDemandMap().put(dueDateIndex, odem);
-                }
+            MachineSet machineSet = new MachineSet(name, plant, ct, sf);
 
-                if (fdem > 0) {
-                    item.getForecastDemandMap().put(dueDateIndex, fdem);
-                }
-            }
+            machineSetMap.put(name, machineSet);
+            plant.putMachineSet(machineSet);
+        });
 
-            // Read the transit information and merge into plants and item
-//            Map<Pair<Plant, Plant>, Integer> transitCostMap = new HashMap<>();
-//            Map<Pair<Plant, Plant>, Integer> transitLeadTimeMap = new HashMap<>();
+        // Read the items
+        Map<String, Item> itemMap = new HashMap<>();
 
-            List<Transit> transits = new ArrayList<>();
-            sheet = wb.getSheetAt(ExcelProcessor.TRANSIT_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+        reader.readSheet(ExcelProcessor.ITEM_IDX, row -> {
+            String id = row.getString(0);
+            ItemType type = ItemType.get(row.getString(1));
+            double mcost = row.getDouble(2); // material cost
+            ProductCategory pc = productCategoryMap.get(row.getString(5)); // product category
+            double hcost = row.getDouble(6);
 
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                Plant fromPlant = plantMap.get(df.formatCellValue(row.getCell(1)));
-                Plant toPlant = plantMap.get(df.formatCellValue(row.getCell(2)));
-                int cost = Integer.valueOf(df.formatCellValue(row.getCell(3)));
-                int leadTime = Integer.valueOf(df.formatCellValue(row.getCell(4)));
+            Item item = new Item(id, type, mcost, pc, hcost);
 
-                Transit transit = new Transit(item, fromPlant, toPlant, cost, leadTime);
-                transits.add(transit);
+            itemMap.put(item.getId(), item);
+        });
 
-//                // transit maps
-//                transitCostMap.put(new Pair(fromPlant, toPlant), cost);
-//                transitLeadTimeMap.put(new Pair(fromPlant, toPlant), leadTime);
+        // Read the demands and merge into items
+        reader.readSheet(ExcelProcessor.DEMAND_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            int date = row.getInt(1);
+            double odem = row.getDouble(2); // order demand
+            double fdem = row.getDouble(3); // forecast demand
 
-                // plant transit maps
-                fromPlant.putTransitOutMap(toPlant, item);
-                toPlant.putTransitInMap(fromPlant, item);
+            TimePeriod timePeriod = timePeriodMap.get(date);
+            int dueDate = timePeriod.dueDate();
+            int dueDateIndex = TimePeriod.gap(startDate, dueDate);
 
-                // item transits
-                item.addTransit(transit);
+            if (odem > 0) {
+                item.getOrderDemandMap().put(dueDateIndex, odem);
             }
 
-            // Read the capacity and merge into machine set
-            sheet = wb.getSheetAt(ExcelProcessor.CAPACITY_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
-
-                MachineSet set = machineSetMap.get(df.formatCellValue(row.getCell(0)));
-                int date = Integer.valueOf(df.formatCellValue(row.getCell(1)));
-                double capacity = Double.valueOf(df.formatCellValue(row.getCell(4)));
-
-                int dateIndex = TimePeriod.gap(startDate, date);
-
-//                System.out.println(set.toString() + ": [" + date + ", " + dateIndex + "]");
-
-                set.getCapacityMap().put(dateIndex, new Capacity(capacity));
+            if (fdem > 0) {
+                item.getForecastDemandMap().put(dueDateIndex, fdem);
             }
+        });
 
-            // Read the initial inventories and merge into plants
-            sheet = wb.getSheetAt(ExcelProcessor.INIT_INVENTORY_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
-
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                double quantity = Double.valueOf(df.formatCellValue(row.getCell(1)));
-                Plant plant = plantMap.get(df.formatCellValue(row.getCell(2)));
+        // Read the transit information and merge into plants and item
+//            Map<Pair<Plant, Plant>, Integer> transitCostMap = new HashMap<>();
+//            Map<Pair<Plant, Plant>, Integer> transitLeadTimeMap = new HashMap<>();
 
-                item.getInitInventoryMap().put(plant, quantity);
-            }
+        List<Transit> transits = new ArrayList<>();
+        reader.readSheet(ExcelProcessor.TRANSIT_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            Plant fromPlant = plantMap.get(row.getString(1));
+            Plant toPlant = plantMap.get(row.getString(2));
+            int cost = row.getInt(3);
+            int leadTime = row.getInt(4);
 
-            // Read the production and merge into items
-            sheet = wb.getSheetAt(ExcelProcessor.PRODUCTION_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
-
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                Plant plant = plantMap.get(df.formatCellValue(row.getCell(1)));
-                double cost = Double.valueOf(df.formatCellValue(row.getCell(2)));
-                int leadTime = (int)Math.ceil(Integer.valueOf(df.formatCellValue(row.getCell(10))) / 24); // Integer.valueOf(df.formatCellValue(row.getCell(3)));
-                int preWeekProd = Integer.valueOf(df.formatCellValue(row.getCell(4)));
-                int wtdProd = Integer.valueOf(df.formatCellValue(row.getCell(5))); // week-to-date productions
-                int lotSize = 1; //[data error, all zeros] Integer.valueOf(df.formatCellValue(row.getCell(6)));
-                int minProd = Integer.valueOf(df.formatCellValue(row.getCell(7)));
-                int maxProd = Integer.MAX_VALUE; // Integer.valueOf(df.formatCellValue(row.getCell(8)));
-                int fds = Integer.valueOf(df.formatCellValue(row.getCell(9)));
-
-                Production production = new Production(item, plant, cost, leadTime,
-                        preWeekProd, wtdProd, lotSize, minProd, maxProd, fds);
-
-                item.putProduction(production);
-            }
+            Transit transit = new Transit(item, fromPlant, toPlant, cost, leadTime);
+            transits.add(transit);
 
-            // Read the boms and merge into productions
-            sheet = wb.getSheetAt(ExcelProcessor.PLANT_BOM_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+//                // transit maps
+//                transitCostMap.put(new Pair(fromPlant, toPlant), cost);
+//                transitLeadTimeMap.put(new Pair(fromPlant, toPlant), leadTime);
 
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                Item material = itemMap.get(df.formatCellValue(row.getCell(1)));
-                int quantity = Integer.valueOf(df.formatCellValue(row.getCell(2)));
-                SupplyType st = SupplyType.get(df.formatCellValue(row.getCell(3)));
-                Plant plant = plantMap.get(df.formatCellValue(row.getCell(8)));
+            // plant transit maps
+            fromPlant.putTransitOutMap(toPlant, item);
+            toPlant.putTransitInMap(fromPlant, item);
 
-                BomComponent bomComponent = new BomComponent(material, quantity, st);
-                item.getProduction(plant).addBom(bomComponent);
-            }
+            // item transits
+            item.addTransit(transit);
+        });
 
-            // Read the item capacity type and rate
-            sheet = wb.getSheetAt(ExcelProcessor.RATE_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+        // Read the capacity and merge into machine set
+        reader.readSheet(ExcelProcessor.CAPACITY_IDX, row -> {
+            MachineSet set = machineSetMap.get(row.getString(0));
+            int date = row.getInt(1);
+            double capacity = row.getDouble(4);
 
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                CapacityType capacityType = capacityTypeMap.get(df.formatCellValue(row.getCell(1)));
-                double rate = Double.valueOf(df.formatCellValue(row.getCell(2)));
+            int dateIndex = TimePeriod.gap(startDate, date);
 
-                item.getRateMap().put(capacityType, rate);
-            }
+//                System.out.println(set.toString() + ": [" + date + ", " + dateIndex + "]");
 
-            // Fill in the missing rates as the default values
-            for (Item item : itemMap.values()) {
-                for (CapacityType capacityType : capacityTypeMap.values()) {
-                    if (item.getRateMap().containsKey(capacityType))
-                        continue;
+            set.getCapacityMap().put(dateIndex, new Capacity(capacity));
+        });
+
+        // Read the initial inventories and merge into plants
+        reader.readSheet(ExcelProcessor.INIT_INVENTORY_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            double quantity = row.getDouble(1);
+            Plant plant = plantMap.get(row.getString(2));
+
+            item.getInitInventoryMap().put(plant, quantity);
+        });
+
+        // Read the production and merge into items
+        reader.readSheet(ExcelProcessor.PRODUCTION_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            Plant plant = plantMap.get(row.getString(1));
+            double cost = row.getDouble(2);
+            int leadTime = (int)Math.ceil(row.getInt(10) / 24); // row.getInt(3);
+            int preWeekProd = row.getInt(4);
+            int wtdProd = row.getInt(5); // week-to-date productions
+            int lotSize = 1; //[data error, all zeros] row.getInt(6);
+            int minProd = row.getInt(7);
+            int maxProd = Integer.MAX_VALUE; // row.getInt(8);
+            int fds = row.getInt(9);
+
+            Production production = new Production(item, plant, cost, leadTime,
+                    preWeekProd, wtdProd, lotSize, minProd, maxProd, fds);
+
+            item.putProduction(production);
+        });
+
+        // Read the boms and merge into productions
+        reader.readSheet(ExcelProcessor.PLANT_BOM_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            Item material = itemMap.get(row.getString(1));
+            int quantity = row.getInt(2);
+            SupplyType st = SupplyType.get(row.getString(3));
+            Plant plant = plantMap.get(row.getString(8));
+
+            BomComponent bomComponent = new BomComponent(material, quantity, st);
+            item.getProductionMap().get(plant).addBom(bomComponent);
+        });
+
+        // Read the item capacity type and rate
+        reader.readSheet(ExcelProcessor.RATE_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            CapacityType capacityType = capacityTypeMap.get(row.getString(1));
+            double rate = row.getDouble(2);
+
+            item.getRateMap().put(capacityType, rate);
+        });
+
+        // Fill in the missing rates as the default values
+        for (Item item : itemMap.values()) {
+            for (CapacityType capacityType : capacityTypeMap.values()) {
+                if (item.getRateMap().containsKey(capacityType))
+                    continue;
 
-                    item.getRateMap().put(capacityType, capacityType.getDefaultRate());
-                }
+                item.getRateMap().put(capacityType, capacityType.getDefaultRate());
             }
+        }
 
-            // Read the work in process and merge into plants
-            sheet = wb.getSheetAt(ExcelProcessor.WORK_IN_PROCESS_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
-
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                int date = Integer.valueOf(df.formatCellValue(row.getCell(1)));
-                double quantity = Double.valueOf(df.formatCellValue(row.getCell(2)));
-                Plant plant = plantMap.get(df.formatCellValue(row.getCell(3)));
-
-                int dateIndex = TimePeriod.gap(startDate, date);
-                plant.putWorkInProcess(item, dateIndex, quantity);
+        // Read the work in process and merge into plants
+        reader.readSheet(ExcelProcessor.WORK_IN_PROCESS_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            int date = row.getInt(1);
+            double quantity = row.getDouble(2);
+            Plant plant = plantMap.get(row.getString(3));
+
+            int dateIndex = TimePeriod.gap(startDate, date);
+            plant.putWorkInProcess(item, dateIndex, quantity);
+        });
+
+        // Read the item sets and merge into items
+        reader.readSheet(ExcelProcessor.ITEM_SETS_IDX, row -> {
+            MachineSet machineSet = machineSetMap.get(row.getString(0));
+            Item item = itemMap.get(row.getString(1));
+
+            Plant plant = machineSet.getPlant();
+            List<MachineSet> machineSets = item.getMachineMap().get(plant);
+
+            if (machineSets == null)
+                machineSets = new ArrayList<>();
+
+            machineSets.add(machineSet);
+            item.getMachineMap().put(plant, machineSets);
+        });
+
+        // Read the frozen productions and merge into items
+        reader.readSheet(ExcelProcessor.FROZEN_PROD_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            Plant plant = plantMap.get(row.getString(1));
+            if (plant == null) {
+                System.out.println("Unknown plant: " + row.getString(1));
             }
+            int date = row.getInt(2);
+            TimePeriod timePeriod = timePeriodMap.get(date);
+            double quantity = row.getDouble(3);
 
-            // Read the item sets and merge into items
-            sheet = wb.getSheetAt(ExcelProcessor.ITEM_SETS_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
+            Map<Plant, Map<Integer, Double>> frozenProdMap = item.getFrozenProductionMap();
+            Map<Integer, Double> plantFrozenProdMap = frozenProdMap.get(plant);
 
-                MachineSet machineSet = machineSetMap.get(df.formatCellValue(row.getCell(0)));
-                Item item = itemMap.get(df.formatCellValue(row.getCell(1)));
-
-                Plant plant = machineSet.getPlant();
-                List<MachineSet> machineSets = item.getMachineMap().get(plant);
-
-                if (machineSets == null)
-                    machineSets = new ArrayList<>();
-
-                machineSets.add(machineSet);
-                item.getMachineMap().put(plant, machineSets);
+            if (plantFrozenProdMap == null) {
+                plantFrozenProdMap = new HashMap<>();
+                frozenProdMap.put(plant, plantFrozenProdMap);
             }
 
-            // Read the frozen productions and merge into items
-            sheet = wb.getSheetAt(ExcelProcessor.FROZEN_PROD_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
-
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                Plant plant = plantMap.get(df.formatCellValue(row.getCell(1)));
-                if (plant == null) {
-                    System.out.println("Unknown plant: " + df.formatCellValue(row.getCell(1)));
-                }
-                int date = Integer.valueOf(df.formatCellValue(row.getCell(2)));
-                TimePeriod timePeriod = timePeriodMap.get(date);
-                double quantity = Double.valueOf(df.formatCellValue(row.getCell(3)));
-
-                Map<Plant, Map<Integer, Double>> frozenProdMap = item.getFrozenProductionMap();
-                Map<Integer, Double> plantFrozenProdMap = frozenProdMap.get(plant);
+            int dateIndex = TimePeriod.gap(startDate, timePeriod.getDate());
+            plantFrozenProdMap.put(dateIndex, quantity);
+        });
 
-                if (plantFrozenProdMap == null) {
-                    plantFrozenProdMap = new HashMap<>();
-                    frozenProdMap.put(plant, plantFrozenProdMap);
-                }
-
-                int dateIndex = TimePeriod.gap(startDate, timePeriod.getDate());
-                plantFrozenProdMap.put(dateIndex, quantity);
+        // Read the raw material po and merge into plants
+        reader.readSheet(ExcelProcessor.RAW_MATERIAL_PO_IDX, row -> {
+            Item item = itemMap.get(row.getString(0));
+            if (item == null) {
+                System.out.println("Unknown item:" + row.getString(0));
             }
+            double quantity = row.getDouble(1);
+            int date = row.getInt(2);
+            Plant plant = plantMap.get(row.getString(3));
 
-            // Read the raw material po and merge into plants
-            sheet = wb.getSheetAt(ExcelProcessor.RAW_MATERIAL_PO_IDX);
-            for (int i = 1; i < sheet.getPhysicalNumberOfRows(); i++) {
-                row = sheet.getRow(i);
-
-                Item item = itemMap.get(df.formatCellValue(row.getCell(0)));
-                if (item == null) {
-                    System.out.println("Unknown item:" + df.formatCellValue(row.getCell(0)));
-                }
-                double quantity = Double.valueOf(df.formatCellValue(row.getCell(1)));
-                int date = Integer.valueOf(df.formatCellValue(row.getCell(2)));
-                Plant plant = plantMap.get(df.formatCellValue(row.getCell(3)));
-
-                int dateIndex = TimePeriod.gap(startDate, date);
+            int dateIndex = TimePeriod.gap(startDate, date);
 
-                plant.putRawMaterialPo(item, quantity, dateIndex);
-            }
+            plant.putRawMaterialPo(item, quantity, dateIndex);
+        });
 
-            /**
-             * fix bugs in the data file:
-             * remove a production if its item does not have machine set in the plant.
-             */
-            for (Item item : itemMap.values()) {
-                Map<Plant, Production> productionMap = item.getProductionMap();
+        /**
+         * fix bugs in the data file:
+         * remove a production if its item does not have machine set in the plant.
+         */
+        for (Item item : itemMap.values()) {
+            Map<Plant, Production> productionMap = item.getProductionMap();
 
-                List<Plant> toRemove = new ArrayList<>();
-                for (Production production : productionMap.values()) {
-                    Plant plant = production.getPlant();
+            List<Plant> toRemove = new ArrayList<>();
+            for (Production production : productionMap.values()) {
+                Plant plant = production.getPlant();
 
-                    if (item.getMachineMap().isEmpty()) {
+                if (item.getMachineMap().isEmpty()) {
+                    toRemove.add(plant);
+                } else {
+                    List<MachineSet> machineSets = item.getMachineMap().get(plant);
+                    if (machineSets == null || machineSets.isEmpty())
                         toRemove.add(plant);
-                    } else {
-                        List<MachineSet> machineSets = item.getMachineMap().get(plant);
-                        if (machineSets == null || machineSets.isEmpty())
-                            toRemove.add(plant);
-                    }
-                }
-
-                for (Plant p : toRemove)
-                    productionMap.remove(p);
-            }
-
-            // for each production, calculate the rate map
-            for (Item item : itemMap.values()) {
-                for (Production production : item.getProductionMap().values()) {
-                    production.calcRateMap();
                 }
             }
 
-            environment =
-                    new Environment(productCategoryMap, capacityTypeMap, itemMap, plantMap, machineSetMap, transits);
-            environment.setStartDate(startDate);
-            environment.setEndDate(endDate);
-            environment.setPeriod(period);
-            environment.setRemainingWeekDaysMap(remainingWeekDaysMap);
+            for (Plant p : toRemove)
+                productionMap.remove(p);
+        }
 
-            // calculate the min production lead time for each item
-            for (Item item : itemMap.values()) {
-                item.calcMinProdLeadTime();
-            }
+        Environment environment = new Environment.Builder()
+                .setProductCategoryMap(productCategoryMap)
+                .setCapacityTypeMap(capacityTypeMap)
+                .setItemMap(itemMap)
+                .setPlantMap(plantMap)
+                .setMachineSetMap(machineSetMap)
+                .setTransits(transits)
+                .setStartDate(startDate)
+                .setEndDate(endDate)
+                .setPeriod(period)
+                .setRemainingWeekDaysMap(remainingWeekDaysMap)
+                .build();
 
-            // calculate the plants that can hold each item
-            for (Item item : itemMap.values()) {
-                item.calcPlants();
-            }
+        return environment;
+    }
 
-            // the plants purchasing the materials can also hold the items
-            for (Plant plant : plantMap.values()) {
-                for (Map<Item, Double> dailyMap : plant.getRawMaterialPoMap().values()) {
-                    for (Item item : dailyMap.keySet()) {
-                        item.getPlants().add(plant);
-                    }
+    /**
+     * Calculate the information derived from the input data of each item,
+     * i.e. the production rates, the min production lead time and the plants that can hold the item.
+     * The information of an item only depends on the item itself, so the items are calculated in parallel.
+     * @param pool the pool to calculate in.
+     */
+    private void calcDerivedInfo(ForkJoinPool pool) {
+        // the plants purchasing the materials can also hold the items, in the order of the plants
+        Map<Item, Set<Plant>> poPlantMap = new HashMap<>();
+        for (Plant plant : plantMap.values()) {
+            for (Map<Item, Double> dailyMap : plant.getRawMaterialPoMap().values()) {
+                for (Item item : dailyMap.keySet()) {
+                    poPlantMap.computeIfAbsent(item, k -> new LinkedHashSet<>()).add(plant);
                 }
             }
+        }
 
-            // calculate the dependent items
-            environment.calcDependentItems();
+        List<Item> items = new ArrayList<>(itemMap.values());
+        pool.submit(() -> items.parallelStream().forEach(item -> {
+            // for each production, calculate the rate map
+            for (Production production : item.getProductionMap().values()) {
+                production.calcRateMap();
+            }
 
-            // initialise the supply chain map of the environment
-            environment.initSupplyChainMap();
+            // calculate the min production lead time
+            item.calcMinProdLeadTime();
 
-            // Closing the workbook
-            wb.close();
-        } catch(Exception ioe) {
-            ioe.printStackTrace();
-        }
+            // calculate the plants that can hold the item
+            item.calcPlants();
 
-        return environment;
+            Set<Plant> poPlants = poPlantMap.get(item);
+            if (poPlants != null)
+                item.getPlants().addAll(poPlants);
+        })).join();
     }
 
-    public void initSupplyChainMap() {
-        supplyChainMap = new HashMap<>();
-
+    /**
+     * Initialise the supply chain of each item at each plant that can hold it,
+     * and link the supply chains through the bom and transit streams.
+     */
+    private void initSupplyChainMap() {
         for (Item item : itemMap.values()) {
             Map<Plant, SupplyChain> map = new HashMap<>();
-
-//            System.out.println("initialise chain for " + item.toString());
+            List<SupplyChain> chains = new ArrayList<>();
 
             for (Plant plant : item.getPlants()) {
-//                System.out.println("initialising chain [" + item.toString() + ", " + plant.toString() + "]");
+                SupplyChain chain = new SupplyChain(item, plant);
 
-                map.put(plant, new SupplyChain(item, plant));
+                map.put(plant, chain);
+                chains.add(chain);
+                supplyChains[item.getIndex()][plant.getIndex()] = chain;
             }
 
-            supplyChainMap.put(item, map);
+            supplyChainMap.put(item, Collections.unmodifiableMap(map));
+            itemSupplyChains.set(item.getIndex(), Collections.unmodifiableList(chains));
         }
 
         // link the supply chains through bom streams
         for (Item item : itemMap.values()) {
-            for (Plant plant : item.getPlants()) {
-                SupplyChain targetChain = supplyChainMap.get(item).get(plant);
-
+            for (SupplyChain targetChain : getSupplyChains(item)) {
                 Production production = targetChain.getProduction();
 
                 if (production != null) {
                     for (BomComponent component : production.getBom()) {
                         Item material = component.getMaterial();
-                        SupplyChain chain = supplyChainMap.get(material).get(plant);
+                        SupplyChain chain = getSupplyChain(material, targetChain.getPlant());
                         targetChain.getBomStreamMap().put(component, chain);
                     }
                 }
@@ -591,33 +701,33 @@ public class Environment {
 
         // link the supply chains through transit streams
         for (Item item : itemMap.values()) {
-            for (Plant plant : item.getPlants()) {
-                SupplyChain targetChain = supplyChainMap.get(item).get(plant);
+            for (Transit transit : item.getTransits()) {
+                Plant fromPlant = transit.getFromPlant();
+                Plant toPlant = transit.getToPlant();
 
-//                System.out.println("target chain [" + item.toString() + ", " + plant.toString() + "]");
+                // only the last transit between the same plants is used
+                if (item.getTransit(fromPlant, toPlant) != transit)
+                    continue;
 
-                for (Plant fromPlant : plant.getTransitInMap().keySet()) {
-                    // check whether one can transit the item between the plants
-                    if (!plant.getTransitInMap().get(fromPlant).contains(item))
-                        continue;
+                SupplyChain targetChain = getSupplyChain(item, toPlant);
+                SupplyChain sourceChain = getSupplyChain(item, fromPlant);
 
-                    Pair<Plant, Plant> pair = new Pair<>(fromPlant, plant);
-                    Transit transit = item.getTransitMap().get(pair);
-                    SupplyChain sourceChain = supplyChainMap.get(item).get(fromPlant);
-
-//                    System.out.println(item.toString() + ", " + plant.toString() + " <- " + fromPlant.toString());
-
-                    targetChain.getTransitStreamMap().put(transit, sourceChain);
-                }
+                targetChain.getTransitStreamMap().put(transit, sourceChain);
             }
         }
     }
 
+
     /**
-     * Calculate the dependent items for each item.
+     * Calculate the dependent items for each item, and group the dependent items.
+     * Two items are dependent if one is in the bom of the other, or they share a machine set.
+     * The items in different groups share no inventory or capacity, so they can be scheduled independently.
+     * @return the groups of dependent items.
      */
-    public void calcDependentItems() {
-        for (Item item : itemMap.values()) {
+    private List<List<Item>> calcDependentItems() {
+        // calculate the bom items and shared machine sets once for each item,
+        // with the bom components before the items using them
+        for (Item item : bomOrder()) {
             item.calcBomItems();
             item.calcSharedMachineSets();
         }
@@ -625,31 +735,108 @@ public class Environment {
         // group the dependent items into groups
         DisjointSets<Item> groups = new DisjointSets<>(itemMap.values()); // the groups are disjoint sets
 
+        // the first item found using each machine set (index)
+        Item[] machineSetItems = new Item[machineSetMap.size()];
+
         for (Item item : itemMap.values()) {
-            // merge all the bom items into the same group
-            for (Item bomItem : item.getBomItems()) {
-                groups.union(item, bomItem);
+            // merge the bom components into the same group, the deeper bom items are merged transitively
+            for (Production production : item.getProductionMap().values()) {
+                for (BomComponent component : production.getBom()) {
+                    groups.union(item, component.getMaterial());
+                }
+            }
+
+            // merge the items using the same machine set into the same group
+            for (List<MachineSet> machineSets : item.getMachineMap().values()) {
+                for (MachineSet machineSet : machineSets) {
+                    if (item.getRate(machineSet.getCapacityType()) == 0)
+                        continue;
+
+                    Item first = machineSetItems[machineSet.getIndex()];
+
+                    if (first == null)
+                        machineSetItems[machineSet.getIndex()] = item;
+                    else
+                        groups.union(item, first);
+                }
             }
         }
 
-        boolean union = true;
-        while(union) {
-            union = false;
+        // collect the groups, in the order of their first items
+        Map<DisjointSets<Item>.Element, List<Item>> groupMap = new LinkedHashMap<>();
+        for (Item item : itemMap.values()) {
+            DisjointSets<Item>.Element root = groups.find(item);
 
-            for (Item item1 : itemMap.values()) {
-                for (Item item2 : itemMap.values()) {
-                    if (item1.equals(item2))
-                        continue;
+            List<Item> group = groupMap.get(root);
+            if (group == null) {
+                group = new ArrayList<>();
+                groupMap.put(root, group);
+            }
+
+            group.add(item);
+        }
+
+        List<List<Item>> groupList = new ArrayList<>();
+        for (List<Item> group : groupMap.values()) {
+            groupList.add(Collections.unmodifiableList(group));
+        }
+
+        return Collections.unmodifiableList(groupList);
+    }
+
+    /**
+     * Sort the items in the topological order of the boms,
+     * i.e. the bom components are before the items using them.
+     * The items in a loop of boms (if any) are in the order they are found.
+     * @return the sorted items.
+     */
+    public List<Item> bomOrder() {
+        List<Item> order = new ArrayList<>();
+        boolean[] visited = new boolean[itemMap.size()];
+
+        // depth first search with an explicit stack, an item is added after all its components
+        Deque<Item> stack = new ArrayDeque<>();
+        Deque<Iterator<Item>> componentStack = new ArrayDeque<>();
+
+        for (Item root : itemMap.values()) {
+            if (visited[root.getIndex()])
+                continue;
+
+            visited[root.getIndex()] = true;
+            stack.push(root);
+            componentStack.push(bomComponents(root).iterator());
+
+            while (!stack.isEmpty()) {
+                Iterator<Item> components = componentStack.peek();
+
+                if (components.hasNext()) {
+                    Item component = components.next();
 
-                    if (groups.disjoint(item1, item2)) {
-                        union = true;
-                        groups.union(item1, item2);
+                    if (!visited[component.getIndex()]) {
+                        visited[component.getIndex()] = true;
+                        stack.push(component);
+                        componentStack.push(bomComponents(component).iterator());
                     }
+                } else {
+                    order.add(stack.pop());
+                    componentStack.pop();
                 }
             }
         }
 
-        System.out.println("debug getting dependent items in Environment.java");
+        return order;
+    }
+
+    private List<Item> bomComponents(Item item) {
+        List<Item> components = new ArrayList<>();
+
+        for (Production production : item.getProductionMap().values()) {
+            for (BomComponent component : production.getBom()) {
+                components.add(component.getMaterial());
+            }
+        }
+
+        return components;
     }
 
     /**
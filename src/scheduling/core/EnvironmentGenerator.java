@@ -0,0 +1,618 @@
+package scheduling.core;
+
+import org.apache.commons.math3.random.RandomDataGenerator;
+import scheduling.core.input.*;
+import scheduling.scheduler.GreedyStaticScheduler;
+import scheduling.simulation.State;
+import util.random.*;
+
+import java.util.*;
+
+/**
+ * The generator of synthetic environments, for the scaling tests and benchmarks without the real data.
+ * The generated environment is a supply network of the following structure.
+ * - The items are in levels. The level 0 items are the raw materials purchased by the plants,
+ *   and the items in a higher level are produced from the items in the lower levels (the bom depth).
+ *   The finished items in the top level have the demands.
+ * - Each plant has a number of machine sets of different capacity types.
+ *   An item produced in a plant occupies a machine set of each capacity type in the plant.
+ * - The transits of each item connect the plants with a density.
+ * - The capacities of the machine sets are based on the expected load from the demands and the capacity tightness,
+ *   i.e. the tightness of 1 means the capacity is just enough for the expected load.
+ * The random numbers are sampled by the samplers, with a seeded random data generator,
+ * so the same seed and parameters always generate the same environment.
+ */
+
+public class EnvironmentGenerator {
+    /**
+     * The profile of the demands over the period.
+     */
+    public enum DemandProfile {
+        STEADY, // the same mean demand in all the dates
+        SEASONAL, // the mean demand goes up and down in a cycle of the period
+        RAMP; // the mean demand increases over the period
+
+        /**
+         * The multiplier of the mean demand at a date.
+         * @param dateId the date id.
+         * @param period the period.
+         * @return the multiplier, with the mean of about 1 over the period.
+         */
+        public double multiplier(int dateId, int period) {
+            switch (this) {
+                case SEASONAL:
+                    return 1+0.5*Math.sin(2*Math.PI*dateId/period);
+                case RAMP:
+                    return 0.5+(double)dateId/period;
+                default:
+                    return 1;
+            }
+        }
+    }
+
+    private int numItems = 1000;
+    private int numPlants = 4;
+    private int numMachineSets = 2; // the number of machine sets in each plant
+    private int numCapacityTypes = 2;
+    private int period = 60;
+    private int startDate = 20180101;
+
+    // the bom structure
+    private int bomDepth = 3; // the number of levels above the raw materials
+    private double rawMaterialRatio = 0.25; // the ratio of raw materials in the items
+    private AbstractIntegerSampler bomFanOutSampler = new UniformIntegerSampler(1, 3); // the components per bom
+    private AbstractIntegerSampler bomQuantitySampler = new UniformIntegerSampler(1, 2);
+
+    // the productions
+    private double productionPlantProb = 0.5; // the probability of a plant to produce an item (at least one)
+    private AbstractIntegerSampler prodLeadTimeSampler = new UniformIntegerSampler(1, 4);
+    private AbstractRealSampler prodCostSampler = new UniformSampler(1, 10);
+    private AbstractRealSampler rateSampler = new UniformSampler(0.5, 1.5);
+
+    // the transits
+    private double transitDensity = 0.3; // the probability of a transit between two plants for an item
+    private boolean transitCycles = false; // whether the transits can go both ways between two plants
+    private AbstractIntegerSampler transitLeadTimeSampler = new UniformIntegerSampler(1, 3);
+    private AbstractIntegerSampler transitCostSampler = new UniformIntegerSampler(1, 5);
+
+    // the capacities
+    private double capacityTightness = 1.0; // the expected load (all the demands produced) / the capacity
+    private AbstractRealSampler capacityNoiseSampler = new NormalSampler(1, 0.1);
+
+    // the demands
+    private DemandProfile demandProfile = DemandProfile.STEADY;
+    private AbstractRealSampler demandSampler = new GammaSampler(2, 25);
+    private AbstractIntegerSampler demandIntervalSampler = new UniformIntegerSampler(3, 12);
+    private double orderRatio = 0.5; // the ratio of order demand in each demand, the rest is forecast
+
+    // the inventories and purchases
+    private AbstractRealSampler holdingCostSampler = new UniformSampler(0.01, 0.11);
+    private double initInventoryProb = 0.3;
+    private AbstractRealSampler initInventorySampler = new UniformSampler(0, 100);
+    private AbstractIntegerSampler poIntervalSampler = new UniformIntegerSampler(7, 14);
+    private double poCoverage = 1.0; // the raw material po / the expected requirement
+
+    public int getNumItems() {
+        return numItems;
+    }
+
+    public void setNumItems(int numItems) {
+        this.numItems = numItems;
+    }
+
+    public int getNumPlants() {
+        return numPlants;
+    }
+
+    public void setNumPlants(int numPlants) {
+        this.numPlants = numPlants;
+    }
+
+    public int getNumMachineSets() {
+        return numMachineSets;
+    }
+
+    public void setNumMachineSets(int numMachineSets) {
+        this.numMachineSets = numMachineSets;
+    }
+
+    public int getNumCapacityTypes() {
+        return numCapacityTypes;
+    }
+
+    public void setNumCapacityTypes(int numCapacityTypes) {
+        this.numCapacityTypes = numCapacityTypes;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(int period) {
+        this.period = period;
+    }
+
+    public int getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(int startDate) {
+        this.startDate = startDate;
+    }
+
+    public int getBomDepth() {
+        return bomDepth;
+    }
+
+    public void setBomDepth(int bomDepth) {
+        this.bomDepth = bomDepth;
+    }
+
+    public double getRawMaterialRatio() {
+        return rawMaterialRatio;
+    }
+
+    public void setRawMaterialRatio(double rawMaterialRatio) {
+        this.rawMaterialRatio = rawMaterialRatio;
+    }
+
+    public AbstractIntegerSampler getBomFanOutSampler() {
+        return bomFanOutSampler;
+    }
+
+    public void setBomFanOutSampler(AbstractIntegerSampler bomFanOutSampler) {
+        this.bomFanOutSampler = bomFanOutSampler;
+    }
+
+    public AbstractIntegerSampler getBomQuantitySampler() {
+        return bomQuantitySampler;
+    }
+
+    public void setBomQuantitySampler(AbstractIntegerSampler bomQuantitySampler) {
+        this.bomQuantitySampler = bomQuantitySampler;
+    }
+
+    public double getProductionPlantProb() {
+        return productionPlantProb;
+    }
+
+    public void setProductionPlantProb(double productionPlantProb) {
+        this.productionPlantProb = productionPlantProb;
+    }
+
+    public AbstractIntegerSampler getProdLeadTimeSampler() {
+        return prodLeadTimeSampler;
+    }
+
+    public void setProdLeadTimeSampler(AbstractIntegerSampler prodLeadTimeSampler) {
+        this.prodLeadTimeSampler = prodLeadTimeSampler;
+    }
+
+    public AbstractRealSampler getProdCostSampler() {
+        return prodCostSampler;
+    }
+
+    public void setProdCostSampler(AbstractRealSampler prodCostSampler) {
+        this.prodCostSampler = prodCostSampler;
+    }
+
+    public AbstractRealSampler getRateSampler() {
+        return rateSampler;
+    }
+
+    public void setRateSampler(AbstractRealSampler rateSampler) {
+        this.rateSampler = rateSampler;
+    }
+
+    public double getTransitDensity() {
+        return transitDensity;
+    }
+
+    public void setTransitDensity(double transitDensity) {
+        this.transitDensity = transitDensity;
+    }
+
+    public boolean isTransitCycles() {
+        return transitCycles;
+    }
+
+    public void setTransitCycles(boolean transitCycles) {
+        this.transitCycles = transitCycles;
+    }
+
+    public AbstractIntegerSampler getTransitLeadTimeSampler() {
+        return transitLeadTimeSampler;
+    }
+
+    public void setTransitLeadTimeSampler(AbstractIntegerSampler transitLeadTimeSampler) {
+        this.transitLeadTimeSampler = transitLeadTimeSampler;
+    }
+
+    public AbstractIntegerSampler getTransitCostSampler() {
+        return transitCostSampler;
+    }
+
+    public void setTransitCostSampler(AbstractIntegerSampler transitCostSampler) {
+        this.transitCostSampler = transitCostSampler;
+    }
+
+    public double getCapacityTightness() {
+        return capacityTightness;
+    }
+
+    public void setCapacityTightness(double capacityTightness) {
+        this.capacityTightness = capacityTightness;
+    }
+
+    public AbstractRealSampler getCapacityNoiseSampler() {
+        return capacityNoiseSampler;
+    }
+
+    public void setCapacityNoiseSampler(AbstractRealSampler capacityNoiseSampler) {
+        this.capacityNoiseSampler = capacityNoiseSampler;
+    }
+
+    public DemandProfile getDemandProfile() {
+        return demandProfile;
+    }
+
+    public void setDemandProfile(DemandProfile demandProfile) {
+        this.demandProfile = demandProfile;
+    }
+
+    public AbstractRealSampler getDemandSampler() {
+        return demandSampler;
+    }
+
+    public void setDemandSampler(AbstractRealSampler demandSampler) {
+        this.demandSampler = demandSampler;
+    }
+
+    public AbstractIntegerSampler getDemandIntervalSampler() {
+        return demandIntervalSampler;
+    }
+
+    public void setDemandIntervalSampler(AbstractIntegerSampler demandIntervalSampler) {
+        this.demandIntervalSampler = demandIntervalSampler;
+    }
+
+    public double getOrderRatio() {
+        return orderRatio;
+    }
+
+    public void setOrderRatio(double orderRatio) {
+        this.orderRatio = orderRatio;
+    }
+
+    public AbstractRealSampler getHoldingCostSampler() {
+        return holdingCostSampler;
+    }
+
+    public void setHoldingCostSampler(AbstractRealSampler holdingCostSampler) {
+        this.holdingCostSampler = holdingCostSampler;
+    }
+
+    public double getInitInventoryProb() {
+        return initInventoryProb;
+    }
+
+    public void setInitInventoryProb(double initInventoryProb) {
+        this.initInventoryProb = initInventoryProb;
+    }
+
+    public AbstractRealSampler getInitInventorySampler() {
+        return initInventorySampler;
+    }
+
+    public void setInitInventorySampler(AbstractRealSampler initInventorySampler) {
+        this.initInventorySampler = initInventorySampler;
+    }
+
+    public AbstractIntegerSampler getPoIntervalSampler() {
+        return poIntervalSampler;
+    }
+
+    public void setPoIntervalSampler(AbstractIntegerSampler poIntervalSampler) {
+        this.poIntervalSampler = poIntervalSampler;
+    }
+
+    public double getPoCoverage() {
+        return poCoverage;
+    }
+
+    public void setPoCoverage(double poCoverage) {
+        this.poCoverage = poCoverage;
+    }
+
+    /**
+     * Generate an environment.
+     * @param seed the seed of the random data generator.
+     * @return the environment.
+     */
+    public Environment generate(long seed) {
+        RandomDataGenerator rdg = new RandomDataGenerator();
+        rdg.reSeed(seed);
+
+        Map<String, ProductCategory> productCategoryMap = new LinkedHashMap<>();
+        ProductCategory pc = new ProductCategory("PC", 0.9);
+        productCategoryMap.put(pc.getName(), pc);
+
+        // the capacity types, with the default rate 0 (not occupied unless the item has a rate)
+        Map<String, CapacityType> capacityTypeMap = new LinkedHashMap<>();
+        List<CapacityType> capacityTypes = new ArrayList<>();
+        for (int k = 0; k < numCapacityTypes; k++) {
+            CapacityType ct = new CapacityType("CT" + k, 0);
+            capacityTypeMap.put(ct.getName(), ct);
+            capacityTypes.add(ct);
+        }
+
+        // the plants and their machine sets, the k-th machine set is of the (k % types)-th capacity type
+        Map<String, Plant> plantMap = new LinkedHashMap<>();
+        Map<String, MachineSet> machineSetMap = new LinkedHashMap<>();
+        List<Plant> plants = new ArrayList<>();
+        for (int p = 0; p < numPlants; p++) {
+            Plant plant = new Plant("P" + p, 0, "");
+            plantMap.put(plant.getName(), plant);
+            plants.add(plant);
+
+            for (int k = 0; k < numMachineSets; k++) {
+                MachineSet machineSet = new MachineSet(plant.getName() + "-M" + k, plant,
+                        capacityTypes.get(k % numCapacityTypes), 1);
+                machineSetMap.put(machineSet.getName(), machineSet);
+                plant.putMachineSet(machineSet);
+            }
+        }
+
+        // the items in levels
+        Map<String, Item> itemMap = new LinkedHashMap<>();
+        List<List<Item>> levels = new ArrayList<>();
+        int numRaw = Math.max(1, (int)(numItems*rawMaterialRatio));
+        int numProduced = numItems-numRaw;
+
+        for (int l = 0; l <= bomDepth; l++) {
+            int levelSize = l == 0 ? numRaw : numProduced/bomDepth + (l <= numProduced % bomDepth ? 1 : 0);
+            List<Item> level = new ArrayList<>();
+
+            for (int i = 0; i < levelSize; i++) {
+                ItemType type = l == 0 ? ItemType.RAW_MATERIAL : ItemType.NORMAL;
+                Item item = new Item("I" + itemMap.size(), type, 1, pc, holdingCostSampler.next(rdg));
+                itemMap.put(item.getId(), item);
+                level.add(item);
+            }
+
+            levels.add(level);
+        }
+
+        List<Item> items = new ArrayList<>(itemMap.values());
+
+        // the initial inventories
+        for (Item item : items) {
+            for (Plant plant : plants) {
+                if (rdg.nextUniform(0, 1) < initInventoryProb)
+                    item.getInitInventoryMap().put(plant, (double)Math.round(initInventorySampler.next(rdg)));
+            }
+        }
+
+        // the productions of the produced items, from the items in the lower levels
+        List<Item> lowerItems = new ArrayList<>(levels.get(0));
+        for (int l = 1; l <= bomDepth; l++) {
+            List<Item> previousLevel = levels.get(l-1);
+
+            for (Item item : levels.get(l)) {
+                for (CapacityType ct : capacityTypes)
+                    item.getRateMap().put(ct, rateSampler.next(rdg));
+
+                // the components are the same in all the plants
+                // the first component is in the previous level, so that the bom is as deep as the level
+                int fanOut = Math.max(1, bomFanOutSampler.next(rdg));
+                Map<Item, Integer> components = new LinkedHashMap<>();
+                components.put(previousLevel.get(rdg.nextInt(0, previousLevel.size()-1)),
+                        bomQuantitySampler.next(rdg));
+                for (int b = 1; b < fanOut; b++)
+                    components.put(lowerItems.get(rdg.nextInt(0, lowerItems.size()-1)), bomQuantitySampler.next(rdg));
+
+                int firstPlant = rdg.nextInt(0, numPlants-1);
+                for (int p = 0; p < numPlants; p++) {
+                    if (p != firstPlant && rdg.nextUniform(0, 1) >= productionPlantProb)
+                        continue;
+
+                    Plant plant = plants.get(p);
+                    Production production = new Production(item, plant, Math.round(prodCostSampler.next(rdg)),
+                            prodLeadTimeSampler.next(rdg), 0, 0, 1, 0, Integer.MAX_VALUE, 0);
+
+                    for (Map.Entry<Item, Integer> entry : components.entrySet()) {
+                        production.addBom(new BomComponent(entry.getKey(), entry.getValue(), SupplyType.PUSH));
+
+                        // the components can be held in the plant
+                        if (!entry.getKey().getInitInventoryMap().containsKey(plant))
+                            entry.getKey().getInitInventoryMap().put(plant, 0d);
+                    }
+
+                    item.putProduction(production);
+
+                    // a machine set of each capacity type in the plant
+                    List<MachineSet> machineSets = new ArrayList<>();
+                    for (CapacityType ct : capacityTypes) {
+                        List<MachineSet> candidates = new ArrayList<>();
+                        for (int k = ct.getIndex(); k < numMachineSets; k += numCapacityTypes)
+                            candidates.add(machineSetMap.get(plant.getName() + "-M" + k));
+
+                        if (!candidates.isEmpty())
+                            machineSets.add(candidates.get(rdg.nextInt(0, candidates.size()-1)));
+                    }
+                    item.getMachineMap().put(plant, machineSets);
+                }
+            }
+
+            lowerItems.addAll(levels.get(l));
+        }
+
+        // the transits
+        List<Transit> transits = new ArrayList<>();
+        for (Item item : items) {
+            for (int from = 0; from < numPlants; from++) {
+                for (int to = 0; to < numPlants; to++) {
+                    if (from == to || (!transitCycles && from > to))
+                        continue;
+
+                    if (rdg.nextUniform(0, 1) >= transitDensity)
+                        continue;
+
+                    Plant fromPlant = plants.get(from);
+                    Plant toPlant = plants.get(to);
+                    Transit transit = new Transit(item, fromPlant, toPlant,
+                            transitCostSampler.next(rdg), transitLeadTimeSampler.next(rdg));
+                    transits.add(transit);
+
+                    fromPlant.putTransitOutMap(toPlant, item);
+                    toPlant.putTransitInMap(fromPlant, item);
+                    item.addTransit(transit);
+                }
+            }
+        }
+
+        // the demands of the finished items
+        Map<Item, Double> requirements = new HashMap<>();
+        for (Item item : levels.get(bomDepth)) {
+            double total = 0;
+
+            for (int d = demandIntervalSampler.next(rdg); d < period; d += Math.max(1, demandIntervalSampler.next(rdg))) {
+                double quantity = Math.round(Math.max(0, demandSampler.next(rdg))*demandProfile.multiplier(d, period));
+                double order = Math.round(quantity*orderRatio);
+                double forecast = quantity-order;
+
+                if (order > 0)
+                    item.getOrderDemandMap().put(d, order);
+
+                if (forecast > 0)
+                    item.getForecastDemandMap().put(d, forecast);
+
+                total += quantity;
+            }
+
+            requirements.put(item, total);
+        }
+
+        // explode the requirements through the boms, the productions share the requirements equally
+        Map<Item, double[]> plantRequirements = new HashMap<>();
+        Map<MachineSet, Double> loads = new HashMap<>();
+        for (int l = bomDepth; l > 0; l--) {
+            for (Item item : levels.get(l)) {
+                double requirement = requirements.getOrDefault(item, 0d);
+
+                if (requirement == 0)
+                    continue;
+
+                double share = requirement/item.getProductionMap().size();
+
+                for (Production production : item.getProductionMap().values()) {
+                    for (BomComponent component : production.getBom()) {
+                        Item material = component.getMaterial();
+                        double quantity = share*component.getQuantity();
+
+                        requirements.put(material, requirements.getOrDefault(material, 0d)+quantity);
+
+                        double[] materialRequirements = plantRequirements.get(material);
+                        if (materialRequirements == null) {
+                            materialRequirements = new double[numPlants];
+                            plantRequirements.put(material, materialRequirements);
+                        }
+                        materialRequirements[plants.indexOf(production.getPlant())] += quantity;
+                    }
+
+                    for (MachineSet machineSet : item.getMachineMap().get(production.getPlant())) {
+                        double load = share*item.getRateMap().get(machineSet.getCapacityType());
+                        loads.put(machineSet, loads.getOrDefault(machineSet, 0d)+load);
+                    }
+                }
+            }
+        }
+
+        // the capacities cover the expected daily loads with the tightness
+        for (MachineSet machineSet : machineSetMap.values()) {
+            double dailyCapacity = loads.getOrDefault(machineSet, 0d)/period/capacityTightness;
+
+            for (int d = 0; d < period; d++) {
+                double capacity = Math.round(Math.max(0, dailyCapacity*capacityNoiseSampler.next(rdg)));
+                machineSet.getCapacityMap().put(d, new Capacity(capacity));
+            }
+        }
+
+        // the raw materials are purchased by the plants using them
+        for (Item item : levels.get(0)) {
+            double[] materialRequirements = plantRequirements.get(item);
+
+            if (materialRequirements == null)
+                continue;
+
+            for (int p = 0; p < numPlants; p++) {
+                if (materialRequirements[p] == 0)
+                    continue;
+
+                List<Integer> poDates = new ArrayList<>();
+                for (int d = 0; d < period; d += Math.max(1, poIntervalSampler.next(rdg)))
+                    poDates.add(d);
+
+                double quantity = Math.ceil(materialRequirements[p]*poCoverage/poDates.size());
+                for (int d : poDates)
+                    plants.get(p).putRawMaterialPo(item, quantity, d);
+            }
+        }
+
+        Map<Integer, Integer> remainingWeekDaysMap = new HashMap<>();
+        for (int d = 0; d < period; d++)
+            remainingWeekDaysMap.put(d, 6-d%7);
+
+        Environment environment = new Environment.Builder()
+                .setProductCategoryMap(productCategoryMap)
+                .setCapacityTypeMap(capacityTypeMap)
+                .setItemMap(itemMap)
+                .setPlantMap(plantMap)
+                .setMachineSetMap(machineSetMap)
+                .setTransits(transits)
+                .setStartDate(startDate)
+                .setEndDate(TimePeriod.dateOfId(startDate, period-1))
+                .setPeriod(period)
+                .setRemainingWeekDaysMap(remainingWeekDaysMap)
+                .build();
+
+        return environment;
+    }
+
+    /**
+     * Generate the environments of increasing sizes, and plan them with the greedy static scheduler.
+     * Usage: EnvironmentGenerator [items ...], the default is 1000, 3000 and 10000 items.
+     */
+    public static void main(String[] args) {
+        int[] sizes = {1000, 3000, 10000};
+
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        EnvironmentGenerator generator = new EnvironmentGenerator();
+
+        for (int size : sizes) {
+            generator.setNumItems(size);
+            generator.setNumPlants(Math.max(4, (int)Math.sqrt(size)/10));
+
+            long start = System.nanoTime();
+            Environment env = generator.generate(0);
+            double generation = (System.nanoTime()-start)/1e9;
+
+            State state = new State(env);
+            start = System.nanoTime();
+            new GreedyStaticScheduler().planSchedule(state);
+            double planning = (System.nanoTime()-start)/1e9;
+
+            Schedule schedule = state.getPlannedSchedule();
+            schedule.calcFillRate();
+
+            System.out.println(size + " items, " + env.getPlantMap().size() + " plants, " +
+                    env.getTransits().size() + " transits: generation = " + generation +
+                    ", planning = " + planning + ", fill rate = " + schedule.getFillRate());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package scheduling.core;
+
+import scheduling.core.input.*;
+
+import java.util.*;
+
+/**
+ * The feasible date index keeps, for the items in a schedule, the dates in which a supply chain of the item
+ * may supply it directly, i.e. from the free inventory in its plant or by a production in its plant.
+ * The scheduler can then jump to the earliest such date, instead of activating all the supply chains day by day.
+ *
+ * The free inventory of an (item, plant) is a suffix minimum that never decreases over the days,
+ * so the earliest date with free inventory is found from the inventory timeline of the schedule directly.
+ * The production start dates with spare capacity are kept in a bit set for each production,
+ * and updated when the capacity of its machine sets is changed in the schedule.
+ *
+ * A date in the index is only a candidate: the production may still lack bom components in that date.
+ * But no supply chain can supply the item directly in a date that is not in the index.
+ */
+public class FeasibleDateIndex extends ScheduleListener {
+    private Schedule schedule;
+    private int startDateId; // the start date id of the schedule, inclusive
+    private int endDateId; // the end date id of the schedule, exclusive
+    private int numPlants;
+
+    private Production[] productions; // the production of each (item index * plants + plant index)
+    private BitSet[] capacityDates; // the production start dates (dateId - startDateId) with spare capacity
+    private int[][] machineSetProductions; // the productions using each machine set
+
+    /**
+     * Construct the index for the items in a schedule.
+     * @param env the environment.
+     * @param schedule the schedule.
+     */
+    public FeasibleDateIndex(Environment env, Schedule schedule) {
+        this.schedule = schedule;
+        this.startDateId = schedule.getStartDateId();
+        this.endDateId = schedule.getEndDateId();
+        this.numPlants = env.getPlantMap().size();
+
+        int numChains = env.getItemMap().size()*numPlants;
+        productions = new Production[numChains];
+        capacityDates = new BitSet[numChains];
+
+        List<List<Integer>> machineSetLists = new ArrayList<>();
+        for (int i = 0; i < env.getMachineSetMap().size(); i++)
+            machineSetLists.add(new ArrayList<>());
+
+        for (Item item : schedule.getItems()) {
+            for (Production production : item.getProductionMap().values()) {
+                int id = item.getIndex()*numPlants+production.getPlant().getIndex();
+                productions[id] = production;
+                capacityDates[id] = new BitSet(endDateId-startDateId);
+
+                for (int dateId = startDateId; dateId < endDateId; dateId++)
+                    updateCapacity(id, dateId);
+
+                for (MachineSet machineSet : production.getMachineSets())
+                    machineSetLists.get(machineSet.getIndex()).add(id);
+            }
+        }
+
+        machineSetProductions = new int[machineSetLists.size()][];
+        for (int i = 0; i < machineSetProductions.length; i++) {
+            List<Integer> list = machineSetLists.get(i);
+            machineSetProductions[i] = new int[list.size()];
+
+            for (int j = 0; j < list.size(); j++)
+                machineSetProductions[i][j] = list.get(j);
+        }
+    }
+
+    /**
+     * Get the earliest date from a date id on, in which a supply chain of an item may supply it directly,
+     * i.e. there is free inventory in the plant, or the production can start in time with spare capacity.
+     * @param item the item.
+     * @param fromDateId the date id to search from.
+     * @return the earliest candidate date id, or the end date id of the schedule if there is none.
+     */
+    public int nextDate(Item item, int fromDateId) {
+        int next = endDateId;
+
+        for (Plant plant : item.getPlants()) {
+            InventoryTimeline timeline = schedule.getInventory(item, plant);
+
+            if (timeline != null) {
+                int dateId = Math.max(timeline.firstFreeDate(), fromDateId);
+
+                if (next > dateId)
+                    next = dateId;
+            }
+        }
+
+        for (Production production : item.getProductionMap().values()) {
+            int id = item.getIndex()*numPlants+production.getPlant().getIndex();
+
+            if (capacityDates[id] == null)
+                continue;
+
+            int leadTime = production.getLeadTime();
+            int prodStartDateId = Math.max(fromDateId-leadTime, schedule.getFirstOpenDateId());
+            int bit = capacityDates[id].nextSetBit(prodStartDateId-startDateId);
+
+            if (bit < 0)
+                continue;
+
+            int dateId = startDateId+bit+leadTime;
+
+            if (next > dateId)
+                next = dateId;
+        }
+
+        return next;
+    }
+
+    @Override
+    public void capacityChanged(long epoch, MachineSet machineSet, int dateId, double quantity) {
+        if (dateId < startDateId || dateId >= endDateId)
+            return;
+
+        for (int id : machineSetProductions[machineSet.getIndex()])
+            updateCapacity(id, dateId);
+    }
+
+    /**
+     * Update whether a production can start in a date, the same as the activation of its supply chain,
+     * i.e. the capacity allows at least one item, and the production is not limited to zero.
+     */
+    private void updateCapacity(int id, int dateId) {
+        Production production = productions[id];
+        boolean feasible = production.getMaxProduction() > 0 &&
+                production.maxQuantityFromCapacity(schedule.getCapacityLedger(), dateId) > 0;
+
+        capacityDates[id].set(dateId-startDateId, feasible);
+    }
+}
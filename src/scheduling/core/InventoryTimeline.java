@@ -0,0 +1,273 @@
+package scheduling.core;
+
+import java.util.Arrays;
+
+/**
+ * The inventory timeline of an item at a plant over the scheduling period.
+ * The "total" inventory is the current total inventory of the day.
+ * The "free" inventory is the inventory that can still be supplied in the day,
+ * without breaking any later day. It is the minimum total inventory from that day on.
+ *
+ * Each inventory change adds a quantity to all the days from a date on.
+ * The timeline is stored as a segment tree over the days (dateId - startDateId),
+ * whose nodes keep the minimal total inventory of their range and a lazy quantity
+ * added to the whole range. Both the range add and the free (suffix minimum) query
+ * take O(log(period)) time.
+ */
+public class InventoryTimeline {
+    private int startDateId; // the start date id of the timeline, inclusive
+    private int endDateId; // the end date id of the timeline, exclusive
+    private int size; // the number of days
+    private double[] min; // the min total inventory of each node, including its own lazy quantity
+    private double[] lazy; // the quantity added to the whole range of each node
+
+    /**
+     * Construct a timeline with the same initial inventory in all the days.
+     * @param startDateId the start date id, inclusive.
+     * @param endDateId the end date id, exclusive.
+     * @param initial the initial inventory.
+     */
+    public InventoryTimeline(int startDateId, int endDateId, double initial) {
+        this.startDateId = startDateId;
+        this.endDateId = endDateId;
+
+        size = endDateId-startDateId;
+        min = new double[4*Math.max(size, 1)];
+        lazy = new double[4*Math.max(size, 1)];
+
+        // the initial inventory is added to the whole range of the root
+        min[1] = initial;
+        lazy[1] = initial;
+    }
+
+    public int getStartDateId() {
+        return startDateId;
+    }
+
+    public int getEndDateId() {
+        return endDateId;
+    }
+
+    /**
+     * Get the total inventory in a date id.
+     * @param dateId the date id.
+     * @return the total inventory.
+     */
+    public double getTotal(int dateId) {
+        int pos = dateId-startDateId;
+        return query(1, 0, size-1, pos, pos);
+    }
+
+    /**
+     * Get the free inventory in a date id, i.e. the min total inventory from that day on.
+     * @param dateId the date id.
+     * @return the free inventory.
+     */
+    public double getFree(int dateId) {
+        return query(1, 0, size-1, dateId-startDateId, size-1);
+    }
+
+    /**
+     * Get the earliest date id from which the free inventory is positive.
+     * The free inventory never decreases over the days, since it is a suffix minimum,
+     * so the free inventory is positive in all the days after the last day with no positive total inventory.
+     * @return the earliest date id with positive free inventory, or the end date id if there is none.
+     */
+    public int firstFreeDate() {
+        int last = lastNonPositive(1, 0, size-1, 0d);
+        return startDateId+last+1;
+    }
+
+    /**
+     * Get the earliest date id from a date id on, whose total inventory is below a threshold.
+     * @param fromDateId the date id to search from.
+     * @param threshold the threshold.
+     * @return the earliest date id below the threshold, or the end date id if there is none.
+     */
+    public int firstDateBelow(int fromDateId, double threshold) {
+        int from = Math.max(fromDateId-startDateId, 0);
+
+        if (from >= size)
+            return endDateId;
+
+        int first = firstBelow(1, 0, size-1, from, threshold, 0d);
+
+        return first < 0 ? endDateId : startDateId+first;
+    }
+
+    /**
+     * Add a quantity of inventory from a date id on.
+     * @param dateId the date id.
+     * @param quantity the quantity to be added.
+     */
+    public void add(int dateId, double quantity) {
+        int from = dateId-startDateId;
+        if (from < 0)
+            from = 0;
+
+        if (from >= size)
+            return;
+
+        update(1, 0, size-1, from, size-1, quantity, null);
+    }
+
+    /**
+     * Add a quantity of inventory from a date id on, and keep the old values of the changed nodes,
+     * so that the timeline can be restored exactly, without the rounding of adding the negative quantity.
+     * @param dateId the date id.
+     * @param quantity the quantity to be added.
+     * @return the action to restore the timeline, valid if the later changes have been restored before.
+     */
+    public Runnable addRestorable(int dateId, double quantity) {
+        int from = dateId-startDateId;
+        if (from < 0)
+            from = 0;
+
+        Restore restore = new Restore();
+
+        if (from < size)
+            update(1, 0, size-1, from, size-1, quantity, restore);
+
+        return restore;
+    }
+
+    /**
+     * Remove a quantity of inventory from a date id on.
+     * @param dateId the date id.
+     * @param quantity the quantity to be removed.
+     */
+    public void remove(int dateId, double quantity) {
+        add(dateId, -quantity);
+    }
+
+    private void update(int node, int lo, int hi, int from, int to, double quantity, Restore restore) {
+        if (restore != null)
+            restore.save(node);
+
+        if (from <= lo && hi <= to) {
+            min[node] += quantity;
+            lazy[node] += quantity;
+            return;
+        }
+
+        int mid = (lo+hi) >>> 1;
+        int left = node << 1;
+        int right = left+1;
+
+        if (from <= mid)
+            update(left, lo, mid, from, to, quantity, restore);
+
+        if (to > mid)
+            update(right, mid+1, hi, from, to, quantity, restore);
+
+        min[node] = Math.min(min[left], min[right])+lazy[node];
+    }
+
+    private double query(int node, int lo, int hi, int from, int to) {
+        if (from <= lo && hi <= to)
+            return min[node];
+
+        int mid = (lo+hi) >>> 1;
+        int left = node << 1;
+
+        double result;
+        if (to <= mid) {
+            result = query(left, lo, mid, from, to);
+        } else if (from > mid) {
+            result = query(left+1, mid+1, hi, from, to);
+        } else {
+            result = Math.min(query(left, lo, mid, from, to),
+                    query(left+1, mid+1, hi, from, to));
+        }
+
+        return result+lazy[node];
+    }
+
+    /**
+     * Find the last day in the range of a node whose total inventory is not positive.
+     * @param added the quantity added by the ancestors of the node.
+     * @return the last day (dateId - startDateId), or -1 if all the days are positive.
+     */
+    private int lastNonPositive(int node, int lo, int hi, double added) {
+        if (min[node]+added > 0)
+            return -1;
+
+        if (lo == hi)
+            return lo;
+
+        int mid = (lo+hi) >>> 1;
+        int left = node << 1;
+        added += lazy[node];
+
+        int last = lastNonPositive(left+1, mid+1, hi, added);
+        if (last >= 0)
+            return last;
+
+        return lastNonPositive(left, lo, mid, added);
+    }
+
+    /**
+     * Find the first day from a day on in the range of a node whose total inventory is below a threshold.
+     * @param added the quantity added by the ancestors of the node.
+     * @return the first day (dateId - startDateId), or -1 if there is none.
+     */
+    private int firstBelow(int node, int lo, int hi, int from, double threshold, double added) {
+        if (hi < from || min[node]+added >= threshold)
+            return -1;
+
+        if (lo == hi)
+            return lo;
+
+        int mid = (lo+hi) >>> 1;
+        int left = node << 1;
+        added += lazy[node];
+
+        int first = firstBelow(left, lo, mid, from, threshold, added);
+        if (first >= 0)
+            return first;
+
+        return firstBelow(left+1, mid+1, hi, from, threshold, added);
+    }
+
+    /**
+     * The old values of the nodes changed by an update.
+     */
+    private class Restore implements Runnable {
+        private int[] nodes = new int[16];
+        private double[] mins = new double[16];
+        private double[] lazies = new double[16];
+        private int count;
+
+        void save(int node) {
+            if (count == nodes.length) {
+                nodes = Arrays.copyOf(nodes, count*2);
+                mins = Arrays.copyOf(mins, count*2);
+                lazies = Arrays.copyOf(lazies, count*2);
+            }
+
+            nodes[count] = node;
+            mins[count] = min[node];
+            lazies[count] = lazy[node];
+            count ++;
+        }
+
+        @Override
+        public void run() {
+            for (int i = count-1; i >= 0; i--) {
+                min[nodes[i]] = mins[i];
+                lazy[nodes[i]] = lazies[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int dateId = startDateId; dateId < endDateId; dateId++) {
+            if (dateId > startDateId)
+                sb.append(", ");
+            sb.append("{").append(getTotal(dateId)).append(", ").append(getFree(dateId)).append("}");
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -15,20 +15,51 @@ import java.util.*;
  *
  * Each instruction has a start and end date.
  *
+ * A schedule can be forked into a branch to try some tentative changes, e.g. in a rollout or a lookahead.
+ * The changes in a branch are recorded in a trail of undo actions, and the branch is then either
+ * committed into its parent, or discarded by undoing its changes in the reverse order.
+ * Forking and committing take O(1) time, and discarding takes the time of the changes in the branch,
+ * instead of copying all the maps and timelines of the schedule.
+ *
+ * The branches are not snapshots: there is only one version of the schedule, the one of the innermost open branch.
+ * The open branches form a single path, so sibling branches (e.g. the candidates of a beam search)
+ * have to be tried one after another, discarding each before forking the next.
+ * A fork from a branch that is not the innermost open one is rejected.
+ *
  */
 public class Schedule {
     private State state; // the state/problem
     private int startDateId; // the start date id of the schedule, inclusive
     private int endDateId; // the end date id of the schedule, exclusive
+    private int firstOpenDateId; // the first date id new instructions can start in, the days before are executed
+    private Collection<Item> items; // the items scheduled by this schedule
 
     private Map<Integer, Map<Production, ProductionInstruction>> productionSchedule;
     private Map<Integer, Map<Transit, TransitInstruction>> transitSchedule;
     private Map<Integer, Map<Pair<Item, Plant>, SupplyInstruction>> supplySchedule;
     private Map<SupplyChain, Double> supplyChainMap;
+    private SupplyNetwork.Activation activation; // the activation of the supply chains in this schedule, created on demand
+    private List<List<SupplyChain>> itemSupplyChains; // the supply chains of each item (index) in this schedule
+    private ActivationCache activationCache; // the cached supply chain activations, created on demand
+    private FeasibleDateIndex feasibleDateIndex; // the candidate supply dates of the items, created on demand
+    private CapacityLedger capacityLedger; // the remaining capacity of the machine sets in this schedule
+
+    private long epoch; // the number of changes so far, a merge counts as one change
+    private List<ScheduleListener> listeners; // the listeners subscribed to the changes
 
-    private Map<Integer, Map<Item, Map<Plant, Inventory>>> inventoryMap; // the inventory of each item at each plant in each day
+    // the inventory and capacity changes made in a batch, published together when the batch is committed
+    private boolean batching;
+    private Map<Pair<Item, Plant>, Map<Integer, Double>> batchInventoryMap;
+    private Map<MachineSet, Map<Integer, Double>> batchCapacityMap;
+
+    // the undo actions of the changes in the open branches, and where each branch starts in the trail
+    private List<Runnable> trail;
+    private Deque<Branch> branches;
+
+    private InventoryTimeline[][] inventories; // the inventory timeline of each item (index) at each plant (index)
     private Map<Integer, Map<Item, Double>> supplyMap;
     private Map<Integer, Map<Item, Double>> accOrderDemMap; // accumulated order demand each day
+    private Map<Integer, Map<Item, Double>> orderDemandUpdates; // the order demands changed after the initialisation
 
     private double holdingCost;
     private double productionCost;
@@ -45,10 +76,15 @@ public class Schedule {
         transitSchedule = new HashMap<>();
         supplySchedule = new HashMap<>();
         supplyChainMap = new HashMap<>();
+        listeners = new ArrayList<>();
+        items = new ArrayList<>();
+        trail = new ArrayList<>();
+        branches = new ArrayDeque<>();
 
-        inventoryMap = new HashMap<>();
+        inventories = new InventoryTimeline[0][0];
         supplyMap = new HashMap<>();
         accOrderDemMap = new HashMap<>();
+        orderDemandUpdates = new HashMap<>();
 
         holdingCost = 0d;
         productionCost = 0d;
@@ -76,6 +112,26 @@ public class Schedule {
         return endDateId;
     }
 
+    public int getFirstOpenDateId() {
+        return firstOpenDateId;
+    }
+
+    /**
+     * Set the first date id new instructions can start in, e.g. when the days before are executed.
+     * The cached activations are invalidated, since they may start streams before the new date.
+     * @param firstOpenDateId the first open date id.
+     */
+    public void setFirstOpenDateId(int firstOpenDateId) {
+        this.firstOpenDateId = firstOpenDateId;
+
+        if (activationCache != null)
+            activationCache.invalidateAll();
+    }
+
+    public Collection<Item> getItems() {
+        return items;
+    }
+
     public void setEndDateId(int endDateId) {
         this.endDateId = endDateId;
     }
@@ -104,6 +160,52 @@ public class Schedule {
         this.supplySchedule = supplySchedule;
     }
 
+    /**
+     * Get the production instructions starting in a date id, in the order of their items and plants,
+     * so the callers do not depend on the iteration order of the schedule maps.
+     * @param dateId the date id.
+     * @return the sorted production instructions, a new list.
+     */
+    public List<ProductionInstruction> getSortedProductions(int dateId) {
+        List<ProductionInstruction> instructions =
+                new ArrayList<>(productionSchedule.getOrDefault(dateId, Collections.emptyMap()).values());
+        instructions.sort(Comparator.comparingInt((ProductionInstruction i) -> i.getItem().getIndex())
+                .thenComparingInt(i -> i.getProduction().getPlant().getIndex()));
+
+        return instructions;
+    }
+
+    /**
+     * Get the transit instructions starting in a date id, in the order of their transits.
+     * @param dateId the date id.
+     * @return the sorted transit instructions, a new list.
+     */
+    public List<TransitInstruction> getSortedTransits(int dateId) {
+        List<TransitInstruction> instructions =
+                new ArrayList<>(transitSchedule.getOrDefault(dateId, Collections.emptyMap()).values());
+        instructions.sort(Comparator.comparingInt(i -> i.getTransit().getIndex()));
+
+        return instructions;
+    }
+
+    /**
+     * Get the supply instructions in a date id, in the order of their items and plants.
+     * @param dateId the date id.
+     * @return the sorted supply instructions, a new list.
+     */
+    public List<SupplyInstruction> getSortedSupplies(int dateId) {
+        List<SupplyInstruction> instructions =
+                new ArrayList<>(supplySchedule.getOrDefault(dateId, Collections.emptyMap()).values());
+        instructions.sort(Comparator.comparingInt((SupplyInstruction i) -> i.getItem().getIndex())
+                .thenComparingInt(i -> i.getSupply().getSecond().getIndex()));
+
+        return instructions;
+    }
+
+    public CapacityLedger getCapacityLedger() {
+        return capacityLedger;
+    }
+
     public Map<SupplyChain, Double> getSupplyChainMap() {
         return supplyChainMap;
     }
@@ -112,12 +214,424 @@ public class Schedule {
         this.supplyChainMap = supplyChainMap;
     }
 
-    public Map<Integer, Map<Item, Map<Plant, Inventory>>> getInventoryMap() {
-        return inventoryMap;
+    /**
+     * Get the supply chains of an item at all the plants that can hold it, to be activated in this schedule.
+     * They have the same item, plant and streams as the supply chains of the environment,
+     * but their activations are kept in this schedule, so the environment is not changed by the planning,
+     * and the schedules planned by different threads do not share any activation.
+     * The supply chains are created when they are first used.
+     * @param item the item.
+     * @return the supply chains of the item in this schedule, in the order of the environment.
+     */
+    public List<SupplyChain> getSupplyChains(Item item) {
+        if (activation == null) {
+            activation = state.getEnv().getSupplyNetwork().newActivation();
+            itemSupplyChains = new ArrayList<>(Collections.nCopies(state.getEnv().getItemMap().size(), null));
+        }
+
+        List<SupplyChain> chains = itemSupplyChains.get(item.getIndex());
+
+        if (chains == null) {
+            chains = new ArrayList<>();
+            for (SupplyChain chain : state.getEnv().getSupplyChains(item))
+                chains.add(activation.getChain(chain.getNode()));
+
+            chains = Collections.unmodifiableList(chains);
+            itemSupplyChains.set(item.getIndex(), chains);
+        }
+
+        return chains;
     }
 
-    public void setInventoryMap(Map<Integer, Map<Item, Map<Plant, Inventory>>> inventoryMap) {
-        this.inventoryMap = inventoryMap;
+    /**
+     * Get the activation cache of the supply chains in this schedule.
+     * The cache is created when it is first used, after the supply chains are initialised.
+     * @return the activation cache.
+     */
+    public ActivationCache getActivationCache() {
+        if (activationCache == null) {
+            activationCache = new ActivationCache(state.getEnv(), items, startDateId, endDateId);
+            addListener(activationCache);
+        }
+
+        return activationCache;
+    }
+
+    /**
+     * Release the activation cache, e.g. when the schedule is not going to be planned any more.
+     * A new cache will be created when it is used again.
+     */
+    public void releaseActivationCache() {
+        if (activationCache != null) {
+            removeListener(activationCache);
+            activationCache = null;
+        }
+    }
+
+    /**
+     * Get the index of the dates in which the items in this schedule may be supplied directly.
+     * The index is created when it is first used, and then updated with the capacity changes.
+     * @return the feasible date index.
+     */
+    public FeasibleDateIndex getFeasibleDateIndex() {
+        if (feasibleDateIndex == null) {
+            feasibleDateIndex = new FeasibleDateIndex(state.getEnv(), this);
+            addListener(feasibleDateIndex);
+        }
+
+        return feasibleDateIndex;
+    }
+
+    /**
+     * Release the feasible date index, e.g. when the schedule is not going to be planned any more.
+     */
+    public void releaseFeasibleDateIndex() {
+        if (feasibleDateIndex != null) {
+            removeListener(feasibleDateIndex);
+            feasibleDateIndex = null;
+        }
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public List<ScheduleListener> getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Subscribe a listener to the inventory and capacity changes of this schedule.
+     * @param listener the listener.
+     */
+    public void addListener(ScheduleListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unsubscribe a listener from the changes of this schedule.
+     * @param listener the listener.
+     */
+    public void removeListener(ScheduleListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publish an inventory delta to the listeners.
+     * @param item the item.
+     * @param plant the plant.
+     * @param fromDateId the date id from which the inventory is changed.
+     * @param quantity the changed quantity.
+     */
+    private void publishInventoryChange(Item item, Plant plant, int fromDateId, double quantity) {
+        if (batching) {
+            Map<Integer, Double> changes =
+                    batchInventoryMap.computeIfAbsent(new Pair<>(item, plant), k -> new TreeMap<>());
+            changes.merge(fromDateId, quantity, Double::sum);
+            return;
+        }
+
+        epoch ++;
+
+        for (ScheduleListener listener : listeners)
+            listener.inventoryChanged(epoch, item, plant, fromDateId, quantity);
+    }
+
+    /**
+     * Publish a capacity delta to the listeners.
+     * @param machineSet the machine set.
+     * @param dateId the date id.
+     * @param quantity the changed capacity.
+     */
+    private void publishCapacityChange(MachineSet machineSet, int dateId, double quantity) {
+        if (batching) {
+            Map<Integer, Double> changes = batchCapacityMap.computeIfAbsent(machineSet, k -> new TreeMap<>());
+            changes.merge(dateId, quantity, Double::sum);
+            return;
+        }
+
+        epoch ++;
+
+        for (ScheduleListener listener : listeners)
+            listener.capacityChanged(epoch, machineSet, dateId, quantity);
+    }
+
+    /**
+     * Publish an order demand delta to the listeners.
+     * @param item the item.
+     * @param dateId the due date id.
+     * @param quantity the changed demand.
+     */
+    private void publishDemandChange(Item item, int dateId, double quantity) {
+        epoch ++;
+
+        for (ScheduleListener listener : listeners)
+            listener.demandChanged(epoch, item, dateId, quantity);
+    }
+
+    /**
+     * Fork a branch from the schedule itself. The changes after the fork can be committed or discarded.
+     * @return the new branch.
+     * @throws IllegalStateException if a branch is already open.
+     */
+    public Branch fork() {
+        return fork(null);
+    }
+
+    /**
+     * Fork a branch nested in an open branch, or from the schedule itself.
+     * @param parent the parent branch, which must be the innermost open branch, or null for the schedule itself.
+     * @return the new branch.
+     * @throws IllegalStateException if the parent is not the innermost open branch,
+     * e.g. when a sibling branch of the parent is still open.
+     */
+    public Branch fork(Branch parent) {
+        if (branches.peek() != parent)
+            throw new IllegalStateException("Cannot fork while another branch is open, close it first.");
+
+        Branch branch = new Branch(trail.size(), holdingCost, productionCost, transitCost, totalDelay);
+        branches.push(branch);
+
+        return branch;
+    }
+
+    /**
+     * Commit a branch, its changes are kept in its parent branch (if any).
+     * @param branch the branch, which must be the innermost open branch.
+     * @throws IllegalStateException if the branch is not the innermost open branch.
+     */
+    public void commit(Branch branch) {
+        close(branch);
+
+        // the changes of the schedule itself cannot be undone
+        if (branches.isEmpty())
+            trail.clear();
+    }
+
+    /**
+     * Discard a branch, undo all its changes in the reverse order.
+     * The listeners are notified of the undone inventory, capacity and demand changes as new changes.
+     * @param branch the branch, which must be the innermost open branch.
+     * @throws IllegalStateException if the branch is not the innermost open branch.
+     */
+    public void discard(Branch branch) {
+        close(branch);
+
+        for (int i = trail.size()-1; i >= branch.trailSize; i--)
+            trail.remove(i).run();
+
+        holdingCost = branch.holdingCost;
+        productionCost = branch.productionCost;
+        transitCost = branch.transitCost;
+        totalDelay = branch.totalDelay;
+    }
+
+    private void close(Branch branch) {
+        if (branch == null || branches.peek() != branch)
+            throw new IllegalStateException("The branch is not the innermost open branch.");
+
+        branches.pop();
+    }
+
+    /**
+     * Get the number of open branches.
+     * @return the number of open branches, 0 if there is no branch.
+     */
+    public int getBranchDepth() {
+        return branches.size();
+    }
+
+    /**
+     * Record how to undo a change in the current branch, e.g. a change of the demands outside the schedule.
+     * Nothing is recorded if there is no open branch.
+     * @param undo the action to undo the change.
+     */
+    public void recordUndo(Runnable undo) {
+        if (!branches.isEmpty())
+            trail.add(undo);
+    }
+
+    /**
+     * Put a value into a map of the schedule, and record how to undo it.
+     */
+    private <K, V> void putValue(Map<K, V> map, K key, V value) {
+        V old = map.put(key, value);
+
+        if (branches.isEmpty())
+            return;
+
+        if (old == null)
+            trail.add(() -> map.remove(key));
+        else
+            trail.add(() -> map.put(key, old));
+    }
+
+    /**
+     * Remove a key from a map of the schedule, and record how to undo it.
+     */
+    private <K, V> void removeValue(Map<K, V> map, K key) {
+        V old = map.remove(key);
+
+        if (old != null && !branches.isEmpty())
+            trail.add(() -> map.put(key, old));
+    }
+
+    private void setQuantity(SupplyInstruction instruction, double quantity) {
+        double old = instruction.getQuantity();
+        instruction.setQuantity(quantity);
+        recordUndo(() -> instruction.setQuantity(old));
+    }
+
+    private void setQuantity(TransitInstruction instruction, double quantity) {
+        double old = instruction.getQuantity();
+        instruction.setQuantity(quantity);
+        recordUndo(() -> instruction.setQuantity(old));
+    }
+
+    private void setLots(ProductionInstruction instruction, long lots) {
+        long old = instruction.getLots();
+        instruction.setLots(lots);
+        recordUndo(() -> instruction.setLots(old));
+    }
+
+    /**
+     * Add a supply chain with its supplied quantity to the supply chain map of the schedule.
+     * @param chain the (cloned) supply chain.
+     * @param quantity the supplied quantity.
+     */
+    public void addSupplyChain(SupplyChain chain, double quantity) {
+        putValue(supplyChainMap, chain, quantity);
+    }
+
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * Begin a batch of changes. The inventory and capacity changes are still applied immediately,
+     * so each supply in the batch sees the inventories and capacities left by the earlier ones,
+     * e.g. a supply chain using the same stream through two boms.
+     * Until the batch is committed, they are only accumulated for each (item, plant, date) and
+     * (machine set, date) instead of being published to the listeners, e.g. the activation cache.
+     * A batch should only contain the supplies that were planned with the same inventories and capacities,
+     * and do not share any inventory or machine set.
+     */
+    public void beginBatch() {
+        batching = true;
+        batchInventoryMap = new LinkedHashMap<>();
+        batchCapacityMap = new LinkedHashMap<>();
+    }
+
+    /**
+     * Commit the batch of changes. The net change of each (item, plant, date) and (machine set, date)
+     * is published once to the listeners.
+     */
+    public void commitBatch() {
+        batching = false;
+
+        for (Map.Entry<Pair<Item, Plant>, Map<Integer, Double>> entry : batchInventoryMap.entrySet()) {
+            Item item = entry.getKey().getFirst();
+            Plant plant = entry.getKey().getSecond();
+
+            for (Map.Entry<Integer, Double> change : entry.getValue().entrySet()) {
+                if (change.getValue() == 0)
+                    continue;
+
+                publishInventoryChange(item, plant, change.getKey(), change.getValue());
+            }
+        }
+
+        for (Map.Entry<MachineSet, Map<Integer, Double>> entry : batchCapacityMap.entrySet()) {
+            MachineSet machineSet = entry.getKey();
+
+            for (Map.Entry<Integer, Double> change : entry.getValue().entrySet()) {
+                if (change.getValue() == 0)
+                    continue;
+
+                publishCapacityChange(machineSet, change.getKey(), change.getValue());
+            }
+        }
+
+        batchInventoryMap = null;
+        batchCapacityMap = null;
+    }
+
+    /**
+     * Apply an inventory change to the timeline and publish it, with its undo in the current branch.
+     */
+    private void applyInventoryChange(int dateId, Item item, Plant plant, double quantity) {
+        InventoryTimeline timeline = inventoryTimeline(item, plant);
+
+        if (branches.isEmpty()) {
+            timeline.add(dateId, quantity);
+        } else {
+            // the timeline is restored to its old values, instead of adding the negative quantity
+            Runnable restore = timeline.addRestorable(dateId, quantity);
+            trail.add(() -> {
+                restore.run();
+                publishInventoryChange(item, plant, dateId, -quantity);
+            });
+        }
+
+        publishInventoryChange(item, plant, dateId, quantity);
+    }
+
+    /**
+     * Apply a capacity change to a machine set and publish it, with its undo in the current branch.
+     */
+    private void applyCapacityChange(MachineSet machineSet, int dateId, double quantity) {
+        double old = capacityLedger.getRemaining(machineSet, dateId);
+        capacityLedger.addRemaining(machineSet, dateId, quantity);
+        publishCapacityChange(machineSet, dateId, quantity);
+
+        if (!branches.isEmpty()) {
+            trail.add(() -> {
+                capacityLedger.setRemaining(machineSet, dateId, old);
+                publishCapacityChange(machineSet, dateId, -quantity);
+            });
+        }
+    }
+
+    /**
+     * Get the inventory timeline of an item at a plant.
+     * @param item the item.
+     * @param plant the plant.
+     * @return the inventory timeline, or null if the plant cannot hold the item.
+     */
+    public InventoryTimeline getInventory(Item item, Plant plant) {
+        return inventories[item.getIndex()][plant.getIndex()];
+    }
+
+    /**
+     * Get the free inventory of an item at a plant in a date id.
+     * @param dateId the date id.
+     * @param item the item.
+     * @param plant the plant.
+     * @return the free inventory, 0 if the plant cannot hold the item.
+     */
+    public double getFreeInventory(int dateId, Item item, Plant plant) {
+        InventoryTimeline timeline = inventories[item.getIndex()][plant.getIndex()];
+
+        if (timeline == null)
+            return 0;
+
+        return timeline.getFree(dateId);
+    }
+
+    /**
+     * Get the total inventory of an item at a plant in a date id.
+     * @param dateId the date id.
+     * @param item the item.
+     * @param plant the plant.
+     * @return the total inventory, 0 if the plant cannot hold the item.
+     */
+    public double getTotalInventory(int dateId, Item item, Plant plant) {
+        InventoryTimeline timeline = inventories[item.getIndex()][plant.getIndex()];
+
+        if (timeline == null)
+            return 0;
+
+        return timeline.getTotal(dateId);
     }
 
     public Map<Integer, Map<Item, Double>> getSupplyMap() {
@@ -136,6 +650,114 @@ public class Schedule {
         this.accOrderDemMap = accOrderDemMap;
     }
 
+    /**
+     * Get the quantity of an item supplied to the order demands in a date id.
+     * The supply schedule does not tell the order supplies from the forecast ones,
+     * but the accumulated order demand of a date is that of the previous date,
+     * plus the order demand of the date, minus the order supply of the date.
+     * @param dateId the date id.
+     * @param item the item.
+     * @return the order supply.
+     */
+    public double getOrderSupply(int dateId, Item item) {
+        Map<Item, Double> dailyAccOrderDem = accOrderDemMap.get(dateId);
+        if (dailyAccOrderDem == null)
+            return 0;
+
+        double previous = 0;
+        if (dateId > startDateId)
+            previous = accOrderDemMap.get(dateId-1).getOrDefault(item, 0d);
+
+        return getOrderDemand(dateId, item)+previous-dailyAccOrderDem.getOrDefault(item, 0d);
+    }
+
+    /**
+     * Get the order demand of an item due in a date id, including the updates after the initialisation.
+     * @param dateId the due date id.
+     * @param item the item.
+     * @return the order demand.
+     */
+    public double getOrderDemand(int dateId, Item item) {
+        double orderDemand = item.getOrderDemandMap().getOrDefault(dateId, 0d);
+
+        Map<Item, Double> dailyUpdates = orderDemandUpdates.get(dateId);
+        if (dailyUpdates != null)
+            orderDemand += dailyUpdates.getOrDefault(item, 0d);
+
+        return orderDemand;
+    }
+
+    /**
+     * Change the order demand of an item due in a date id, e.g. when the demand is updated during the simulation.
+     * The accumulated order demands and the total delay are changed from that day on,
+     * and the change is published to the listeners.
+     * @param dateId the due date id.
+     * @param item the item.
+     * @param quantity the changed demand, negative if the demand is reduced.
+     */
+    public void addOrderDemand(int dateId, Item item, double quantity) {
+        if (dateId < startDateId || dateId >= endDateId || quantity == 0)
+            return;
+
+        // recorded first, so it is published after the maps below are restored
+        recordUndo(() -> publishDemandChange(item, dateId, -quantity));
+
+        Map<Item, Double> dailyUpdates = orderDemandUpdates.computeIfAbsent(dateId, k -> new HashMap<>());
+        putValue(dailyUpdates, item, dailyUpdates.getOrDefault(item, 0d)+quantity);
+
+        // the order demand can be supplied in any date afterwards
+        for (int d = dateId; d < endDateId; d++) {
+            Map<Item, Double> dailyAccOrderDem = accOrderDemMap.get(d);
+            putValue(dailyAccOrderDem, item, dailyAccOrderDem.getOrDefault(item, 0d)+quantity);
+
+            Map<Item, Double> dailySupply = supplyMap.get(d);
+            if (!dailySupply.containsKey(item))
+                putValue(dailySupply, item, 0d);
+        }
+
+        totalDelay += quantity*(endDateId-dateId);
+
+        publishDemandChange(item, dateId, quantity);
+    }
+
+    /**
+     * Set the capacity of a machine set in a date id, e.g. when the capacity is updated during the simulation.
+     * The capacity already occupied is kept, and the change of the remaining capacity is published to the listeners.
+     * @param machineSet the machine set.
+     * @param dateId the date id.
+     * @param capacity the new capacity.
+     */
+    public void setCapacity(MachineSet machineSet, int dateId, double capacity) {
+        if (dateId < startDateId || dateId >= endDateId)
+            return;
+
+        double oldCapacity = capacityLedger.getCapacity(machineSet, dateId);
+        double old = capacityLedger.getRemaining(machineSet, dateId);
+        capacityLedger.setCapacity(machineSet, dateId, capacity);
+        double change = capacityLedger.getRemaining(machineSet, dateId)-old;
+        publishCapacityChange(machineSet, dateId, change);
+
+        recordUndo(() -> {
+            capacityLedger.setCapacity(machineSet, dateId, oldCapacity);
+            capacityLedger.setRemaining(machineSet, dateId, old);
+            publishCapacityChange(machineSet, dateId, -change);
+        });
+    }
+
+    /**
+     * Get the quantity of an item supplied to the forecast demand in a date id.
+     * @param dateId the date id.
+     * @param item the item.
+     * @return the forecast supply.
+     */
+    public double getForecastSupply(int dateId, Item item) {
+        Map<Item, Double> dailySupply = supplyMap.get(dateId);
+        if (dailySupply == null)
+            return 0;
+
+        return dailySupply.getOrDefault(item, 0d)-getOrderSupply(dateId, item);
+    }
+
     public double getHoldingCost() {
         return holdingCost;
     }
@@ -193,7 +815,7 @@ public class Schedule {
             Map<Item, Double> forecastDemMap = new HashMap<>();
             if (state.getOrderDemMap().containsKey(dateId)) {
                 for (Item item : state.getOrderDemMap().get(dateId)) {
-                    orderDemMap.put(item, item.getOrderDemandMap().get(dateId));
+                    orderDemMap.put(item, getOrderDemand(dateId, item));
 
                     if (state.getForecastDemMap().containsKey(dateId)) {
                         if (state.getForecastDemMap().get(dateId).contains(item))
@@ -217,6 +839,23 @@ public class Schedule {
                 }
             }
 
+            // the order demands updated after the initialisation
+            Map<Item, Double> dailyUpdates = orderDemandUpdates.get(dateId);
+            if (dailyUpdates != null) {
+                for (Item item : dailyUpdates.keySet()) {
+                    double orderDemand = getOrderDemand(dateId, item);
+                    double forecastDemand = item.getForecastDemandMap().getOrDefault(dateId, 0d);
+
+                    if (orderDemand+forecastDemand > 0) {
+                        orderDemMap.put(item, orderDemand);
+                        forecastDemMap.put(item, forecastDemand);
+                    } else {
+                        orderDemMap.remove(item);
+                        forecastDemMap.remove(item);
+                    }
+                }
+            }
+
             Map<Item, Double> dailySupplyMap = supplyMap.get(dateId);
 
             for (Item item : orderDemMap.keySet()) {
@@ -256,9 +895,24 @@ public class Schedule {
      * @param state the current state.
      */
     public void initWithState(State state) {
+        initWithState(state, state.getEnv().getItemMap().values());
+    }
+
+    /**
+     * Initialise the fields of an empty schedule with the current state/problem,
+     * only for a group of items. The other items are not in the schedule.
+     * This is used to schedule the independent item groups separately.
+     * @param state the current state.
+     * @param items the items in the schedule.
+     */
+    public void initWithState(State state, Collection<Item> items) {
         this.state = state;
         this.startDateId = state.getDateIndex();
         this.endDateId = state.getEnv().getPeriod();
+        this.firstOpenDateId = startDateId;
+        this.items = items;
+
+        Set<Item> itemSet = new HashSet<>(items);
 
         // initialise all the schedules to be empty
         for (int d = startDateId; d < endDateId; d++) {
@@ -267,29 +921,24 @@ public class Schedule {
             supplySchedule.put(d, new HashMap<>());
         }
 
-        // set the inventory in the start date based on the initial inventories
-        for (int dateId = startDateId; dateId < endDateId; dateId++) {
-            Map<Item, Map<Plant, Inventory>> dailyInventoryMap = new HashMap<>();
-            for (Item item : state.getEnv().getItemMap().values()) {
-                // for each item
-                Map<Plant, Inventory> map = new HashMap<>();
-
-                for (Plant plant : item.getPlants()) {
-                    // for each plant that can hold this item
-                    map.put(plant, new Inventory(0l, 0l));
-                }
+        // the remaining capacities start from the capacities in the environment, which are not changed
+        capacityLedger = new CapacityLedger(state.getEnv(), startDateId, endDateId);
+
+        // set the inventory timelines based on the initial inventories
+        inventories = new InventoryTimeline[state.getEnv().getItemMap().size()][state.getEnv().getPlantMap().size()];
+        for (Item item : items) {
+            InventoryTimeline[] itemInventories = inventories[item.getIndex()];
 
-                for (Plant plant : item.getInitInventoryMap().keySet()) {
-                    double quantity = item.getInitInventoryMap().get(plant);
-                    Inventory inventory = map.get(plant);
-                    inventory.add(quantity);
-                    holdingCost += quantity * item.getHoldingCost();
+            for (Plant plant : item.getPlants()) {
+                // for each plant that can hold this item
+                double quantity = 0d;
+                if (item.getInitInventoryMap().containsKey(plant)) {
+                    quantity = item.getInitInventoryMap().get(plant);
+                    holdingCost += quantity * item.getHoldingCost() * (endDateId-startDateId);
                 }
 
-                dailyInventoryMap.put(item, map);
+                itemInventories[plant.getIndex()] = new InventoryTimeline(startDateId, endDateId, quantity);
             }
-
-            inventoryMap.put(dateId, dailyInventoryMap);
         }
 
         // add inventory by Raw Material Po
@@ -300,6 +949,9 @@ public class Schedule {
                 Map<Item, Double> dailyPoMap = plantPoMap.get(dateId);
 
                 for (Item item : dailyPoMap.keySet()) {
+                    if (!itemSet.contains(item))
+                        continue;
+
                     double quantity = dailyPoMap.get(item);
 
                     addInventory(dateId, item, plant, quantity);
@@ -315,6 +967,9 @@ public class Schedule {
                 Map<Item, Double> dailyWipMap = plantWipMap.get(dateId);
 
                 for (Item item : dailyWipMap.keySet()) {
+                    if (!itemSet.contains(item))
+                        continue;
+
                     double quantity = dailyWipMap.get(item);
 
                     addInventory(dateId, item, plant, quantity);
@@ -334,6 +989,9 @@ public class Schedule {
 
             if (dailyOrderDem != null) {
                 for (Item item : dailyOrderDem) {
+                    if (!itemSet.contains(item))
+                        continue;
+
                     // for the ordered demands, the supply may be any date afterwards
                     for (int d = dateId; d < endDateId; d++) {
                         supplyMap.get(d).put(item, 0d);
@@ -343,6 +1001,9 @@ public class Schedule {
 
             if (dailyForecastDem != null) {
                 for (Item item : dailyForecastDem) {
+                    if (!itemSet.contains(item))
+                        continue;
+
                     // for the forecast demands, the supply is only need for that day
                     supplyMap.get(dateId).put(item, 0d);
                 }
@@ -359,6 +1020,9 @@ public class Schedule {
 
             if (dailyOrderDem != null) {
                 for (Item item : dailyOrderDem) {
+                    if (!itemSet.contains(item))
+                        continue;
+
                     if (dailyAccOrderDem.containsKey(item)) {
                         double old = dailyAccOrderDem.get(item);
                         dailyAccOrderDem.put(item, old+item.getOrderDemandMap().get(dateId));
@@ -424,6 +1088,9 @@ public class Schedule {
 
         for (int dateId : state.getForecastDemMap().keySet()) {
             for (Item item : state.getForecastDemMap().get(dateId)) {
+                if (!itemSet.contains(item))
+                    continue;
+
 //                System.out.print(item.getForecastDemandMap().get(dateId) + " ");
 //                double old = totalDelay;
                 totalDelay += item.getForecastDemandMap().get(dateId);
@@ -443,24 +1110,7 @@ public class Schedule {
      * @param quantity the quantity to be added.
      */
     public void addInventory(int dateId, Item item, Plant plant, double quantity) {
-        for (int d = dateId; d < endDateId; d++) {
-            Map<Plant, Inventory> itemInventoryMap = inventoryMap.get(d).get(item);
-
-            Inventory old = itemInventoryMap.get(plant);
-            old.add(quantity);
-        }
-
-        // set the free inventories of all previous days to the new free inventory
-        // if a previous day's inventory is smaller than the free, the stop there.
-        double free = inventoryMap.get(dateId).get(item).get(plant).getFree();
-        for (int d = dateId-1; d >= startDateId; d--) {
-            Inventory inventory = inventoryMap.get(d).get(item).get(plant);
-
-            if (inventory.getTotal() < free)
-                break;
-
-            inventory.setFree(free);
-        }
+        applyInventoryChange(dateId, item, plant, quantity);
 
         // increase the holding cost
         holdingCost += item.getHoldingCost() * quantity * (endDateId-dateId);
@@ -476,27 +1126,28 @@ public class Schedule {
      * @param quantity the quantity to be removed.
      */
     public void removeInventory(int dateId, Item item, Plant plant, double quantity) {
-        for (int d = dateId; d < endDateId; d++) {
-            Map<Plant, Inventory> itemInventoryMap = inventoryMap.get(d).get(item);
-
-            Inventory old = itemInventoryMap.get(plant);
-            old.remove(quantity);
-        }
+        applyInventoryChange(dateId, item, plant, -quantity);
 
-        // set the free inventories of all previous days to the new free inventory
-        // if the original free inventory is larger, then it will set to the new free.
-        double free = inventoryMap.get(dateId).get(item).get(plant).getFree();
-        for (int d = dateId-1; d >= startDateId; d--) {
-            Inventory inventory = inventoryMap.get(d).get(item).get(plant);
+        // decrease the holding cost
+        holdingCost -= item.getHoldingCost()*quantity*(endDateId-dateId);
+    }
 
-            if (inventory.getFree() < free)
-                break;
+    /**
+     * Get the inventory timeline of an item at a plant to be modified.
+     * The timeline is created if the plant was not expected to hold the item.
+     * @param item the item.
+     * @param plant the plant.
+     * @return the inventory timeline.
+     */
+    private InventoryTimeline inventoryTimeline(Item item, Plant plant) {
+        InventoryTimeline timeline = inventories[item.getIndex()][plant.getIndex()];
 
-            inventory.setFree(free);
+        if (timeline == null) {
+            timeline = new InventoryTimeline(startDateId, endDateId, 0d);
+            inventories[item.getIndex()][plant.getIndex()] = timeline;
         }
 
-        // decrease the holding cost
-        holdingCost -= item.getHoldingCost()*quantity*(endDateId-dateId);
+        return timeline;
     }
 
     /**
@@ -514,11 +1165,10 @@ public class Schedule {
         Map<Pair<Item, Plant>, SupplyInstruction> dailySupplySchedule = supplySchedule.get(dateId);
         if (dailySupplySchedule.containsKey(supply)) {
             SupplyInstruction instruction = dailySupplySchedule.get(supply);
-            double old = instruction.getQuantity();
-            instruction.setQuantity(old+quantity);
+            setQuantity(instruction, instruction.getQuantity()+quantity);
         } else {
             SupplyInstruction instruction = new SupplyInstruction(dateId, dateId, item, supply, quantity);
-            dailySupplySchedule.put(supply, instruction);
+            putValue(dailySupplySchedule, supply, instruction);
         }
 
         // remove inventory
@@ -527,23 +1177,24 @@ public class Schedule {
         // update the supply map
         Map<Item, Double> itemSupplyMap = supplyMap.get(dateId);
         double old = itemSupplyMap.get(item);
-        itemSupplyMap.put(item, old+quantity);
+        putValue(itemSupplyMap, item, old+quantity);
 
         // decrease the accumulated order demand and total delay from this day on
         // if the future demand is supplied, then revert the supply
         for (int d = dateId; d < endDateId; d++) {
             Map<Item, Double> dailyAccOrderDem = accOrderDemMap.get(d);
             old = dailyAccOrderDem.get(item);
-            dailyAccOrderDem.put(item, old-quantity);
+            putValue(dailyAccOrderDem, item, old-quantity);
 
             if (old < quantity) {
                 double reverted = quantity-old;
                 // find the corresponding supply instruction
-                Map<Pair<Item, Plant>, SupplyInstruction> futureSupplySchedule = supplySchedule.get(d);
-                for (Pair<Item, Plant> pair : futureSupplySchedule.keySet()) {
+                // iterate over a sorted copy, since the reverted instructions are removed from the schedule,
+                // and the plants are reverted in index order
+                for (SupplyInstruction revertedInstruction : getSortedSupplies(d)) {
+                    Pair<Item, Plant> pair = revertedInstruction.getSupply();
                     if (pair.getFirst().equals(item)) {
                         // reduce the supply from this plant
-                        SupplyInstruction revertedInstruction = futureSupplySchedule.get(pair);
                         double revertedFromPlant = revertedInstruction.getQuantity();
 
                         if (revertedFromPlant > reverted)
@@ -576,10 +1227,10 @@ public class Schedule {
 
         double old = instruction.getQuantity();
         if (old == quantity) {
-            supplySchedule.remove(instruction);
+            removeValue(supplySchedule.get(dateId), supply);
         }
         else {
-            instruction.setQuantity(old-quantity);
+            setQuantity(instruction, old-quantity);
         }
 
         // add inventory
@@ -588,14 +1239,14 @@ public class Schedule {
         // update supply map
         Map<Item, Double> itemSupplyMap = supplyMap.get(dateId);
         old = itemSupplyMap.get(item);
-        itemSupplyMap.put(item, old-quantity);
+        putValue(itemSupplyMap, item, old-quantity);
 
         // increase the accumulated order demand and total delay from this day on
         for (int d = dateId; d < endDateId; d++) {
             Map<Item, Double> dailyAccOrderDem = accOrderDemMap.get(d);
 
             old = dailyAccOrderDem.get(item);
-            dailyAccOrderDem.put(item, old+quantity);
+            putValue(dailyAccOrderDem, item, old+quantity);
         }
 
         totalDelay += quantity * (endDateId-dateId);
@@ -615,11 +1266,10 @@ public class Schedule {
         Map<Pair<Item, Plant>, SupplyInstruction> dailySupplySchedule = supplySchedule.get(dateId);
         if (dailySupplySchedule.containsKey(supply)) {
             SupplyInstruction instruction = dailySupplySchedule.get(supply);
-            double old = instruction.getQuantity();
-            instruction.setQuantity(old+quantity);
+            setQuantity(instruction, instruction.getQuantity()+quantity);
         } else {
             SupplyInstruction instruction = new SupplyInstruction(dateId, dateId, item, supply, quantity);
-            dailySupplySchedule.put(supply, instruction);
+            putValue(dailySupplySchedule, supply, instruction);
         }
 
         // remove inventory
@@ -628,7 +1278,7 @@ public class Schedule {
         // update the supply map
         Map<Item, Double> itemSupplyMap = supplyMap.get(dateId);
         double old = itemSupplyMap.get(item);
-        itemSupplyMap.put(item, old+quantity);
+        putValue(itemSupplyMap, item, old+quantity);
 
         // decrease the total delay by the quantity
         totalDelay -= quantity;
@@ -647,10 +1297,10 @@ public class Schedule {
 
         double old = instruction.getQuantity();
         if (old == quantity) {
-            supplySchedule.remove(instruction);
+            removeValue(supplySchedule.get(dateId), supply);
         }
         else {
-            instruction.setQuantity(old-quantity);
+            setQuantity(instruction, old-quantity);
         }
 
         // add inventory
@@ -659,7 +1309,7 @@ public class Schedule {
         // update the supply map
         Map<Item, Double> itemSupplyMap = supplyMap.get(dateId);
         old = itemSupplyMap.get(item);
-        itemSupplyMap.put(item, old-quantity);
+        putValue(itemSupplyMap, item, old-quantity);
 
         // increase the total delay
         totalDelay += quantity;
@@ -678,9 +1328,8 @@ public class Schedule {
         double remaining = itemOrderDemand;
 
         // check the current inventory of the item in different plants
-        Map<Plant, Inventory> itemInventoryMap = inventoryMap.get(dateId).get(item);
-        for (Plant plant : itemInventoryMap.keySet()) {
-            double inventory = itemInventoryMap.get(plant).getFree();
+        for (Plant plant : item.getPlants()) {
+            double inventory = getFreeInventory(dateId, item, plant);
 
             if (inventory == 0)
                 continue;
@@ -712,9 +1361,8 @@ public class Schedule {
         double remaining = itemForecastDemand;
 
         // check the current inventory of the item in different plants
-        Map<Plant, Inventory> itemInventoryMap = inventoryMap.get(dateId).get(item);
-        for (Plant plant : itemInventoryMap.keySet()) {
-            double inventory = itemInventoryMap.get(plant).getFree();
+        for (Plant plant : item.getPlants()) {
+            double inventory = getFreeInventory(dateId, item, plant);
 
             if (inventory == 0)
                 continue;
@@ -752,16 +1400,20 @@ public class Schedule {
         Map<Production, ProductionInstruction> dailyProdSchedule = productionSchedule.get(dateId);
         if (dailyProdSchedule.containsKey(production)) {
             ProductionInstruction instruction = dailyProdSchedule.get(production);
-            long old = instruction.getLots();
-            instruction.setLots(old+lots);
+            setLots(instruction, instruction.getLots()+lots);
         } else {
             ProductionInstruction instruction =
                     new ProductionInstruction(prodStartDate, prodEndDate, item, production, lots);
-            dailyProdSchedule.put(production, instruction);
+            putValue(dailyProdSchedule, production, instruction);
         }
 
         // remove the capacity of the machines in the production start date
-        item.reduceCapacity(plant, prodStartDate, quantity);
+        for (MachineSet machineSet : item.getMachineSets(plant)) {
+            double rate = item.getRate(machineSet.getCapacityType());
+
+            if (rate > 0)
+                applyCapacityChange(machineSet, prodStartDate, -rate*quantity);
+        }
 
         // remove the inventory of the boms when the production is finished
         for (BomComponent bomComponent : production.getBom()) {
@@ -797,12 +1449,11 @@ public class Schedule {
         Map<Transit, TransitInstruction> dailyTranSchedule = transitSchedule.get(dateId);
         if (dailyTranSchedule.containsKey(transit)) {
             TransitInstruction instruction = dailyTranSchedule.get(transit);
-            double old = instruction.getQuantity();
-            instruction.setQuantity(old+quantity);
+            setQuantity(instruction, instruction.getQuantity()+quantity);
         } else {
             TransitInstruction instruction =
                     new TransitInstruction(tranStartDate, tranEndDate, item, transit, quantity);
-            dailyTranSchedule.put(transit, instruction);
+            putValue(dailyTranSchedule, transit, instruction);
         }
 
         // remove the inventory of the item in the source plant
@@ -817,4 +1468,185 @@ public class Schedule {
         // add the transit cost
         transitCost += transit.getCost()*quantity;
     }
+
+    /**
+     * Remove some lots of a production from the schedule in a specific start date id,
+     * i.e. undo the changes of adding them, e.g. when the production cannot be executed as planned.
+     * @param dateId the start date id.
+     * @param production the production.
+     * @param lots the lots to be removed, no more than the lots of the production in that date.
+     */
+    public void removeProduction(int dateId, Production production, long lots) {
+        int prodStartDate = dateId;
+        int prodEndDate = prodStartDate+production.getLeadTime();
+        Item item = production.getItem();
+        Plant plant = production.getPlant();
+        double quantity = production.getLotSize()*lots;
+
+        // remove the instruction
+        Map<Production, ProductionInstruction> dailyProdSchedule = productionSchedule.get(dateId);
+        ProductionInstruction instruction = dailyProdSchedule.get(production);
+        if (instruction.getLots() == lots)
+            removeValue(dailyProdSchedule, production);
+        else
+            setLots(instruction, instruction.getLots()-lots);
+
+        // release the capacity of the machines in the production start date
+        for (MachineSet machineSet : item.getMachineSets(plant)) {
+            double rate = item.getRate(machineSet.getCapacityType());
+
+            if (rate > 0)
+                applyCapacityChange(machineSet, prodStartDate, rate*quantity);
+        }
+
+        // restore the inventory of the boms
+        for (BomComponent bomComponent : production.getBom()) {
+            Item component = bomComponent.getMaterial();
+            double bomQuantity = quantity*bomComponent.getQuantity();
+            addInventory(prodEndDate, component, plant, bomQuantity);
+
+            holdingCost -= component.getHoldingCost()*bomQuantity*(prodEndDate-prodStartDate);
+        }
+
+        // remove the inventory of the produced item
+        removeInventory(prodEndDate, item, plant, quantity);
+
+        productionCost -= production.getCost()*lots*production.getLotSize();
+    }
+
+    /**
+     * Remove some quantity of a transit from the schedule in a specific start date id,
+     * i.e. undo the changes of adding it, e.g. when the transit cannot be executed as planned.
+     * @param dateId the start date id.
+     * @param transit the transit.
+     * @param quantity the quantity to be removed, no more than the quantity of the transit in that date.
+     */
+    public void removeTransit(int dateId, Transit transit, double quantity) {
+        int tranStartDate = dateId;
+        int tranEndDate = tranStartDate+transit.getLeadTime();
+        Item item = transit.getItem();
+
+        // remove the instruction
+        Map<Transit, TransitInstruction> dailyTranSchedule = transitSchedule.get(dateId);
+        TransitInstruction instruction = dailyTranSchedule.get(transit);
+        if (instruction.getQuantity() == quantity)
+            removeValue(dailyTranSchedule, transit);
+        else
+            setQuantity(instruction, instruction.getQuantity()-quantity);
+
+        // move the inventory back to the source plant
+        addInventory(tranStartDate, item, transit.getFromPlant(), quantity);
+        removeInventory(tranEndDate, item, transit.getToPlant(), quantity);
+
+        holdingCost -= item.getHoldingCost()*quantity*(tranEndDate-tranStartDate);
+        transitCost -= transit.getCost()*quantity;
+    }
+
+    /**
+     * Merge a schedule of another item group into this schedule.
+     * The two schedules must have the same state and period, and disjoint items.
+     * The instructions, inventories, capacities, supplies and costs of the other schedule are added to this one.
+     * The merge is a single change of this schedule: the epoch is increased once, and the merged inventory
+     * and capacity changes are published to the listeners with that epoch.
+     * @param other the other schedule.
+     */
+    public void merge(Schedule other) {
+        for (int d = startDateId; d < endDateId; d++) {
+            productionSchedule.get(d).putAll(other.productionSchedule.get(d));
+            transitSchedule.get(d).putAll(other.transitSchedule.get(d));
+            supplySchedule.get(d).putAll(other.supplySchedule.get(d));
+            supplyMap.get(d).putAll(other.supplyMap.get(d));
+            accOrderDemMap.get(d).putAll(other.accOrderDemMap.get(d));
+        }
+
+        supplyChainMap.putAll(other.supplyChainMap);
+
+        // the cached activations and the feasible dates do not cover the merged items
+        releaseActivationCache();
+        releaseFeasibleDateIndex();
+
+        epoch ++;
+
+        // published in the order of the machine sets, items and plants, not of the environment maps
+        List<MachineSet> machineSets = new ArrayList<>(state.getEnv().getMachineSetMap().values());
+        machineSets.sort(Comparator.comparingInt(MachineSet::getIndex));
+        List<Plant> plants = new ArrayList<>(state.getEnv().getPlantMap().values());
+        plants.sort(Comparator.comparingInt(Plant::getIndex));
+
+        for (MachineSet machineSet : machineSets) {
+            for (int d = startDateId; d < endDateId; d++) {
+                double used = other.capacityLedger.getUsed(machineSet, d);
+
+                if (used == 0)
+                    continue;
+
+                for (ScheduleListener listener : listeners)
+                    listener.capacityChanged(epoch, machineSet, d, -used);
+            }
+        }
+
+        capacityLedger.merge(other.capacityLedger);
+
+        List<Item> mergedItems = new ArrayList<>(items);
+        for (Item item : other.items) {
+            for (Plant plant : plants)
+                publishMergedInventory(item, plant, other.inventories[item.getIndex()][plant.getIndex()]);
+
+            inventories[item.getIndex()] = other.inventories[item.getIndex()];
+            mergedItems.add(item);
+        }
+        items = mergedItems;
+
+        holdingCost += other.holdingCost;
+        productionCost += other.productionCost;
+        transitCost += other.transitCost;
+        totalDelay += other.totalDelay;
+    }
+
+    /**
+     * Publish the change of the inventory of an item at a plant replaced by a merge, with the epoch of the merge.
+     * The difference between the old and the merged inventory is published as a delta from each date it changes.
+     * @param item the item.
+     * @param plant the plant.
+     * @param merged the merged inventory timeline, or null if there is none.
+     */
+    private void publishMergedInventory(Item item, Plant plant, InventoryTimeline merged) {
+        InventoryTimeline timeline = inventories[item.getIndex()][plant.getIndex()];
+
+        if (listeners.isEmpty() || (merged == null && timeline == null))
+            return;
+
+        double previous = 0;
+
+        for (int d = startDateId; d < endDateId; d++) {
+            double diff = (merged == null ? 0 : merged.getTotal(d))-(timeline == null ? 0 : timeline.getTotal(d));
+
+            if (diff != previous) {
+                for (ScheduleListener listener : listeners)
+                    listener.inventoryChanged(epoch, item, plant, d, diff-previous);
+            }
+
+            previous = diff;
+        }
+    }
+
+    /**
+     * A branch of the schedule, with the start of its changes in the trail,
+     * and the costs to be restored when it is discarded.
+     */
+    public static class Branch {
+        private int trailSize;
+        private double holdingCost;
+        private double productionCost;
+        private double transitCost;
+        private double totalDelay;
+
+        private Branch(int trailSize, double holdingCost, double productionCost, double transitCost, double totalDelay) {
+            this.trailSize = trailSize;
+            this.holdingCost = holdingCost;
+            this.productionCost = productionCost;
+            this.transitCost = transitCost;
+            this.totalDelay = totalDelay;
+        }
+    }
 }
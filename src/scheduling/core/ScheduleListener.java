@@ -0,0 +1,46 @@
+package scheduling.core;
+
+import scheduling.core.input.Item;
+import scheduling.core.input.MachineSet;
+import scheduling.core.input.Plant;
+
+/**
+ * A schedule listener subscribes to the changes of a schedule.
+ * The schedule publishes every inventory, capacity and demand delta to its listeners
+ * right after the change, together with the epoch (number of changes so far) of the schedule.
+ * A merge of another schedule is a single change, all its deltas are published with the same epoch.
+ * The listeners can then update their own data incrementally, instead of recomputing from scratch.
+ */
+
+public abstract class ScheduleListener {
+    /**
+     * The inventory of an item at a plant is changed by a quantity from a date id on.
+     * @param epoch the epoch of the schedule after the change.
+     * @param item the item.
+     * @param plant the plant.
+     * @param fromDateId the date id from which the inventory is changed.
+     * @param quantity the changed quantity, negative if the inventory is removed.
+     */
+    public void inventoryChanged(long epoch, Item item, Plant plant, int fromDateId, double quantity) {
+    }
+
+    /**
+     * The remaining capacity of a machine set is changed by a quantity in a date id.
+     * @param epoch the epoch of the schedule after the change.
+     * @param machineSet the machine set.
+     * @param dateId the date id.
+     * @param quantity the changed capacity, negative if the capacity is occupied.
+     */
+    public void capacityChanged(long epoch, MachineSet machineSet, int dateId, double quantity) {
+    }
+
+    /**
+     * The order demand of an item due in a date id is changed by a quantity, e.g. by a demand update.
+     * @param epoch the epoch of the schedule after the change.
+     * @param item the item.
+     * @param dateId the due date id.
+     * @param quantity the changed demand, negative if the demand is reduced.
+     */
+    public void demandChanged(long epoch, Item item, int dateId, double quantity) {
+    }
+}
@@ -2,7 +2,6 @@ package scheduling.core;
 
 import org.apache.commons.math3.util.Pair;
 import scheduling.core.input.*;
-import scheduling.simulation.State;
 
 import java.util.*;
 
@@ -40,6 +39,13 @@ public class SupplyChain implements Comparable<SupplyChain> {
 
     protected double priority;
 
+    // the supply chains of a schedule keep their activation (the date, the active streams, the quantities,
+    // the lead time, the costs and the length) in the activation of the schedule, instead of in the fields above,
+    // so that the supply chains of the environment are not changed, and can be shared by the threads
+    protected SupplyNetwork network; // the supply network compiled from the supply chain, null for the cloned ones
+    protected int node; // the node of the supply chain in the supply network
+    protected SupplyNetwork.Activation activation; // the activation of the schedule, null for the other ones
+
     public SupplyChain(Item item, Plant plant) {
         this.item = item;
         this.plant = plant;
@@ -47,20 +53,43 @@ public class SupplyChain implements Comparable<SupplyChain> {
         prodActive = false;
 
         // initialise the production stream, if there exists
-        bomStreamMap = new HashMap<>();
-        production = item.getProductionMap().get(plant);
+        bomStreamMap = new LinkedHashMap<>();
+        production = item.getProduction(plant);
         // the bom stream will be linked globally later on
 
         // the transit stream map will be linked globally later on
-        transitStreamMap = new HashMap<>();
+        transitStreamMap = new LinkedHashMap<>();
+    }
+
+    /**
+     * Construct the supply chain of a node in an activation, with the item, plant and production
+     * of the supply chain of the node in the network. The streams are linked by the network.
+     * @param template the supply chain in the network.
+     * @param activation the activation.
+     */
+    SupplyChain(SupplyChain template, SupplyNetwork.Activation activation) {
+        item = template.item;
+        plant = template.plant;
+        production = template.production;
+        bomStreamMap = new LinkedHashMap<>();
+        transitStreamMap = new LinkedHashMap<>();
+        network = template.network;
+        node = template.node;
+        this.activation = activation;
     }
 
     public int getDateId() {
+        if (activation != null)
+            return activation.dates[node];
+
         return dateId;
     }
 
     public void setDateId(int dateId) {
-        this.dateId = dateId;
+        if (activation != null)
+            activation.dates[node] = dateId;
+        else
+            this.dateId = dateId;
     }
 
     public Item getItem() {
@@ -80,43 +109,73 @@ public class SupplyChain implements Comparable<SupplyChain> {
     }
 
     public boolean isActive() {
+        if (activation != null)
+            return activation.active[node];
+
         return active;
     }
 
     public void setActive(boolean active) {
-        this.active = active;
+        if (activation != null)
+            activation.active[node] = active;
+        else
+            this.active = active;
     }
 
     public boolean isProdActive() {
+        if (activation != null)
+            return activation.prodActive[node];
+
         return prodActive;
     }
 
     public void setProdActive(boolean prodActive) {
-        this.prodActive = prodActive;
+        if (activation != null)
+            activation.prodActive[node] = prodActive;
+        else
+            this.prodActive = prodActive;
     }
 
     public double getMaxQuantity() {
+        if (activation != null)
+            return activation.maxQuantities[node];
+
         return maxQuantity;
     }
 
     public void setMaxQuantity(double maxQuantity) {
-        this.maxQuantity = maxQuantity;
+        if (activation != null)
+            activation.maxQuantities[node] = maxQuantity;
+        else
+            this.maxQuantity = maxQuantity;
     }
 
     public double getInventory() {
+        if (activation != null)
+            return activation.inventories[node];
+
         return inventory;
     }
 
     public void setInventory(double inventory) {
-        this.inventory = inventory;
+        if (activation != null)
+            activation.inventories[node] = inventory;
+        else
+            this.inventory = inventory;
     }
 
     public long getMaxProdQuantity() {
+        if (activation != null)
+            return activation.maxProdQuantities[node];
+
         return maxProdQuantity;
     }
 
     public void setMaxProdQuantity(long maxProdQuantity) {
-        this.maxProdQuantity = maxProdQuantity;
+        if (activation != null)
+            activation.maxProdQuantities[node] = maxProdQuantity;
+        else
+            this.maxProdQuantity = maxProdQuantity;
     }
 
     public Map<Transit, SupplyChain> getTransitStreamMap() {
@@ -144,51 +203,87 @@ public class SupplyChain implements Comparable<SupplyChain> {
     }
 
     public int getLeadTime() {
+        if (activation != null)
+            return activation.leadTimes[node];
+
         return leadTime;
     }
 
     public void setLeadTime(int leadTime) {
-        this.leadTime = leadTime;
+        if (activation != null)
+            activation.leadTimes[node] = leadTime;
+        else
+            this.leadTime = leadTime;
     }
 
     public double getHoldingCost() {
+        if (activation != null)
+            return activation.holdingCosts[node];
+
         return holdingCost;
     }
 
     public void setHoldingCost(double holdingCost) {
-        this.holdingCost = holdingCost;
+        if (activation != null)
+            activation.holdingCosts[node] = holdingCost;
+        else
+            this.holdingCost = holdingCost;
     }
 
     public double getProductionCost() {
+        if (activation != null)
+            return activation.productionCosts[node];
+
         return productionCost;
     }
 
     public void setProductionCost(double productionCost) {
-        this.productionCost = productionCost;
+        if (activation != null)
+            activation.productionCosts[node] = productionCost;
+        else
+            this.productionCost = productionCost;
     }
 
     public double getTransitCost() {
+        if (activation != null)
+            return activation.transitCosts[node];
+
         return transitCost;
     }
 
     public void setTransitCost(double transitCost) {
-        this.transitCost = transitCost;
+        if (activation != null)
+            activation.transitCosts[node] = transitCost;
+        else
+            this.transitCost = transitCost;
     }
 
     public double getTotalCost() {
+        if (activation != null)
+            return activation.totalCosts[node];
+
         return totalCost;
     }
 
     public void setTotalCost(double totalCost) {
-        this.totalCost = totalCost;
+        if (activation != null)
+            activation.totalCosts[node] = totalCost;
+        else
+            this.totalCost = totalCost;
     }
 
     public int getLength() {
+        if (activation != null)
+            return activation.lengths[node];
+
         return length;
     }
 
     public void setLength(int length) {
-        this.length = length;
+        if (activation != null)
+            activation.lengths[node] = length;
+        else
+            this.length = length;
     }
 
     public double getPriority() {
@@ -199,6 +294,22 @@ public class SupplyChain implements Comparable<SupplyChain> {
         this.priority = priority;
     }
 
+    public SupplyNetwork getNetwork() {
+        return network;
+    }
+
+    void setNetwork(SupplyNetwork network) {
+        this.network = network;
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    void setNode(int node) {
+        this.node = node;
+    }
+
     /**
      * To activate the streams of this supply chain,
      * given a schedule and the date to provide the item.
@@ -206,150 +317,52 @@ public class SupplyChain implements Comparable<SupplyChain> {
      * and the lead time of this supply chain.
      * Then, it will activate the streams with the smallest lead time.
      * It will also calculate the length of the supply chain
+     * - if there is free inventory in the plant, only the inventory stream is active, with the lead time 0.
+     * - otherwise, each transit and bom stream that can start in time is activated in its start date,
+     *   and the production stream can provide as many as the capacity and all the bom streams allow.
+     * - the supply chains in a loop of transits are activated together in the latest date they can be reached,
+     *   and a transit stream in the loop is only active on a shortest lead time path.
+     * The streams are activated by the supply network of the environment, without recursion,
+     * into the activation this supply chain belongs to. Only the supply chains of a schedule have one,
+     * see {@link Schedule#getSupplyChains(Item)}.
      *
      * @param schedule the schedule.
      * @param dateId the date id.
-     * @param visited the visited supply chains to be skipped.
      */
-    public void activateStreams(Schedule schedule, int dateId, Set<SupplyChain> visited) {
-        if (visited.contains(this))
-            return;
-
-        visited.add(this);
-
-        // reset the activation status
-        active = false;
-        prodActive = false;
-
-        // check whether there is direct supply from the plant's inventory
-        inventory = schedule.getInventoryMap().get(dateId).get(item).get(plant).getFree();
-
-        if (inventory > 0) {
-            // if there is direct supply, then do not consider any other
-            // the lead time becomes 0
-            active = true;
-            this.dateId = dateId;
-            leadTime = 0;
-            maxQuantity = inventory;
-        } else {
-            leadTime = Integer.MAX_VALUE;
-            // there is no supply, check transit and production streams
-            for (Transit transit : transitStreamMap.keySet()) {
-                int transitStartTime = dateId-transit.getLeadTime();
+    public void activateStreams(Schedule schedule, int dateId) {
+        if (activation == null)
+            throw new IllegalStateException("Only the supply chains of a schedule can be activated: " + this);
 
-                // the transit cannot start in time, skip.
-                if (transitStartTime < schedule.getStartDateId())
-                    continue;
-
-                SupplyChain chain = transitStreamMap.get(transit);
-                chain.activateStreams(schedule, transitStartTime, visited);
-
-                if (chain.getMaxQuantity() == 0) {
-                    // if this transit stream cannot provide any, do nothing
-                    // the stream will not be active
-                    continue;
-                }
-
-                int totalLeadTime = chain.getLeadTime()+transit.getLeadTime();
-
-                if (leadTime > totalLeadTime) {
-                    // find a new stream with smaller lead time
-                    leadTime = totalLeadTime;
-                }
-            }
-
-            int prodLeadTime = Integer.MAX_VALUE;
-
-            if (production != null) {
-                int prodStartTime = dateId-production.getLeadTime();
-
-                // the production has to be started in time.
-                if (prodStartTime >= schedule.getStartDateId()) {
-                    maxProdQuantity = production.maxQuantityFromCapacity(prodStartTime);
-                    if (maxProdQuantity > production.getMaxProduction())
-                        maxProdQuantity = production.getMaxProduction();
-
-                    for (BomComponent component : bomStreamMap.keySet()) {
-                        SupplyChain chain = bomStreamMap.get(component);
-                        chain.activateStreams(schedule, prodStartTime, visited);
-
-                        long q = (long)(chain.getMaxQuantity()/component.getQuantity());
-
-                        if (maxProdQuantity > q)
-                            maxProdQuantity = q;
-
-                        if (maxProdQuantity == 0) {
-                            // if a stream cannot provide sufficient bom component, stop
-                            // the production stream will not be active
-                            break;
-                        }
-                    }
-
-                    if (maxProdQuantity > 0) {
-                        prodLeadTime = production.getLeadTime();
-                        for (SupplyChain chain : bomStreamMap.values()) {
-                            int totalLeadTime = chain.getLeadTime()+production.getLeadTime();
-
-                            if (prodLeadTime < totalLeadTime)
-                                prodLeadTime = totalLeadTime;
-                        }
-
-                        if (leadTime > prodLeadTime)
-                            leadTime = prodLeadTime;
-                    }
-                }
-            }
-
-            // activate the streams
-            maxQuantity = 0d;
-            if (leadTime < Integer.MAX_VALUE) {
-                active = true;
-                this.dateId = dateId;
-
-                // active all the streams with smallest lead time
-                for (Transit transit : transitStreamMap.keySet()) {
-                    SupplyChain chain = transitStreamMap.get(transit);
-
-                    if (chain.getMaxQuantity() == 0)
-                        continue;
+        network.activate(activation, node, schedule, dateId);
+    }
 
-                    if (chain.getLeadTime()+transit.getLeadTime() == leadTime) {
-                        maxQuantity += chain.getMaxQuantity();
-                        chain.setActive(true);
-                    }
-                }
+    /**
+     * Relink the supply chain and its active streams to the items and plants of another environment,
+     * e.g. when the preplanned schedule was made in an environment reloaded since.
+     * It is not needed when the environment is the same, which is the usual case in a simulation.
+     * @param env the environment.
+     */
+    public void relink(Environment env) {
+        item = env.getItemMap().get(item.getId());
+        plant = env.getPlantMap().get(plant.getName());
 
-                if (prodLeadTime == leadTime) {
-                    maxQuantity += maxProdQuantity;
-                    // activate the production stream and all the bom streams
-                    prodActive = true;
+        for (SupplyChain chain : transitStreamMap.values())
+            chain.relink(env);
 
-                    for (SupplyChain chain : bomStreamMap.values()) {
-                        chain.setActive(true);
-                    }
-                }
-            }
-        }
-
-        calcLength();
-        calcCosts(schedule, dateId, new HashSet<>());
+        for (SupplyChain chain : bomStreamMap.values())
+            chain.relink(env);
     }
 
     /**
-     * Reactivate the supply chain based on its current active streams given a schedule,
-     * under the new state.
+     * Reactivate the supply chain based on its current active streams given a schedule.
+     * The item and plant of the chain must be in the environment of the schedule, see {@link #relink(Environment)}.
      * @param schedule the schedule.
-     * @param newState the new state.
      */
-    public void reactivate(Schedule schedule, State newState) {
-        // relink the item and plant to the objects in the new state
-        item = newState.getEnv().getItemMap().get(item.getId());
-        plant = newState.getEnv().getPlantMap().get(plant.getName());
-
+    public void reactivate(Schedule schedule) {
         if (inventory > 0) {
             // the preplanned is to directly supply from the inventory
             // check the inventory in the new environment
-            inventory = schedule.getInventoryMap().get(dateId).get(item).get(plant).getFree();
+            inventory = schedule.getFreeInventory(dateId, item, plant);
 
             maxQuantity = inventory;
         } else {
@@ -360,7 +373,7 @@ public class SupplyChain implements Comparable<SupplyChain> {
             List<SupplyChain> removed = new ArrayList<>();
             for (SupplyChain chain : transitStreamMap.values()) {
                 // reactivate each transit stream
-                chain.reactivate(schedule, newState);
+                chain.reactivate(schedule);
 
                 if (!chain.isActive()) {
                     removed.add(chain);
@@ -370,18 +383,18 @@ public class SupplyChain implements Comparable<SupplyChain> {
                 maxQuantity += chain.getMaxQuantity();
             }
 
-            transitStreamMap.remove(removed);
+            transitStreamMap.values().removeAll(removed);
 
             if (prodActive) {
                 int prodStartTime = dateId-production.getLeadTime();
                 // reactive the production stream
-                maxProdQuantity = production.maxQuantityFromCapacity(prodStartTime);
+                maxProdQuantity = production.maxQuantityFromCapacity(schedule.getCapacityLedger(), prodStartTime);
                 if (maxProdQuantity > production.getMaxProduction())
                     maxProdQuantity = production.getMaxProduction();
 
                 for (BomComponent component : bomStreamMap.keySet()) {
                     SupplyChain chain = bomStreamMap.get(component);
-                    chain.reactivate(schedule, newState);
+                    chain.reactivate(schedule);
 
                     long q = (long)(chain.getMaxQuantity()/component.getQuantity());
 
@@ -446,16 +459,50 @@ public class SupplyChain implements Comparable<SupplyChain> {
 
     /**
      * Calculate the costs (holding, production, transit and total) for providing one item by the supply chain.
+     * The supply chains of a schedule are evaluated by the network when they are activated,
+     * this is for the cloned supply chains when they are reactivated.
+     * The streams are evaluated with an explicit stack before the supply chains they supply.
      * @param schedule the schedule.
      * @param dateId the date id to provide the item.
      * @param visited the visited supply chains, that can be skipped.
      */
     public void calcCosts(Schedule schedule, int dateId, Set<SupplyChain> visited) {
-        if (visited.contains(this))
+        if (!visited.add(this))
             return;
 
-        visited.add(this);
+        Deque<SupplyChain> stack = new ArrayDeque<>();
+        Set<SupplyChain> expanded = new HashSet<>();
+        stack.push(this);
+
+        while (!stack.isEmpty()) {
+            SupplyChain chain = stack.peek();
 
+            if (expanded.add(chain) && chain.isActive()) {
+                // evaluate the active streams first
+                if (chain.isProdActive()) {
+                    for (SupplyChain bomStream : chain.getBomStreamMap().values()) {
+                        if (visited.add(bomStream))
+                            stack.push(bomStream);
+                    }
+                }
+
+                Map.Entry<Transit, SupplyChain> transitEntry = chain.firstActiveTransit();
+                if (transitEntry != null && visited.add(transitEntry.getValue()))
+                    stack.push(transitEntry.getValue());
+
+                if (stack.peek() != chain)
+                    continue;
+            }
+
+            stack.pop();
+            chain.calcOwnCosts(schedule, dateId);
+        }
+    }
+
+    /**
+     * Calculate the costs of the supply chain from the costs of its active streams, which are already calculated.
+     */
+    private void calcOwnCosts(Schedule schedule, int dateId) {
         holdingCost = 0d;
         productionCost = 0d;
         transitCost = 0d;
@@ -473,144 +520,410 @@ public class SupplyChain implements Comparable<SupplyChain> {
 
             for (BomComponent component : bomStreamMap.keySet()) {
                 SupplyChain chain = bomStreamMap.get(component);
-                chain.calcCosts(schedule, dateId, visited);
                 // the holding cost changed by supplying the bom component
                 holdingCost += chain.getHoldingCost()*component.getQuantity();
                 productionCost += chain.getProductionCost()*component.getQuantity();
             }
         }
 
-        for (Transit transit : transitStreamMap.keySet()) {
-            SupplyChain chain = transitStreamMap.get(transit);
-            // to avoid loop
-//            if (chain.length > length)
-//                continue;
-
-            if (chain.isActive()) {
-                chain.calcCosts(schedule, dateId, visited);
-                holdingCost += chain.getHoldingCost();
-                transitCost = chain.getTransitCost()+transit.getCost();
-                break;
-            }
+        // only the first active transit stream is counted
+        Map.Entry<Transit, SupplyChain> transitEntry = firstActiveTransit();
+        if (transitEntry != null) {
+            SupplyChain chain = transitEntry.getValue();
+            holdingCost += chain.getHoldingCost();
+            transitCost = chain.getTransitCost()+transitEntry.getKey().getCost();
         }
 
         totalCost = holdingCost+productionCost+transitCost;
     }
 
+    private Map.Entry<Transit, SupplyChain> firstActiveTransit() {
+        for (Map.Entry<Transit, SupplyChain> entry : transitStreamMap.entrySet()) {
+            if (entry.getValue().isActive())
+                return entry;
+        }
+
+        return null;
+    }
+
     /**
      * Add the supply chain that provide a quantity of item to the schedule.
      * It first check direct supply, then production stream, then transit streams.
+     * The streams are added with an explicit stack of supply steps, in the same order as a recursion,
+     * i.e. the bom streams before their production, and each transit stream before its transit.
+     * A production or transit only takes what its streams actually provided, which can be less than
+     * their activation promised when a shared stream was last activated in another date.
      * @param dateId the date id to provide the item.
      * @param quantity the quantity of the item provided.
      * @param schedule the schedule.
+     * @return the quantity actually provided, no more than the given quantity.
      */
-    public void addToSchedule(int dateId, double quantity, Schedule schedule) {
+    public double addToSchedule(int dateId, double quantity, Schedule schedule) {
 //        System.out.println("add supply chain " + toString() + " in day " + dateId);
-        double left = quantity;
-        double provideQuantity;
-
-        // first try direct supply from inventory
-        if (inventory > 0) {
-            provideQuantity = inventory;
+        Deque<SupplyStep> steps = new ArrayDeque<>();
+        SupplyStep root = new SupplyStep(this, dateId, quantity, schedule);
+        steps.push(root);
 
-            if (provideQuantity > left)
-                provideQuantity = left;
+        while (!steps.isEmpty()) {
+            SupplyStep next = steps.peek().next(schedule);
 
-            left -= provideQuantity;
+            if (next == null)
+                steps.pop();
+            else
+                steps.push(next);
         }
 
-        if (left == 0)
-            return;
+        return root.provided();
+    }
 
-        // then try production stream
-        if (prodActive) {
-            provideQuantity = maxProdQuantity;
+    /**
+     * Whether a transit stream is active for this supply chain.
+     * The supply chains of a schedule keep the active transit streams of their last activation,
+     * since a supply chain in a loop of transits can be active while its stream back is not,
+     * and a stream shared with another path can be active while the activation of this one did not choose it.
+     * @param i the index of the transit stream in the transit stream map.
+     * @param stream the supply chain of the transit stream.
+     * @return true if the transit stream is active.
+     */
+    public boolean isActiveTransit(int i, SupplyChain stream) {
+        if (activation == null)
+            return stream.isActive();
+
+        return network.isActiveTransit(activation, node, i);
+    }
+
+    /**
+     * Collect the supply chains and machine sets used by the active streams of this supply chain,
+     * i.e. the inventories and capacities changed when it is added to the schedule.
+     * @param reached the supply chains used, including this one.
+     * @param machineSets the machine sets used by the active productions.
+     */
+    public void reachActive(Set<SupplyChain> reached, Set<MachineSet> machineSets) {
+        Deque<SupplyChain> stack = new ArrayDeque<>();
+        stack.push(this);
+        reached.add(this);
+
+        while (!stack.isEmpty()) {
+            SupplyChain current = stack.pop();
 
-            if (provideQuantity > left)
-                provideQuantity = left;
+            // the direct supply does not use any other stream
+            if (!current.isActive() || current.getInventory() > 0)
+                continue;
 
-            // calculate the production lots and add it to the schedule
-            long lots = production.lots(provideQuantity, maxProdQuantity);
-            long prodQuantity = lots*production.getLotSize();
-            int prodStartDateId = dateId-production.getLeadTime();
+            if (current.isProdActive()) {
+                machineSets.addAll(Arrays.asList(current.getProduction().getMachineSets()));
 
-            // add all the bom streams to the schedule
-            for (BomComponent component : bomStreamMap.keySet()) {
-                SupplyChain chain = bomStreamMap.get(component);
-                double chainQuantity = prodQuantity*component.getQuantity();
+                for (SupplyChain next : current.getBomStreamMap().values()) {
+                    if (reached.add(next))
+                        stack.push(next);
+                }
+            }
+
+            int i = 0;
+            for (SupplyChain next : current.getTransitStreamMap().values()) {
+                if (current.isActiveTransit(i++, next) && reached.add(next))
+                    stack.push(next);
+            }
+        }
+    }
 
-                chain.addToSchedule(prodStartDateId, chainQuantity, schedule);
+    /**
+     * Clone the supply chain with only its active streams.
+     * The supply chains of a schedule are cloned by the network from their activation,
+     * and the cloned ones are walked through their stream maps, both with an explicit stack.
+     * @return the cloned supply chain.
+     */
+    public SupplyChain cloneActive() {
+        if (activation != null)
+            return network.cloneActive(activation, node);
+
+        SupplyChain cloned = copyActive();
+        Deque<SupplyChain> chains = new ArrayDeque<>();
+        Deque<SupplyChain> clones = new ArrayDeque<>();
+        chains.push(this);
+        clones.push(cloned);
+
+        while (!chains.isEmpty()) {
+            SupplyChain chain = chains.pop();
+            SupplyChain clone = clones.pop();
+
+            if (chain.isProdActive()) {
+                for (BomComponent component : chain.getBomStreamMap().keySet()) {
+                    SupplyChain bomStream = chain.getBomStreamMap().get(component);
+                    SupplyChain clonedBomStream = bomStream.copyActive();
+                    clone.getBomStreamMap().put(component, clonedBomStream);
+                    chains.push(bomStream);
+                    clones.push(clonedBomStream);
+                }
             }
 
-            schedule.addProduction(prodStartDateId, production, lots);
+            for (Transit transit : chain.getTransitStreamMap().keySet()) {
+                SupplyChain transitStream = chain.getTransitStreamMap().get(transit);
 
-            left -= provideQuantity;
+                if (transitStream.isActive()) {
+                    SupplyChain clonedTransitStream = transitStream.copyActive();
+                    clone.getTransitStreamMap().put(transit, clonedTransitStream);
+                    chains.push(transitStream);
+                    clones.push(clonedTransitStream);
+                }
+            }
         }
 
-        if (left == 0)
-            return;
+        return cloned;
+    }
+
+    /**
+     * Copy the supply chain without its streams.
+     * @return the copy.
+     */
+    SupplyChain copyActive() {
+        SupplyChain cloned = new SupplyChain(item, plant);
+        cloned.setDateId(getDateId());
+        cloned.setActive(isActive());
+        cloned.setProdActive(isProdActive());
+        cloned.setMaxQuantity(getMaxQuantity());
+        cloned.setMaxProdQuantity(getMaxProdQuantity());
+        cloned.setInventory(getInventory());
+
+        if (isProdActive())
+            cloned.setProduction(production);
 
-        while (left > 0) {
-            // try the active transit streams
-            for (Transit transit : transitStreamMap.keySet()) {
-                SupplyChain chain = transitStreamMap.get(transit);
+        cloned.setLeadTime(getLeadTime());
+        cloned.setHoldingCost(getHoldingCost());
+        cloned.setProductionCost(getProductionCost());
+        cloned.setTransitCost(getTransitCost());
+        cloned.setTotalCost(getTotalCost());
+        cloned.setLength(getLength());
 
-                if (!chain.isActive())
-                    continue;
+        return cloned;
+    }
+
+    /**
+     * A step of adding a supply chain to the schedule.
+     * A step first takes the direct supply, then adds the bom streams and the production,
+     * then adds the active transit streams in rounds, until the quantity is provided or no stream can provide any.
+     */
+    private static class SupplyStep {
+        private static final double EPSILON = 1e-6; // the round-off allowed in the provided quantities
+        private static final int PRODUCTION = 0;
+        private static final int TRANSIT = 1;
+        private static final int DONE = 2;
+
+        private SupplyChain chain;
+        private int dateId;
+        private double quantity;
+        private double left;
+        private int phase;
+        private SupplyStep stream; // the step of the stream being added, checked when it is finished
+
+        // the production stream
+        private Iterator<Map.Entry<BomComponent, SupplyChain>> bomIterator;
+        private BomComponent component; // the bom component of the stream being added
+        private int prodStartDateId;
+        private long lots;
+        private long prodQuantity;
+        private double prodProvided;
+
+        // the transit streams
+        private Iterator<Map.Entry<Transit, SupplyChain>> transitIterator;
+        private int transitIndex; // the index of the next transit stream
+        private double provided; // the quantity provided by the transit streams in the current round
+        private Transit transit; // the transit waiting for its stream to be added
+        private int transitStartDateId;
+        private double transitProvided;
+
+        SupplyStep(SupplyChain chain, int dateId, double quantity, Schedule schedule) {
+            this.chain = chain;
+            this.dateId = dateId;
+            this.quantity = quantity;
+            left = quantity;
 
-                provideQuantity = chain.getMaxQuantity();
+            // first try direct supply from inventory
+            // the inventory of a shared stream may be left from an activation in another date,
+            // so it is limited by the free inventory in the date
+            double inventory = chain.getInventory();
+            if (inventory > 0) {
+                double provideQuantity = Math.min(inventory,
+                        Math.max(schedule.getFreeInventory(dateId, chain.item, chain.plant), 0));
 
                 if (provideQuantity > left)
                     provideQuantity = left;
 
-                int transitStartTimeId = dateId-transit.getLeadTime();
-                chain.addToSchedule(transitStartTimeId, provideQuantity, schedule);
-                schedule.addTransit(transitStartTimeId, transit, provideQuantity);
-
                 left -= provideQuantity;
+            }
 
-                if (left == 0)
-                    return;
+            if (left == 0) {
+                phase = DONE;
+                return;
+            }
+
+            // then try production stream
+            // the production cannot start in time if its active status is left from an activation in a later date,
+            // e.g. the supply chain is shared by two boms and was visited first through the later one,
+            // and it cannot start before the first open date, i.e. in a day already executed
+            // the max production quantity of a shared stream may also be left from an activation in another date,
+            // so it is limited by the remaining capacity in the start date
+            Production production = chain.production;
+            long maxProdQuantity = 0;
+            if (chain.isProdActive() && dateId-production.getLeadTime() >= schedule.getFirstOpenDateId())
+                maxProdQuantity = Math.min(chain.getMaxProdQuantity(), maxQuantityFromCapacity(production,
+                        dateId-production.getLeadTime(), schedule));
+
+            if (maxProdQuantity > 0) {
+                prodProvided = maxProdQuantity;
+
+                if (prodProvided > left)
+                    prodProvided = left;
+
+                // calculate the production lots, the bom streams are added before the production
+                lots = production.lots(prodProvided, maxProdQuantity);
+                prodQuantity = lots*production.getLotSize();
+                prodProvided = Math.min(prodProvided, prodQuantity);
+                prodStartDateId = dateId-production.getLeadTime();
+                bomIterator = chain.getBomStreamMap().entrySet().iterator();
+                phase = PRODUCTION;
+            } else {
+                startTransits();
             }
         }
-    }
 
-    public SupplyChain cloneActive() {
-        SupplyChain cloned = new SupplyChain(item, plant);
-        cloned.setDateId(dateId);
-        cloned.setActive(active);
-        cloned.setProdActive(prodActive);
-        cloned.setMaxQuantity(maxQuantity);
-        cloned.setMaxProdQuantity(maxProdQuantity);
-        cloned.setInventory(inventory);
+        /**
+         * The max quantity of a production allowed by the remaining capacity of a schedule, never negative.
+         */
+        private static long maxQuantityFromCapacity(Production production, int prodStartDateId, Schedule schedule) {
+            return Math.max(production.maxQuantityFromCapacity(schedule.getCapacityLedger(), prodStartDateId), 0);
+        }
 
-        if (prodActive) {
-            cloned.setProduction(production);
-            for (BomComponent component : bomStreamMap.keySet()) {
-                SupplyChain clonedBomStream = bomStreamMap.get(component).cloneActive();
-                cloned.getBomStreamMap().put(component, clonedBomStream);
+        /**
+         * Continue the step.
+         * @param schedule the schedule.
+         * @return the step of the next stream to be added, or null if this step is finished.
+         */
+        SupplyStep next(Schedule schedule) {
+            if (phase == PRODUCTION) {
+                if (stream != null) {
+                    // the lots are reduced to what the bom stream provided
+                    if (stream.provided() < stream.quantity-EPSILON) {
+                        long bomLots = (long)Math.floor(stream.provided()/(component.getQuantity()*chain.production.getLotSize())+EPSILON);
+                        if (lots > bomLots)
+                            lots = bomLots;
+                    }
+
+                    stream = null;
+                }
+
+                // add all the bom streams to the schedule, until no lot can be produced
+                if (lots > 0 && bomIterator.hasNext()) {
+                    Map.Entry<BomComponent, SupplyChain> entry = bomIterator.next();
+                    double chainQuantity = lots*chain.production.getLotSize()*entry.getKey().getQuantity();
+
+                    component = entry.getKey();
+                    stream = new SupplyStep(entry.getValue(), prodStartDateId, chainQuantity, schedule);
+                    return stream;
+                }
+
+                // the bom streams may have used the same machine sets in the start date
+                long maxLots = maxQuantityFromCapacity(chain.production, prodStartDateId, schedule)/chain.production.getLotSize();
+                if (lots > maxLots)
+                    lots = maxLots;
+
+                prodProvided = Math.min(prodProvided, lots*chain.production.getLotSize());
+
+                if (lots > 0)
+                    schedule.addProduction(prodStartDateId, chain.production, lots);
+
+                left -= prodProvided;
+
+                if (left == 0) {
+                    phase = DONE;
+                    return null;
+                }
+
+                startTransits();
             }
-        }
 
-        for (Transit transit : transitStreamMap.keySet()) {
-            SupplyChain transitStream = transitStreamMap.get(transit);
+            if (phase == TRANSIT) {
+                if (transit != null) {
+                    // the transit stream has been added, the transit takes what the stream provided
+                    if (stream.provided() < transitProvided-EPSILON) {
+                        provided -= transitProvided-stream.provided();
+                        transitProvided = stream.provided();
+                    }
 
-            if (transitStream.length > length) // to avoid loop
-                continue;
+                    if (transitProvided > 0)
+                        schedule.addTransit(transitStartDateId, transit, transitProvided);
 
-            if (transitStream.isActive()) {
-                cloned.getTransitStreamMap().put(transit, transitStream.cloneActive());
+                    transit = null;
+                    stream = null;
+
+                    left -= transitProvided;
+
+                    if (left == 0) {
+                        phase = DONE;
+                        return null;
+                    }
+                }
+
+                while (true) {
+                    // try the active transit streams
+                    while (transitIterator.hasNext()) {
+                        Map.Entry<Transit, SupplyChain> entry = transitIterator.next();
+                        SupplyChain stream = entry.getValue();
+
+                        if (!chain.isActiveTransit(transitIndex++, stream))
+                            continue;
+
+                        int startDateId = dateId-entry.getKey().getLeadTime();
+
+                        // the stream is shared with another path activated in a different date,
+                        // the transit cannot start in time in this date (or in a day already executed)
+                        if (startDateId < schedule.getFirstOpenDateId())
+                            continue;
+
+                        double provideQuantity = stream.getMaxQuantity();
+
+                        if (provideQuantity > left)
+                            provideQuantity = left;
+
+                        provided += provideQuantity;
+
+                        transit = entry.getKey();
+                        transitStartDateId = startDateId;
+                        transitProvided = provideQuantity;
+
+                        this.stream = new SupplyStep(stream, startDateId, provideQuantity, schedule);
+                        return this.stream;
+                    }
+
+                    // no transit stream can provide anything
+                    if (provided == 0)
+                        break;
+
+                    // start another round
+                    provided = 0;
+                    transitIterator = chain.getTransitStreamMap().entrySet().iterator();
+                    transitIndex = 0;
+                }
+
+                phase = DONE;
             }
+
+            return null;
         }
 
-        cloned.setLeadTime(leadTime);
-        cloned.setHoldingCost(holdingCost);
-        cloned.setProductionCost(productionCost);
-        cloned.setTransitCost(transitCost);
-        cloned.setTotalCost(totalCost);
-        cloned.setLength(length);
+        /**
+         * The quantity provided by this step so far.
+         */
+        double provided() {
+            return quantity-left;
+        }
 
-        return cloned;
+        private void startTransits() {
+            phase = TRANSIT;
+            provided = 0;
+            transitIterator = chain.getTransitStreamMap().entrySet().iterator();
+            transitIndex = 0;
+        }
     }
 
     @Override
@@ -621,10 +934,13 @@ public class SupplyChain implements Comparable<SupplyChain> {
     @Override
     public int compareTo(SupplyChain o) {
         // first compare the max quantity
-        if (maxQuantity > o.maxQuantity)
+        double maxQuantity = getMaxQuantity();
+        double oMaxQuantity = o.getMaxQuantity();
+
+        if (maxQuantity > oMaxQuantity)
             return -1;
 
-        if (maxQuantity < o.maxQuantity)
+        if (maxQuantity < oMaxQuantity)
             return 1;
 
         // then compare the plant
@@ -0,0 +1,1073 @@
+package scheduling.core;
+
+import scheduling.core.input.*;
+
+import java.util.*;
+
+/**
+ * The supply network is the flat form of the supply chains of an environment.
+ * Each supply chain (item, plant) is a node, and the bom and transit streams are the edges
+ * from a node to the nodes supplying it, stored in compressed sparse rows (CSR), i.e.
+ * the edges of node n are in [start[n], start[n+1]) of the edge arrays.
+ * The nodes are numbered in a topological order of the supply, i.e. the suppliers are mostly
+ * numbered before the nodes they supply (except for the transit loops between plants),
+ * so that a traversal goes through nearby nodes and edges.
+ *
+ * The activation and cost evaluation of the supply chains are iterative traversals on the arrays,
+ * with an explicit stack instead of the recursion, and a stamp array instead of the visited sets.
+ * The network itself is not changed by them. The results are written into an activation given by the caller,
+ * e.g. the one of the schedule being planned, whose own supply chains read their fields from it.
+ * So the schedules planned in different threads do not share anything but the network.
+ *
+ * The transits of an item between plants can form loops. The transit streams are condensed into
+ * strongly connected components (SCC) once, and all the supply chains in an SCC are activated together
+ * when the SCC is first reached: each of them is activated in the latest date it can be reached from the
+ * entering supply chain (the shortest lead time paths by Dijkstra's algorithm in the SCC), and a transit
+ * stream inside the SCC is only used on a shortest lead time path. The active streams never form a loop,
+ * and each supply chain in an SCC is activated once, instead of being explored again through each loop.
+ * The transit streams chosen by each activation are kept per edge, to be followed when adding to the schedule.
+ *
+ * The per edge streams also change the schedules of acyclic networks. The recursive traversal followed every
+ * transit stream whose supply chain was active, but a supply chain shared by several paths can be active from
+ * another path, e.g. through a transit with a longer lead time, which the activation did not count in the
+ * max quantity. The length, the costs and the supply now follow only the streams the activation chose,
+ * so they agree with the max quantity and the lead time of the supply chain.
+ */
+public class SupplyNetwork {
+    private static final int TRANSIT_PHASE = 0; // activating the transit streams
+    private static final int PRODUCTION_PHASE = 1; // checking the production stream
+    private static final int BOM_PHASE = 2; // activating the bom streams
+
+    private SupplyChain[] chains; // the supply chain of each node
+    private int[] prodLeadTimes; // the production lead time of each node, -1 if it has no production
+
+    private int[] bomStart; // the start of the bom edges of each node
+    private int[] bomSources; // the node supplying each bom edge, -1 if the material cannot be held in the plant
+    private double[] bomQuantities; // the quantity of each bom edge
+    private BomComponent[] bomComponents; // the bom component of each bom edge
+
+    private int[] transitStart; // the start of the transit edges of each node
+    private int[] transitSources; // the node supplying each transit edge
+    private int[] transitLeadTimes; // the lead time of each transit edge
+    private double[] transitCosts; // the cost of each transit edge
+    private Transit[] transits; // the transit of each transit edge
+
+    private int[] transitSccs; // the SCC of the transit streams of each node
+    private int[] sccSizes; // the number of nodes in each SCC
+
+    private boolean acyclic; // whether the streams form no loop
+
+    /**
+     * Compile the supply network from the linked supply chains.
+     * The supply chains are given the node ids, and their streams are kept as they are.
+     * @param itemSupplyChains the supply chains of each item.
+     */
+    public SupplyNetwork(List<List<SupplyChain>> itemSupplyChains) {
+        List<SupplyChain> all = new ArrayList<>();
+        for (List<SupplyChain> chains : itemSupplyChains) {
+            if (chains != null)
+                all.addAll(chains);
+        }
+
+        chains = topologicalOrder(all);
+
+        for (int n = 0; n < chains.length; n++) {
+            chains[n].setNetwork(this);
+            chains[n].setNode(n);
+        }
+
+        int numBoms = 0;
+        int numTransits = 0;
+        for (SupplyChain chain : chains) {
+            if (chain.getProduction() != null)
+                numBoms += chain.getBomStreamMap().size();
+
+            numTransits += chain.getTransitStreamMap().size();
+        }
+
+        prodLeadTimes = new int[chains.length];
+        bomStart = new int[chains.length+1];
+        bomSources = new int[numBoms];
+        bomQuantities = new double[numBoms];
+        bomComponents = new BomComponent[numBoms];
+        transitStart = new int[chains.length+1];
+        transitSources = new int[numTransits];
+        transitLeadTimes = new int[numTransits];
+        transitCosts = new double[numTransits];
+        transits = new Transit[numTransits];
+
+        int b = 0;
+        int t = 0;
+        for (int n = 0; n < chains.length; n++) {
+            SupplyChain chain = chains[n];
+            bomStart[n] = b;
+            transitStart[n] = t;
+            prodLeadTimes[n] = -1;
+
+            if (chain.getProduction() != null) {
+                prodLeadTimes[n] = chain.getProduction().getLeadTime();
+
+                for (Map.Entry<BomComponent, SupplyChain> entry : chain.getBomStreamMap().entrySet()) {
+                    bomSources[b] = entry.getValue() == null ? -1 : entry.getValue().getNode();
+                    bomQuantities[b] = entry.getKey().getQuantity();
+                    bomComponents[b] = entry.getKey();
+                    b ++;
+                }
+            }
+
+            for (Map.Entry<Transit, SupplyChain> entry : chain.getTransitStreamMap().entrySet()) {
+                transitSources[t] = entry.getValue().getNode();
+                transitLeadTimes[t] = entry.getKey().getLeadTime();
+                transitCosts[t] = entry.getKey().getCost();
+                transits[t] = entry.getKey();
+                t ++;
+            }
+        }
+
+        bomStart[chains.length] = b;
+        transitStart[chains.length] = t;
+        calcTransitSccs();
+    }
+
+    public int size() {
+        return chains.length;
+    }
+
+    public SupplyChain getChain(int node) {
+        return chains[node];
+    }
+
+    public boolean isAcyclic() {
+        return acyclic;
+    }
+
+    /**
+     * The number of SCCs in the transit streams, a loop of transits between plants is in one SCC.
+     * @return the number of SCCs.
+     */
+    public int numTransitSccs() {
+        return sccSizes.length;
+    }
+
+    public int getTransitSccSize(int node) {
+        return sccSizes[transitSccs[node]];
+    }
+
+    /**
+     * Create a new activation of the supply chains, with no supply chain activated yet.
+     * @return the activation.
+     */
+    Activation newActivation() {
+        return new Activation(this);
+    }
+
+    /**
+     * Whether a transit stream of a node is active in its last activation.
+     * @param a the activation.
+     * @param node the node.
+     * @param i the index of the transit stream, in the order of the transit stream map.
+     * @return true if the stream is active.
+     */
+    boolean isActiveTransit(Activation a, int node, int i) {
+        return a.activeTransits[transitStart[node]+i];
+    }
+
+    /**
+     * Create the supply chains of a node and the nodes reachable from it in an activation,
+     * and link their streams in the order of the edges, as the supply chains of the network are linked.
+     * @param a the activation.
+     * @param root the node.
+     */
+    private void createChains(Activation a, int root) {
+        List<Integer> created = new ArrayList<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        createChain(a, root, stack);
+
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            created.add(node);
+
+            for (int b = bomStart[node]; b < bomStart[node+1]; b++)
+                createChain(a, bomSources[b], stack);
+
+            for (int e = transitStart[node]; e < transitStart[node+1]; e++)
+                createChain(a, transitSources[e], stack);
+        }
+
+        for (int node : created) {
+            SupplyChain chain = a.chains[node];
+
+            for (int b = bomStart[node]; b < bomStart[node+1]; b++)
+                chain.getBomStreamMap().put(bomComponents[b], bomSources[b] < 0 ? null : a.chains[bomSources[b]]);
+
+            for (int e = transitStart[node]; e < transitStart[node+1]; e++)
+                chain.getTransitStreamMap().put(transits[e], a.chains[transitSources[e]]);
+        }
+    }
+
+    private void createChain(Activation a, int node, Deque<Integer> stack) {
+        if (node >= 0 && a.chains[node] == null) {
+            a.chains[node] = new SupplyChain(chains[node], a);
+            stack.push(node);
+        }
+    }
+
+    /**
+     * Find the strongly connected components of the transit streams by Tarjan's algorithm, without recursion.
+     */
+    private void calcTransitSccs() {
+        int n = chains.length;
+        transitSccs = new int[n];
+        int[] index = new int[n]; // the dfs index of each node, 0 if not visited
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int[] callNodes = new int[n];
+        int[] callEdges = new int[n];
+        List<Integer> sizes = new ArrayList<>();
+        int counter = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] > 0)
+                continue;
+
+            int depth = 0;
+            callNodes[0] = root;
+            callEdges[0] = transitStart[root];
+            index[root] = low[root] = ++counter;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = callNodes[depth];
+                int e = callEdges[depth];
+
+                if (e < transitStart[v+1]) {
+                    callEdges[depth] ++;
+                    int w = transitSources[e];
+
+                    if (index[w] == 0) {
+                        index[w] = low[w] = ++counter;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        depth ++;
+                        callNodes[depth] = w;
+                        callEdges[depth] = transitStart[w];
+                    } else if (onStack[w] && low[v] > index[w]) {
+                        low[v] = index[w];
+                    }
+
+                    continue;
+                }
+
+                // all the streams of v are visited, v is the root of an scc if its low link is itself
+                if (low[v] == index[v]) {
+                    int scc = sizes.size();
+                    int size = 0;
+                    int w;
+
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        transitSccs[w] = scc;
+                        size ++;
+                    } while (w != v);
+
+                    sizes.add(size);
+                }
+
+                depth --;
+
+                if (depth >= 0) {
+                    int u = callNodes[depth];
+                    if (low[u] > low[v])
+                        low[u] = low[v];
+                }
+            }
+        }
+
+        sccSizes = new int[sizes.size()];
+        for (int i = 0; i < sccSizes.length; i++)
+            sccSizes[i] = sizes.get(i);
+    }
+
+    /**
+     * Number the supply chains in the post order of a depth first search from the demanded side to the suppliers,
+     * which is a topological order of the supply if there is no loop.
+     * @param all the supply chains.
+     * @return the supply chains in the topological order.
+     */
+    private SupplyChain[] topologicalOrder(List<SupplyChain> all) {
+        SupplyChain[] order = new SupplyChain[all.size()];
+        int size = 0;
+        acyclic = true;
+
+        // 0: not visited, 1: on the stack, 2: finished
+        Map<SupplyChain, Integer> status = new IdentityHashMap<>();
+        Deque<SupplyChain> stack = new ArrayDeque<>();
+        Deque<Iterator<SupplyChain>> iterators = new ArrayDeque<>();
+
+        for (SupplyChain root : all) {
+            if (status.containsKey(root))
+                continue;
+
+            status.put(root, 1);
+            stack.push(root);
+            iterators.push(suppliers(root).iterator());
+
+            while (!stack.isEmpty()) {
+                Iterator<SupplyChain> iterator = iterators.peek();
+
+                if (iterator.hasNext()) {
+                    SupplyChain next = iterator.next();
+
+                    if (next == null)
+                        continue;
+
+                    Integer s = status.get(next);
+
+                    if (s == null) {
+                        status.put(next, 1);
+                        stack.push(next);
+                        iterators.push(suppliers(next).iterator());
+                    } else if (s == 1) {
+                        acyclic = false;
+                    }
+                } else {
+                    SupplyChain finished = stack.pop();
+                    iterators.pop();
+                    status.put(finished, 2);
+                    order[size++] = finished;
+                }
+            }
+        }
+
+        return order;
+    }
+
+    private List<SupplyChain> suppliers(SupplyChain chain) {
+        List<SupplyChain> suppliers = new ArrayList<>(chain.getTransitStreamMap().values());
+
+        if (chain.getProduction() != null)
+            suppliers.addAll(chain.getBomStreamMap().values());
+
+        return suppliers;
+    }
+
+    /**
+     * Activate the streams of a supply chain given a schedule and the date to provide the item,
+     * see SupplyChain.activateStreams for the rules.
+     * A supply chain reached again through another path is not activated again.
+     * The supply chains in a loop of transits are activated together with their SCC.
+     * Only the costs of the activated supply chain itself are evaluated at the end,
+     * since the costs of the streams depend on the date of the supply chain they are evaluated for.
+     * @param a the activation to write the results into.
+     * @param root the node of the supply chain.
+     * @param schedule the schedule.
+     * @param dateId the date id.
+     */
+    void activate(Activation a, int root, Schedule schedule, int dateId) {
+        Traversal t = a.traversal;
+        t.start();
+
+        int startDateId = schedule.getFirstOpenDateId(); // no stream can start before it
+
+        enter(t, root, dateId, schedule);
+
+        while (t.size > 0) {
+            int f = t.size-1;
+            int node = t.nodes[f];
+            int date = t.dates[f];
+            SupplyChain chain = chains[node];
+
+            if (t.phases[f] == TRANSIT_PHASE) {
+                int e = t.cursors[f];
+                boolean entered = false;
+
+                for (; e < transitStart[node+1]; e++) {
+                    int source = transitSources[e];
+
+                    if (t.waiting[f]) {
+                        // the transit stream is activated, check its lead time
+                        t.waiting[f] = false;
+                        relaxTransit(a, node, e);
+                        continue;
+                    }
+
+                    int transitStartTime = date-transitLeadTimes[e];
+
+                    // the transit cannot start in time, skip.
+                    if (transitStartTime < startDateId)
+                        continue;
+
+                    if (transitSccs[source] == transitSccs[node]) {
+                        // the stream in the same scc is activated with the scc,
+                        // and only used if it is on a shortest lead time path
+                        if (isShortestPath(t, node, e))
+                            relaxTransit(a, node, e);
+
+                        continue;
+                    }
+
+                    t.waiting[f] = true;
+                    t.cursors[f] = e;
+
+                    if (enter(t, source, transitStartTime, schedule)) {
+                        entered = true;
+                        break;
+                    }
+
+                    // the stream is already visited, check it in the next round
+                    e --;
+                }
+
+                if (entered)
+                    continue;
+
+                t.phases[f] = PRODUCTION_PHASE;
+            }
+
+            if (t.phases[f] == PRODUCTION_PHASE) {
+                t.prodLeadTimes[f] = Integer.MAX_VALUE;
+                int prodStartTime = date-prodLeadTimes[node];
+
+                // the production has to be started in time.
+                if (prodLeadTimes[node] < 0 || prodStartTime < startDateId) {
+                    finish(t, f, startDateId);
+                    continue;
+                }
+
+                Production production = chain.getProduction();
+                long maxProdQuantity = production.maxQuantityFromCapacity(schedule.getCapacityLedger(), prodStartTime);
+                if (maxProdQuantity > production.getMaxProduction())
+                    maxProdQuantity = production.getMaxProduction();
+
+                a.maxProdQuantities[node] = maxProdQuantity;
+                t.phases[f] = BOM_PHASE;
+                t.cursors[f] = bomStart[node];
+                t.waiting[f] = false;
+            }
+
+            // the bom phase
+            int prodStartTime = date-prodLeadTimes[node];
+            int e = t.cursors[f];
+            boolean entered = false;
+
+            for (; e < bomStart[node+1]; e++) {
+                int source = bomSources[e];
+
+                if (t.waiting[f] || source < 0) {
+                    // the bom stream is activated, check how many it can provide
+                    t.waiting[f] = false;
+                    long q = source < 0 ? 0 : (long)(a.maxQuantities[source]/bomQuantities[e]);
+
+                    if (a.maxProdQuantities[node] > q)
+                        a.maxProdQuantities[node] = q;
+
+                    if (a.maxProdQuantities[node] == 0) {
+                        // if a stream cannot provide sufficient bom component, stop
+                        // the production stream will not be active
+                        break;
+                    }
+
+                    continue;
+                }
+
+                t.waiting[f] = true;
+                t.cursors[f] = e;
+
+                if (enter(t, source, prodStartTime, schedule)) {
+                    entered = true;
+                    break;
+                }
+
+                e --;
+            }
+
+            if (entered)
+                continue;
+
+            if (a.maxProdQuantities[node] > 0) {
+                int prodLeadTime = prodLeadTimes[node];
+                for (int b = bomStart[node]; b < bomStart[node+1]; b++) {
+                    int totalLeadTime = a.leadTimes[bomSources[b]]+prodLeadTimes[node];
+
+                    if (prodLeadTime < totalLeadTime)
+                        prodLeadTime = totalLeadTime;
+                }
+
+                if (a.leadTimes[node] > prodLeadTime)
+                    a.leadTimes[node] = prodLeadTime;
+
+                t.prodLeadTimes[f] = prodLeadTime;
+            }
+
+            finish(t, f, startDateId);
+        }
+
+        calcCosts(a, root, schedule, dateId);
+    }
+
+    /**
+     * Check the lead time of a transit stream that has been activated.
+     */
+    private void relaxTransit(Activation a, int node, int e) {
+        int source = transitSources[e];
+
+        if (a.maxQuantities[source] == 0)
+            return;
+
+        int totalLeadTime = a.leadTimes[source]+transitLeadTimes[e];
+
+        if (a.leadTimes[node] > totalLeadTime)
+            a.leadTimes[node] = totalLeadTime;
+    }
+
+    /**
+     * Whether a transit edge inside an SCC is on a shortest lead time path from the entering supply chain,
+     * i.e. its source is activated later in the SCC, in the date the transit has to start.
+     */
+    private boolean isShortestPath(Traversal t, int node, int e) {
+        int source = transitSources[e];
+
+        return t.visited[source] == t.stamp && t.ranks[source] > t.ranks[node] &&
+                t.nodeDates[source] == t.nodeDates[node]-transitLeadTimes[e];
+    }
+
+    /**
+     * Whether a transit edge is used in the activation of its target node.
+     */
+    private boolean isUsedTransit(Traversal t, int node, int e, int startDateId) {
+        if (t.nodeDates[node]-transitLeadTimes[e] < startDateId)
+            return false;
+
+        return transitSccs[transitSources[e]] != transitSccs[node] || isShortestPath(t, node, e);
+    }
+
+    /**
+     * Enter a node in the activation.
+     * The node is pushed into the stack if its streams have to be activated.
+     * If the node is in an SCC of transits, the whole SCC is entered.
+     * @return true if any node is pushed, false if it is visited or supplied directly from the inventory.
+     */
+    private boolean enter(Traversal t, int node, int dateId, Schedule schedule) {
+        if (t.visited[node] == t.stamp)
+            return false;
+
+        if (sccSizes[transitSccs[node]] > 1)
+            return enterScc(t, node, dateId, schedule);
+
+        visit(t, node, dateId);
+
+        if (reset(t.activation, node, dateId, schedule))
+            return false;
+
+        t.push(node, dateId, transitStart[node]);
+
+        return true;
+    }
+
+    /**
+     * Enter the SCC of a node in the activation.
+     * The nodes in the SCC are visited in the order of the shortest lead time paths from the node,
+     * and each of them is activated in the latest date it can be reached.
+     * The nodes are pushed into the stack in the same order, so that the farthest nodes are activated first,
+     * and the transit streams on the shortest paths are activated before the nodes they supply.
+     * @return true if any node is pushed.
+     */
+    private boolean enterScc(Traversal t, int node, int dateId, Schedule schedule) {
+        int startDateId = schedule.getFirstOpenDateId(); // no stream can start before it
+        int first = t.numMembers;
+
+        t.numFrontier = 0;
+        t.addFrontier(node);
+        t.reached[node] = t.stamp;
+        t.nodeDates[node] = dateId;
+
+        while (t.numFrontier > 0) {
+            // the next node is the one with the latest date, i.e. the shortest lead time from the entering node
+            int best = 0;
+            for (int i = 1; i < t.numFrontier; i++) {
+                if (t.nodeDates[t.frontier[i]] > t.nodeDates[t.frontier[best]])
+                    best = i;
+            }
+
+            int v = t.frontier[best];
+            t.frontier[best] = t.frontier[--t.numFrontier];
+
+            visit(t, v, t.nodeDates[v]);
+            t.addMember(v);
+
+            for (int e = transitStart[v]; e < transitStart[v+1]; e++) {
+                int source = transitSources[e];
+
+                if (transitSccs[source] != transitSccs[v] || t.visited[source] == t.stamp)
+                    continue;
+
+                int sourceDate = t.nodeDates[v]-transitLeadTimes[e];
+
+                // the transit cannot start in time
+                if (sourceDate < startDateId)
+                    continue;
+
+                if (t.reached[source] != t.stamp) {
+                    t.reached[source] = t.stamp;
+                    t.nodeDates[source] = sourceDate;
+                    t.addFrontier(source);
+                } else if (t.nodeDates[source] < sourceDate) {
+                    t.nodeDates[source] = sourceDate;
+                }
+            }
+        }
+
+        boolean pushed = false;
+
+        for (int i = first; i < t.numMembers; i++) {
+            int v = t.members[i];
+
+            if (reset(t.activation, v, t.nodeDates[v], schedule))
+                continue;
+
+            t.push(v, t.nodeDates[v], transitStart[v]);
+            pushed = true;
+        }
+
+        return pushed;
+    }
+
+    private void visit(Traversal t, int node, int dateId) {
+        t.visited[node] = t.stamp;
+        t.ranks[node] = ++t.rank;
+        t.nodeDates[node] = dateId;
+    }
+
+    /**
+     * Reset the activation status of a node, and check whether it can supply directly from the inventory.
+     * @return true if the node is supplied from the inventory, which needs no other stream.
+     */
+    private boolean reset(Activation a, int node, int dateId, Schedule schedule) {
+        SupplyChain chain = chains[node];
+        a.active[node] = false;
+        a.prodActive[node] = false;
+        a.maxQuantities[node] = 0d;
+
+        // check whether there is direct supply from the plant's inventory
+        double inventory = schedule.getFreeInventory(dateId, chain.getItem(), chain.getPlant());
+        a.inventories[node] = inventory;
+
+        if (inventory > 0) {
+            // if there is direct supply, then do not consider any other
+            a.active[node] = true;
+            a.dates[node] = dateId;
+            a.leadTimes[node] = 0;
+            a.maxQuantities[node] = inventory;
+            a.lengths[node] = 0;
+
+            for (int e = transitStart[node]; e < transitStart[node+1]; e++)
+                a.activeTransits[e] = false;
+
+            return true;
+        }
+
+        a.leadTimes[node] = Integer.MAX_VALUE;
+
+        return false;
+    }
+
+    /**
+     * Activate the streams with the smallest lead time of the node on the top of the stack, and pop it.
+     */
+    private void finish(Traversal t, int f, int startDateId) {
+        Activation a = t.activation;
+        int node = t.nodes[f];
+        int leadTime = a.leadTimes[node];
+
+        if (leadTime < Integer.MAX_VALUE) {
+            a.active[node] = true;
+            a.dates[node] = t.dates[f];
+
+            double maxQuantity = a.maxQuantities[node];
+
+            // active all the streams with smallest lead time
+            for (int e = transitStart[node]; e < transitStart[node+1]; e++) {
+                int source = transitSources[e];
+                a.activeTransits[e] = false;
+
+                if (a.maxQuantities[source] == 0 || !isUsedTransit(t, node, e, startDateId))
+                    continue;
+
+                if (a.leadTimes[source]+transitLeadTimes[e] == leadTime) {
+                    maxQuantity += a.maxQuantities[source];
+                    a.active[source] = true;
+                    a.activeTransits[e] = true;
+                }
+            }
+
+            if (t.prodLeadTimes[f] == leadTime) {
+                maxQuantity += a.maxProdQuantities[node];
+                // activate the production stream and all the bom streams
+                a.prodActive[node] = true;
+
+                for (int b = bomStart[node]; b < bomStart[node+1]; b++)
+                    a.active[bomSources[b]] = true;
+            }
+
+            a.maxQuantities[node] = maxQuantity;
+        } else {
+            for (int e = transitStart[node]; e < transitStart[node+1]; e++)
+                a.activeTransits[e] = false;
+        }
+
+        // calculate the length based on the active streams
+        int length = 0;
+
+        if (a.prodActive[node]) {
+            for (int b = bomStart[node]; b < bomStart[node+1]; b++) {
+                int prodLength = 1+a.lengths[bomSources[b]];
+
+                if (length < prodLength)
+                    length = prodLength;
+            }
+
+            if (length == 0)
+                length = 1;
+        }
+
+        for (int e = transitStart[node]; e < transitStart[node+1]; e++) {
+            if (a.activeTransits[e]) {
+                int transitLength = 1+a.lengths[transitSources[e]];
+
+                if (length < transitLength)
+                    length = transitLength;
+            }
+        }
+
+        a.lengths[node] = length;
+        t.size --;
+    }
+
+    /**
+     * Calculate the costs (holding, production, transit and total) for providing one item by a supply chain,
+     * see SupplyChain.calcCosts for the rules.
+     * @param a the activation of the supply chains, to write the costs into.
+     * @param root the node of the supply chain.
+     * @param schedule the schedule.
+     * @param dateId the date id to provide the item.
+     */
+    void calcCosts(Activation a, int root, Schedule schedule, int dateId) {
+        Traversal t = a.traversal;
+        t.start();
+
+        enterCosts(t, root, schedule, dateId);
+
+        while (t.size > 0) {
+            int f = t.size-1;
+            int node = t.nodes[f];
+            boolean entered = false;
+
+            if (t.phases[f] == BOM_PHASE) {
+                int b = t.cursors[f];
+
+                for (; b < bomStart[node+1]; b++) {
+                    int source = bomSources[b];
+
+                    if (t.waiting[f]) {
+                        // the holding and production cost changed by supplying the bom component
+                        t.waiting[f] = false;
+                        a.holdingCosts[node] += a.holdingCosts[source]*bomQuantities[b];
+                        a.productionCosts[node] += a.productionCosts[source]*bomQuantities[b];
+                        continue;
+                    }
+
+                    t.waiting[f] = true;
+                    t.cursors[f] = b;
+
+                    if (enterCosts(t, bomSources[b], schedule, dateId)) {
+                        entered = true;
+                        break;
+                    }
+
+                    b --;
+                }
+
+                if (entered)
+                    continue;
+
+                t.phases[f] = TRANSIT_PHASE;
+                t.cursors[f] = transitStart[node];
+                t.waiting[f] = false;
+            }
+
+            // the transit phase, only the first active transit stream is counted
+            int e = t.cursors[f];
+
+            for (; e < transitStart[node+1]; e++) {
+                int source = transitSources[e];
+
+                if (t.waiting[f]) {
+                    t.waiting[f] = false;
+                    a.holdingCosts[node] += a.holdingCosts[source];
+                    a.transitCosts[node] = a.transitCosts[source]+transitCosts[e];
+                    break;
+                }
+
+                if (!a.activeTransits[e])
+                    continue;
+
+                t.waiting[f] = true;
+                t.cursors[f] = e;
+
+                if (enterCosts(t, transitSources[e], schedule, dateId)) {
+                    entered = true;
+                    break;
+                }
+
+                e --;
+            }
+
+            if (entered)
+                continue;
+
+            a.totalCosts[node] = a.holdingCosts[node]+a.productionCosts[node]+a.transitCosts[node];
+            t.size --;
+        }
+    }
+
+    /**
+     * Enter a node in the cost evaluation.
+     * @return true if the node is pushed into the stack, false if it is visited or inactive.
+     */
+    private boolean enterCosts(Traversal t, int node, Schedule schedule, int dateId) {
+        if (t.visited[node] == t.stamp)
+            return false;
+
+        t.visited[node] = t.stamp;
+
+        Activation a = t.activation;
+        SupplyChain chain = chains[node];
+        a.holdingCosts[node] = 0d;
+        a.productionCosts[node] = 0d;
+        a.transitCosts[node] = 0d;
+
+        if (!a.active[node])
+            return false;
+
+        if (a.inventories[node] > 0) {
+            // decrease the holding cost of the supplied item
+            a.holdingCosts[node] = -chain.getItem().getHoldingCost()*(schedule.getEndDateId()-dateId);
+        }
+
+        if (a.prodActive[node]) {
+            a.productionCosts[node] = chain.getProduction().getCost();
+            t.push(node, dateId, bomStart[node]);
+            t.phases[t.size-1] = BOM_PHASE;
+        } else {
+            t.push(node, dateId, transitStart[node]);
+        }
+
+        return true;
+    }
+
+    /**
+     * Clone a supply chain with only its active streams, as they are in the last activation.
+     * The clone is a tree, i.e. a stream shared by several paths is cloned once for each path,
+     * and the streams are put into the maps of the clones in the order of the edges.
+     * @param a the activation.
+     * @param root the node of the supply chain.
+     * @return the cloned supply chain.
+     */
+    SupplyChain cloneActive(Activation a, int root) {
+        Traversal t = a.traversal;
+        t.start();
+
+        SupplyChain cloned = a.getChain(root).copyActive();
+        Deque<SupplyChain> clones = new ArrayDeque<>();
+        t.push(root, a.dates[root], 0);
+        clones.push(cloned);
+
+        while (t.size > 0) {
+            int node = t.nodes[--t.size];
+            SupplyChain clone = clones.pop();
+
+            if (a.prodActive[node]) {
+                for (int b = bomStart[node]; b < bomStart[node+1]; b++)
+                    clone.getBomStreamMap().put(bomComponents[b], cloneStream(t, clones, bomSources[b]));
+            }
+
+            for (int e = transitStart[node]; e < transitStart[node+1]; e++) {
+                if (a.activeTransits[e])
+                    clone.getTransitStreamMap().put(transits[e], cloneStream(t, clones, transitSources[e]));
+            }
+        }
+
+        return cloned;
+    }
+
+    /**
+     * Clone the supply chain of a stream without its streams, which are cloned when it is popped from the stack.
+     */
+    private SupplyChain cloneStream(Traversal t, Deque<SupplyChain> clones, int node) {
+        SupplyChain clone = t.activation.getChain(node).copyActive();
+        t.push(node, t.activation.dates[node], 0);
+        clones.push(clone);
+
+        return clone;
+    }
+
+    /**
+     * An activation of the supply chains, e.g. of a schedule, i.e. the fields of the last activation of each
+     * supply chain (node), and whether each transit stream (edge) is active in it, with the traversal workspace.
+     * It has its own supply chain for each node, created when first used, which reads and writes its fields here.
+     * The supply network (and the environment) is not changed by the activations, and can be shared by the threads,
+     * while an activation is only used by one thread at a time.
+     */
+    static class Activation {
+        SupplyNetwork network;
+        SupplyChain[] chains; // the supply chain of each node in this activation, null if not created yet
+        Traversal traversal;
+
+        int[] dates;
+        boolean[] active;
+        boolean[] prodActive;
+        double[] maxQuantities;
+        long[] maxProdQuantities;
+        double[] inventories;
+        int[] leadTimes;
+        double[] holdingCosts;
+        double[] productionCosts;
+        double[] transitCosts;
+        double[] totalCosts;
+        int[] lengths;
+        boolean[] activeTransits;
+
+        Activation(SupplyNetwork network) {
+            this.network = network;
+            int numNodes = network.chains.length;
+            int numTransits = network.transitSources.length;
+            chains = new SupplyChain[numNodes];
+            traversal = new Traversal(this, numNodes);
+
+            dates = new int[numNodes];
+            active = new boolean[numNodes];
+            prodActive = new boolean[numNodes];
+            maxQuantities = new double[numNodes];
+            maxProdQuantities = new long[numNodes];
+            inventories = new double[numNodes];
+            leadTimes = new int[numNodes];
+            holdingCosts = new double[numNodes];
+            productionCosts = new double[numNodes];
+            transitCosts = new double[numNodes];
+            totalCosts = new double[numNodes];
+            lengths = new int[numNodes];
+            activeTransits = new boolean[numTransits];
+        }
+
+        /**
+         * Get the supply chain of a node in this activation.
+         * The supply chains reachable from it are created with it, and linked through their streams.
+         * @param node the node.
+         * @return the supply chain.
+         */
+        SupplyChain getChain(int node) {
+            if (chains[node] == null)
+                network.createChains(this, node);
+
+            return chains[node];
+        }
+    }
+
+    /**
+     * The workspace of the traversals in an activation, i.e. the visited stamps and the explicit stack of the nodes.
+     */
+    private static class Traversal {
+        Activation activation;
+        int[] visited; // the stamp of the traversal that last visited each node
+        int stamp;
+        int[] nodeDates; // the date each visited node is activated in
+        int[] ranks; // the order each visited node is visited in
+        int rank;
+
+        // the nodes of the scc being entered
+        int[] reached; // the stamp of the traversal that last reached each node in an scc
+        int[] frontier;
+        int numFrontier;
+        int[] members;
+        int numMembers;
+
+        // the stack of the nodes being traversed
+        int size;
+        int[] nodes;
+        int[] dates;
+        int[] phases;
+        int[] cursors; // the current edge of each node
+        boolean[] waiting; // whether the current edge is waiting for the source node to be finished
+        int[] prodLeadTimes; // the lead time of the production stream of each node
+
+        Traversal(Activation activation, int numNodes) {
+            this.activation = activation;
+            visited = new int[numNodes];
+            nodeDates = new int[numNodes];
+            ranks = new int[numNodes];
+            reached = new int[numNodes];
+            frontier = new int[16];
+            members = new int[16];
+            nodes = new int[16];
+            dates = new int[16];
+            phases = new int[16];
+            cursors = new int[16];
+            waiting = new boolean[16];
+            prodLeadTimes = new int[16];
+        }
+
+        /**
+         * Start a new traversal, with no node visited.
+         */
+        void start() {
+            if (stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                Arrays.fill(reached, 0);
+                stamp = 0;
+            }
+
+            stamp ++;
+            size = 0;
+            rank = 0;
+            numMembers = 0;
+        }
+
+        void addFrontier(int node) {
+            if (numFrontier == frontier.length)
+                frontier = Arrays.copyOf(frontier, numFrontier*2);
+
+            frontier[numFrontier++] = node;
+        }
+
+        void addMember(int node) {
+            if (numMembers == members.length)
+                members = Arrays.copyOf(members, numMembers*2);
+
+            members[numMembers++] = node;
+        }
+
+        void push(int node, int dateId, int cursor) {
+            if (size == nodes.length) {
+                int capacity = size*2;
+                nodes = Arrays.copyOf(nodes, capacity);
+                dates = Arrays.copyOf(dates, capacity);
+                phases = Arrays.copyOf(phases, capacity);
+                cursors = Arrays.copyOf(cursors, capacity);
+                waiting = Arrays.copyOf(waiting, capacity);
+                prodLeadTimes = Arrays.copyOf(prodLeadTimes, capacity);
+            }
+
+            nodes[size] = node;
+            dates[size] = dateId;
+            phases[size] = TRANSIT_PHASE;
+            cursors[size] = cursor;
+            waiting[size] = false;
+            prodLeadTimes[size] = Integer.MAX_VALUE;
+            size ++;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package scheduling.core.input;
 
 public class CapacityType {
+    private int index; // the dense ordinal in the environment
     private String name;
     private double defaultRate;
 
@@ -9,6 +10,14 @@ public class CapacityType {
         this.defaultRate = defaultRate;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public String getName() {
         return name;
     }
@@ -26,6 +26,9 @@ public class ForecastDemand extends Demand {
         schedule.addForecastSupply(dateId, supply, suppQuantity);
 
         quantity -= suppQuantity;
+
+        // the demand is restored if the supply is discarded from a branch of the schedule
+        schedule.recordUndo(() -> quantity += suppQuantity);
     }
 
     @Override
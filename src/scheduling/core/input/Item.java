@@ -1,20 +1,23 @@
 package scheduling.core.input;
 
-import org.apache.commons.math3.util.Pair;
+import scheduling.core.CapacityLedger;
 
 import java.util.*;
 
 /**
  * An item.
+ * The items are interned by the environment: each item is a unique object with a dense ordinal,
+ * so items are compared by identity, and the per-plant data is indexed by the plant ordinals.
  */
 
 public class Item implements Comparable<Item> {
+    private int index; // the dense ordinal of the item in the environment
     private String id;
     private ItemType type;
     private double materialCost;
     private ProductCategory productCategory;
     private double holdingCost;
-    private Map<Pair<Plant, Plant>, Transit> transitMap;
+    private List<Transit> transits;
     private Map<CapacityType, Double> rateMap;
     private Map<Plant, Production> productionMap;
     private List<ProportionConstraint> proportionConstraints;
@@ -30,6 +33,12 @@ public class Item implements Comparable<Item> {
     private Set<MachineSet> sharedMachineSets; // all the machine sets may be occupied to provide the item
     private Set<Item> dependentItems; // all the dependent items
 
+    // the dense lookup arrays, built by the environment once the ordinals are assigned
+    private double[] rates; // the rate of each capacity type (index)
+    private Production[] productions; // the production in each plant (index)
+    private MachineSet[][] machineSets; // the machine sets in each plant (index)
+    private Transit[][] transitArray; // the transit between each pair of plants (from index, to index)
+
     public Item(String id, ItemType type, double materialCost, ProductCategory productCategory, double holdingCost) {
         this.id = id;
         this.type = type;
@@ -37,7 +46,7 @@ public class Item implements Comparable<Item> {
         this.productCategory = productCategory;
         this.holdingCost = holdingCost;
 
-        transitMap = new HashMap<>();
+        transits = new ArrayList<>();
         rateMap = new HashMap<>();
         productionMap = new HashMap<>();
         proportionConstraints = new LinkedList<>();
@@ -54,6 +63,14 @@ public class Item implements Comparable<Item> {
         dependentItems = new HashSet<>();
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public String getId() {
         return id;
     }
@@ -74,8 +91,8 @@ public class Item implements Comparable<Item> {
         return holdingCost;
     }
 
-    public Map<Pair<Plant, Plant>, Transit> getTransitMap() {
-        return transitMap;
+    public List<Transit> getTransits() {
+        return transits;
     }
 
     public Map<CapacityType, Double> getRateMap() {
@@ -119,7 +136,35 @@ public class Item implements Comparable<Item> {
     }
 
     public Production getProduction(Plant plant) {
-        return productionMap.get(plant);
+        return productions[plant.getIndex()];
+    }
+
+    public double getRate(CapacityType capacityType) {
+        return rates[capacityType.getIndex()];
+    }
+
+    /**
+     * Get the machine sets occupied by producing this item in a plant.
+     * @param plant the plant.
+     * @return the machine sets, an empty array if the item cannot be produced there.
+     */
+    public MachineSet[] getMachineSets(Plant plant) {
+        return machineSets[plant.getIndex()];
+    }
+
+    /**
+     * Get the transit of this item between two plants.
+     * @param fromPlant the source plant.
+     * @param toPlant the target plant.
+     * @return the transit, or null if the item cannot be transited between them.
+     */
+    public Transit getTransit(Plant fromPlant, Plant toPlant) {
+        Transit[] transitsFrom = transitArray[fromPlant.getIndex()];
+
+        if (transitsFrom == null)
+            return null;
+
+        return transitsFrom[toPlant.getIndex()];
     }
 
     public int getMinProductionLeadTime() {
@@ -167,9 +212,43 @@ public class Item implements Comparable<Item> {
     }
 
     public void addTransit(Transit transit) {
-        Plant fromPlant = transit.getFromPlant();
-        Plant toPlant = transit.getToPlant();
-        transitMap.put(new Pair<>(fromPlant, toPlant), transit);
+        transits.add(transit);
+    }
+
+    /**
+     * Build the dense lookup arrays indexed by the plant and capacity type ordinals.
+     * @param numPlants the number of plants.
+     * @param numCapacityTypes the number of capacity types.
+     */
+    public void buildIndex(int numPlants, int numCapacityTypes) {
+        rates = new double[numCapacityTypes];
+        for (CapacityType capacityType : rateMap.keySet()) {
+            rates[capacityType.getIndex()] = rateMap.get(capacityType);
+        }
+
+        productions = new Production[numPlants];
+        for (Production production : productionMap.values()) {
+            productions[production.getPlant().getIndex()] = production;
+        }
+
+        machineSets = new MachineSet[numPlants][];
+        for (int i = 0; i < numPlants; i++) {
+            machineSets[i] = new MachineSet[0];
+        }
+        for (Plant plant : machineMap.keySet()) {
+            machineSets[plant.getIndex()] = machineMap.get(plant).toArray(new MachineSet[0]);
+        }
+
+        // the later transit between the same plants overrides the earlier one
+        transitArray = new Transit[numPlants][];
+        for (Transit transit : transits) {
+            int from = transit.getFromPlant().getIndex();
+
+            if (transitArray[from] == null)
+                transitArray[from] = new Transit[numPlants];
+
+            transitArray[from][transit.getToPlant().getIndex()] = transit;
+        }
     }
 
     public void calcMinProdLeadTime() {
@@ -193,20 +272,21 @@ public class Item implements Comparable<Item> {
 //        plants.addAll(frozenProductionMap.keySet());
 
         // where it can be transit from/to
-        for (Transit transit : transitMap.values()) {
+        for (Transit transit : transits) {
             plants.add(transit.getFromPlant());
             plants.add(transit.getToPlant());
         }
     }
 
     /**
-     * Calculate the bom items.
+     * Calculate the bom items, i.e. the bom components and their bom items.
+     * The bom items of the components must be calculated before,
+     * e.g. by calculating the items in the topological order of the boms.
      */
     public void calcBomItems() {
         for (Production production : productionMap.values()) {
             for (BomComponent component : production.getBom()) {
                 Item compItem = component.getMaterial();
-                compItem.calcBomItems();
 
                 bomItems.addAll(compItem.getBomItems());
                 bomItems.add(compItem);
@@ -215,12 +295,14 @@ public class Item implements Comparable<Item> {
     }
 
     /**
-     * Calculate the shared machine sets.
+     * Calculate the shared machine sets, i.e. its own machine sets and those of its bom components.
+     * The shared machine sets of the components must be calculated before,
+     * e.g. by calculating the items in the topological order of the boms.
      */
     public void calcSharedMachineSets() {
         for (List<MachineSet> machineSets : machineMap.values()) {
             for (MachineSet machineSet : machineSets) {
-                if (rateMap.get(machineSet.getCapacityType()) > 0) {
+                if (getRate(machineSet.getCapacityType()) > 0) {
                     sharedMachineSets.add(machineSet);
                 }
             }
@@ -229,34 +311,29 @@ public class Item implements Comparable<Item> {
         for (Production production : productionMap.values()) {
             for (BomComponent component : production.getBom()) {
                 Item compItem = component.getMaterial();
-                compItem.calcSharedMachineSets();
 
                 sharedMachineSets.addAll(compItem.getSharedMachineSets());
             }
         }
     }
 
-    public void addCapacity(Plant plant, int dateId, double quantity) {
-        List<MachineSet> machineSets = machineMap.get(plant);
+    public void addCapacity(CapacityLedger ledger, Plant plant, int dateId, double quantity) {
+        for (MachineSet machineSet : machineSets[plant.getIndex()]) {
+            double rate = getRate(machineSet.getCapacityType());
 
-        for (MachineSet machineSet : machineSets) {
-            double rate = rateMap.get(machineSet.getCapacityType());
-
-            machineSet.getCapacityMap().get(dateId).addRemaining(rate * quantity);
+            ledger.addRemaining(machineSet, dateId, rate * quantity);
         }
     }
 
-    public void reduceCapacity(Plant plant, int dateId, double quantity) {
-        List<MachineSet> machineSets = machineMap.get(plant);
-
-        for (MachineSet machineSet : machineSets) {
-            double rate = rateMap.get(machineSet.getCapacityType());
+    public void reduceCapacity(CapacityLedger ledger, Plant plant, int dateId, double quantity) {
+        for (MachineSet machineSet : machineSets[plant.getIndex()]) {
+            double rate = getRate(machineSet.getCapacityType());
 
             if (rate == 0)
                 continue;
 
 //            System.out.println(machineSet.toString() + ", " + dateId);
-            machineSet.getCapacityMap().get(dateId).reduceRemaining(rate*quantity);
+            ledger.addRemaining(machineSet, dateId, -rate*quantity);
         }
     }
 
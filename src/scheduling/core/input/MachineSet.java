@@ -8,6 +8,7 @@ import java.util.Map;
  */
 
 public class MachineSet implements Comparable<MachineSet> {
+    private int index; // the dense ordinal in the environment
     private String name;
     private Plant plant;
     private CapacityType capacityType;
@@ -23,6 +24,14 @@ public class MachineSet implements Comparable<MachineSet> {
         capacityMap = new HashMap<>();
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public String getName() {
         return name;
     }
@@ -26,6 +26,9 @@ public class OrderDemand extends Demand {
         schedule.addOrderSupply(dateId, supply, suppQuantity);
 
         quantity -= suppQuantity;
+
+        // the demand is restored if the supply is discarded from a branch of the schedule
+        schedule.recordUndo(() -> quantity += suppQuantity);
     }
 
     @Override
@@ -10,6 +10,7 @@ import java.util.Map;
  */
 
 public class Plant implements Comparable<Plant> {
+    private int index; // the dense ordinal of the plant in the environment
     private String name;
     private int lockedOutDays;
     private String type;
@@ -35,6 +36,14 @@ public class Plant implements Comparable<Plant> {
         rawMaterialPoMap = new HashMap<>();
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public String getName() {
         return name;
     }
@@ -8,4 +8,12 @@ public class ProductCategory {
         this.name = name;
         this.fillRate = fillRate;
     }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getFillRate() {
+        return fillRate;
+    }
 }
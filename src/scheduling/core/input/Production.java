@@ -1,7 +1,9 @@
 package scheduling.core.input;
 
+import scheduling.core.CapacityLedger;
+
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,7 +23,8 @@ public class Production {
     private int maxProduction;
     private int fixedDaysSupply;
     private List<BomComponent> bom;
-    private Map<MachineSet, Double> rateMap; // the rate (capacity consumption) of the production
+    private MachineSet[] machineSets; // the machine sets occupied by the production
+    private double[] rates; // the rate (capacity consumption) of the production on each machine set
 
     public Production(Item item, Plant plant, double cost, int leadTime, int prevWeekProduction, int weekToDateProduction, int lotSize, int minProduction, int maxProduction, int fixedDaysSupply) {
         this.item = item;
@@ -82,47 +85,54 @@ public class Production {
         return bom;
     }
 
-    public Map<MachineSet, Double> getRateMap() {
-        return rateMap;
+    public MachineSet[] getMachineSets() {
+        return machineSets;
+    }
+
+    public double[] getRates() {
+        return rates;
     }
 
     public void addBom(BomComponent bomComponent) {
         bom.add(bomComponent);
     }
 
+    /**
+     * Calculate the rates of the machine sets occupied by the production.
+     * A machine set listed more than once for the item in the plant is occupied once for each time it is listed,
+     * so it is kept once with the sum of its rates.
+     */
     public void calcRateMap() {
-        rateMap = new HashMap<>();
+        Map<MachineSet, Double> rateMap = new LinkedHashMap<>();
 
-        List<MachineSet> machineSets = item.getMachineMap().get(plant);
+        for (MachineSet machineSet : item.getMachineMap().get(plant))
+            rateMap.merge(machineSet, item.getRateMap().get(machineSet.getCapacityType()), Double::sum);
 
-        for (MachineSet machineSet : machineSets) {
-            CapacityType capacityType = machineSet.getCapacityType();
-            double rate = item.getRateMap().get(capacityType);
+        machineSets = rateMap.keySet().toArray(new MachineSet[0]);
+        rates = new double[machineSets.length];
 
-            rateMap.put(machineSet, rate);
-        }
+        for (int i = 0; i < machineSets.length; i++)
+            rates[i] = rateMap.get(machineSets[i]);
     }
 
     /**
-     * Calculate the max quantity of the production based on the machines' capacity.
+     * Calculate the max quantity of the production based on the machines' remaining capacity in a schedule.
+     * @param ledger the capacity ledger of the schedule.
      * @param dateId the date to start the production.
      * @return the max quantity of the production based on the machines' capacity.
      */
-    public long maxQuantityFromCapacity(int dateId) {
+    public long maxQuantityFromCapacity(CapacityLedger ledger, int dateId) {
         long maxQuantity = Long.MAX_VALUE;
 
-        List<MachineSet> machineSets = item.getMachineMap().get(plant);
-
-        for (MachineSet machineSet : machineSets) {
-            double rate = rateMap.get(machineSet);
+        for (int i = 0; i < machineSets.length; i++) {
+            MachineSet machineSet = machineSets[i];
+            double rate = rates[i];
             long quantity;
 
             if (rate == 0) {
                 quantity = Long.MAX_VALUE;
             } else {
-                double remCap = 0;
-                if (machineSet.getCapacityMap().containsKey(dateId))
-                    remCap = machineSet.getCapacityMap().get(dateId).getRemaining();
+                double remCap = ledger.getRemaining(machineSet, dateId);
 
                 quantity = (long)(remCap/rate);
             }
@@ -1,6 +1,7 @@
 package scheduling.core.input;
 
 public class Transit {
+    private int index; // the dense ordinal in the environment
     private Item item;
     private Plant fromPlant;
     private Plant toPlant;
@@ -15,6 +16,14 @@ public class Transit {
         this.leadTime = leadTime;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public Item getItem() {
         return item;
     }
@@ -0,0 +1,61 @@
+package scheduling.gp;
+
+import scheduling.core.SupplyChain;
+import scheduling.simulation.DecisionSituation;
+import scheduling.simulation.PriorityRule;
+import scheduling.simulation.State;
+import scheduling.simulation.SupplyChainFeature;
+
+/**
+ * A priority rule of the supply chains compiled from an evolved GP tree by the {@link RuleCompiler}.
+ * The priority is calculated directly from the primitive feature vector of the candidate,
+ * without evaluating the GP nodes.
+ * In a decision situation, the columns of the features used by the tree are calculated for the whole pool,
+ * and the tree is evaluated on each candidate from the feature matrix.
+ * Each rule has its own feature vector, so a rule should only be used in one thread at a time.
+ */
+
+public abstract class CompiledRule extends PriorityRule<SupplyChain> {
+    private final double[] features = new double[SupplyChainFeature.values().length];
+    private final SupplyChainFeature[] usedFeatures; // the features read by the tree
+
+    public CompiledRule(String name, SupplyChainFeature[] usedFeatures) {
+        super(name);
+        this.usedFeatures = usedFeatures;
+    }
+
+    public SupplyChainFeature[] getUsedFeatures() {
+        return usedFeatures;
+    }
+
+    @Override
+    public void priorities(DecisionSituation<SupplyChain> decisionSituation, double[] priorities) {
+        double[][] matrix = decisionSituation.columns(usedFeatures);
+
+        for (int i = 0; i < priorities.length; i++)
+            priorities[i] = evaluate(matrix, i);
+    }
+
+    @Override
+    public double priority(SupplyChain candidate, State state) {
+        SupplyChainFeature.values(candidate, state, features);
+
+        return evaluate(features);
+    }
+
+    /**
+     * Evaluate the compiled tree on a feature vector.
+     * @param features the features indexed by the ordinals of the supply chain features.
+     * @return the value of the tree, i.e. the priority.
+     */
+    public abstract double evaluate(double[] features);
+
+    /**
+     * Evaluate the compiled tree on a candidate of a feature matrix.
+     * @param features the feature matrix indexed by [feature ordinal][candidate],
+     *                 with the columns of the used features calculated.
+     * @param candidate the index of the candidate.
+     * @return the value of the tree, i.e. the priority.
+     */
+    public abstract double evaluate(double[][] features, int candidate);
+}
@@ -0,0 +1,50 @@
+package scheduling.gp;
+
+import scheduling.simulation.SupplyChainFeature;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * The template of the compiled rules. It is never loaded as it is: the {@link RuleCompiler} defines
+ * a new hidden class from its bytes for each compiled tree, with the method handles of the tree as the class data,
+ * on a feature vector and on a column of a feature matrix.
+ * Since the handles are then static final constants of their own class, the JIT can inline the whole tree
+ * into the evaluation.
+ */
+
+final class CompiledRuleTemplate extends CompiledRule {
+    private static final MethodHandle TREE = tree(0); // (double[])double
+    private static final MethodHandle COLUMNS = tree(1); // (double[][], int)double
+
+    CompiledRuleTemplate(String name, SupplyChainFeature[] usedFeatures) {
+        super(name, usedFeatures);
+    }
+
+    private static MethodHandle tree(int index) {
+        try {
+            return MethodHandles.classDataAt(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, MethodHandle.class, index);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public double evaluate(double[] features) {
+        try {
+            return (double)TREE.invokeExact(features);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public double evaluate(double[][] features, int candidate) {
+        try {
+            return (double)COLUMNS.invokeExact(features, candidate);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
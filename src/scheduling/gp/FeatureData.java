@@ -0,0 +1,18 @@
+package scheduling.gp;
+
+import ec.gp.GPData;
+
+/**
+ * The data passed between the nodes of an evolved rule, i.e. the value of the subtree.
+ */
+
+public class FeatureData extends GPData {
+    private static final long serialVersionUID = 1;
+
+    public double value;
+
+    @Override
+    public void copyTo(GPData gpd) {
+        ((FeatureData)gpd).value = value;
+    }
+}
@@ -0,0 +1,77 @@
+package scheduling.gp;
+
+import ec.EvolutionState;
+import ec.Problem;
+import ec.gp.*;
+import ec.util.Parameter;
+import scheduling.simulation.SupplyChainFeature;
+
+/**
+ * A terminal of an evolved rule, reading a feature of the supply chain being prioritised.
+ * The same class is used for all the features, each given by the parameter "feature" of its function set entry,
+ * e.g. gp.fs.0.func.6.feature = total_cost.
+ */
+
+public class FeatureTerminal extends GPNode {
+    private static final long serialVersionUID = 1;
+
+    public static final String P_FEATURE = "feature";
+
+    private SupplyChainFeature feature;
+
+    public FeatureTerminal() {
+    }
+
+    public FeatureTerminal(SupplyChainFeature feature) {
+        this.feature = feature;
+        this.children = new GPNode[0];
+    }
+
+    public SupplyChainFeature getFeature() {
+        return feature;
+    }
+
+    @Override
+    public void setup(EvolutionState state, Parameter base) {
+        super.setup(state, base);
+
+        String name = state.parameters.getString(base.push(P_FEATURE), null);
+        if (name == null)
+            state.output.fatal("No feature is given for the terminal", base.push(P_FEATURE));
+
+        try {
+            feature = SupplyChainFeature.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            state.output.fatal("Unknown feature " + name, base.push(P_FEATURE));
+        }
+    }
+
+    @Override
+    public int expectedChildren() {
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return feature == null ? "feature" : feature.name().toLowerCase();
+    }
+
+    /**
+     * Two terminals are equal only if they read the same feature, although they have the same class.
+     */
+    @Override
+    public boolean nodeEquals(GPNode node) {
+        return super.nodeEquals(node) && ((FeatureTerminal)node).feature == feature;
+    }
+
+    @Override
+    public int nodeHashCode() {
+        return super.nodeHashCode() ^ feature.hashCode();
+    }
+
+    @Override
+    public void eval(EvolutionState state, int thread, GPData input, ADFStack stack,
+                     GPIndividual individual, Problem problem) {
+        ((FeatureData)input).value = ((SupplyChainRuleProblem)problem).getFeatures()[feature.ordinal()];
+    }
+}
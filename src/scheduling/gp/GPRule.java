@@ -0,0 +1,44 @@
+package scheduling.gp;
+
+import ec.EvolutionState;
+import ec.gp.GPIndividual;
+import scheduling.core.SupplyChain;
+import scheduling.simulation.PriorityRule;
+import scheduling.simulation.State;
+import scheduling.simulation.SupplyChainFeature;
+
+/**
+ * A priority rule of the supply chains given by an evolved GP tree.
+ * The features of each candidate are calculated into the feature vector of the problem,
+ * and the tree is then evaluated on them, i.e. the priority is the value of the tree.
+ * A rule evaluates its tree with the problem of one thread, and should only be used in that thread.
+ */
+
+public class GPRule extends PriorityRule<SupplyChain> {
+    private EvolutionState evolutionState;
+    private GPIndividual individual;
+    private int threadnum;
+    private SupplyChainRuleProblem problem;
+
+    public GPRule(EvolutionState evolutionState, GPIndividual individual, int threadnum,
+                  SupplyChainRuleProblem problem) {
+        super(individual.trees[0].child.makeLispTree());
+        this.evolutionState = evolutionState;
+        this.individual = individual;
+        this.threadnum = threadnum;
+        this.problem = problem;
+    }
+
+    public GPIndividual getIndividual() {
+        return individual;
+    }
+
+    @Override
+    public double priority(SupplyChain candidate, State state) {
+        SupplyChainFeature.values(candidate, state, problem.getFeatures());
+
+        individual.trees[0].child.eval(evolutionState, threadnum, problem.input, problem.stack, individual, problem);
+
+        return ((FeatureData)problem.input).value;
+    }
+}
@@ -0,0 +1,241 @@
+package scheduling.gp;
+
+import ec.gp.GPIndividual;
+import ec.gp.GPNode;
+import scheduling.core.Environment;
+import scheduling.core.EnvironmentGenerator;
+import scheduling.gp.function.*;
+import scheduling.scheduler.GreedyStaticScheduler;
+import scheduling.simulation.State;
+import scheduling.simulation.SupplyChainFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/**
+ * The rule compiler turns an evolved GP tree into a {@link CompiledRule}, so the scheduler does not
+ * interpret the tree node by node for each candidate.
+ *
+ * The tree is first composed into a single method handle of type (double[])double:
+ * a feature terminal reads its element of the feature vector, and a function
+ * applies its handle to the handles of its children.
+ * The same is done for a handle of type (double[][], int)double, reading a candidate of a feature matrix.
+ * A hidden class is then defined from the bytes of {@link CompiledRuleTemplate} with the handles as its class data,
+ * which makes the handles constants of the class, so the JIT compiles the tree as straight-line code.
+ */
+
+public class RuleCompiler {
+    private static final MethodType TREE_TYPE = MethodType.methodType(double.class, double[].class);
+    private static final MethodType COLUMNS_TYPE = MethodType.methodType(double.class, double[][].class, int.class);
+    private static final MethodHandle FEATURE_GETTER = MethodHandles.arrayElementGetter(double[].class);
+    private static final MethodHandle COLUMN_GETTER = MethodHandles.arrayElementGetter(double[][].class);
+
+    private static byte[] templateBytes;
+
+    /**
+     * Compile the first tree of an individual.
+     * @param individual the individual.
+     * @return the compiled rule.
+     */
+    public static CompiledRule compile(GPIndividual individual) {
+        GPNode root = individual.trees[0].child;
+
+        return compile(root, root.makeLispTree());
+    }
+
+    /**
+     * Compile a tree.
+     * @param root the root of the tree.
+     * @param name the name of the compiled rule.
+     * @return the compiled rule.
+     */
+    public static CompiledRule compile(GPNode root, String name) {
+        List<MethodHandle> trees = Arrays.asList(handle(root), columnsHandle(root));
+
+        // the features read by the terminals, in the order of the ordinals
+        EnumSet<SupplyChainFeature> usedFeatures = EnumSet.noneOf(SupplyChainFeature.class);
+        collectFeatures(root, usedFeatures);
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(templateBytes(), trees, true);
+
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, String.class, SupplyChainFeature[].class));
+
+            return (CompiledRule)constructor.invoke(name, usedFeatures.toArray(new SupplyChainFeature[0]));
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to compile the rule " + name, e);
+        }
+    }
+
+    /**
+     * Compose the method handle of a tree.
+     * @param node the root of the tree.
+     * @return the handle of type (double[])double, calculating the value of the tree from a feature vector.
+     */
+    public static MethodHandle handle(GPNode node) {
+        if (node instanceof FeatureTerminal) {
+            int index = ((FeatureTerminal)node).getFeature().ordinal();
+
+            return MethodHandles.insertArguments(FEATURE_GETTER, 1, index);
+        }
+
+        if (node instanceof BinaryFunction) {
+            MethodHandle left = handle(node.children[0]);
+            MethodHandle right = handle(node.children[1]);
+
+            // (double, double) -> (double[], double[]) -> (double[])
+            MethodHandle function = MethodHandles.filterArguments(((BinaryFunction)node).handle(), 0, left, right);
+            return MethodHandles.permuteArguments(function, TREE_TYPE, 0, 0);
+        }
+
+        throw new IllegalArgumentException("The node " + node + " (" + node.getClass().getName() + ") cannot be compiled");
+    }
+
+    /**
+     * Compose the method handle of a tree on a feature matrix.
+     * @param node the root of the tree.
+     * @return the handle of type (double[][], int)double, calculating the value of the tree
+     *         for a candidate from the feature matrix indexed by [feature ordinal][candidate].
+     */
+    public static MethodHandle columnsHandle(GPNode node) {
+        if (node instanceof FeatureTerminal) {
+            int index = ((FeatureTerminal)node).getFeature().ordinal();
+
+            // (double[][], int) -> (double[], int) -> double
+            MethodHandle column = MethodHandles.insertArguments(COLUMN_GETTER, 1, index);
+            return MethodHandles.filterArguments(FEATURE_GETTER, 0, column);
+        }
+
+        if (node instanceof BinaryFunction) {
+            MethodHandle left = columnsHandle(node.children[0]);
+            MethodHandle right = columnsHandle(node.children[1]);
+
+            // (double, double) -> (double[][], int, double[][], int) -> (double[][], int)
+            MethodHandle function = MethodHandles.collectArguments(
+                    MethodHandles.collectArguments(((BinaryFunction)node).handle(), 1, right), 0, left);
+            return MethodHandles.permuteArguments(function, COLUMNS_TYPE, 0, 1, 0, 1);
+        }
+
+        throw new IllegalArgumentException("The node " + node + " (" + node.getClass().getName() + ") cannot be compiled");
+    }
+
+    private static void collectFeatures(GPNode node, Set<SupplyChainFeature> features) {
+        if (node instanceof FeatureTerminal)
+            features.add(((FeatureTerminal)node).getFeature());
+
+        for (GPNode child : node.children)
+            collectFeatures(child, features);
+    }
+
+    private static synchronized byte[] templateBytes() throws IOException {
+        if (templateBytes == null) {
+            try (InputStream in = CompiledRuleTemplate.class.getResourceAsStream(
+                    CompiledRuleTemplate.class.getSimpleName() + ".class")) {
+                if (in == null)
+                    throw new IOException("The class file of " + CompiledRuleTemplate.class.getName() + " is not found");
+
+                templateBytes = in.readAllBytes();
+            }
+        }
+
+        return templateBytes;
+    }
+
+    private static GPNode node(GPNode node, GPNode... children) {
+        node.children = children;
+        for (int i = 0; i < children.length; i++) {
+            children[i].parent = node;
+            children[i].argposition = (byte)i;
+        }
+
+        return node;
+    }
+
+    /**
+     * Compare the interpreted and the compiled evaluation of a tree on a generated environment.
+     * Usage: RuleCompiler [items], the default is 500 items.
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+
+        EnvironmentGenerator generator = new EnvironmentGenerator();
+        generator.setNumItems(size);
+        generator.setNumPlants(Math.max(4, (int)Math.sqrt(size)/10));
+        Environment env = generator.generate(0);
+
+        // (/ (max backlog forecast) (+ total_cost lead_time))
+        GPNode root = node(new Div(),
+                node(new Max(),
+                        new FeatureTerminal(SupplyChainFeature.BACKLOG),
+                        new FeatureTerminal(SupplyChainFeature.FORECAST)),
+                node(new Add(),
+                        new FeatureTerminal(SupplyChainFeature.TOTAL_COST),
+                        new FeatureTerminal(SupplyChainFeature.LEAD_TIME)));
+
+        CompiledRule compiled = compile(root, root.makeLispTree());
+        System.out.println("compiled " + compiled + " into " + compiled.getClass().getName());
+
+        // the raw evaluation on random feature vectors
+        double[][] vectors = new double[1000][SupplyChainFeature.values().length];
+        for (int i = 0; i < vectors.length; i++)
+            for (int j = 0; j < vectors[i].length; j++)
+                vectors[i][j] = (i*31+j*17)%101;
+
+        SupplyChainRuleProblem problem = new SupplyChainRuleProblem();
+        FeatureData data = new FeatureData();
+
+        // the same vectors as the columns of a feature matrix
+        double[][] matrix = new double[SupplyChainFeature.values().length][vectors.length];
+        for (int i = 0; i < vectors.length; i++)
+            for (int j = 0; j < matrix.length; j++)
+                matrix[j][i] = vectors[i][j];
+
+        for (int round = 0; round < 5; round++) {
+            double interpretedSum = 0, compiledSum = 0, columnsSum = 0;
+
+            long start = System.nanoTime();
+            for (int k = 0; k < 1000; k++) {
+                for (double[] vector : vectors) {
+                    problem.setFeatures(vector);
+                    root.eval(null, 0, data, null, null, problem);
+                    interpretedSum += data.value;
+                }
+            }
+            double interpreted = (System.nanoTime()-start)/1e6;
+
+            start = System.nanoTime();
+            for (int k = 0; k < 1000; k++)
+                for (double[] vector : vectors)
+                    compiledSum += compiled.evaluate(vector);
+            double compiledDuration = (System.nanoTime()-start)/1e6;
+
+            start = System.nanoTime();
+            for (int k = 0; k < 1000; k++)
+                for (int i = 0; i < vectors.length; i++)
+                    columnsSum += compiled.evaluate(matrix, i);
+            double columnsDuration = (System.nanoTime()-start)/1e6;
+
+            System.out.println("1m evaluations: interpreted " + interpreted + "ms, compiled " + compiledDuration +
+                    "ms, compiled on columns " + columnsDuration + "ms, same result " +
+                    (interpretedSum == compiledSum && compiledSum == columnsSum));
+        }
+
+        // the compiled rule in the scheduler
+        State state = new State(env);
+        GreedyStaticScheduler scheduler = new GreedyStaticScheduler();
+        scheduler.setChainRule(compiled);
+
+        long start = System.nanoTime();
+        scheduler.planSchedule(state);
+        double duration = (System.nanoTime()-start)/1e9;
+
+        state.getPlannedSchedule().calcFillRate();
+        System.out.println(compiled + ": fill rate = " + state.getPlannedSchedule().getFillRate() + ", " + duration + "s");
+    }
+}
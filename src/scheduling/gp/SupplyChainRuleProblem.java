@@ -0,0 +1,181 @@
+package scheduling.gp;
+
+import ec.EvolutionState;
+import ec.Individual;
+import ec.gp.GPIndividual;
+import ec.gp.GPProblem;
+import ec.gp.koza.KozaFitness;
+import ec.simple.SimpleProblemForm;
+import ec.util.Parameter;
+import io.EnvironmentSnapshot;
+import scheduling.core.Environment;
+import scheduling.core.EnvironmentGenerator;
+import scheduling.core.Schedule;
+import scheduling.core.SupplyChain;
+import scheduling.scheduler.GreedyStaticScheduler;
+import scheduling.simulation.PriorityRule;
+import scheduling.simulation.State;
+import scheduling.simulation.SupplyChainFeature;
+
+import java.io.File;
+
+/**
+ * The GP problem of evolving the priority rule of the supply chains in the greedy static scheduler.
+ * An individual is a tree of the supply chain features, compiled into a {@link CompiledRule} by the
+ * {@link RuleCompiler}, or interpreted as a {@link GPRule} if the parameter compile is false.
+ * Its fitness is the average (1 - fill rate) of the planned schedules of the training instances,
+ * i.e. the smaller the better.
+ *
+ * The training instances are loaded once in the setup, and shared read-only by the problems of all the threads.
+ * The activations of the supply chains are kept by the schedules being planned,
+ * so the evaluation threads plan on the same instances.
+ *
+ * Parameters (under the base of the problem, e.g. eval.problem):
+ * - instances: the number of instance files, each given by instance.i, e.g. instance.0 = data/e_vuw_test_multi_plant_01.xlsx.
+ * - generated: the number of generated instances, with generated.items and generated.plants,
+ *   generated with the seeds 0, 1, ..., used if there is no instance file.
+ * - compile: whether to compile the trees (default true).
+ */
+
+public class SupplyChainRuleProblem extends GPProblem implements SimpleProblemForm {
+    private static final long serialVersionUID = 1;
+
+    public static final String P_INSTANCES = "instances";
+    public static final String P_INSTANCE = "instance";
+    public static final String P_GENERATED = "generated";
+    public static final String P_ITEMS = "items";
+    public static final String P_PLANTS = "plants";
+    public static final String P_COMPILE = "compile";
+
+    private Environment[] instances; // the training instances, shared by all the threads
+    private double[] features; // the features of the current candidate, of this thread
+    private boolean compile;
+
+    public Environment[] getInstances() {
+        return instances;
+    }
+
+    public double[] getFeatures() {
+        return features;
+    }
+
+    public void setFeatures(double[] features) {
+        this.features = features;
+    }
+
+    @Override
+    public void setup(EvolutionState state, Parameter base) {
+        super.setup(state, base);
+
+        if (!(input instanceof FeatureData))
+            state.output.fatal("The GPData class must subclass from " + FeatureData.class, base.push(P_DATA), null);
+
+        int numFiles = state.parameters.getIntWithDefault(base.push(P_INSTANCES), null, 0);
+
+        if (numFiles > 0) {
+            instances = new Environment[numFiles];
+
+            for (int i = 0; i < numFiles; i++) {
+                String path = state.parameters.getString(base.push(P_INSTANCE).push("" + i), null);
+                if (path == null)
+                    state.output.fatal("No file is given for the instance " + i, base.push(P_INSTANCE).push("" + i));
+
+                state.output.message("Loading the instance " + path);
+                instances[i] = EnvironmentSnapshot.load(new File(path));
+                if (instances[i] == null)
+                    state.output.fatal("Failed to load the instance " + path, base.push(P_INSTANCE).push("" + i));
+            }
+        } else {
+            int numGenerated = state.parameters.getIntWithDefault(base.push(P_GENERATED), null, 0);
+            if (numGenerated <= 0)
+                state.output.fatal("No training instance is given", base.push(P_INSTANCES), base.push(P_GENERATED));
+
+            EnvironmentGenerator generator = new EnvironmentGenerator();
+            generator.setNumItems(state.parameters.getIntWithDefault(base.push(P_GENERATED).push(P_ITEMS), null, 500));
+            generator.setNumPlants(state.parameters.getIntWithDefault(base.push(P_GENERATED).push(P_PLANTS), null, 4));
+
+            instances = new Environment[numGenerated];
+            for (int i = 0; i < numGenerated; i++)
+                instances[i] = generator.generate(i);
+        }
+
+        compile = state.parameters.getBoolean(base.push(P_COMPILE), null, true);
+
+        features = new double[SupplyChainFeature.values().length];
+    }
+
+    @Override
+    public Object clone() {
+        SupplyChainRuleProblem prob = (SupplyChainRuleProblem)(super.clone());
+        prob.features = new double[features.length];
+
+        return prob;
+    }
+
+    /**
+     * Get the rule of an individual, compiled or interpreted.
+     * @param state the evolution state.
+     * @param ind the individual.
+     * @param threadnum the thread.
+     * @return the rule.
+     */
+    public PriorityRule<SupplyChain> rule(EvolutionState state, GPIndividual ind, int threadnum) {
+        if (compile)
+            return RuleCompiler.compile(ind);
+
+        return new GPRule(state, ind, threadnum, this);
+    }
+
+    /**
+     * Plan an instance with the greedy static scheduler using a rule.
+     * @param rule the rule of the supply chains.
+     * @param threadnum the thread.
+     * @param instance the index of the instance.
+     * @return the planned schedule.
+     */
+    public Schedule plan(PriorityRule<SupplyChain> rule, int threadnum, int instance) {
+        State problem = new State(instances[instance]);
+
+        GreedyStaticScheduler scheduler = new GreedyStaticScheduler();
+        scheduler.setChainRule(rule);
+        scheduler.planSchedule(problem);
+
+        Schedule schedule = problem.getPlannedSchedule();
+        schedule.calcFillRate();
+
+        return schedule;
+    }
+
+    @Override
+    public void evaluate(EvolutionState state, Individual ind, int subpopulation, int threadnum) {
+        if (ind.evaluated)
+            return;
+
+        PriorityRule<SupplyChain> rule = rule(state, (GPIndividual)ind, threadnum);
+
+        double sum = 0;
+        for (int i = 0; i < instances.length; i++) {
+            Schedule schedule = plan(rule, threadnum, i);
+            sum += 1-schedule.getFillRate();
+        }
+
+        KozaFitness f = (KozaFitness)ind.fitness;
+        f.setStandardizedFitness(state, sum/instances.length);
+        f.hits = 0;
+        ind.evaluated = true;
+    }
+
+    @Override
+    public void describe(EvolutionState state, Individual ind, int subpopulation, int threadnum, int log) {
+        PriorityRule<SupplyChain> rule = rule(state, (GPIndividual)ind, threadnum);
+
+        for (int i = 0; i < instances.length; i++) {
+            Schedule schedule = plan(rule, threadnum, i);
+
+            state.output.println("instance " + i + ": fill rate = " + schedule.getFillRate() +
+                    ", holding cost = " + schedule.getHoldingCost() +
+                    ", production cost = " + schedule.getProductionCost() +
+                    ", transit cost = " + schedule.getTransitCost(), log);
+        }
+    }
+}
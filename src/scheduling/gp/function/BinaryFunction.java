@@ -0,0 +1,60 @@
+package scheduling.gp.function;
+
+import ec.EvolutionState;
+import ec.Problem;
+import ec.gp.ADFStack;
+import ec.gp.GPData;
+import ec.gp.GPIndividual;
+import ec.gp.GPNode;
+import scheduling.gp.FeatureData;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A function of an evolved rule with two arguments.
+ * The subclasses only define how the values of the two children are combined.
+ */
+
+public abstract class BinaryFunction extends GPNode {
+    private static final long serialVersionUID = 1;
+
+    @Override
+    public int expectedChildren() {
+        return 2;
+    }
+
+    @Override
+    public void eval(EvolutionState state, int thread, GPData input, ADFStack stack,
+                     GPIndividual individual, Problem problem) {
+        FeatureData data = (FeatureData)input;
+
+        children[0].eval(state, thread, input, stack, individual, problem);
+        double left = data.value;
+
+        children[1].eval(state, thread, input, stack, individual, problem);
+        data.value = apply(left, data.value);
+    }
+
+    /**
+     * Combine the values of the two children.
+     * @param left the value of the first child.
+     * @param right the value of the second child.
+     * @return the value of the function.
+     */
+    public abstract double apply(double left, double right);
+
+    /**
+     * Get the method handle of the function, used by the rule compiler.
+     * @return the handle of apply bound to this node, of type (double, double)double.
+     */
+    public MethodHandle handle() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(getClass(), "apply",
+                    MethodType.methodType(double.class, double.class, double.class)).bindTo(this);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package scheduling.gp.function;
+
+/**
+ * The protected division of two values, which is 1 if the divisor is 0.
+ */
+
+public class Div extends BinaryFunction {
+    private static final long serialVersionUID = 1;
+
+    @Override
+    public String toString() {
+        return "/";
+    }
+
+    @Override
+    public double apply(double left, double right) {
+        if (right == 0)
+            return 1;
+
+        return left/right;
+    }
+}
@@ -0,0 +1,19 @@
+package scheduling.gp.function;
+
+/**
+ * The maximum of two values.
+ */
+
+public class Max extends BinaryFunction {
+    private static final long serialVersionUID = 1;
+
+    @Override
+    public String toString() {
+        return "max";
+    }
+
+    @Override
+    public double apply(double left, double right) {
+        return Math.max(left, right);
+    }
+}
@@ -0,0 +1,19 @@
+package scheduling.gp.function;
+
+/**
+ * The minimum of two values.
+ */
+
+public class Min extends BinaryFunction {
+    private static final long serialVersionUID = 1;
+
+    @Override
+    public String toString() {
+        return "min";
+    }
+
+    @Override
+    public double apply(double left, double right) {
+        return Math.min(left, right);
+    }
+}
@@ -0,0 +1,19 @@
+package scheduling.gp.function;
+
+/**
+ * The multiplication of two values.
+ */
+
+public class Mul extends BinaryFunction {
+    private static final long serialVersionUID = 1;
+
+    @Override
+    public String toString() {
+        return "*";
+    }
+
+    @Override
+    public double apply(double left, double right) {
+        return left*right;
+    }
+}
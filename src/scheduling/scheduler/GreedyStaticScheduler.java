@@ -31,6 +31,30 @@ public class GreedyStaticScheduler extends Scheduler {
     public GreedyStaticScheduler() {
     }
 
+    public Comparator<Demand> getDemandRanker() {
+        return demandRanker;
+    }
+
+    public void setDemandRanker(Comparator<Demand> demandRanker) {
+        this.demandRanker = demandRanker;
+    }
+
+    public PriorityRule<SupplyChain> getChainRule() {
+        return chainRule;
+    }
+
+    public void setChainRule(PriorityRule<SupplyChain> chainRule) {
+        this.chainRule = chainRule;
+    }
+
+    public TieBreaker<SupplyChain> getChainTB() {
+        return chainTB;
+    }
+
+    public void setChainTB(TieBreaker<SupplyChain> chainTB) {
+        this.chainTB = chainTB;
+    }
+
     @Override
     public void planSchedule(State state) {
         Schedule schedule = state.getPlannedSchedule();
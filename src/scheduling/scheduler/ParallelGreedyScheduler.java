@@ -0,0 +1,119 @@
+package scheduling.scheduler;
+
+import scheduling.core.Schedule;
+import scheduling.core.SupplyChain;
+import scheduling.core.input.*;
+import scheduling.simulation.PriorityRule;
+import scheduling.simulation.State;
+import scheduling.simulation.TieBreaker;
+import scheduling.simulation.rule.ShortestChainFirst;
+import scheduling.simulation.rule.UrgentDemandFirst;
+import scheduling.simulation.tiebreaker.SimpleTieBreaker;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The parallel greedy scheduler generates the same kind of planned schedule as the greedy static scheduler,
+ * but plans the independent item groups of the environment in parallel.
+ * The items in different groups share no inventory or capacity, so the demands of each group
+ * can be supplied greedily in its own schedule, on a fork join pool.
+ * The schedules of all the groups are then merged into a new planned schedule of the state.
+ */
+
+public class ParallelGreedyScheduler extends Scheduler {
+    private Comparator<Demand> demandRanker = new UrgentDemandFirst();
+    private PriorityRule<SupplyChain> chainRule = new ShortestChainFirst();
+    private TieBreaker<SupplyChain> chainTB = new SimpleTieBreaker<>();
+    private ForkJoinPool pool;
+
+    public ParallelGreedyScheduler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelGreedyScheduler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void planSchedule(State state) {
+        List<List<Item>> groups = state.getEnv().getItemGroups();
+
+        // the group of each item (index)
+        int[] groupIds = new int[state.getEnv().getItemMap().size()];
+        for (int i = 0; i < groups.size(); i++) {
+            for (Item item : groups.get(i)) {
+                groupIds[item.getIndex()] = i;
+            }
+        }
+
+        // partition the demands by the groups
+        List<List<Demand>> groupDemands = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            groupDemands.add(new ArrayList<>());
+        }
+
+        for (Demand demand : state.getDemands()) {
+            groupDemands.get(groupIds[demand.getItem().getIndex()]).add(demand);
+        }
+
+        // plan the groups with demands in parallel, the other items are not changed
+        List<ForkJoinTask<Schedule>> tasks = new ArrayList<>();
+        List<Item> unplannedItems = new ArrayList<>();
+
+        for (int i = 0; i < groups.size(); i++) {
+            List<Item> group = groups.get(i);
+            List<Demand> demands = groupDemands.get(i);
+
+            if (demands.isEmpty()) {
+                unplannedItems.addAll(group);
+                continue;
+            }
+
+            tasks.add(pool.submit(() -> planGroup(state, group, demands)));
+        }
+
+        Schedule schedule = new Schedule();
+        schedule.initWithState(state, unplannedItems);
+
+        // merge in the order of the groups, so that the merged schedule does not depend on the threads
+        for (ForkJoinTask<Schedule> task : tasks) {
+            schedule.merge(task.join());
+        }
+
+        state.setPlannedSchedule(schedule);
+    }
+
+    /**
+     * Plan a group of items in its own schedule, by supplying its demands greedily.
+     * @param state the state.
+     * @param group the items in the group.
+     * @param demands the demands of the items in the group.
+     * @return the schedule of the group.
+     */
+    public Schedule planGroup(State state, List<Item> group, List<Demand> demands) {
+        Schedule schedule = new Schedule();
+        schedule.initWithState(state, group);
+
+        Collections.sort(demands, demandRanker);
+
+        for (Demand dem : demands) {
+            supplyDemand(dem, schedule, state, chainRule, chainTB);
+        }
+
+        // the cache and the index are no longer needed once the group is planned
+        schedule.releaseActivationCache();
+        schedule.releaseFeasibleDateIndex();
+
+        return schedule;
+    }
+}
@@ -45,11 +45,18 @@ public class Rescheduler extends Scheduler {
         List<SupplyChain> sortedChains = new ArrayList<>(preplannedChainMap.keySet());
         Collections.sort(sortedChains, chainRanker);
 
+        // the chains are only relinked if the preplanned schedule was made in another environment
+        State preplannedState = state.getPlannedSchedule().getState();
+        boolean relink = preplannedState != null && preplannedState.getEnv() != state.getEnv();
+
         for (SupplyChain chain : sortedChains) {
             double plannedQuantity = preplannedChainMap.get(chain);
 
             // reactivate the chain under the new state
-            chain.reactivate(adjustedSchedule, state);
+            if (relink)
+                chain.relink(state.getEnv());
+
+            chain.reactivate(adjustedSchedule);
 
             if (!chain.isActive())
                 continue;
@@ -89,7 +96,7 @@ public class Rescheduler extends Scheduler {
 
             double totalSupplied = chain.getMaxQuantity()-left;
             chain.addToSchedule(dateId, totalSupplied, adjustedSchedule);
-            adjustedSchedule.getSupplyChainMap().put(chain.cloneActive(), totalSupplied);
+            adjustedSchedule.addSupplyChain(chain.cloneActive(), totalSupplied);
         }
 
         // remove the demands which have been fully supplied
@@ -132,8 +139,8 @@ public class Rescheduler extends Scheduler {
         System.out.println("transit cost = " + staticProb.getPlannedSchedule().getTransitCost());
         System.out.println("finished, duration = " + duration);
 
-        // test the same file
-        State newProb = State.staticProbFromFile(file);
+        // test the same environment, the capacity is kept in the schedules, so it is not changed by the last run
+        State newProb = new State(staticProb.getEnv());
 
 //        System.out.println("fill rate = " + newProb.getPlannedSchedule().getFillRate());
 //        System.out.println("holding cost = " + newProb.getPlannedSchedule().getHoldingCost());
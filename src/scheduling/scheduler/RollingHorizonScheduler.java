@@ -0,0 +1,544 @@
+package scheduling.scheduler;
+
+import org.apache.commons.math3.util.Pair;
+import scheduling.core.Environment;
+import scheduling.core.EnvironmentGenerator;
+import scheduling.core.InventoryTimeline;
+import scheduling.core.Schedule;
+import scheduling.core.ScheduleListener;
+import scheduling.core.SupplyChain;
+import scheduling.core.input.*;
+import scheduling.core.output.ProductionInstruction;
+import scheduling.core.output.SupplyInstruction;
+import scheduling.core.output.TransitInstruction;
+import scheduling.simulation.PriorityRule;
+import scheduling.simulation.Simulator;
+import scheduling.simulation.State;
+import scheduling.simulation.TieBreaker;
+import scheduling.simulation.event.CapacityUpdateEvent;
+import scheduling.simulation.event.OrderDemandUpdateEvent;
+import scheduling.simulation.rule.ShortestChainFirst;
+import scheduling.simulation.rule.UrgentDemandFirst;
+import scheduling.simulation.tiebreaker.SimpleTieBreaker;
+
+import java.util.*;
+
+/**
+ * The rolling horizon scheduler plans the whole period greedily once, and then repairs the plan every day
+ * of the simulation, instead of planning it again from scratch.
+ *
+ * Every day, the simulator executes the planned instructions of the day and applies the demand and capacity updates,
+ * and the state moves to the next day. The plan is then repaired from the next day on:
+ * (1) the instructions of the executed day that were cut are removed from the plan;
+ * (2) the productions are reduced where the updated capacity is overcommitted;
+ * (3) the instructions that consume more inventory than the plan has are removed, latest first;
+ * (4) the demands of the changed items are supplied again greedily.
+ * Steps (2) to (4) are repeated while the supply of (4) leaves the plan overcommitted or short,
+ * and the repaired plan is checked to be within the capacity and the inventory from the current date on.
+ *
+ * The changes of the plan are tracked by a schedule listener, so the repair only visits the capacities,
+ * inventories and items changed since the last repair, and its cost is proportional to the change.
+ * The instructions are visited in the order of their items, plants and transits, so the repaired plan
+ * does not depend on the iteration order of the schedule maps.
+ */
+
+public class RollingHorizonScheduler extends Scheduler {
+    public static final double EPSILON = 1e-6; // the round-off allowed in the plan
+    public static final int MAX_ROUNDS = 5; // the max rounds of releasing and supplying again in a repair
+
+    private Comparator<Demand> demandRanker = new UrgentDemandFirst();
+    private PriorityRule<SupplyChain> chainRule = new ShortestChainFirst();
+    private TieBreaker<SupplyChain> chainTB = new SimpleTieBreaker<>();
+
+    private Map<Item, List<Production>> bomUsers; // the productions using each item as a bom component
+    private PlanTracker tracker; // the tracker of the changes in the plan, since the last repair
+
+    public RollingHorizonScheduler() {
+    }
+
+    /**
+     * Plan the whole period of the state greedily, and start tracking the changes of the plan.
+     * @param state the state.
+     */
+    @Override
+    public void planSchedule(State state) {
+        Schedule schedule = state.getPlannedSchedule();
+
+        List<Demand> demands = state.getDemands();
+        Collections.sort(demands, demandRanker);
+
+        for (Demand dem : demands) {
+            supplyDemand(dem, schedule, state, chainRule, chainTB);
+        }
+
+        bomUsers = new HashMap<>();
+        for (Item item : state.getEnv().getItemMap().values()) {
+            for (Production production : item.getProductionMap().values()) {
+                for (BomComponent component : production.getBom())
+                    bomUsers.computeIfAbsent(component.getMaterial(), k -> new ArrayList<>()).add(production);
+            }
+        }
+
+        // the productions are released in the order of their items and plants, not of the production maps
+        for (List<Production> productions : bomUsers.values())
+            productions.sort(Comparator.comparingInt((Production p) -> p.getItem().getIndex())
+                    .thenComparingInt(p -> p.getPlant().getIndex()));
+
+        if (tracker != null)
+            tracker.schedule.removeListener(tracker);
+
+        tracker = new PlanTracker(schedule);
+        schedule.addListener(tracker);
+    }
+
+    /**
+     * Simulate the plan day by day until a date, and repair the plan after each day.
+     * @param state the state, with the plan made by this scheduler.
+     * @param simulator the simulator of the state.
+     * @param endDateId the end date id, exclusive.
+     */
+    public void run(State state, Simulator simulator, int endDateId) {
+        while (state.getDateIndex() < endDateId) {
+            simulator.step();
+            repair(state);
+        }
+    }
+
+    /**
+     * Repair the plan after the day before the current date of the state is executed.
+     * Only the instructions starting from the current date can be changed.
+     * @param state the state.
+     */
+    @Override
+    public void repair(State state) {
+        Schedule planned = state.getPlannedSchedule();
+        int today = state.getDateIndex();
+
+        if (today >= planned.getEndDateId())
+            return;
+
+        planned.setFirstOpenDateId(today);
+
+        reconcile(planned, state.getExecutedSchedule(), today-1);
+
+        // the supply may overcommit or use up what was released, so the releases are repeated,
+        // and the last round only releases, the items released then are supplied in the next repair
+        for (int round = 0; ; round++) {
+            releaseOvercommitted(planned, today);
+            releaseShortages(planned, today);
+
+            if (tracker.items.isEmpty() || round == MAX_ROUNDS)
+                break;
+
+            resupply(planned, state, today);
+
+            if (tracker.overcommitted.isEmpty() && tracker.inventories.isEmpty())
+                break;
+        }
+
+        checkPlan(planned, state.getEnv(), today);
+    }
+
+    /**
+     * Check that the remaining capacity and the inventory of the plan are not negative from a date on.
+     * @param planned the planned schedule.
+     * @param env the environment.
+     * @param today the first open date id.
+     * @throws IllegalStateException if the plan is overcommitted or short.
+     */
+    private void checkPlan(Schedule planned, Environment env, int today) {
+        for (MachineSet machineSet : env.getMachineSetMap().values()) {
+            for (int d = today; d < planned.getEndDateId(); d++) {
+                double remaining = planned.getCapacityLedger().getRemaining(machineSet, d);
+
+                if (remaining < -EPSILON)
+                    throw new IllegalStateException("The repaired plan overcommits " + machineSet +
+                            " in day " + d + " by " + (-remaining));
+            }
+        }
+
+        for (Item item : env.getItemMap().values()) {
+            for (Plant plant : item.getPlants()) {
+                InventoryTimeline timeline = planned.getInventory(item, plant);
+
+                // the free inventory is the min total inventory from today on
+                if (timeline != null && timeline.getFree(today) < -EPSILON)
+                    throw new IllegalStateException("The repaired plan is short of " + item + " at " + plant +
+                            " in day " + timeline.firstDateBelow(today, -EPSILON));
+            }
+        }
+    }
+
+    /**
+     * Remove the parts of the planned instructions of an executed date that were not executed.
+     * @param planned the planned schedule.
+     * @param executed the executed schedule.
+     * @param dateId the executed date id.
+     */
+    private void reconcile(Schedule planned, Schedule executed, int dateId) {
+        if (dateId < planned.getStartDateId())
+            return;
+
+        Map<Production, ProductionInstruction> executedProds = executed.getProductionSchedule().get(dateId);
+        for (ProductionInstruction instruction : planned.getSortedProductions(dateId)) {
+            ProductionInstruction executedInstruction = executedProds.get(instruction.getProduction());
+            long cut = instruction.getLots()-(executedInstruction == null ? 0 : executedInstruction.getLots());
+
+            if (cut > 0)
+                planned.removeProduction(dateId, instruction.getProduction(), cut);
+        }
+
+        Map<Transit, TransitInstruction> executedTrans = executed.getTransitSchedule().get(dateId);
+        for (TransitInstruction instruction : planned.getSortedTransits(dateId)) {
+            TransitInstruction executedInstruction = executedTrans.get(instruction.getTransit());
+            double cut = instruction.getQuantity()-(executedInstruction == null ? 0 : executedInstruction.getQuantity());
+
+            if (cut > EPSILON)
+                planned.removeTransit(dateId, instruction.getTransit(), cut);
+        }
+
+        // the executed supply is for the order demand first, so the forecast supply is cut first
+        Map<Pair<Item, Plant>, SupplyInstruction> executedSupplies = executed.getSupplySchedule().get(dateId);
+        Map<Item, Double> forecastCuts = new HashMap<>();
+        for (SupplyInstruction instruction : planned.getSortedSupplies(dateId)) {
+            Item item = instruction.getItem();
+            SupplyInstruction executedInstruction = executedSupplies.get(instruction.getSupply());
+            double cut = instruction.getQuantity()-(executedInstruction == null ? 0 : executedInstruction.getQuantity());
+
+            if (cut <= EPSILON)
+                continue;
+
+            double forecastCut = forecastCuts.computeIfAbsent(item,
+                    k -> planned.getForecastSupply(dateId, k)-executed.getForecastSupply(dateId, k));
+            forecastCut = Math.min(Math.max(forecastCut, 0), cut);
+
+            if (forecastCut > 0) {
+                planned.removeForecastSupply(dateId, instruction.getSupply(), forecastCut);
+                forecastCuts.put(item, forecastCuts.get(item)-forecastCut);
+            }
+
+            if (cut > forecastCut)
+                planned.removeOrderSupply(dateId, instruction.getSupply(), cut-forecastCut);
+
+            tracker.items.add(item);
+        }
+    }
+
+    /**
+     * Reduce the planned productions where the remaining capacity has become negative, e.g. by a capacity update.
+     * @param planned the planned schedule.
+     * @param today the first open date id.
+     */
+    private void releaseOvercommitted(Schedule planned, int today) {
+        List<Pair<MachineSet, Integer>> overcommitted = new ArrayList<>(tracker.overcommitted);
+        tracker.overcommitted.clear();
+
+        for (Pair<MachineSet, Integer> pair : overcommitted) {
+            MachineSet machineSet = pair.getFirst();
+            int dateId = pair.getSecond();
+
+            if (dateId < today)
+                continue;
+
+            for (ProductionInstruction instruction : planned.getSortedProductions(dateId)) {
+                double deficit = -planned.getCapacityLedger().getRemaining(machineSet, dateId);
+
+                if (deficit <= EPSILON)
+                    break;
+
+                Production production = instruction.getProduction();
+                Item item = production.getItem();
+
+                if (!Arrays.asList(item.getMachineSets(production.getPlant())).contains(machineSet))
+                    continue;
+
+                double rate = item.getRate(machineSet.getCapacityType());
+                if (rate <= 0)
+                    continue;
+
+                long lots = Math.max((long)Math.ceil(deficit/(rate*production.getLotSize())-EPSILON), 1);
+                if (lots > instruction.getLots())
+                    lots = instruction.getLots();
+
+                planned.removeProduction(dateId, production, lots);
+                tracker.items.add(item);
+            }
+        }
+    }
+
+    /**
+     * Remove the planned instructions consuming more inventory than planned, e.g. after a production is cut.
+     * For each (item, plant) whose inventory was reduced, the earliest date with negative inventory is found,
+     * and the consumers of the inventory up to that date are removed, the latest first.
+     * Removing a consumer may reduce the inventory of another (item, plant), which is then repaired as well.
+     * @param planned the planned schedule.
+     * @param today the first open date id.
+     */
+    private void releaseShortages(Schedule planned, int today) {
+        Deque<Pair<Item, Plant>> worklist = new ArrayDeque<>(tracker.inventories);
+        tracker.inventories.clear();
+        tracker.worklist = worklist;
+
+        while (!worklist.isEmpty()) {
+            Pair<Item, Plant> pair = worklist.poll();
+            tracker.inventories.remove(pair);
+
+            InventoryTimeline timeline = planned.getInventory(pair.getFirst(), pair.getSecond());
+            if (timeline == null)
+                continue;
+
+            int dateId = timeline.firstDateBelow(today, -EPSILON);
+            while (dateId < planned.getEndDateId()) {
+                double shortage = -timeline.getTotal(dateId);
+
+                if (!releaseConsumer(planned, pair.getFirst(), pair.getSecond(), dateId, today, shortage))
+                    break; // the shortage cannot be repaired from today on
+
+                dateId = timeline.firstDateBelow(dateId, -EPSILON);
+            }
+        }
+
+        tracker.worklist = null;
+    }
+
+    /**
+     * Remove the latest consumer of an item at a plant, no later than a date and no earlier than today.
+     * The consumers are the supplies, the transits from the plant, and the productions using the item as a bom.
+     * @param planned the planned schedule.
+     * @param item the item.
+     * @param plant the plant.
+     * @param dateId the date id with the shortage.
+     * @param today the first open date id.
+     * @param shortage the shortage to be released.
+     * @return true if a consumer is found and reduced, false otherwise.
+     */
+    private boolean releaseConsumer(Schedule planned, Item item, Plant plant, int dateId, int today, double shortage) {
+        for (int d = dateId; d >= today; d--) {
+            // the supplies of the item from the plant, the forecast supply first
+            Pair<Item, Plant> supply = new Pair<>(item, plant);
+            SupplyInstruction supplyInstruction = planned.getSupplySchedule().get(d).get(supply);
+            if (supplyInstruction != null) {
+                double quantity = Math.min(supplyInstruction.getQuantity(), shortage);
+                double forecast = Math.min(Math.max(planned.getForecastSupply(d, item), 0), quantity);
+
+                if (forecast > 0)
+                    planned.removeForecastSupply(d, supply, forecast);
+
+                if (quantity > forecast)
+                    planned.removeOrderSupply(d, supply, quantity-forecast);
+
+                tracker.items.add(item);
+                return true;
+            }
+
+            // the transits of the item from the plant
+            for (TransitInstruction instruction : planned.getSortedTransits(d)) {
+                Transit transit = instruction.getTransit();
+
+                if (transit.getItem() == item && transit.getFromPlant() == plant) {
+                    planned.removeTransit(d, transit, Math.min(instruction.getQuantity(), shortage));
+                    return true;
+                }
+            }
+
+            // the productions using the item as a bom, which consume it when they are finished
+            for (Production production : bomUsers.getOrDefault(item, Collections.emptyList())) {
+                int prodStartDate = d-production.getLeadTime();
+
+                if (production.getPlant() != plant || prodStartDate < today)
+                    continue;
+
+                ProductionInstruction instruction = planned.getProductionSchedule().get(prodStartDate).get(production);
+                if (instruction == null)
+                    continue;
+
+                double perLot = 0;
+                for (BomComponent component : production.getBom()) {
+                    if (component.getMaterial() == item)
+                        perLot += component.getQuantity()*production.getLotSize();
+                }
+
+                long lots = Math.max((long)Math.ceil(shortage/perLot-EPSILON), 1);
+                if (lots > instruction.getLots())
+                    lots = instruction.getLots();
+
+                planned.removeProduction(prodStartDate, production, lots);
+                tracker.items.add(production.getItem());
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Supply the remaining demands of the changed items again from today on.
+     * The order demands are taken from the accumulated order demands, and the forecast demands
+     * are the parts of the forecast not supplied by the plan.
+     * The order supplies beyond a reduced order demand are removed first.
+     * @param planned the planned schedule.
+     * @param state the state.
+     * @param today the first open date id.
+     */
+    private void resupply(Schedule planned, State state, int today) {
+        int endDateId = planned.getEndDateId();
+        List<Item> items = new ArrayList<>(tracker.items);
+        Collections.sort(items);
+        tracker.items.clear();
+
+        for (Item item : items)
+            releaseOversupply(planned, item, today);
+
+        List<Demand> demands = new ArrayList<>();
+        for (Item item : items) {
+            for (int d = today; d < endDateId; d++) {
+                double quantity = item.getForecastDemandMap().getOrDefault(d, 0d)-planned.getForecastSupply(d, item);
+
+                if (quantity > EPSILON)
+                    demands.add(new ForecastDemand(d, item, quantity));
+            }
+        }
+
+        Collections.sort(demands, demandRanker);
+
+        for (Demand dem : demands)
+            supplyDemand(dem, planned, state, chainRule, chainTB);
+
+        // the order demands are read from the accumulated order demands after the forecast is supplied,
+        // each new demand is the increase of the accumulated order demand from the previous day
+        for (Item item : items) {
+            double previous = 0;
+
+            for (int d = today; d < endDateId; d++) {
+                double accOrderDemand = planned.getAccOrderDemMap().get(d).getOrDefault(item, 0d);
+                double quantity = accOrderDemand-previous;
+
+                if (quantity > EPSILON)
+                    supplyDemand(new OrderDemand(d, item, quantity), planned, state, chainRule, chainTB);
+
+                previous = planned.getAccOrderDemMap().get(d).getOrDefault(item, 0d);
+            }
+        }
+    }
+
+    /**
+     * Remove the order supplies of an item beyond its order demand, e.g. after the order demand is reduced.
+     * The latest supplies are removed first.
+     * @param planned the planned schedule.
+     * @param item the item.
+     * @param today the first open date id.
+     */
+    private void releaseOversupply(Schedule planned, Item item, int today) {
+        for (int d = planned.getEndDateId()-1; d >= today; d--) {
+            for (SupplyInstruction instruction : planned.getSortedSupplies(d)) {
+                double oversupply = -planned.getAccOrderDemMap().get(d).getOrDefault(item, 0d);
+
+                if (oversupply <= EPSILON)
+                    break;
+
+                if (instruction.getItem() != item)
+                    continue;
+
+                double quantity = Math.min(Math.min(instruction.getQuantity(), planned.getOrderSupply(d, item)), oversupply);
+
+                if (quantity > 0)
+                    planned.removeOrderSupply(d, instruction.getSupply(), quantity);
+            }
+        }
+    }
+
+    /**
+     * The plan tracker records the changes of the plan that may need a repair:
+     * the (item, plant) whose inventory is reduced, the (machine set, date) whose capacity is overcommitted,
+     * and the items whose order demand is changed.
+     */
+    private static class PlanTracker extends ScheduleListener {
+        private Schedule schedule;
+        private Set<Pair<Item, Plant>> inventories = new LinkedHashSet<>();
+        private Set<Pair<MachineSet, Integer>> overcommitted = new LinkedHashSet<>();
+        private Set<Item> items = new HashSet<>();
+        private Deque<Pair<Item, Plant>> worklist; // the worklist of the shortages being repaired, if any
+
+        PlanTracker(Schedule schedule) {
+            this.schedule = schedule;
+        }
+
+        @Override
+        public void inventoryChanged(long epoch, Item item, Plant plant, int fromDateId, double quantity) {
+            if (quantity >= 0)
+                return;
+
+            Pair<Item, Plant> pair = new Pair<>(item, plant);
+            if (inventories.add(pair) && worklist != null)
+                worklist.add(pair);
+        }
+
+        @Override
+        public void capacityChanged(long epoch, MachineSet machineSet, int dateId, double quantity) {
+            if (quantity < 0 && schedule.getCapacityLedger().getRemaining(machineSet, dateId) < -EPSILON)
+                overcommitted.add(new Pair<>(machineSet, dateId));
+        }
+
+        @Override
+        public void demandChanged(long epoch, Item item, int dateId, double quantity) {
+            items.add(item);
+        }
+    }
+
+    /**
+     * Plan a generated environment, and simulate it with random daily demand and capacity updates,
+     * repairing the plan every day.
+     * Usage: RollingHorizonScheduler [items], the default is 1000 items.
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        EnvironmentGenerator generator = new EnvironmentGenerator();
+        generator.setNumItems(size);
+        generator.setNumPlants(Math.max(4, (int)Math.sqrt(size)/10));
+
+        Environment env = generator.generate(0);
+        State state = new State(env);
+
+        RollingHorizonScheduler scheduler = new RollingHorizonScheduler();
+        long start = System.nanoTime();
+        scheduler.planSchedule(state);
+        double planning = (System.nanoTime()-start)/1e9;
+
+        Simulator simulator = new Simulator(state);
+
+        // a few random demand and capacity updates every day
+        Random random = new Random(0);
+        List<Item> items = new ArrayList<>(env.getItemMap().values());
+        List<MachineSet> machineSets = new ArrayList<>(env.getMachineSetMap().values());
+        for (int d = 0; d < env.getPeriod(); d++) {
+            for (int i = 0; i < 5; i++) {
+                Item item = items.get(random.nextInt(items.size()));
+                int dueDateId = Math.min(d+random.nextInt(30), env.getPeriod()-1);
+                simulator.schedule(new OrderDemandUpdateEvent(d, item, dueDateId, random.nextInt(1000)));
+            }
+
+            MachineSet machineSet = machineSets.get(random.nextInt(machineSets.size()));
+            Map<Integer, Capacity> capacityMap = new HashMap<>();
+            for (int c = d; c < Math.min(d+3, env.getPeriod()); c++)
+                capacityMap.put(c, new Capacity(0));
+            simulator.schedule(new CapacityUpdateEvent(d, machineSet, capacityMap));
+        }
+
+        start = System.nanoTime();
+        scheduler.run(state, simulator, env.getPeriod());
+        double rolling = (System.nanoTime()-start)/1e9;
+
+        Schedule planned = state.getPlannedSchedule();
+        Schedule executed = state.getExecutedSchedule();
+        planned.calcFillRate();
+        executed.calcFillRate();
+
+        System.out.println(size + " items, " + env.getPeriod() + " days: planning = " + planning +
+                ", simulation with daily repairs = " + rolling);
+        System.out.println("  planned: fill rate = " + planned.getFillRate() + ", holding = " + planned.getHoldingCost() +
+                ", production = " + planned.getProductionCost() + ", transit = " + planned.getTransitCost());
+        System.out.println("  executed: fill rate = " + executed.getFillRate() + ", holding = " + executed.getHoldingCost() +
+                ", production = " + executed.getProductionCost() + ", transit = " + executed.getTransitCost());
+    }
+}
@@ -1,10 +1,22 @@
 package scheduling.simulation;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * A decision situation is a pool of candidates in a state.
+ * It also keeps the feature matrix of the pool, stored by columns, i.e. features[f][i] is the feature
+ * with the ordinal f of the i-th candidate. Each column is calculated for the whole pool once,
+ * when it is first used, so the rules can score the candidates in a loop over primitive arrays
+ * instead of calling the getters of each candidate again and again.
+ * The features are a snapshot of the candidates, the situation should not be reused after they are changed.
+ * @param <T> the type of the candidates.
+ */
+
 public class DecisionSituation<T> {
     protected List<T> pool;
     protected State state;
+    protected double[][] features = new double[0][];
 
     public DecisionSituation(List<T> pool, State state) {
         this.pool = pool;
@@ -17,6 +29,7 @@ public class DecisionSituation<T> {
 
     public void setPool(List<T> pool) {
         this.pool = pool;
+        this.features = new double[0][];
     }
 
     public State getState() {
@@ -25,5 +38,49 @@ public class DecisionSituation<T> {
 
     public void setState(State state) {
         this.state = state;
+        this.features = new double[0][];
+    }
+
+    /**
+     * Get the feature matrix, where the columns not calculated yet are null.
+     * @return the feature matrix indexed by [feature ordinal][candidate].
+     */
+    public double[][] getFeatures() {
+        return features;
+    }
+
+    /**
+     * Get the column of a feature, calculated for the whole pool if it is not yet.
+     * @param feature the feature.
+     * @return the values of the feature of the candidates, in the order of the pool.
+     */
+    public double[] column(Feature<T> feature) {
+        int f = feature.ordinal();
+
+        if (f >= features.length)
+            features = Arrays.copyOf(features, f+1);
+
+        if (features[f] == null) {
+            double[] column = new double[pool.size()];
+            for (int i = 0; i < column.length; i++)
+                column[i] = feature.value(pool.get(i), state);
+
+            features[f] = column;
+        }
+
+        return features[f];
+    }
+
+    /**
+     * Calculate the columns of a set of features.
+     * @param features the features.
+     * @return the feature matrix.
+     */
+    @SafeVarargs
+    public final double[][] columns(Feature<T>... features) {
+        for (Feature<T> feature : features)
+            column(feature);
+
+        return this.features;
     }
 }
@@ -0,0 +1,79 @@
+package scheduling.simulation;
+
+import scheduling.core.CapacityLedger;
+import scheduling.core.Schedule;
+import scheduling.core.input.*;
+
+/**
+ * The features of a demand in a decision situation, e.g. to rank the demands to be supplied.
+ */
+
+public enum DemandFeature implements Feature<Demand> {
+    QUANTITY, // the quantity not supplied yet
+    ORDER, // 1 for an order demand, 0 for a forecast demand
+    SLACK, // the days from the current date of the state to the requested date
+    WINDOW, // the days the demand can be supplied from the requested date
+    HOLDING_COST, // the holding cost of the item
+    INVENTORY_COVER, // the part of the quantity covered by the free inventory of the item in the requested date
+    CAPACITY_UTILISATION; // the max used part of the capacity of the machine sets producing the item
+
+    @Override
+    public double value(Demand demand, State state) {
+        switch (this) {
+            case QUANTITY:
+                return demand.getQuantity();
+            case ORDER:
+                return demand instanceof OrderDemand ? 1 : 0;
+            case SLACK:
+                return demand.getDateId()-state.getDateIndex();
+            case WINDOW:
+                return demand.latestSupplyDate(state.getPlannedSchedule())-demand.getDateId();
+            case HOLDING_COST:
+                return demand.getItem().getHoldingCost();
+            case INVENTORY_COVER:
+                return inventoryCover(demand, state);
+            case CAPACITY_UTILISATION:
+                return capacityUtilisation(demand, state);
+            default:
+                return 0;
+        }
+    }
+
+    private static double inventoryCover(Demand demand, State state) {
+        Schedule schedule = state.getPlannedSchedule();
+        int dateId = clamp(demand.getDateId(), schedule);
+
+        double inventory = 0;
+        for (Plant plant : demand.getItem().getPlants())
+            inventory += schedule.getFreeInventory(dateId, demand.getItem(), plant);
+
+        return inventory/Math.max(demand.getQuantity(), 1);
+    }
+
+    /**
+     * Calculate the max used part of the capacity of the machine sets producing the item of a demand,
+     * in the day the production should start to meet the requested date.
+     */
+    private static double capacityUtilisation(Demand demand, State state) {
+        CapacityLedger ledger = state.getPlannedSchedule().getCapacityLedger();
+
+        double utilisation = 0;
+        for (Production production : demand.getItem().getProductionMap().values()) {
+            int prodDateId = demand.getDateId()-production.getLeadTime();
+
+            for (MachineSet machineSet : production.getMachineSets()) {
+                double used = ledger.getUsed(machineSet, prodDateId);
+                double capacity = used+ledger.getRemaining(machineSet, prodDateId);
+
+                if (capacity > 0 && used/capacity > utilisation)
+                    utilisation = used/capacity;
+            }
+        }
+
+        return utilisation;
+    }
+
+    private static int clamp(int dateId, Schedule schedule) {
+        return Math.max(schedule.getStartDateId(), Math.min(dateId, schedule.getEndDateId()-1));
+    }
+}
@@ -1,7 +1,20 @@
 package scheduling.simulation;
 
+/**
+ * An event in the simulation, triggered at a date.
+ * The events in the same date are triggered in the order of their priorities:
+ * the environment updates first, then the productions, the transits and the supplies starting in the date.
+ * The events with the same date and priority are triggered in the order they are scheduled.
+ */
 public abstract class Event implements Comparable<Event> {
+    public static final int ENV_UPDATE = 0; // the priority of the environment updates
+    public static final int PRODUCTION = 1; // the priority of the production starts
+    public static final int TRANSIT = 2; // the priority of the transit starts
+    public static final int SUPPLY = 3; // the priority of the supplies
+
     protected int dateId;
+    private long sequence; // the order the event is scheduled in the event queue
+    private EventPool<?> pool; // the pool the event is acquired from, null if it is not pooled
 
     public Event(int dateId) {
         this.dateId = dateId;
@@ -11,16 +24,54 @@ public abstract class Event implements Comparable<Event> {
         return dateId;
     }
 
+    public void setDateId(int dateId) {
+        this.dateId = dateId;
+    }
+
+    /**
+     * The priority of the event among the events in the same date, the smaller the earlier.
+     * @return the priority.
+     */
+    public int getPriority() {
+        return ENV_UPDATE;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    void setPool(EventPool<?> pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Release the event after it is triggered.
+     * A pooled event is returned to its pool to be reused, and must not be used any more.
+     */
+    public void release() {
+        if (pool != null) {
+            EventPool<?> p = pool;
+            pool = null;
+            p.recycle(this);
+        }
+    }
+
     public abstract void trigger(State state);
 
     @Override
     public int compareTo(Event o) {
-        if (dateId < o.dateId)
-            return -1;
+        if (dateId != o.dateId)
+            return dateId < o.dateId ? -1 : 1;
 
-        if (dateId > o.dateId)
-            return 1;
+        int priority = getPriority();
+        int oPriority = o.getPriority();
+        if (priority != oPriority)
+            return priority < oPriority ? -1 : 1;
 
-        return 0;
+        return Long.compare(sequence, o.sequence);
     }
 }
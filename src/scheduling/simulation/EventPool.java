@@ -0,0 +1,57 @@
+package scheduling.simulation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+/**
+ * A pool of the events of one type.
+ * The simulation creates a few events for each instruction every day, which are triggered and dropped soon.
+ * Instead of allocating them again and again, the triggered events are returned to the pool and reused.
+ * @param <T> the type of the events.
+ */
+public class EventPool<T extends Event> {
+    private Supplier<T> factory; // creates a new event when the pool is empty
+    private Deque<T> free; // the released events to be reused
+    private int numCreated; // the number of events created by the pool
+
+    public EventPool(Supplier<T> factory) {
+        this.factory = factory;
+        this.free = new ArrayDeque<>();
+    }
+
+    public int getNumCreated() {
+        return numCreated;
+    }
+
+    public int getNumFree() {
+        return free.size();
+    }
+
+    /**
+     * Acquire an event from the pool, or create a new one if there is no free event.
+     * The fields of the event must be set again before it is scheduled.
+     * @return the event.
+     */
+    public T acquire() {
+        T event = free.poll();
+
+        if (event == null) {
+            event = factory.get();
+            numCreated ++;
+        }
+
+        event.setPool(this);
+
+        return event;
+    }
+
+    /**
+     * Return a released event to the pool, called by {@link Event#release()}.
+     * @param event the event, acquired from this pool.
+     */
+    @SuppressWarnings("unchecked")
+    void recycle(Event event) {
+        free.push((T)event);
+    }
+}
@@ -0,0 +1,116 @@
+package scheduling.simulation;
+
+import java.util.Arrays;
+
+/**
+ * The event list of the simulation, a binary min-heap of the events in an array.
+ * The events are polled in the order of their dates, priorities and the order they are added,
+ * so the simulation does not depend on the hash codes or the allocation of the events.
+ */
+public class EventQueue {
+    private Event[] heap;
+    private int size;
+    private long nextSequence; // the sequence number of the next added event
+
+    public EventQueue() {
+        this(64);
+    }
+
+    public EventQueue(int capacity) {
+        heap = new Event[Math.max(capacity, 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Add an event into the queue.
+     * @param event the event.
+     */
+    public void add(Event event) {
+        if (size == heap.length)
+            heap = Arrays.copyOf(heap, heap.length*2);
+
+        event.setSequence(nextSequence);
+        nextSequence ++;
+
+        // sift up from the last position
+        int i = size;
+        size ++;
+
+        while (i > 0) {
+            int parent = (i-1) >>> 1;
+
+            if (heap[parent].compareTo(event) <= 0)
+                break;
+
+            heap[i] = heap[parent];
+            i = parent;
+        }
+
+        heap[i] = event;
+    }
+
+    /**
+     * Get the earliest event without removing it.
+     * @return the earliest event, or null if the queue is empty.
+     */
+    public Event peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    /**
+     * Remove and get the earliest event.
+     * @return the earliest event, or null if the queue is empty.
+     */
+    public Event poll() {
+        if (size == 0)
+            return null;
+
+        Event first = heap[0];
+        size --;
+        Event last = heap[size];
+        heap[size] = null;
+
+        if (size > 0) {
+            // sift the last event down from the root
+            int i = 0;
+            int half = size >>> 1;
+
+            while (i < half) {
+                int child = 2*i+1;
+                int right = child+1;
+
+                if (right < size && heap[right].compareTo(heap[child]) < 0)
+                    child = right;
+
+                if (last.compareTo(heap[child]) <= 0)
+                    break;
+
+                heap[i] = heap[child];
+                i = child;
+            }
+
+            heap[i] = last;
+        }
+
+        return first;
+    }
+
+    /**
+     * Remove all the events, the pooled events are released.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            heap[i].release();
+            heap[i] = null;
+        }
+
+        size = 0;
+    }
+}
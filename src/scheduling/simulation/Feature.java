@@ -0,0 +1,23 @@
+package scheduling.simulation;
+
+/**
+ * A feature of the candidates of a decision situation, i.e. a column of its feature matrix.
+ * The features of a type of candidates are defined as an enum, so the ordinal is the index of the column.
+ * @param <T> the type of the candidates.
+ */
+
+public interface Feature<T> {
+    /**
+     * Get the index of the feature in the feature matrix.
+     * @return the index.
+     */
+    int ordinal();
+
+    /**
+     * Calculate the feature of a candidate.
+     * @param candidate the candidate.
+     * @param state the state.
+     * @return the value of the feature.
+     */
+    double value(T candidate, State state);
+}
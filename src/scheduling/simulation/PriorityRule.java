@@ -31,12 +31,15 @@ public abstract class PriorityRule<T> {
         List<T> pool = decisionSituation.getPool();
         State state = decisionSituation.getState();
 
+        double[] priorities = new double[pool.size()];
+        priorities(decisionSituation, priorities);
+
         T best = pool.get(0);
-        double bestPriority = priority(best, state);
+        double bestPriority = priorities[0];
 
         for (int i = 1; i < pool.size(); i++) {
             T tmp = pool.get(i);
-            double tmpPriority = priority(tmp, state);
+            double tmpPriority = priorities[i];
 
             // the higher priority is preferred
             if (Double.compare(tmpPriority, bestPriority) > 0 ||
@@ -55,6 +58,21 @@ public abstract class PriorityRule<T> {
         return name;
     }
 
+    /**
+     * Calculate the priorities of all the candidates in a decision situation.
+     * By default, it calculates the priority of each candidate separately.
+     * The rules can instead read the columns of the feature matrix of the situation.
+     * @param decisionSituation the decision situation.
+     * @param priorities the priorities to be filled, in the order of the pool.
+     */
+    public void priorities(DecisionSituation<T> decisionSituation, double[] priorities) {
+        List<T> pool = decisionSituation.getPool();
+        State state = decisionSituation.getState();
+
+        for (int i = 0; i < priorities.length; i++)
+            priorities[i] = priority(pool.get(i), state);
+    }
+
     /**
      * Calculate the priority of a candidate given a state.
      * @param candidate the candidate in the pool.
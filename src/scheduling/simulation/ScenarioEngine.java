@@ -0,0 +1,229 @@
+package scheduling.simulation;
+
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import scheduling.core.Environment;
+import scheduling.core.EnvironmentGenerator;
+import scheduling.core.Schedule;
+import scheduling.scheduler.GreedyStaticScheduler;
+import scheduling.scheduler.RollingHorizonScheduler;
+import scheduling.scheduler.Scheduler;
+import util.random.SplittableRandomGenerator;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The scenario engine evaluates a scheduler under the uncertain capacity and demand of an environment.
+ * It samples a number of scenarios from the environment by a scenario generator,
+ * and for each scenario, plans the environment with a new scheduler, and simulates the plan
+ * with the sampled updates, repairing the plan every day by the scheduler.
+ * The fill rates and costs of the executed schedules are aggregated over the scenarios.
+ *
+ * The scenarios are run in parallel on a fork join pool. The environment is shared by all the scenarios
+ * without copying, since the activations of its supply chains are kept by the schedules of each scenario.
+ * Each scenario samples from its own random stream, split from the root stream in the order of the scenarios,
+ * so the results are the same no matter how many threads run them or in which order.
+ */
+
+public class ScenarioEngine {
+    private Environment env;
+    private Supplier<Scheduler> schedulerFactory; // creates a new scheduler for each scenario
+    private ScenarioGenerator generator = new ScenarioGenerator();
+    private ForkJoinPool pool;
+
+    public ScenarioEngine(Environment env, Supplier<Scheduler> schedulerFactory) {
+        this(env, schedulerFactory, ForkJoinPool.commonPool());
+    }
+
+    public ScenarioEngine(Environment env, Supplier<Scheduler> schedulerFactory, ForkJoinPool pool) {
+        this.env = env;
+        this.schedulerFactory = schedulerFactory;
+        this.pool = pool;
+    }
+
+    public Environment getEnv() {
+        return env;
+    }
+
+    public ScenarioGenerator getGenerator() {
+        return generator;
+    }
+
+    public void setGenerator(ScenarioGenerator generator) {
+        this.generator = generator;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Run a number of scenarios in parallel.
+     * @param numScenarios the number of scenarios.
+     * @param seed the seed of the root random stream.
+     * @return the results of the scenarios, in the order of the scenarios.
+     */
+    public List<ScenarioResult> run(int numScenarios, long seed) {
+        // the streams are split before the parallel run, so each scenario has the same stream every time
+        SplittableRandomGenerator root = new SplittableRandomGenerator(seed);
+        List<SplittableRandomGenerator> streams = new ArrayList<>();
+        for (int i = 0; i < numScenarios; i++)
+            streams.add(root.split());
+
+        return pool.submit(() -> IntStream.range(0, numScenarios).parallel()
+                .mapToObj(i -> runScenario(i, new RandomDataGenerator(streams.get(i))))
+                .collect(Collectors.toList())).join();
+    }
+
+    /**
+     * Run a scenario: plan the environment, and simulate the plan with the sampled updates.
+     * @param index the index of the scenario.
+     * @param rdg the random data generator of the scenario.
+     * @return the result of the scenario.
+     */
+    private ScenarioResult runScenario(int index, RandomDataGenerator rdg) {
+        List<Event> events = generator.sample(env, rdg);
+
+        State state = new State(env);
+        Scheduler scheduler = schedulerFactory.get();
+        scheduler.planSchedule(state);
+
+        Simulator simulator = new Simulator(state);
+        for (Event event : events)
+            simulator.schedule(event);
+
+        while (state.getDateIndex() < env.getPeriod()) {
+            simulator.step();
+            scheduler.repair(state);
+        }
+
+        Schedule executed = state.getExecutedSchedule();
+        executed.calcFillRate();
+
+        return new ScenarioResult(index, executed.getFillRate(), executed.getHoldingCost(),
+                executed.getProductionCost(), executed.getTransitCost(), executed.getTotalDelay());
+    }
+
+    /**
+     * The fill rate and costs of the executed schedule in a scenario.
+     */
+    public static class ScenarioResult {
+        private int index;
+        private double fillRate;
+        private double holdingCost;
+        private double productionCost;
+        private double transitCost;
+        private double totalDelay;
+
+        public ScenarioResult(int index, double fillRate, double holdingCost,
+                              double productionCost, double transitCost, double totalDelay) {
+            this.index = index;
+            this.fillRate = fillRate;
+            this.holdingCost = holdingCost;
+            this.productionCost = productionCost;
+            this.transitCost = transitCost;
+            this.totalDelay = totalDelay;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public double getFillRate() {
+            return fillRate;
+        }
+
+        public double getHoldingCost() {
+            return holdingCost;
+        }
+
+        public double getProductionCost() {
+            return productionCost;
+        }
+
+        public double getTransitCost() {
+            return transitCost;
+        }
+
+        public double getTotalDelay() {
+            return totalDelay;
+        }
+
+        public double getTotalCost() {
+            return holdingCost+productionCost+transitCost;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + index + ": fill rate = " + fillRate + ", holding = " + holdingCost +
+                    ", production = " + productionCost + ", transit = " + transitCost + ", delay = " + totalDelay + "]";
+        }
+    }
+
+    /**
+     * Aggregate a measure of the scenario results into its distribution.
+     * @param results the scenario results.
+     * @param measure the measure of each result, e.g. ScenarioResult::getFillRate.
+     * @return the statistics of the measure over the scenarios.
+     */
+    public static DescriptiveStatistics aggregate(List<ScenarioResult> results,
+                                                  ToDoubleFunction<ScenarioResult> measure) {
+        DescriptiveStatistics stats = new DescriptiveStatistics();
+
+        for (ScenarioResult result : results)
+            stats.addValue(measure.applyAsDouble(result));
+
+        return stats;
+    }
+
+    private static String summary(DescriptiveStatistics stats) {
+        return String.format("mean = %.4f, sd = %.4f, p5 = %.4f, median = %.4f, p95 = %.4f",
+                stats.getMean(), stats.getStandardDeviation(),
+                stats.getPercentile(5), stats.getPercentile(50), stats.getPercentile(95));
+    }
+
+    /**
+     * Evaluate the greedy static and the rolling horizon schedulers in the scenarios of a generated environment.
+     * Usage: ScenarioEngine [items] [scenarios] [threads], the default is 500 items, 32 scenarios and all processors.
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int numScenarios = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        EnvironmentGenerator envGenerator = new EnvironmentGenerator();
+        envGenerator.setNumItems(size);
+        envGenerator.setNumPlants(Math.max(4, (int)Math.sqrt(size)/10));
+        Environment env = envGenerator.generate(0);
+
+        Map<String, Supplier<Scheduler>> schedulers = new LinkedHashMap<>();
+        schedulers.put("greedy static", GreedyStaticScheduler::new);
+        schedulers.put("rolling horizon", RollingHorizonScheduler::new);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        for (Map.Entry<String, Supplier<Scheduler>> entry : schedulers.entrySet()) {
+            ScenarioEngine engine = new ScenarioEngine(env, entry.getValue(), pool);
+
+            long start = System.nanoTime();
+            List<ScenarioResult> results = engine.run(numScenarios, 0);
+            double duration = (System.nanoTime()-start)/1e9;
+
+            System.out.println(entry.getKey() + ": " + numScenarios + " scenarios, " + threads + " threads, " + duration + "s");
+            System.out.println("  fill rate: " + summary(aggregate(results, ScenarioResult::getFillRate)));
+            System.out.println("  total cost: " + summary(aggregate(results, ScenarioResult::getTotalCost)));
+            System.out.println("  delay: " + summary(aggregate(results, ScenarioResult::getTotalDelay)));
+        }
+
+        pool.shutdown();
+    }
+}
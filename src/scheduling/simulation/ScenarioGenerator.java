@@ -0,0 +1,106 @@
+package scheduling.simulation;
+
+import org.apache.commons.math3.random.RandomDataGenerator;
+import scheduling.core.Environment;
+import scheduling.core.input.Capacity;
+import scheduling.core.input.Item;
+import scheduling.core.input.MachineSet;
+import scheduling.simulation.event.CapacityUpdateEvent;
+import scheduling.simulation.event.OrderDemandUpdateEvent;
+import util.random.AbstractRealSampler;
+import util.random.UniformSampler;
+
+import java.util.*;
+
+/**
+ * The scenario generator samples a realisation of the uncertain capacity and demand of an environment,
+ * as the update events to be scheduled into a simulation. The environment itself is not changed.
+ *
+ * - each unit of the capacity of a machine set breaks down with a probability in each day,
+ *   and the reduced capacity is known in that day.
+ * - a part of the forecast demand of an item arrives as an order, at the arrival rate sampled for each demand.
+ *   The realised order demand (order + arrival rate * forecast) is known some days before it is due.
+ */
+
+public class ScenarioGenerator {
+    private double breakdownProb = 0.0001; // the probability of each unit of capacity to break down
+    private AbstractRealSampler arrivalRateSampler = new UniformSampler(0, 1); // the part of the forecast ordered
+    private int revealDays = 7; // the days the realised order demand is known before it is due
+
+    public ScenarioGenerator() {
+    }
+
+    public double getBreakdownProb() {
+        return breakdownProb;
+    }
+
+    public void setBreakdownProb(double breakdownProb) {
+        this.breakdownProb = breakdownProb;
+    }
+
+    public AbstractRealSampler getArrivalRateSampler() {
+        return arrivalRateSampler;
+    }
+
+    public void setArrivalRateSampler(AbstractRealSampler arrivalRateSampler) {
+        this.arrivalRateSampler = arrivalRateSampler;
+    }
+
+    public int getRevealDays() {
+        return revealDays;
+    }
+
+    public void setRevealDays(int revealDays) {
+        this.revealDays = revealDays;
+    }
+
+    /**
+     * Sample a scenario of an environment.
+     * The machine sets and items are visited in the order of the environment,
+     * so the same random numbers give the same scenario.
+     * @param env the environment.
+     * @param rdg the random data generator.
+     * @return the update events of the scenario.
+     */
+    public List<Event> sample(Environment env, RandomDataGenerator rdg) {
+        List<Event> events = new ArrayList<>();
+
+        // the capacity breakdowns
+        for (MachineSet machineSet : env.getMachineSetMap().values()) {
+            for (int dateId = 0; dateId < env.getPeriod(); dateId++) {
+                Capacity capacity = machineSet.getCapacityMap().get(dateId);
+
+                if (capacity == null || capacity.getRemaining() < 1)
+                    continue;
+
+                int units = (int)Math.round(capacity.getRemaining());
+                int broken = rdg.nextBinomial(units, breakdownProb);
+
+                if (broken == 0)
+                    continue;
+
+                Map<Integer, Capacity> capacityMap = new HashMap<>();
+                capacityMap.put(dateId, new Capacity(capacity.getRemaining()-broken));
+                events.add(new CapacityUpdateEvent(dateId, machineSet, capacityMap));
+            }
+        }
+
+        // the forecast demands arriving as orders
+        for (Item item : env.getItemMap().values()) {
+            for (int dateId = 0; dateId < env.getPeriod(); dateId++) {
+                double forecastDemand = item.getForecastDemandMap().getOrDefault(dateId, 0d);
+
+                if (forecastDemand <= 0)
+                    continue;
+
+                double arrivalRate = arrivalRateSampler.next(rdg);
+                double orderDemand = item.getOrderDemandMap().getOrDefault(dateId, 0d)+Math.round(arrivalRate*forecastDemand);
+
+                int revealDateId = Math.max(dateId-revealDays, 0);
+                events.add(new OrderDemandUpdateEvent(revealDateId, item, dateId, orderDemand));
+            }
+        }
+
+        return events;
+    }
+}
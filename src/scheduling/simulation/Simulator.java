@@ -1,36 +1,63 @@
 package scheduling.simulation;
 
 import scheduling.core.Environment;
+import scheduling.core.EnvironmentGenerator;
+import scheduling.core.Schedule;
+import scheduling.core.output.ProductionInstruction;
+import scheduling.core.output.SupplyInstruction;
+import scheduling.core.output.TransitInstruction;
+import scheduling.scheduler.GreedyStaticScheduler;
+import scheduling.simulation.event.ProductionStartEvent;
+import scheduling.simulation.event.SupplyEvent;
+import scheduling.simulation.event.TransitStartEvent;
 
 import java.util.*;
 
+/**
+ * The discrete event simulator of the dynamic scheduling process.
+ * The events are kept in a priority queue, and triggered in the order of their dates and priorities.
+ *
+ * The planned schedule of the state is executed day by day (rolling horizon):
+ * when a day comes, the instructions of the planned schedule starting in that day are released as events,
+ * and executed into the executed schedule of the state, together with the other events of the day
+ * (e.g. the purchase orders and capacity updates). Only the instructions of the current day are read,
+ * so the planned schedule of the future days can be replaced during the simulation.
+ *
+ * The events of the instructions are taken from the pools and returned after they are triggered,
+ * so the simulation does not allocate new events every day.
+ */
 public class Simulator {
     public static final int MAX_PERIOD = 180; // the maximal scheduling period
+    public static final double EPSILON = 1e-6; // the round-off allowed when an instruction is checked
 
     protected Environment env;
     protected PriorityRule priorityRule;
     protected State state;
-    protected Map<Integer, List<Event>> envUpdateEventMap;
-    protected Map<Integer, List<Event>> schedulingEventMap;
+    protected EventQueue eventQueue;
+
+    protected EventPool<ProductionStartEvent> productionStartPool;
+    protected EventPool<TransitStartEvent> transitStartPool;
+    protected EventPool<SupplyEvent> supplyPool;
+
+    protected long numTriggered; // the number of events triggered so far
+
+    /**
+     * Construct a simulator of a state, starting from the date index of the state.
+     * The executed schedule of the state is initialised if it is still empty.
+     * @param state the state.
+     */
+    public Simulator(State state) {
+        this.env = state.getEnv();
+        this.state = state;
+        this.eventQueue = new EventQueue();
+        this.productionStartPool = new EventPool<>(ProductionStartEvent::new);
+        this.transitStartPool = new EventPool<>(TransitStartEvent::new);
+        this.supplyPool = new EventPool<>(SupplyEvent::new);
+
+        if (state.getExecutedSchedule().getCapacityLedger() == null)
+            state.getExecutedSchedule().initWithState(state);
+    }
 
-//    public Simulator(int startDate, Environment env, PriorityRule priorityRule) {
-//        this.env = env;
-//        this.priorityRule = priorityRule;
-//
-//        state = new State(startDate);
-//        envUpdateEventMap = new HashMap<>();
-//        schedulingEventMap = new HashMap<>();
-//        int currDate = startDate;
-//        int count = 0;
-//        while (count < MAX_PERIOD) {
-//            envUpdateEventMap.put(currDate, new ArrayList<>());
-//            schedulingEventMap.put(currDate, new ArrayList<>());
-//
-//            currDate = TimePeriod.nextDate(currDate);
-//            count ++;
-//        }
-//    }
-//
     public Environment getEnvironment() {
         return env;
     }
@@ -43,12 +70,20 @@ public class Simulator {
         return state;
     }
 
-    public Map<Integer, List<Event>> getEnvUpdateEventMap() {
-        return envUpdateEventMap;
+    public EventQueue getEventQueue() {
+        return eventQueue;
+    }
+
+    public long getNumTriggered() {
+        return numTriggered;
     }
 
-    public Map<Integer, List<Event>> getSchedulingEventMap() {
-        return schedulingEventMap;
+    /**
+     * The number of events created by the pools, which is the max number of the pooled events in use at once.
+     * @return the number of the created events.
+     */
+    public int getNumPooledEvents() {
+        return productionStartPool.getNumCreated()+transitStartPool.getNumCreated()+supplyPool.getNumCreated();
     }
 
     public void setEnv(Environment env) {
@@ -63,77 +98,113 @@ public class Simulator {
         this.state = state;
     }
 
-    public void setEnvUpdateEventMap(Map<Integer, List<Event>> envUpdateEventMap) {
-        this.envUpdateEventMap = envUpdateEventMap;
+    /**
+     * Schedule an event into the simulation, e.g. a purchase order or a capacity update.
+     * @param event the event, not earlier than the current date of the state.
+     */
+    public void schedule(Event event) {
+        eventQueue.add(event);
     }
 
-    public void setSchedulingEventMap(Map<Integer, List<Event>> schedulingEventMap) {
-        this.schedulingEventMap = schedulingEventMap;
+    /**
+     * Run the simulation until the end of the scheduling period.
+     */
+    public void run() {
+        run(env.getPeriod());
     }
-//
-//    public void run() {
-//        int currDate = state.getDate();
-//        int duration = 0;
-//
-//        Map<Item, Map<Integer, Demand>> demandMap = state.getDemandMap();
-//        Map<Item, Map<Plant, Integer>> inventoryMap = state.getInventoryMap();
-//
-//        while (duration < MAX_PERIOD) {
-//            // trigger all the environment update events
-//            for (Event event : envUpdateEventMap.get(currDate)) {
-//                event.trigger(this);
-//            }
-//
-//            // get the requested items, which with positive demands today
-//            List<Item> requestedItems = new ArrayList<>();
-//            for (Item item : demandMap.keySet()) {
-//                Demand dem = demandMap.get(item).get(currDate);
-//                if (dem == null)
-//                    continue;
-//
-//                int orderDemand = dem.getOrderDemand();
-//
-//                if (orderDemand > 0)
-//                    requestedItems.add(item);
-//            }
-//
-//            // make/adjust the schedule
-//
-//            // supply the demand as soon as there are inventory
-//            for (Item item : requestedItems) {
-//                for (Plant plant : inventoryMap.get(item).keySet()) {
-//                    int inventory = inventoryMap.get(item).get(plant);
-//
-//                    if (inventory > 0) {
-//                        SupplyInstruction supply = new SupplyInstruction(currDate, currDate, item, plant, inventory);
-//                        schedulingEventMap.get(currDate).add(new SupplyEvent(currDate, supply));
-//                    }
-//                }
-//            }
-//
-//            // trigger all the scheduling events
-//            for (Event event : schedulingEventMap.get(currDate)) {
-//                event.trigger(this);
-//            }
-//
-//            // finally, calculate the delay of the requested items for that day.
-//            for (Item item : requestedItems) {
-//                Demand dem = demandMap.get(item).get(currDate);
-//                int orderDemand = dem.getOrderDemand();
-//
-//                if (orderDemand > 0) {
-//                    state.getDelayMap().get(item).put(currDate, orderDemand);
-//                    state.setTotalDelay(state.getTotalDelay()+orderDemand);
-//                }
-//            }
-//
-//            // go to the next day
-//            currDate = TimePeriod.nextDate(currDate);
-//            duration ++;
-//        }
-//
-//
-//    }
+
+    /**
+     * Run the simulation from the current date of the state until a date.
+     * @param endDateId the end date id, exclusive.
+     */
+    public void run(int endDateId) {
+        while (state.getDateIndex() < endDateId) {
+            step();
+        }
+    }
+
+    /**
+     * Simulate the current day of the state, and move the state to the next day.
+     * (1) Release the planned instructions starting today as events.
+     * (2) Trigger all the events of today (and earlier ones, if any), in the order of the event queue.
+     */
+    public void step() {
+        int dateId = state.getDateIndex();
+
+        releasePlannedInstructions(dateId);
+
+        while (!eventQueue.isEmpty() && eventQueue.peek().getDateId() <= dateId) {
+            Event event = eventQueue.poll();
+            event.trigger(state);
+            event.release();
+
+            numTriggered ++;
+        }
+
+        state.setDateIndex(dateId+1);
+    }
+
+    /**
+     * Release the instructions of the planned schedule starting in a date as events.
+     * The instructions are released in the order of their items and plants (or transits),
+     * so the simulation does not depend on the iteration order of the schedule maps.
+     * @param dateId the date id.
+     */
+    protected void releasePlannedInstructions(int dateId) {
+        Schedule planned = state.getPlannedSchedule();
+
+        if (dateId < planned.getStartDateId() || dateId >= planned.getEndDateId())
+            return;
+
+        for (ProductionInstruction instruction : planned.getSortedProductions(dateId)) {
+            ProductionStartEvent event = productionStartPool.acquire();
+            event.setDateId(dateId);
+            event.setInstruction(instruction);
+            eventQueue.add(event);
+        }
+
+        for (TransitInstruction instruction : planned.getSortedTransits(dateId)) {
+            TransitStartEvent event = transitStartPool.acquire();
+            event.setDateId(dateId);
+            event.setInstruction(instruction);
+            eventQueue.add(event);
+        }
+
+        for (SupplyInstruction instruction : planned.getSortedSupplies(dateId)) {
+            SupplyEvent event = supplyPool.acquire();
+            event.setDateId(dateId);
+            event.setInstruction(instruction);
+            eventQueue.add(event);
+        }
+    }
+
+    /**
+     * The max lots allowed by an available amount, e.g. the remaining capacity or the free bom components,
+     * ignoring the round-off of the amount.
+     * @param available the available amount.
+     * @param perLot the amount needed for each lot.
+     * @return the max lots, 0 if nothing is available.
+     */
+    public static long maxLots(double available, double perLot) {
+        if (available <= 0)
+            return 0;
+
+        return (long)Math.floor(available/perLot+EPSILON);
+    }
+
+    /**
+     * The quantity of an instruction allowed by an available amount, ignoring the round-off of the amount.
+     * @param quantity the quantity of the instruction.
+     * @param available the available amount.
+     * @return the allowed quantity, 0 if nothing is available.
+     */
+    public static double maxQuantity(double quantity, double available) {
+        if (available >= quantity-EPSILON)
+            return quantity;
+
+        return Math.max(available, 0);
+    }
+
 //
 //    public void applyRule() {
 //
@@ -551,29 +622,45 @@ public class Simulator {
 //        return cloned;
 //    }
 
-//    public static void main(String[] args) {
-//        int startDate = 20161203;
-//
-//        List<File> files = new ArrayList<>();
-//
-//        for (int num = 1; num < 32; num++) {
-//            String text = (num < 10 ? "0" : "") + num;
-//            File file = new File("data/e_vuw_test_multi_plant_" + text + ".xlsx");
-//            files.add(file);
-//        }
-//
-//        Simulator simulator = Simulator.readFromFiles(startDate, files);
-//        simulator.readFrozenDays(new File("data/o_vuw_frozen_days.xlsx"));
-//
-////        File file = new File("data/e_vuw_test_multi_plant_01.xlsx");
-////        Environment env = Environment.readFromFile(file);
-////
-////        Simulator simulator = new Simulator(startDate, env, null);
-//
-//        System.out.println("starting simulation.");
-//
-//        simulator.run();
-//
-//        System.out.println("finished.");
-//    }
+    /**
+     * Plan generated environments with the greedy static scheduler, and simulate the execution of the plans.
+     * Usage: Simulator [items ...], the default is 1000 and 3000 items.
+     */
+    public static void main(String[] args) {
+        int[] sizes = {1000, 3000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        EnvironmentGenerator generator = new EnvironmentGenerator();
+
+        for (int size : sizes) {
+            generator.setNumItems(size);
+            generator.setNumPlants(Math.max(4, (int)Math.sqrt(size)/10));
+
+            Environment env = generator.generate(0);
+            State state = new State(env);
+            new GreedyStaticScheduler().planSchedule(state);
+
+            long start = System.nanoTime();
+            Simulator simulator = new Simulator(state);
+            simulator.run();
+            double duration = (System.nanoTime()-start)/1e9;
+
+            Schedule planned = state.getPlannedSchedule();
+            Schedule executed = state.getExecutedSchedule();
+            planned.calcFillRate();
+            executed.calcFillRate();
+
+            System.out.println(size + " items, " + env.getPeriod() + " days: simulation = " + duration +
+                    ", item days per second = " + (long)(size*env.getPeriod()/duration) +
+                    ", events = " + simulator.getNumTriggered() + ", pooled = " + simulator.getNumPooledEvents());
+            System.out.println("  planned: fill rate = " + planned.getFillRate() + ", holding = " + planned.getHoldingCost() +
+                    ", production = " + planned.getProductionCost() + ", transit = " + planned.getTransitCost());
+            System.out.println("  executed: fill rate = " + executed.getFillRate() + ", holding = " + executed.getHoldingCost() +
+                    ", production = " + executed.getProductionCost() + ", transit = " + executed.getTransitCost());
+        }
+    }
 }
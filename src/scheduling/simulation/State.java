@@ -1,5 +1,6 @@
 package scheduling.simulation;
 
+import io.EnvironmentSnapshot;
 import io.ExcelProcessor;
 import org.apache.commons.math3.util.Pair;
 import scheduling.core.Environment;
@@ -56,11 +57,12 @@ public class State {
 
     /**
      * Read a static problem from a file and the start date.
+     * The environment is reloaded from the snapshot of the file if it is up to date.
      * @param file the file.
      * @return the state.
      */
     public static State staticProbFromFile(File file) {
-        Environment env = Environment.readFromFile(file);
+        Environment env = EnvironmentSnapshot.load(file);
 
         return new State(env);
     }
@@ -0,0 +1,119 @@
+package scheduling.simulation;
+
+import scheduling.core.CapacityLedger;
+import scheduling.core.Schedule;
+import scheduling.core.SupplyChain;
+import scheduling.core.input.Item;
+import scheduling.core.input.MachineSet;
+import scheduling.core.input.Production;
+
+import java.util.Map;
+
+/**
+ * The features of an active supply chain in a decision situation, used by the priority rules,
+ * e.g. as the terminals of the evolved rules.
+ */
+
+public enum SupplyChainFeature implements Feature<SupplyChain> {
+    LENGTH, // the number of steps of the active streams
+    LEAD_TIME, // the lead time of the active streams
+    DATE, // the days from the current date of the state to the supply date
+    MAX_QUANTITY, // the max quantity the chain can supply
+    INVENTORY, // the free inventory used directly
+    HOLDING_COST, // the holding cost of the active streams
+    PRODUCTION_COST, // the production cost of the active streams
+    TRANSIT_COST, // the transit cost of the active streams
+    TOTAL_COST, // the total cost of the active streams
+    BACKLOG, // the order demand of the item not supplied yet until the supply date
+    FORECAST, // the forecast demand of the item in the supply date
+    SLACK, // the days from the current date of the state to the latest start of the chain
+    INVENTORY_COVER, // the part of the backlog and forecast of the item covered by the free inventory used
+    CAPACITY_UTILISATION; // the max used part of the capacity of the machine sets producing the item
+
+    /**
+     * Calculate the feature of a supply chain.
+     * @param chain the supply chain, activated in its supply date.
+     * @param state the state, with the schedule being planned.
+     * @return the value of the feature.
+     */
+    @Override
+    public double value(SupplyChain chain, State state) {
+        switch (this) {
+            case LENGTH:
+                return chain.getLength();
+            case LEAD_TIME:
+                return chain.getLeadTime();
+            case DATE:
+                return chain.getDateId()-state.getDateIndex();
+            case MAX_QUANTITY:
+                return chain.getMaxQuantity();
+            case INVENTORY:
+                return chain.getInventory();
+            case HOLDING_COST:
+                return chain.getHoldingCost();
+            case PRODUCTION_COST:
+                return chain.getProductionCost();
+            case TRANSIT_COST:
+                return chain.getTransitCost();
+            case TOTAL_COST:
+                return chain.getTotalCost();
+            case BACKLOG:
+                return backlog(chain, state);
+            case FORECAST:
+                return chain.getItem().getForecastDemandMap().getOrDefault(chain.getDateId(), 0d);
+            case SLACK:
+                return chain.getDateId()-chain.getLeadTime()-state.getDateIndex();
+            case INVENTORY_COVER:
+                if (chain.getInventory() <= 0)
+                    return 0;
+
+                double demand = backlog(chain, state)+FORECAST.value(chain, state);
+                return chain.getInventory()/Math.max(demand, 1);
+            case CAPACITY_UTILISATION:
+                return capacityUtilisation(chain, state);
+            default:
+                return 0;
+        }
+    }
+
+    private static double backlog(SupplyChain chain, State state) {
+        Schedule schedule = state.getPlannedSchedule();
+        Map<Item, Double> dailyAccOrderDem = schedule.getAccOrderDemMap().get(chain.getDateId());
+        return dailyAccOrderDem == null ? 0 : dailyAccOrderDem.getOrDefault(chain.getItem(), 0d);
+    }
+
+    /**
+     * Calculate the max used part of the capacity of the machine sets of the production of a chain,
+     * in the day the production starts. It is 0 if the chain does not produce the item.
+     */
+    private static double capacityUtilisation(SupplyChain chain, State state) {
+        if (!chain.isActive() || chain.getInventory() > 0 || !chain.isProdActive())
+            return 0;
+
+        Production production = chain.getProduction();
+        int prodDateId = chain.getDateId()-production.getLeadTime();
+        CapacityLedger ledger = state.getPlannedSchedule().getCapacityLedger();
+
+        double utilisation = 0;
+        for (MachineSet machineSet : production.getMachineSets()) {
+            double used = ledger.getUsed(machineSet, prodDateId);
+            double capacity = used+ledger.getRemaining(machineSet, prodDateId);
+
+            if (capacity > 0 && used/capacity > utilisation)
+                utilisation = used/capacity;
+        }
+
+        return utilisation;
+    }
+
+    /**
+     * Calculate all the features of a supply chain into a vector, indexed by the ordinals of the features.
+     * @param chain the supply chain.
+     * @param state the state.
+     * @param features the feature vector to be filled.
+     */
+    public static void values(SupplyChain chain, State state, double[] features) {
+        for (SupplyChainFeature feature : values())
+            features[feature.ordinal()] = feature.value(chain, state);
+    }
+}
@@ -1,5 +1,6 @@
 package scheduling.simulation.event;
 
+import scheduling.core.Schedule;
 import scheduling.core.input.Capacity;
 import scheduling.core.input.MachineSet;
 import scheduling.core.input.TimePeriod;
@@ -25,11 +26,22 @@ public class CapacityUpdateEvent extends Event {
 
     /**
      * update the capacity of the machine set, when a new day comes.
+     * The capacity is updated in both the executed and the planned schedule, the environment is not changed,
+     * and the capacity already occupied in each day is kept.
+     * The planned schedule may then be overcommitted, and is repaired by the scheduler.
      * @param state the state.
      */
     @Override
     public void trigger(State state) {
-        machineSet.setCapacityMap(capacityMap);
+        Schedule executed = state.getExecutedSchedule();
+        Schedule planned = state.getPlannedSchedule();
+
+        for (Map.Entry<Integer, Capacity> entry : capacityMap.entrySet()) {
+            executed.setCapacity(machineSet, entry.getKey(), entry.getValue().getRemaining());
+
+            if (planned != null && planned.getCapacityLedger() != null)
+                planned.setCapacity(machineSet, entry.getKey(), entry.getValue().getRemaining());
+        }
     }
 
     @Override
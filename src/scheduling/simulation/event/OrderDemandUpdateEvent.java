@@ -1,5 +1,6 @@
 package scheduling.simulation.event;
 
+import scheduling.core.Schedule;
 import scheduling.core.input.Demand;
 import scheduling.core.input.Item;
 import scheduling.simulation.Event;
@@ -24,11 +25,19 @@ public class OrderDemandUpdateEvent extends Event {
     /**
      * Update the demand of an item, whenever a new day comes.
      * [item, [due date, demand]].
+     * The order demand due in the date is set to the new demand in both the executed and the planned schedule,
+     * the environment is not changed. The planned schedule is then repaired by the scheduler.
      * @param state the state.
      */
     @Override
     public void trigger(State state) {
+        Schedule executed = state.getExecutedSchedule();
+        Schedule planned = state.getPlannedSchedule();
 
+        executed.addOrderDemand(dueDateId, item, demand-executed.getOrderDemand(dueDateId, item));
+
+        if (planned != null && planned != executed)
+            planned.addOrderDemand(dueDateId, item, demand-planned.getOrderDemand(dueDateId, item));
     }
 
     @Override
@@ -40,7 +40,7 @@ public class PoEvent extends Event {
      */
     @Override
     public void trigger(State state) {
-
+        state.getExecutedSchedule().addInventory(dateId, item, plant, quantity);
     }
 
     @Override
@@ -1,5 +1,6 @@
 package scheduling.simulation.event;
 
+import scheduling.core.Schedule;
 import scheduling.core.input.*;
 import scheduling.core.output.ProductionInstruction;
 import scheduling.simulation.Event;
@@ -11,6 +12,13 @@ import java.util.Map;
 public class ProductionStartEvent extends Event {
     private ProductionInstruction instruction;
 
+    /**
+     * Construct an empty event to be pooled, the date and instruction are set when it is acquired.
+     */
+    public ProductionStartEvent() {
+        super(0);
+    }
+
     public ProductionStartEvent(int dateId, ProductionInstruction instruction) {
         super(dateId);
         this.instruction = instruction;
@@ -20,40 +28,52 @@ public class ProductionStartEvent extends Event {
         return instruction;
     }
 
+    public void setInstruction(ProductionInstruction instruction) {
+        this.instruction = instruction;
+    }
+
+    @Override
+    public int getPriority() {
+        return PRODUCTION;
+    }
+
     /**
-     * Start a production.
-     * (1) Reduce the inventory of the BOM of the produced item.
-     * (2) Occupy the capacity of the machine set.
+     * Start a production in the executed schedule.
+     * (1) Occupy the capacity of the machine sets.
+     * (2) Reduce the inventory of the BOM of the produced item, and add the produced item, from the end date on.
      * (3) Add a production cost.
      * (4) Add the production instruction into the schedule.
+     * The lots are cut if the executed capacity or bom components are less than planned,
+     * e.g. after the capacity is updated.
      * @param state the state.
      */
     @Override
     public void trigger(State state) {
+        Schedule schedule = state.getExecutedSchedule();
         Production production = instruction.getProduction();
         Item item = production.getItem();
         Plant plant = production.getPlant();
-        item.reduceCapacity(plant, dateId, instruction.getQuantity());
-
-//        int date = state.getDate();
-//
-//        for (BomComponent bom : production.getAssembly()) {
-//            Item component = bom.getComponent();
-//            int n = bom.getQuantity();
-//
-//            state.reduceInventory(component, plant, n*quantity);
-//        }
-//
-//        Capacity capacity = machineSet.getCapacityMap().get(date);
-//        double oldCap = capacity.getRemaining();
-//        capacity.setRemaining(oldCap-item.getRate()*quantity);
-//
-//        double oldCost = state.getProductionCost();
-//        int duration = instruction.getEndDate()-instruction.getStartDate()+1;
-//        double addedCost = production.getCost() * quantity * duration;
-//        state.setProductionCost(oldCost+addedCost);
-//
-//        state.getSchedule().getProductionSchedule().add(instruction);
+        int prodEndDate = dateId+production.getLeadTime();
+        long lots = instruction.getLots();
+
+        // the lots the remaining capacity allows
+        for (MachineSet machineSet : item.getMachineSets(plant)) {
+            double rate = item.getRate(machineSet.getCapacityType());
+
+            if (rate > 0) {
+                double remCap = schedule.getCapacityLedger().getRemaining(machineSet, dateId);
+                lots = Math.min(lots, Simulator.maxLots(remCap, rate*production.getLotSize()));
+            }
+        }
+
+        // the lots the free bom components allow
+        for (BomComponent component : production.getBom()) {
+            double free = schedule.getFreeInventory(prodEndDate, component.getMaterial(), plant);
+            lots = Math.min(lots, Simulator.maxLots(free, component.getQuantity()*production.getLotSize()));
+        }
+
+        if (lots > 0)
+            schedule.addProduction(dateId, production, lots);
     }
 
     @Override
@@ -1,5 +1,7 @@
 package scheduling.simulation.event;
 
+import org.apache.commons.math3.util.Pair;
+import scheduling.core.Schedule;
 import scheduling.core.input.Item;
 import scheduling.core.input.Plant;
 import scheduling.core.output.SupplyInstruction;
@@ -12,6 +14,13 @@ import java.util.Map;
 public class SupplyEvent extends Event {
     private SupplyInstruction instruction;
 
+    /**
+     * Construct an empty event to be pooled, the date and instruction are set when it is acquired.
+     */
+    public SupplyEvent() {
+        super(0);
+    }
+
     public SupplyEvent(int date, SupplyInstruction instruction) {
         super(date);
         this.instruction = instruction;
@@ -21,26 +30,50 @@ public class SupplyEvent extends Event {
         return instruction;
     }
 
+    public void setInstruction(SupplyInstruction instruction) {
+        this.instruction = instruction;
+    }
+
+    @Override
+    public int getPriority() {
+        return SUPPLY;
+    }
+
     /**
-     * Supply happens.
+     * Supply happens in the executed schedule.
      * (1) Reduce the delay amount of supplied item at that day.
      * (2) Reduce the inventory of the supplied item at the plant.
      * (3) Add the supply instruction into the schedule.
+     * The supply goes to the order and forecast demands as planned for the day,
+     * and the quantity is cut if the free inventory at the plant or the demands left are less than planned.
      * @param state the state.
      */
     @Override
     public void trigger(State state) {
+        Schedule schedule = state.getExecutedSchedule();
+        Schedule planned = state.getPlannedSchedule();
         Item item = instruction.getItem();
-        Plant plant = instruction.getSupply().getSecond();
-        double quantity = instruction.getQuantity();
-
-//        Map<Integer, Integer> itemDelayMap = state.getDelayMap().get(item);
-//        int oldDelay = itemDelayMap.get(date);
-//        itemDelayMap.put(date, oldDelay-quantity);
-//
-//        state.reduceInventory(item, plant, quantity);
-//
-//        state.getSchedule().getSupplySchedule().add(instruction);
+        Pair<Item, Plant> supply = instruction.getSupply();
+
+        double free = schedule.getFreeInventory(dateId, item, supply.getSecond());
+        double quantity = Simulator.maxQuantity(instruction.getQuantity(), free);
+
+        // the order supply planned for the day, but not executed yet
+        double orderQuantity = planned.getOrderSupply(dateId, item)-schedule.getOrderSupply(dateId, item);
+        Double accOrderDemand = schedule.getAccOrderDemMap().get(dateId).get(item);
+        if (accOrderDemand == null || orderQuantity > accOrderDemand)
+            orderQuantity = accOrderDemand == null ? 0 : accOrderDemand;
+        orderQuantity = Simulator.maxQuantity(orderQuantity, quantity);
+
+        if (orderQuantity > 0)
+            schedule.addOrderSupply(dateId, supply, orderQuantity);
+
+        // the forecast supply planned for the day, but not executed yet
+        double forecastQuantity = planned.getForecastSupply(dateId, item)-schedule.getForecastSupply(dateId, item);
+        forecastQuantity = Simulator.maxQuantity(forecastQuantity, quantity-orderQuantity);
+
+        if (forecastQuantity > 0)
+            schedule.addForecastSupply(dateId, supply, forecastQuantity);
     }
 
     @Override
@@ -37,6 +37,6 @@ public class TransitEndEvent extends Event {
 
     @Override
     public String toString() {
-        return "<TranStart: " + instruction.toString() + ">";
+        return "<TranEnd: " + instruction.toString() + ">";
     }
 }
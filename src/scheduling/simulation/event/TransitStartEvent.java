@@ -1,5 +1,6 @@
 package scheduling.simulation.event;
 
+import scheduling.core.Schedule;
 import scheduling.core.input.*;
 import scheduling.core.output.TransitInstruction;
 import scheduling.simulation.Event;
@@ -11,6 +12,13 @@ import java.util.Map;
 public class TransitStartEvent extends Event {
     private TransitInstruction instruction;
 
+    /**
+     * Construct an empty event to be pooled, the date and instruction are set when it is acquired.
+     */
+    public TransitStartEvent() {
+        super(0);
+    }
+
     public TransitStartEvent(int dateId, TransitInstruction instruction) {
         super(dateId);
         this.instruction = instruction;
@@ -20,34 +28,37 @@ public class TransitStartEvent extends Event {
         return instruction;
     }
 
+    public void setInstruction(TransitInstruction instruction) {
+        this.instruction = instruction;
+    }
+
+    @Override
+    public int getPriority() {
+        return TRANSIT;
+    }
+
     /**
-     * Start a transit.
-     * (1) Reduce the item's inventory at the source plant.
+     * Start a transit in the executed schedule.
+     * (1) Reduce the item's inventory at the source plant, and add it to the target plant from the end date on.
      * (2) Add a transit cost.
      * (3) Add the transit instruction into the schedule.
+     * The quantity is cut if the free inventory at the source plant is less than planned.
      * @param state the state.
      */
     @Override
     public void trigger(State state) {
-        Item item = instruction.getItem();
-        Plant fromPlant = instruction.getTransit().getFromPlant();
-        Plant toPlant = instruction.getTransit().getToPlant();
-        double quantity = instruction.getQuantity();
-
-//        state.reduceInventory(item, fromPlant, quantity);
-//
-//        double oldCost = state.getTransitCost();
-//        Pair<Plant, Plant> plantPair = new Pair<>(fromPlant, toPlant);
-//        int unitTransitCost = simulator.getEnvironment().getTransitCostMap().get(plantPair);
-//        int duration = instruction.getEndDate()-instruction.getStartDate()+1;
-//        double addedCost = unitTransitCost * quantity * duration;
-//        state.setTransitCost(oldCost+addedCost);
-//
-//        state.getSchedule().getTransitSchedule().add(instruction);
+        Schedule schedule = state.getExecutedSchedule();
+        Transit transit = instruction.getTransit();
+
+        double free = schedule.getFreeInventory(dateId, instruction.getItem(), transit.getFromPlant());
+        double quantity = Simulator.maxQuantity(instruction.getQuantity(), free);
+
+        if (quantity > 0)
+            schedule.addTransit(dateId, transit, quantity);
     }
 
     @Override
     public String toString() {
-        return "<TranEnd: " + instruction.toString() + ">";
+        return "<TranStart: " + instruction.toString() + ">";
     }
 }
@@ -1,8 +1,10 @@
 package scheduling.simulation.rule;
 
 import scheduling.core.SupplyChain;
+import scheduling.simulation.DecisionSituation;
 import scheduling.simulation.PriorityRule;
 import scheduling.simulation.State;
+import scheduling.simulation.SupplyChainFeature;
 
 /**
  * This is a priority rule to select the next chain from a pool.
@@ -17,6 +19,14 @@ public class ShortestChainFirst extends PriorityRule<SupplyChain> {
         name = "SCF";
     }
 
+    @Override
+    public void priorities(DecisionSituation<SupplyChain> decisionSituation, double[] priorities) {
+        double[] length = decisionSituation.column(SupplyChainFeature.LENGTH);
+
+        for (int i = 0; i < priorities.length; i++)
+            priorities[i] = -length[i];
+    }
+
     @Override
     public double priority(SupplyChain candidate, State state) {
         return -candidate.getLength();
@@ -26,18 +26,43 @@ public class DisjointSets<T> {
         }
     }
 
+    /**
+     * Find the root of the subtree of an element.
+     * All the elements on the path are linked directly to the root (path compression),
+     * so that the later finds take nearly constant time.
+     * @param element the element.
+     * @return the root element.
+     */
     public Element find(Element element) {
-        if (element.parent.equals(element))
-            return element;
+        Element root = element;
+        while (root.parent != root)
+            root = root.parent;
+
+        while (element.parent != root) {
+            Element next = element.parent;
+            element.parent = root;
+            element = next;
+        }
 
-        return find(element.parent);
+        return root;
     }
 
+    public Element find(T object) {
+        return find(forest.get(object));
+    }
+
+    /**
+     * Union the subtrees of two elements.
+     * The subtree with smaller depth (rank) is linked under the other.
+     * With path compression, the depth is an upper bound of the real depth.
+     * @param ele1 the element 1.
+     * @param ele2 the element 2.
+     */
     public void union(Element ele1, Element ele2) {
         Element root1 = find(ele1);
         Element root2 = find(ele2);
 
-        if (root1.equals(root2))
+        if (root1 == root2)
             return;
 
         if (root1.depth < root2.depth) {
@@ -70,7 +95,7 @@ public class DisjointSets<T> {
         Element ele1 = forest.get(obj1);
         Element ele2 = forest.get(obj2);
 
-        return !find(ele1).equals(find(ele2));
+        return find(ele1) != find(ele2);
     }
 
     public class Element {
@@ -0,0 +1,66 @@
+package util.random;
+
+import org.apache.commons.math3.random.AbstractRandomGenerator;
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * A random generator on a stream of a splittable random, to be used by the samplers.
+ * Each stream split from the same root is independent of the others, and gives the same numbers
+ * no matter which thread uses it, so the parallel samplings are reproducible.
+ *
+ */
+
+public class SplittableRandomGenerator extends AbstractRandomGenerator {
+
+	private SplittableRandom random;
+
+	public SplittableRandomGenerator(SplittableRandom random) {
+		super();
+		this.random = random;
+	}
+
+	public SplittableRandomGenerator(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	/**
+	 * Split a new independent generator from this one.
+	 * @return the new generator.
+	 */
+	public SplittableRandomGenerator split() {
+		return new SplittableRandomGenerator(random.split());
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		clear();
+		random = new SplittableRandom(seed);
+	}
+
+	@Override
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	@Override
+	public int nextInt() {
+		return random.nextInt();
+	}
+
+	@Override
+	public int nextInt(int n) {
+		return random.nextInt(n);
+	}
+
+	@Override
+	public long nextLong() {
+		return random.nextLong();
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return random.nextBoolean();
+	}
+}